@@ -46,6 +46,11 @@ public class BaseFlicaConnection implements Closeable {
   protected final SimpleCookieJar cookieJar = new SimpleCookieJar();
   private final Logger logger = Logger.getLogger(BaseFlicaConnection.class.getName());
 
+  // Requests may run concurrently, so only one of them logs in again
+  // when the session expires.
+  private final Object loginLock = new Object();
+  private int loginGeneration;
+
   private static final String HOST = "jia.flica.net";
 
   private static final String USER_AGENT_KEY = "User-Agent";
@@ -120,13 +125,12 @@ public class BaseFlicaConnection implements Closeable {
         .url(url)
         .header(USER_AGENT_KEY, CHROME_USER_AGENT)
         .build();
+    int generation = getLoginGeneration();
     Response response = httpclient.newCall(request).execute();
     logger.fine("First Request Status: " + response.message());
     if (response.code() == HttpURLConnection.HTTP_MOVED_TEMP) {
       response.body().close();
-      logger.info("(Re)Logging in");
-      disconnect();
-      Preconditions.checkState(connect(), "connect failed");
+      relogin(generation);
       response = httpclient.newCall(request).execute();
       Preconditions.checkState(response.code() != HttpURLConnection.HTTP_MOVED_TEMP,
           response.toString());
@@ -134,6 +138,26 @@ public class BaseFlicaConnection implements Closeable {
     return response.body();
   }
 
+  private int getLoginGeneration() {
+    synchronized (loginLock) {
+      return loginGeneration;
+    }
+  }
+
+  /** Logs in again, unless another request did so after generation was read. */
+  private void relogin(int generation) throws IOException {
+    synchronized (loginLock) {
+      if (generation != loginGeneration) {
+        logger.info("Already logged in again");
+        return;
+      }
+      logger.info("(Re)Logging in");
+      disconnect();
+      Preconditions.checkState(connect(), "connect failed");
+      loginGeneration++;
+    }
+  }
+
   public String retrieveUrl(HttpUrl url) throws IOException {
     ResponseBody body = retrieveUrlInternal(url);
     try {
@@ -19,30 +19,80 @@
 
 package crewtools.flica;
 
-import java.io.File;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.joda.time.LocalDate;
 import org.joda.time.YearMonth;
 
-import com.google.common.io.Files;
+import com.google.common.base.Joiner;
+import com.google.common.hash.Hashing;
+import com.google.protobuf.Message;
+import com.google.protobuf.Parser;
 
 import crewtools.flica.Proto.Rank;
+import crewtools.flica.ResponseCache.Endpoint;
+import crewtools.flica.parser.IndividualPairingParser;
+import crewtools.flica.parser.LineParser;
+import crewtools.flica.parser.PairingParser;
+import crewtools.flica.parser.ParseException;
+import crewtools.flica.parser.ScheduleParser;
+import crewtools.flica.parser.StreamingPairingParser;
+import crewtools.flica.pojo.PairingKey;
 import okhttp3.Response;
 
+/**
+ * A FlicaService that caches responses, and the result of parsing them,
+ * in a ResponseCache.
+ *
+ * Parsed results are keyed by the content parsed and by the VERSION of
+ * each parser that produced them. A parser's VERSION must be incremented
+ * whenever its output changes, so that results cached by an older version
+ * are no longer found.
+ */
 public class CachingFlicaService extends FlicaService {
   private final Logger logger = Logger.getLogger(FlicaService.class.getName());
 
-  private static final File DIR = new File("/tmp/flica/");
+  private static ResponseCache defaultCache;
+
+  private final ResponseCache cache;
   private boolean isConnected = false;
 
+  /** Shares the default cache with every other CachingFlicaService. */
   public CachingFlicaService(BaseFlicaConnection connection) {
+    this(connection, getDefaultCache());
+  }
+
+  public CachingFlicaService(BaseFlicaConnection connection, ResponseCache cache) {
     super(connection);
-    DIR.mkdir();
+    this.cache = cache;
+  }
+
+  private static synchronized ResponseCache getDefaultCache() {
+    if (defaultCache == null) {
+      ResponseCache cache = new ResponseCache();
+      // Writes out entries stored since the index was last flushed.
+      Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+        try {
+          cache.close();
+        } catch (IOException e) {
+          Logger.getLogger(CachingFlicaService.class.getName())
+              .log(Level.WARNING, "Unable to write cache index", e);
+        }
+      }, "ResponseCacheFlush"));
+      defaultCache = cache;
+    }
+    return defaultCache;
+  }
+
+  public ResponseCache getCache() {
+    return cache;
   }
 
   @Override
@@ -50,7 +100,7 @@ public class CachingFlicaService extends FlicaService {
     // defer connecting until necessary
   }
 
-  private void connectIfNecessary() throws IOException {
+  private synchronized void connectIfNecessary() throws IOException {
     if (!isConnected) {
       logger.info("Connecting to FLICA");
       super.connect();
@@ -62,100 +112,78 @@ public class CachingFlicaService extends FlicaService {
   public String getBidAward(final AwardDomicile domicile, final Rank rank,
       final int round, final YearMonth yearMonth)
       throws IOException {
-    File file = new File(DIR, "get-bid-award-" + domicile + rank + round + yearMonth + ".txt");
-    if (file.exists()) {
-      return Files.toString(file, StandardCharsets.UTF_8);
-    } else {
-      connectIfNecessary();
-      String result = super.getBidAward(domicile, rank, round, yearMonth);
-      Files.write(result, file, StandardCharsets.UTF_8);
-      return result;
+    try {
+      return cache.getString(Endpoint.BID_AWARD,
+          key(domicile, rank, round, yearMonth), () -> {
+            connectIfNecessary();
+            return super.getBidAward(domicile, rank, round, yearMonth);
+          });
+    } catch (URISyntaxException e) {
+      throw new IOException(e);
     }
   }
 
   @Override
   public String getSchedule(YearMonth yearMonth) throws IOException {
-    File file = new File(DIR, "schedule-" + yearMonth + ".txt");
-    if (file.exists()) {
-      return Files.toString(file, StandardCharsets.UTF_8);
-    } else {
-      connectIfNecessary();
-      String result = super.getSchedule(yearMonth);
-      Files.write(result, file, StandardCharsets.UTF_8);
-      return result;
+    try {
+      return cache.getString(Endpoint.SCHEDULE, key(yearMonth), () -> {
+        connectIfNecessary();
+        return super.getSchedule(yearMonth);
+      });
+    } catch (URISyntaxException e) {
+      throw new IOException(e);
     }
   }
 
   @Override
   public String getAllPairings(AwardDomicile domicile, Rank rank, int round, YearMonth yearMonth)
       throws IOException, URISyntaxException {
-    File file = new File(DIR, "all-pairings-" + domicile + rank + round + yearMonth + ".txt");
-    if (file.exists()) {
-      return Files.toString(file, StandardCharsets.UTF_8);
-    } else {
-      connectIfNecessary();
-      String result = super.getAllPairings(domicile, rank, round, yearMonth);
-      Files.write(result, file, StandardCharsets.UTF_8);
-      return result;
-    }
+    return cache.getString(Endpoint.ALL_PAIRINGS,
+        key(domicile, rank, round, yearMonth), () -> {
+          connectIfNecessary();
+          return super.getAllPairings(domicile, rank, round, yearMonth);
+        });
   }
 
   @Override
   public String getAllLines(AwardDomicile domicile, Rank rank,
       int round, YearMonth yearMonth) throws URISyntaxException, IOException {
-    File file = new File(DIR, "all-lines-" + domicile + rank + round + yearMonth + ".txt");
-    if (file.exists()) {
-      return Files.toString(file, StandardCharsets.UTF_8);
-    } else {
-      connectIfNecessary();
-      String result = super.getAllLines(domicile, rank, round, yearMonth);
-      Files.write(result, file, StandardCharsets.UTF_8);
-      return result;
-    }
+    return cache.getString(Endpoint.ALL_LINES,
+        key(domicile, rank, round, yearMonth), () -> {
+          connectIfNecessary();
+          return super.getAllLines(domicile, rank, round, yearMonth);
+        });
   }
 
   @Override
   public String getOpenTime(AwardDomicile domicile, Rank rank,
       int round, YearMonth yearMonth) throws URISyntaxException, IOException {
-    File file = new File(DIR, "opentime-" + domicile + rank + round + yearMonth + ".txt");
-    if (file.exists()) {
-      return Files.toString(file, StandardCharsets.UTF_8);
-    } else {
-      connectIfNecessary();
-      String result = super.getOpenTime(domicile, rank, round, yearMonth);
-      Files.write(result, file, StandardCharsets.UTF_8);
-      return result;
-    }
+    return cache.getString(Endpoint.OPENTIME,
+        key(domicile, rank, round, yearMonth), () -> {
+          connectIfNecessary();
+          return super.getOpenTime(domicile, rank, round, yearMonth);
+        });
   }
 
   @Override
   public String getPairingDetail(String pairingName, LocalDate date)
       throws URISyntaxException, IOException {
-    File file = new File(DIR, "pairing-detail-" + pairingName + date + ".txt");
-    if (file.exists()) {
-      return Files.toString(file, StandardCharsets.UTF_8);
-    } else {
+    return cache.getString(Endpoint.PAIRING_DETAIL, key(pairingName, date), () -> {
       connectIfNecessary();
-      String result = super.getPairingDetail(pairingName, date);
-      Files.write(result, file, StandardCharsets.UTF_8);
-      return result;
-    }
+      return super.getPairingDetail(pairingName, date);
+    });
   }
 
   @Override
   public String getReserveGrid(AwardDomicile awardDomicile, Rank rank,
       int round, YearMonth yearMonth, String airlineId)
       throws URISyntaxException, IOException {
-    File file = new File(DIR, "reserve-grid-" + awardDomicile + rank + round + yearMonth + ".txt");
-    if (file.exists()) {
-      return Files.toString(file, StandardCharsets.UTF_8);
-    } else {
-      connectIfNecessary();
-      String result = super.getReserveGrid(awardDomicile, rank, round, yearMonth,
-          airlineId);
-      Files.write(result, file, StandardCharsets.UTF_8);
-      return result;
-    }
+    return cache.getString(Endpoint.RESERVE_GRID,
+        key(awardDomicile, rank, round, yearMonth, airlineId), () -> {
+          connectIfNecessary();
+          return super.getReserveGrid(awardDomicile, rank, round, yearMonth,
+              airlineId);
+        });
   }
 
   @Override
@@ -168,27 +196,21 @@ public class CachingFlicaService extends FlicaService {
   @Override
   public String getOpentimeRequests(int round, YearMonth yearMonth)
       throws URISyntaxException, IOException {
-    File file = new File(DIR, "swap-requests-" + round + yearMonth + ".txt");
-    if (file.exists()) {
-      return Files.toString(file, StandardCharsets.UTF_8);
-    } else {
+    return cache.getString(Endpoint.OPENTIME_REQUESTS, key(round, yearMonth), () -> {
       connectIfNecessary();
-      String result = super.getOpentimeRequests(round, yearMonth);
-      Files.write(result, file, StandardCharsets.UTF_8);
-      return result;
-    }
+      return super.getOpentimeRequests(round, yearMonth);
+    });
   }
 
   @Override
   public String getPeerSchedule(int employeeId, YearMonth yearMonth) throws IOException {
-    File file = new File(DIR, "peer-schedule-" + employeeId + "-" + yearMonth + ".txt");
-    if (file.exists()) {
-      return Files.toString(file, StandardCharsets.UTF_8);
-    } else {
-      connectIfNecessary();
-      String result = super.getPeerSchedule(employeeId, yearMonth);
-      Files.write(result, file, StandardCharsets.UTF_8);
-      return result;
+    try {
+      return cache.getString(Endpoint.PEER_SCHEDULE, key(employeeId, yearMonth), () -> {
+        connectIfNecessary();
+        return super.getPeerSchedule(employeeId, yearMonth);
+      });
+    } catch (URISyntaxException e) {
+      throw new IOException(e);
     }
   }
 
@@ -197,16 +219,91 @@ public class CachingFlicaService extends FlicaService {
       int round, YearMonth yearMonth,
       int documentId, String title)
       throws URISyntaxException, IOException {
-    File file = new File(DIR, "document-" + awardDomicile + rank +
-        round + yearMonth + documentId + title + ".txt");
-    if (file.exists()) {
-      return Files.toByteArray(file);
-    } else {
-      connectIfNecessary();
-      byte result[] = super.getDocument(awardDomicile, rank, round, yearMonth,
-          documentId, title);
-      Files.write(result, file);
-      return result;
+    return cache.get(Endpoint.DOCUMENT,
+        key(awardDomicile, rank, round, yearMonth, documentId, title), () -> {
+          connectIfNecessary();
+          return super.getDocument(awardDomicile, rank, round, yearMonth,
+              documentId, title);
+        }).clone();
+  }
+
+  @Override
+  public Proto.PairingList parseAllPairings(String rawPairings, YearMonth yearMonth,
+      boolean parseCanceled, ForkJoinPool pool) throws ParseException {
+    return parse(key("pairings", PairingParser.VERSION,
+        StreamingPairingParser.VERSION, yearMonth, parseCanceled),
+        rawPairings, Proto.PairingList.PARSER,
+        () -> super.parseAllPairings(rawPairings, yearMonth, parseCanceled, pool));
+  }
+
+  @Override
+  public Proto.ThinLineList parseAllLines(String rawLines) throws ParseException {
+    return parse(key("lines", LineParser.VERSION), rawLines,
+        Proto.ThinLineList.PARSER, () -> super.parseAllLines(rawLines));
+  }
+
+  @Override
+  public Proto.Schedule parseSchedule(String rawSchedule) throws ParseException {
+    return parse(key("schedule", ScheduleParser.VERSION), rawSchedule,
+        Proto.Schedule.PARSER, () -> super.parseSchedule(rawSchedule));
+  }
+
+  @Override
+  public Proto.Trip parsePairingDetail(PairingKey pairingKey, String rawPairingDetail)
+      throws ParseException {
+    return parse(key("pairing-detail", IndividualPairingParser.VERSION,
+        pairingKey.getPairingName(), pairingKey.getPairingDate()),
+        rawPairingDetail, Proto.Trip.PARSER,
+        () -> super.parsePairingDetail(pairingKey, rawPairingDetail));
+  }
+
+  private interface ProtoParse<T extends Message> {
+    T parse() throws ParseException;
+  }
+
+  /**
+   * Returns the cached result of parsing raw, which is keyed by its content
+   * so that the same response is only parsed once. If the cache fails after
+   * raw was parsed, such as when storing the result, that result is used.
+   */
+  private <T extends Message> T parse(String parserKey, String raw,
+      Parser<T> protoParser, ProtoParse<T> parse) throws ParseException {
+    String key = key(parserKey,
+        Hashing.sha256().hashString(raw, StandardCharsets.UTF_8));
+    AtomicReference<T> parsed = new AtomicReference<>();
+    try {
+      byte[] bytes = cache.get(Endpoint.PARSED, key, () -> {
+        try {
+          parsed.set(parse.parse());
+          return parsed.get().toByteArray();
+        } catch (ParseException e) {
+          throw new UncachedParseException(e);
+        }
+      });
+      return parsed.get() != null ? parsed.get() : protoParser.parseFrom(bytes);
+    } catch (UncachedParseException e) {
+      throw e.getCause();
+    } catch (IOException | URISyntaxException e) {
+      logger.log(Level.WARNING, "Unable to use cache for " + parserKey, e);
+      return parsed.get() != null ? parsed.get() : parse.parse();
+    }
+  }
+
+  /** Carries a ParseException out of the cache's loader. */
+  private static class UncachedParseException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    UncachedParseException(ParseException cause) {
+      super(cause);
+    }
+
+    @Override
+    public synchronized ParseException getCause() {
+      return (ParseException) super.getCause();
     }
   }
+
+  private static String key(Object... parts) {
+    return Joiner.on(' ').join(parts);
+  }
 }
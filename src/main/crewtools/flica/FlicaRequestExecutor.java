@@ -0,0 +1,170 @@
+/**
+ * Copyright 2020 Iron City Software LLC
+ *
+ * This file is part of CrewTools.
+ *
+ * CrewTools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CrewTools is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CrewTools.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package crewtools.flica;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Runs FLICA requests on a small pool of daemon threads.
+ *
+ * Each endpoint has its own limit on concurrent requests, so a slow opentime
+ * fetch no longer holds up a schedule refresh. Requests which are waiting
+ * start in priority order, then in the order they were submitted, so a swap
+ * goes ahead of any background refresh.
+ */
+public class FlicaRequestExecutor {
+  public enum Priority {
+    // Declared from most to least urgent.
+    SUBMIT,
+    REFRESH,
+    BACKGROUND
+  }
+
+  private final ExecutorService executor;
+  private final int numThreads;
+  private final int defaultLimit;
+  private final Map<String, Integer> limits;
+
+  // Guarded by this.
+  private final TreeSet<PendingRequest<?>> pending = new TreeSet<>();
+  private final Map<String, Integer> inFlight = new HashMap<>();
+  private int numRunning;
+  private long sequence;
+
+  /** Allows one request at a time to each endpoint. */
+  public FlicaRequestExecutor(int numThreads) {
+    this(numThreads, 1, ImmutableMap.of());
+  }
+
+  public FlicaRequestExecutor(int numThreads, int defaultLimit,
+      Map<String, Integer> limits) {
+    Preconditions.checkArgument(numThreads > 0, "numThreads");
+    Preconditions.checkArgument(defaultLimit > 0, "defaultLimit");
+    this.numThreads = numThreads;
+    this.defaultLimit = defaultLimit;
+    this.limits = ImmutableMap.copyOf(limits);
+    this.executor = Executors.newFixedThreadPool(numThreads,
+        new ThreadFactoryBuilder()
+            .setNameFormat("FlicaRequest-%d")
+            .setDaemon(true)
+            .build());
+  }
+
+  public <T> CompletableFuture<T> submit(String endpoint, Priority priority,
+      Callable<T> request) {
+    PendingRequest<T> pendingRequest;
+    synchronized (this) {
+      pendingRequest = new PendingRequest<>(endpoint, priority, sequence++, request);
+      pending.add(pendingRequest);
+      dispatch();
+    }
+    return pendingRequest.future;
+  }
+
+  public synchronized int getNumPending() {
+    return pending.size();
+  }
+
+  public void shutdown() {
+    executor.shutdown();
+  }
+
+  private int getLimit(String endpoint) {
+    Integer limit = limits.get(endpoint);
+    return limit == null ? defaultLimit : limit;
+  }
+
+  /**
+   * Starts waiting requests whose endpoints are under their limits. Never
+   * starts more requests than there are threads, so that the executor's own
+   * queue, which ignores priority, stays empty.
+   */
+  private synchronized void dispatch() {
+    Iterator<PendingRequest<?>> it = pending.iterator();
+    while (it.hasNext() && numRunning < numThreads) {
+      PendingRequest<?> request = it.next();
+      if (request.future.isDone()) {
+        // Cancelled while waiting.
+        it.remove();
+        continue;
+      }
+      int count = inFlight.getOrDefault(request.endpoint, 0);
+      if (count >= getLimit(request.endpoint)) {
+        continue;
+      }
+      it.remove();
+      inFlight.put(request.endpoint, count + 1);
+      numRunning++;
+      executor.execute(() -> run(request));
+    }
+  }
+
+  private <T> void run(PendingRequest<T> request) {
+    try {
+      if (!request.future.isDone()) {
+        request.future.complete(request.request.call());
+      }
+    } catch (Throwable e) {
+      request.future.completeExceptionally(e);
+    } finally {
+      synchronized (this) {
+        inFlight.put(request.endpoint, inFlight.get(request.endpoint) - 1);
+        numRunning--;
+        dispatch();
+      }
+    }
+  }
+
+  private static class PendingRequest<T> implements Comparable<PendingRequest<?>> {
+    private final String endpoint;
+    private final Priority priority;
+    private final long sequence;
+    private final Callable<T> request;
+    private final CompletableFuture<T> future = new CompletableFuture<>();
+
+    PendingRequest(String endpoint, Priority priority, long sequence,
+        Callable<T> request) {
+      this.endpoint = endpoint;
+      this.priority = priority;
+      this.sequence = sequence;
+      this.request = request;
+    }
+
+    @Override
+    public int compareTo(PendingRequest<?> that) {
+      int cmp = priority.compareTo(that.priority);
+      if (cmp != 0) {
+        return cmp;
+      }
+      return Long.compare(sequence, that.sequence);
+    }
+  }
+}
@@ -20,9 +20,13 @@
 package crewtools.flica;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.URISyntaxException;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -37,7 +41,13 @@ import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.ImmutableSet;
 
+import crewtools.flica.FlicaRequestExecutor.Priority;
 import crewtools.flica.Proto.Rank;
+import crewtools.flica.parser.IndividualPairingParser;
+import crewtools.flica.parser.LineParser;
+import crewtools.flica.parser.ParseException;
+import crewtools.flica.parser.ScheduleParser;
+import crewtools.flica.parser.StreamingPairingParser;
 import crewtools.flica.pojo.PairingKey;
 import crewtools.util.Calendar;
 import okhttp3.HttpUrl;
@@ -47,6 +57,7 @@ public class FlicaService {
   private final Logger logger = Logger.getLogger(FlicaService.class.getName());
 
   private final BaseFlicaConnection connection;
+  private final FlicaRequestExecutor executor;
 
   private static final String HOST = "jia.flica.net";
 
@@ -91,8 +102,15 @@ public class FlicaService {
 
   private static final String TRADE_BOARD_ALL_REQUESTS_URL = "online/TB_otherrequests.cgi";
 
+  private static final int NUM_REQUEST_THREADS = 4;
+
   public FlicaService(BaseFlicaConnection connection) {
+    this(connection, new FlicaRequestExecutor(NUM_REQUEST_THREADS));
+  }
+
+  public FlicaService(BaseFlicaConnection connection, FlicaRequestExecutor executor) {
     this.connection = connection;
+    this.executor = executor;
   }
 
   public void connect() throws IOException {
@@ -201,7 +219,7 @@ public class FlicaService {
 
   // Month is 1-based
   // Year is either 201x or 1x
-  public synchronized String getSchedule(YearMonth yearMonth)
+  public String getSchedule(YearMonth yearMonth)
       throws IOException {
     int year = yearMonth.getYear();
     if (year > 2000) {
@@ -310,7 +328,7 @@ public class FlicaService {
     return builder.build();
   }
 
-  public synchronized String getOpenTime(AwardDomicile awardDomicile, Rank rank,
+  public String getOpenTime(AwardDomicile awardDomicile, Rank rank,
       int round, YearMonth yearMonth)
       throws URISyntaxException, IOException {
     HttpUrl url = getOpenTimeUrl(awardDomicile, rank, round, yearMonth);
@@ -384,7 +402,7 @@ public class FlicaService {
         .build();
   }
 
-  public synchronized String getReserveGrid(
+  public String getReserveGrid(
       AwardDomicile awardDomicile, Rank rank,
       int round, YearMonth yearMonth, String airlineId)
       throws URISyntaxException, IOException {
@@ -392,7 +410,7 @@ public class FlicaService {
     return connection.retrieveUrl(url);
   }
 
-  public synchronized String getReserveAvailability(AwardDomicile awardDomicile,
+  public String getReserveAvailability(AwardDomicile awardDomicile,
       Rank rank,
       int round, YearMonth yearMonth)
       throws URISyntaxException, IOException {
@@ -412,7 +430,7 @@ public class FlicaService {
         .build();
   }
 
-  public synchronized String submitSwap(int round, YearMonth yearMonth,
+  public String submitSwap(int round, YearMonth yearMonth,
       LocalDate today, List<PairingKey> addTrips,
       List<PairingKey> dropTrips) throws URISyntaxException, IOException {
     String bidCloseId = getBidCloseId(round, yearMonth);
@@ -594,6 +612,95 @@ public class FlicaService {
     return connection.retrieveUrlBytes(url);
   }
 
+  // Parsing goes through the service so that CachingFlicaService can
+  // keep the results.
+
+  public Proto.PairingList parseAllPairings(String rawPairings, YearMonth yearMonth,
+      boolean parseCanceled) throws ParseException {
+    return parseAllPairings(rawPairings, yearMonth, parseCanceled,
+        ForkJoinPool.commonPool());
+  }
+
+  /** Parses the pairings' tables on pool. */
+  public Proto.PairingList parseAllPairings(String rawPairings, YearMonth yearMonth,
+      boolean parseCanceled, ForkJoinPool pool) throws ParseException {
+    return new StreamingPairingParser(rawPairings, yearMonth, parseCanceled)
+        .parse(pool);
+  }
+
+  public Proto.ThinLineList parseAllLines(String rawLines) throws ParseException {
+    return new LineParser(rawLines).parse();
+  }
+
+  public Proto.Schedule parseSchedule(String rawSchedule) throws ParseException {
+    return new ScheduleParser(rawSchedule).parse();
+  }
+
+  public Proto.Trip parsePairingDetail(PairingKey key, String rawPairingDetail)
+      throws ParseException {
+    return new IndividualPairingParser(key, rawPairingDetail).parse();
+  }
+
+  // Asynchronous variants run on the request executor, which limits each
+  // endpoint to its own number of concurrent requests.
+
+  public CompletableFuture<String> getScheduleAsync(YearMonth yearMonth) {
+    return executor.submit(SCHEDULE_BY_MONTH_BASE_URL, Priority.REFRESH,
+        () -> getSchedule(yearMonth));
+  }
+
+  public CompletableFuture<String> getOpenTimeAsync(AwardDomicile awardDomicile,
+      Rank rank, int round, YearMonth yearMonth) {
+    return executor.submit(OPEN_TIME_BASE_URL, Priority.REFRESH,
+        () -> getOpenTime(awardDomicile, rank, round, yearMonth));
+  }
+
+  public CompletableFuture<String> getOpentimeRequestsAsync(int round,
+      YearMonth yearMonth) {
+    return executor.submit(OPENTIME_REQUEST_BASE_URL, Priority.BACKGROUND,
+        () -> getOpentimeRequests(round, yearMonth));
+  }
+
+  public CompletableFuture<String> getReserveGridAsync(AwardDomicile awardDomicile,
+      Rank rank, int round, YearMonth yearMonth, String airlineId) {
+    return executor.submit(RESERVE_GRID_BASE_URL, Priority.BACKGROUND,
+        () -> getReserveGrid(awardDomicile, rank, round, yearMonth, airlineId));
+  }
+
+  /** Swaps start ahead of any waiting refresh. */
+  public CompletableFuture<String> submitSwapAsync(int round, YearMonth yearMonth,
+      LocalDate today, List<PairingKey> addTrips, List<PairingKey> dropTrips) {
+    return executor.submit(TRIP_SWAP_BASE_URL, Priority.SUBMIT,
+        () -> submitSwap(round, yearMonth, today, addTrips, dropTrips));
+  }
+
+  /**
+   * Waits for an asynchronous request, rethrowing the exception it failed
+   * with.
+   */
+  public static <T> T await(CompletableFuture<T> future)
+      throws IOException, URISyntaxException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      future.cancel(false);
+      throw new InterruptedIOException("Interrupted waiting for FLICA");
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      } else if (cause instanceof URISyntaxException) {
+        throw (URISyntaxException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IOException(cause);
+    }
+  }
+
   //  "L7436:20171025"
   String formatPairingKeyForBid(PairingKey key) {
     return String.format("%s:%s", key.getPairingName(),
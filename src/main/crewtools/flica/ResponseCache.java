@@ -0,0 +1,456 @@
+/**
+ * Copyright 2020 Iron City Software LLC
+ *
+ * This file is part of CrewTools.
+ *
+ * CrewTools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CrewTools is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CrewTools.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package crewtools.flica;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.joda.time.Duration;
+
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+
+import crewtools.flica.Proto.ResponseCacheEntry;
+import crewtools.flica.Proto.ResponseCacheIndex;
+import crewtools.util.Clock;
+import crewtools.util.SystemClock;
+
+/**
+ * Caches FLICA responses on disk, gzipped, in front of which is an LRU tier
+ * in memory.
+ *
+ * Entries expire after the time to live of their endpoint. Files are named
+ * by the SHA-256 of their key and written atomically. An index of every
+ * entry is kept beside them, so lookups never list or stat the directory.
+ * The index is written after every INDEX_FLUSH_ENTRIES new entries, after
+ * INDEX_FLUSH_INTERVAL, and on flush or close. Safe to share between
+ * threads; concurrent misses for a key share one load. Processes sharing
+ * a directory merge their indexes whenever they write one.
+ */
+public class ResponseCache implements Closeable {
+  private final Logger logger = Logger.getLogger(ResponseCache.class.getName());
+
+  public static final File DEFAULT_DIR = new File("/tmp/flica/");
+  private static final String INDEX_FILENAME = "index.pb";
+  private static final long DEFAULT_MAX_MEMORY_BYTES = 64L << 20;
+  private static final long DEFAULT_MAX_DISK_BYTES = 1L << 30;
+  private static final int INDEX_FLUSH_ENTRIES = 32;
+  private static final Duration INDEX_FLUSH_INTERVAL = Duration.standardSeconds(30);
+
+  public enum Endpoint {
+    SCHEDULE(Duration.standardMinutes(5)),
+    OPENTIME(Duration.standardMinutes(2)),
+    OPENTIME_REQUESTS(Duration.standardMinutes(1)),
+    RESERVE_GRID(Duration.standardMinutes(15)),
+    PEER_SCHEDULE(Duration.standardHours(1)),
+    // These are fixed once published for the bid period.
+    BID_AWARD(Duration.standardDays(31)),
+    ALL_PAIRINGS(Duration.standardDays(31)),
+    ALL_LINES(Duration.standardDays(31)),
+    PAIRING_DETAIL(Duration.standardDays(31)),
+    DOCUMENT(Duration.standardDays(31)),
+    // Parsed protos, keyed by parser version and a hash of the response.
+    PARSED(Duration.standardDays(31));
+
+    private final Duration timeToLive;
+
+    Endpoint(Duration timeToLive) {
+      this.timeToLive = timeToLive;
+    }
+
+    public Duration getTimeToLive() {
+      return timeToLive;
+    }
+  }
+
+  public interface Loader {
+    byte[] load() throws IOException, URISyntaxException;
+  }
+
+  public interface StringLoader {
+    String load() throws IOException, URISyntaxException;
+  }
+
+  private final File dir;
+  private final Clock clock;
+  private final long maxMemoryBytes;
+  private final long maxDiskBytes;
+
+  // Guarded by this.
+  private final Map<String, ResponseCacheEntry> index;
+  private final LinkedHashMap<String, MemoryEntry> memory =
+      new LinkedHashMap<>(16, 0.75f, true);
+  private long memoryBytes;
+  private long diskBytes;
+  private int unflushedEntries;
+  private long lastFlushMillis;
+
+  // Loads in progress, so that concurrent misses for a key share one.
+  private final Map<String, CompletableFuture<byte[]>> pendingLoads =
+      new ConcurrentHashMap<>();
+
+  // Held while the index file is read and written, but not while this is.
+  private final Object indexFileLock = new Object();
+
+  private final AtomicLong memoryHits = new AtomicLong();
+  private final AtomicLong diskHits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong bytesRead = new AtomicLong();
+  private final AtomicLong bytesWritten = new AtomicLong();
+
+  public ResponseCache() {
+    this(DEFAULT_DIR, new SystemClock(), DEFAULT_MAX_MEMORY_BYTES,
+        DEFAULT_MAX_DISK_BYTES);
+  }
+
+  /** An index which cannot be read is logged and the cache starts empty. */
+  public ResponseCache(File dir, Clock clock, long maxMemoryBytes, long maxDiskBytes) {
+    this.dir = dir;
+    this.clock = clock;
+    this.maxMemoryBytes = maxMemoryBytes;
+    this.maxDiskBytes = maxDiskBytes;
+    dir.mkdirs();
+    Map<String, ResponseCacheEntry> index;
+    try {
+      index = readIndex();
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Unable to read cache index in " + dir, e);
+      index = new HashMap<>();
+    }
+    this.index = index;
+    for (ResponseCacheEntry entry : index.values()) {
+      diskBytes += entry.getCompressedSize();
+    }
+    this.lastFlushMillis = clock.now().getMillis();
+  }
+
+  public String getString(Endpoint endpoint, String key, StringLoader loader)
+      throws IOException, URISyntaxException {
+    byte[] value = get(endpoint, key,
+        () -> loader.load().getBytes(StandardCharsets.UTF_8));
+    return new String(value, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Returns the cached response for key if it has not expired, and
+   * otherwise calls loader and caches its result. The array returned is
+   * shared and must not be modified.
+   */
+  public byte[] get(Endpoint endpoint, String key, Loader loader)
+      throws IOException, URISyntaxException {
+    String fullKey = endpoint.name() + ":" + key;
+    long nowMillis = clock.now().getMillis();
+    long oldestMillis = nowMillis - endpoint.getTimeToLive().getMillis();
+    byte[] value = lookup(fullKey, oldestMillis);
+    if (value != null) {
+      return value;
+    }
+    CompletableFuture<byte[]> future = new CompletableFuture<>();
+    CompletableFuture<byte[]> pending = pendingLoads.putIfAbsent(fullKey, future);
+    if (pending != null) {
+      return await(pending);
+    }
+    try {
+      // Another load may have finished since the first lookup.
+      value = lookup(fullKey, oldestMillis);
+      if (value == null) {
+        misses.incrementAndGet();
+        value = loader.load();
+        store(fullKey, value, nowMillis);
+      }
+      future.complete(value);
+      return value;
+    } catch (Throwable e) {
+      future.completeExceptionally(e);
+      throw e;
+    } finally {
+      pendingLoads.remove(fullKey, future);
+    }
+  }
+
+  private static byte[] await(CompletableFuture<byte[]> future)
+      throws IOException, URISyntaxException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted waiting for a response");
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      } else if (cause instanceof URISyntaxException) {
+        throw (URISyntaxException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IOException(cause);
+    }
+  }
+
+  private byte[] lookup(String key, long oldestMillis) throws IOException {
+    ResponseCacheEntry entry;
+    synchronized (this) {
+      MemoryEntry memoryEntry = memory.get(key);
+      if (memoryEntry != null && memoryEntry.storedTimeMillis >= oldestMillis) {
+        memoryHits.incrementAndGet();
+        return memoryEntry.value;
+      }
+      entry = index.get(key);
+    }
+    if (entry == null || entry.getStoredTimeMillis() < oldestMillis) {
+      return null;
+    }
+    byte[] value;
+    try (InputStream input = new GZIPInputStream(
+        new FileInputStream(new File(dir, entry.getFilename())))) {
+      value = ByteStreams.toByteArray(input);
+    } catch (FileNotFoundException e) {
+      logger.info("Cache file for " + key + " was removed");
+      synchronized (this) {
+        if (index.remove(key, entry)) {
+          diskBytes -= entry.getCompressedSize();
+        }
+      }
+      return null;
+    }
+    diskHits.incrementAndGet();
+    bytesRead.addAndGet(entry.getCompressedSize());
+    synchronized (this) {
+      remember(key, value, entry.getStoredTimeMillis());
+    }
+    return value;
+  }
+
+  private void store(String key, byte[] value, long nowMillis) throws IOException {
+    String filename = Hashing.sha256().hashString(key, StandardCharsets.UTF_8) + ".gz";
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    try (GZIPOutputStream output = new GZIPOutputStream(compressed)) {
+      output.write(value);
+    }
+    writeAtomically(new File(dir, filename), compressed.toByteArray());
+    bytesWritten.addAndGet(compressed.size());
+    ResponseCacheEntry entry = ResponseCacheEntry.newBuilder()
+        .setKey(key)
+        .setFilename(filename)
+        .setStoredTimeMillis(nowMillis)
+        .setCompressedSize(compressed.size())
+        .build();
+    boolean shouldFlush;
+    synchronized (this) {
+      putEntry(entry);
+      remember(key, value, nowMillis);
+      evictFromDisk(key);
+      unflushedEntries++;
+      shouldFlush = unflushedEntries >= INDEX_FLUSH_ENTRIES
+          || nowMillis - lastFlushMillis >= INDEX_FLUSH_INTERVAL.getMillis();
+    }
+    if (shouldFlush) {
+      flush();
+    }
+  }
+
+  private void putEntry(ResponseCacheEntry entry) {
+    ResponseCacheEntry previous = index.put(entry.getKey(), entry);
+    diskBytes += entry.getCompressedSize()
+        - (previous == null ? 0 : previous.getCompressedSize());
+  }
+
+  /** Adds to the memory tier, evicting the least recently used entries. */
+  private void remember(String key, byte[] value, long storedTimeMillis) {
+    if (value.length > maxMemoryBytes) {
+      return;
+    }
+    MemoryEntry previous = memory.put(key, new MemoryEntry(value, storedTimeMillis));
+    memoryBytes += value.length - (previous == null ? 0 : previous.value.length);
+    Iterator<MemoryEntry> it = memory.values().iterator();
+    while (memoryBytes > maxMemoryBytes && it.hasNext()) {
+      memoryBytes -= it.next().value.length;
+      it.remove();
+    }
+  }
+
+  /** Deletes the oldest files until the cache fits, other than key's, if any. */
+  private void evictFromDisk(String key) {
+    if (diskBytes <= maxDiskBytes) {
+      return;
+    }
+    List<ResponseCacheEntry> entries = new ArrayList<>(index.values());
+    entries.sort((a, b) -> Long.compare(
+        a.getStoredTimeMillis(), b.getStoredTimeMillis()));
+    for (ResponseCacheEntry entry : entries) {
+      if (diskBytes <= maxDiskBytes) {
+        break;
+      }
+      if (entry.getKey().equals(key)) {
+        continue;
+      }
+      new File(dir, entry.getFilename()).delete();
+      index.remove(entry.getKey());
+      forget(entry.getKey());
+      diskBytes -= entry.getCompressedSize();
+    }
+  }
+
+  private void forget(String key) {
+    MemoryEntry memoryEntry = memory.remove(key);
+    if (memoryEntry != null) {
+      memoryBytes -= memoryEntry.value.length;
+    }
+  }
+
+  private Map<String, ResponseCacheEntry> readIndex() throws IOException {
+    Map<String, ResponseCacheEntry> result = new HashMap<>();
+    File file = new File(dir, INDEX_FILENAME);
+    if (!file.exists()) {
+      return result;
+    }
+    ResponseCacheIndex cacheIndex;
+    try (InputStream input = new FileInputStream(file)) {
+      cacheIndex = ResponseCacheIndex.parseFrom(input);
+    }
+    for (ResponseCacheEntry entry : cacheIndex.getEntryList()) {
+      result.put(entry.getKey(), entry);
+    }
+    return result;
+  }
+
+  /**
+   * Adopts newer entries written by other processes, then replaces the
+   * index file. Disk I/O happens outside the cache's lock, so lookups and
+   * stores carry on meanwhile.
+   */
+  public void flush() throws IOException {
+    synchronized (indexFileLock) {
+      Map<String, ResponseCacheEntry> onDisk = readIndex();
+      ResponseCacheIndex cacheIndex;
+      synchronized (this) {
+        for (ResponseCacheEntry entry : onDisk.values()) {
+          ResponseCacheEntry existing = index.get(entry.getKey());
+          if (existing != null
+              && existing.getStoredTimeMillis() >= entry.getStoredTimeMillis()) {
+            continue;
+          }
+          // Entries this cache has evicted have no file, but may still be
+          // listed by another process.
+          if (existing == null && !new File(dir, entry.getFilename()).exists()) {
+            continue;
+          }
+          putEntry(entry);
+          // Its file has been replaced by the other process.
+          forget(entry.getKey());
+        }
+        evictFromDisk(null);
+        cacheIndex = ResponseCacheIndex.newBuilder()
+            .addAllEntry(index.values())
+            .build();
+        unflushedEntries = 0;
+        lastFlushMillis = clock.now().getMillis();
+      }
+      writeAtomically(new File(dir, INDEX_FILENAME), cacheIndex.toByteArray());
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    flush();
+  }
+
+  private void writeAtomically(File file, byte[] bytes) throws IOException {
+    File tempFile = File.createTempFile(file.getName(), ".tmp", dir);
+    try {
+      try (FileOutputStream output = new FileOutputStream(tempFile)) {
+        output.write(bytes);
+      }
+      Files.move(tempFile.toPath(), file.toPath(),
+          StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      tempFile.delete();
+    }
+  }
+
+  public long getMemoryHits() {
+    return memoryHits.get();
+  }
+
+  public long getDiskHits() {
+    return diskHits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+  public long getBytesRead() {
+    return bytesRead.get();
+  }
+
+  public long getBytesWritten() {
+    return bytesWritten.get();
+  }
+
+  public synchronized int size() {
+    return index.size();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("ResponseCache hits:%d (memory:%d disk:%d) misses:%d "
+        + "read:%d written:%d", memoryHits.get() + diskHits.get(), memoryHits.get(),
+        diskHits.get(), misses.get(), bytesRead.get(), bytesWritten.get());
+  }
+
+  private static class MemoryEntry {
+    private final byte[] value;
+    private final long storedTimeMillis;
+
+    MemoryEntry(byte[] value, long storedTimeMillis) {
+      this.value = value;
+      this.storedTimeMillis = storedTimeMillis;
+    }
+  }
+}
@@ -30,6 +30,10 @@ import org.joda.time.LocalTime;
 import org.joda.time.YearMonth;
 
 import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 
 import crewtools.flica.Proto;
@@ -43,9 +47,34 @@ import crewtools.util.Period;
 
 // converts a proto schedule to a pojo schedule
 // "TripAdapter" ?
+//
+// Results are remembered by proto value, shared by every adapter, so that a
+// pairing is only adapted once however many tools and threads ask for it.
+// Each call still returns its own Trip, since callers annotate them.
 public class PairingAdapter {
   private final Logger logger = Logger.getLogger(PairingAdapter.class.getName());
 
+  private static final Cache<Proto.Trip, TripOrPairingData> CACHE =
+      CacheBuilder.newBuilder()
+      .softValues()
+      .recordStats()
+      .build();
+
+  private final boolean verify;
+
+  public PairingAdapter() {
+    this(true);
+  }
+
+  /**
+   * If verify is false, the totals from the proto are not checked against
+   * the legs. Use it for pairing lists which have already been adapted once,
+   * such as those read back from disk.
+   */
+  public PairingAdapter(boolean verify) {
+    this.verify = verify;
+  }
+
   private static final Period CONTRACTUAL_TRAINING_LEG_BLOCK_PERIOD = Period.hours(3).plus(Period.minutes(45));
 
   private static class TripOrPairingData {
@@ -56,18 +85,20 @@ public class PairingAdapter {
     private final Period duty;
     private final Set<LocalDate> departureDates;
     private final Proto.Trip proto;
+    private final boolean verified;
 
     TripOrPairingData(List<Section> sections, Period block, Period credit,
         Period tafb, Period duty,
         Set<LocalDate> departureDates,
-        Proto.Trip proto) {
-      this.sections = sections;
+        Proto.Trip proto, boolean verified) {
+      this.sections = ImmutableList.copyOf(sections);
       this.block = block;
       this.credit = credit;
       this.tafb = tafb;
       this.duty = duty;
-      this.departureDates = departureDates;
+      this.departureDates = ImmutableSet.copyOf(departureDates);
       this.proto = proto;
+      this.verified = verified;
     }
 
     private Trip toTrip() {
@@ -80,38 +111,57 @@ public class PairingAdapter {
   }
 
   public Trip adaptTrip(Proto.Trip protoTrip) {
-    return adaptInternal(protoTrip).toTrip();
+    return adapt(protoTrip).toTrip();
   }
 
   public Pairing adaptPairing(Proto.Trip protoTrip) {
-    return adaptInternal(protoTrip).toPairing();
+    return adapt(protoTrip).toPairing();
+  }
+
+  public static CacheStats getCacheStats() {
+    return CACHE.stats();
+  }
+
+  public static void clearCache() {
+    CACHE.invalidateAll();
   }
 
+  // Two threads may both adapt a new proto; they compute the same result.
+  private TripOrPairingData adapt(Proto.Trip protoTrip) {
+    TripOrPairingData data = CACHE.getIfPresent(protoTrip);
+    if (data == null || (verify && !data.verified)) {
+      data = adaptInternal(protoTrip);
+      CACHE.put(protoTrip, data);
+    }
+    return data;
+  }
+
+  // Totals are kept in minutes, as adapting a month of pairings sums a lot.
   class Stats {
-    Period block = Period.ZERO;
-    Period credit = Period.ZERO;
-    Period deadhead = Period.ZERO;
-    Period flightDuty = Period.ZERO;
-    Period duty = Period.ZERO;
+    int block;
+    int credit;
+    int deadhead;
+    int flightDuty;
+    int duty;
 
     void add(Stats that) {
-      this.block = this.block.plus(that.block);
-      this.credit = this.credit.plus(that.credit);
-      this.deadhead = this.deadhead.plus(that.deadhead);
-      this.flightDuty = this.flightDuty.plus(that.flightDuty);
-      this.duty = this.duty.plus(that.duty);
+      this.block += that.block;
+      this.credit += that.credit;
+      this.deadhead += that.deadhead;
+      this.flightDuty += that.flightDuty;
+      this.duty += that.duty;
     }
 
     void addBlock(Period period) {
-      this.block = this.block.plus(period);
+      this.block += period.getTotalMinutes();
     }
 
     void addDeadhead(Period period) {
-      this.deadhead = this.deadhead.plus(period);
+      this.deadhead += period.getTotalMinutes();
     }
 
     void addCredit(Period period) {
-      this.credit = this.credit.plus(period);
+      this.credit += period.getTotalMinutes();
     }
   }
 
@@ -143,21 +193,23 @@ public class PairingAdapter {
             sectionStats.addBlock(legBlock);
           }
         }
-        verifyBlockTime(currentDate + " " + protoTrip.getPairingName(),
-            leg,
-            currentDate,
-            legBlock,
-            getIsSectionAllDeadhead(legs));
+        if (verify) {
+          verifyBlockTime(currentDate + " " + protoTrip.getPairingName(),
+              leg,
+              currentDate,
+              legBlock,
+              getIsSectionAllDeadhead(legs));
+        }
       }
 
       sectionStats.flightDuty = calculateFlightDuty(protoTrip, protoSection, legs,
-          currentDate);
+          currentDate).getTotalMinutes();
 
       // Deadheads are paid the greater of the scheduled or actual duration of the flight.
       // TODO verify: credit can always be larger than block.
       // No easy way to get scheduled duration?
-      Period creditDuration = Period.fromText(protoSection.getCreditDuration());
-      if (creditDuration.compareTo(sectionStats.credit) >= 0) {
+      int creditDuration = Period.parseMinutes(protoSection.getCreditDuration());
+      if (creditDuration >= sectionStats.credit) {
         sectionStats.credit = creditDuration;
       }
 
@@ -186,7 +238,7 @@ public class PairingAdapter {
           calculatedLocalDutyEndTime =
               calculatedLocalDutyEndTime.plusMinutes(MINUTES_OF_DUTY_AFTER_LAST_FLIGHT);
         }
-        if (protoSection.hasLocalDutyEndTime()) {
+        if (verify && protoSection.hasLocalDutyEndTime()) {
           LocalTime protoLocalDutyEndTime = timeHelper.getLocalDutyEndTime(protoSection);
           if (!calculatedLocalDutyEndTime.equals(protoLocalDutyEndTime)) {
             logger.fine(String.format("Calculated section duty end %s but proto %s",
@@ -195,22 +247,24 @@ public class PairingAdapter {
         }
 
         // calculate section duty stats
-        sectionStats.duty = new Period(startDuty, endDuty);
+        sectionStats.duty = Period.minutesBetween(startDuty, endDuty);
       }
 
       // verify section stats
-      verifyPeriod("section block", sectionStats.block, Period.fromText(protoSection.getBlockDuration()));
-      verifyPeriod("section credit", sectionStats.credit, Period.fromText(protoSection.getCreditDuration()));
-      verifyPeriod("section deadhead", sectionStats.deadhead, Period.fromText(protoSection.getDeadheadDuration()));
-      verifyPeriod("section flight duty", sectionStats.flightDuty, Period.fromText(protoSection.getFlightDutyDuration()));
-      verifyPeriod("section duty", sectionStats.duty, Period.fromText(protoSection.getDutyDuration()));
+      if (verify) {
+        verifyPeriod("section block", sectionStats.block, protoSection.getBlockDuration());
+        verifyPeriod("section credit", sectionStats.credit, protoSection.getCreditDuration());
+        verifyPeriod("section deadhead", sectionStats.deadhead, protoSection.getDeadheadDuration());
+        verifyPeriod("section flight duty", sectionStats.flightDuty, protoSection.getFlightDutyDuration());
+        verifyPeriod("section duty", sectionStats.duty, protoSection.getDutyDuration());
+      }
 
       tripStats.add(sectionStats);
 
       sections.add(
-          new Section(protoSection, currentDate, sectionStats.block,
-              sectionStats.credit,
-              sectionStats.duty, startDuty, endDuty));
+          new Section(protoSection, currentDate, Period.minutes(sectionStats.block),
+              Period.minutes(sectionStats.credit),
+              Period.minutes(sectionStats.duty), startDuty, endDuty));
 
       if (!isNextSectionSameDate(protoTrip, sectionIndex)) {
         currentDate = currentDate.plusDays(1);
@@ -225,24 +279,27 @@ public class PairingAdapter {
                 + nextSectionDayOfMonth + " for " + protoTrip.getPairingName());
       }
     }
-    verifyPeriod("trip block", tripStats.block, Period.fromText(protoTrip.getBlockDuration()));
-    verifyPeriod("trip credit", tripStats.credit, Period.fromText(protoTrip.getCreditDuration()));
-    verifyPeriod("trip deadhead", tripStats.deadhead, Period.fromText(protoTrip.getDeadheadDuration()));
-    verifyPeriod("trip flight duty", tripStats.flightDuty, Period.fromText(protoTrip.getFlightDutyDuration()));
-    verifyPeriod("trip duty", tripStats.duty, Period.fromText(protoTrip.getDutyDuration()));
+    if (verify) {
+      verifyPeriod("trip block", tripStats.block, protoTrip.getBlockDuration());
+      verifyPeriod("trip credit", tripStats.credit, protoTrip.getCreditDuration());
+      verifyPeriod("trip deadhead", tripStats.deadhead, protoTrip.getDeadheadDuration());
+      verifyPeriod("trip flight duty", tripStats.flightDuty, protoTrip.getFlightDutyDuration());
+      verifyPeriod("trip duty", tripStats.duty, protoTrip.getDutyDuration());
+    }
 
     Period tafb = Period.fromText(protoTrip.getTimeAwayFromBaseDuration());
 
     Set<LocalDate> dates = getDates(protoTrip, sections, departureDate);
 
-    Period credit = tripStats.credit;
+    Period credit = Period.minutes(tripStats.credit);
     if (sections.isEmpty()) {
       // Vacation credit.
       credit = Period.fromText(protoTrip.getCreditDuration());
     }
 
-    return new TripOrPairingData(sections, tripStats.block, credit, tafb, tripStats.duty,
-        dates, protoTrip);
+    return new TripOrPairingData(sections, Period.minutes(tripStats.block), credit, tafb,
+        Period.minutes(tripStats.duty),
+        dates, protoTrip, verify);
   }
 
   boolean isNextSectionSameDate(Proto.Trip trip, int sectionIndex) {
@@ -271,6 +328,15 @@ public class PairingAdapter {
     return trip.getSection(sectionIndex + 1).getLeg(0).getDayOfMonth();
   }
 
+  /** As verifyPeriod(), but only creates Periods to log a mismatch. */
+  void verifyPeriod(String description, int calculatedMinutes, String protoText) {
+    int protoMinutes = Period.parseMinutes(protoText);
+    if (calculatedMinutes != protoMinutes) {
+      verifyPeriod(description, Period.minutes(calculatedMinutes),
+          Period.minutes(protoMinutes));
+    }
+  }
+
   void verifyPeriod(String description, Period calculatedValue, Period protoValue) {
     if (!calculatedValue.equals(protoValue)) {
       logger.fine(String.format("%s: calculated %s but proto was %s",
@@ -300,7 +366,7 @@ public class PairingAdapter {
 
   Period calculateFlightDuty(Proto.Trip trip, Proto.Section protoSection,
       List<Leg> legs, LocalDate legDate) {
-    Period flightDuty = Period.ZERO;
+    int flightDuty = 0;
 
     legs = filterLegs(legs, LegType.TEST, LegType.TAXI, LegType.TRAINING_LEG);
 
@@ -330,20 +396,18 @@ public class PairingAdapter {
           Leg prevLeg = legs.get(i - 1);
           DateTime startGroundTime = prevLeg.getArrivalTime();
           DateTime endGroundTime = legs.get(i).getDepartureTime();
-          Period groundTime = new Period(startGroundTime, endGroundTime);
-          flightDuty = flightDuty.plus(groundTime);
+          flightDuty += Period.minutesBetween(startGroundTime, endGroundTime);
         }
         DateTime startFlightDuty = i == 0
             ? timeHelper.getLocalDutyStartDateTime(protoSection, legDate)
             : legs.get(i).getDepartureTime();
 
         DateTime endFlightDuty = legs.get(i).getArrivalTime();
-        Period flightDutyPeriod = new Period(startFlightDuty, endFlightDuty);
-        flightDuty = flightDuty.plus(flightDutyPeriod);
+        flightDuty += Period.minutesBetween(startFlightDuty, endFlightDuty);
       }
     }
     Preconditions.checkState(numRemainingFlightLegs == 0);
-    return flightDuty;
+    return Period.minutes(flightDuty);
   }
 
   private void verifyBlockTime(String prefix, Leg leg,
@@ -0,0 +1,85 @@
+/**
+ * Copyright 2020 Iron City Software LLC
+ *
+ * This file is part of CrewTools.
+ *
+ * CrewTools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CrewTools is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CrewTools.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package crewtools.flica.adapters;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.joda.time.YearMonth;
+
+import crewtools.flica.AwardDomicile;
+import crewtools.flica.Proto;
+import crewtools.flica.stats.DataReader;
+
+/**
+ * Reports the time and heap allocated to adapt a month of pairings from
+ * every domicile, after warming up, both from scratch and from the cache.
+ */
+public class PairingAdapterBenchmark {
+  private static final int WARMUP_ITERATIONS = 3;
+
+  public static void main(String args[]) throws Exception {
+    if (args.length < 1) {
+      System.err.println("pairingAdapterBenchmark 2020-12 [iterations]");
+      System.exit(-1);
+    }
+    YearMonth yearMonth = YearMonth.parse(args[0]);
+    int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+    DataReader dataReader = new DataReader();
+    List<Proto.Trip> trips = new ArrayList<>();
+    for (AwardDomicile awardDomicile : AwardDomicile.values()) {
+      trips.addAll(dataReader.readPairings(yearMonth, awardDomicile).getTripList());
+    }
+
+    com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long threadId = Thread.currentThread().getId();
+    PairingAdapter adapter = new PairingAdapter();
+    for (boolean isCached : new boolean[] { false, true }) {
+      for (int i = 0; i < WARMUP_ITERATIONS; ++i) {
+        adaptAll(adapter, trips, isCached);
+      }
+      long startBytes = threads.getThreadAllocatedBytes(threadId);
+      long startNanos = System.nanoTime();
+      int numTrips = 0;
+      for (int i = 0; i < iterations; ++i) {
+        numTrips += adaptAll(adapter, trips, isCached);
+      }
+      long nanos = System.nanoTime() - startNanos;
+      long bytes = threads.getThreadAllocatedBytes(threadId) - startBytes;
+      System.out.printf("%d pairings x %d%s: %.1f us and %d bytes per dated trip\n",
+          trips.size(), iterations, isCached ? " cached" : "",
+          nanos / 1000.0 / numTrips, bytes / numTrips);
+    }
+  }
+
+  private static int adaptAll(PairingAdapter adapter, List<Proto.Trip> trips,
+      boolean isCached) {
+    if (!isCached) {
+      PairingAdapter.clearCache();
+    }
+    int numTrips = 0;
+    for (Proto.Trip trip : trips) {
+      numTrips += adapter.adaptPairing(trip).getTrips().size();
+    }
+    return numTrips;
+  }
+}
@@ -19,6 +19,8 @@
 
 package crewtools.flica.bid;
 
+import java.io.IOException;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.joda.time.Duration;
@@ -74,6 +76,14 @@ public class AutoBidder {
 
     ReplayManager replayManager = new ReplayManager(
         cmdLine.isReplay(), cmdLine.getReplayDir());
+    // The bidder runs until it is stopped, so the logs are closed then.
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+      try {
+        replayManager.close();
+      } catch (IOException e) {
+        logger.log(Level.WARNING, "Unable to close replay logs", e);
+      }
+    }, "ReplayManagerClose"));
 
     TripDatabase tripDatabase = new TripDatabase(
         service, cmdLine.getUseProto(), yearMonth, bidConfig, replayManager);
@@ -110,6 +120,10 @@ public class AutoBidder {
         replayManager);
     opentimeLoader.start();
 
+    WorkerThread workerThread = new WorkerThread(worker,
+        initialDelay.isLongerThan(Duration.ZERO));
+    workerThread.start();
+
     OpentimeRequestLoaderThread opentimeRequestLoaderThread = new OpentimeRequestLoaderThread(
         yearMonth,
         initialDelay.plus(10000),
@@ -19,67 +19,267 @@
 
 package crewtools.flica.bid;
 
-import java.util.HashSet;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+
 import crewtools.flica.pojo.FlicaTask;
 import crewtools.flica.pojo.Schedule;
 
+/**
+ * Hands the latest schedule, opentime and transitions from the loader
+ * threads to the worker.
+ *
+ * Loaders publish immutable snapshots, each with a new version. The worker
+ * is woken by a signal which coalesces any number of publications into one
+ * wakeup, and then sees the latest snapshot and how it differs from the
+ * snapshot it last worked on.
+ */
 public class Collector {
   private final Logger logger = Logger.getLogger(Collector.class.getName());
 
-  private Schedule schedule;
-  private Set<FlicaTask> tasks;
+  private static final Object SIGNAL = new Object();
+
+  private final AtomicReference<Snapshot> latest =
+      new AtomicReference<>(Snapshot.EMPTY);
+  private final BlockingQueue<Object> signal = new ArrayBlockingQueue<>(1);
+
+  // Only written by the worker.
+  private volatile Snapshot current;
+  private volatile Delta currentDelta;
+
+  /** Everything collected at one point in time. */
+  public static class Snapshot {
+    private static final Snapshot EMPTY = new Snapshot(
+        0, null, null, 0, ImmutableSet.of(), false);
+
+    private final long version;
+    private final Schedule schedule;
+    private final Set<FlicaTask> tasks;
+    private final long opentimeVersion;
+    private final Set<Transition> transitions;
+    private final boolean initialTransitionPopulated;
+
+    private Snapshot(long version, Schedule schedule, Set<FlicaTask> tasks,
+        long opentimeVersion, Set<Transition> transitions,
+        boolean initialTransitionPopulated) {
+      this.version = version;
+      this.schedule = schedule;
+      this.tasks = tasks;
+      this.opentimeVersion = opentimeVersion;
+      this.transitions = transitions;
+      this.initialTransitionPopulated = initialTransitionPopulated;
+    }
+
+    private Snapshot withSchedule(Schedule schedule) {
+      return new Snapshot(version + 1, schedule, tasks, opentimeVersion,
+          transitions, initialTransitionPopulated);
+    }
+
+    private Snapshot withTasks(Set<FlicaTask> tasks) {
+      return new Snapshot(version + 1, schedule, tasks, opentimeVersion + 1,
+          transitions, initialTransitionPopulated);
+    }
+
+    private Snapshot withTransitions(Set<Transition> transitions) {
+      return new Snapshot(version + 1, schedule, tasks, opentimeVersion,
+          transitions, true);
+    }
+
+    public long getVersion() {
+      return version;
+    }
+
+    /** Null until a schedule is offered. */
+    public Schedule getSchedule() {
+      return schedule;
+    }
+
+    /** Null until opentime is offered. */
+    public Set<FlicaTask> getTasks() {
+      return tasks;
+    }
 
-  private Schedule currentSchedule;
-  private Set<FlicaTask> currentTasks;
+    /** Counts the times opentime has been offered, changed or not. */
+    public long getOpentimeVersion() {
+      return opentimeVersion;
+    }
 
-  private Set<Transition> transitions = new HashSet<>();
-  private boolean initialTransitionPopulated = false;
+    public Set<Transition> getTransitions() {
+      return transitions;
+    }
 
-  public synchronized void offer(Schedule schedule) {
-    this.schedule = schedule;
-    this.notify();
+    public boolean isInitialTransitionPopulated() {
+      return initialTransitionPopulated;
+    }
   }
 
-  public synchronized void offer(Set<FlicaTask> tasks) {
-    this.tasks = tasks;
-    this.notify();
+  /** How a snapshot differs from an earlier one. */
+  public static class Delta {
+    private final Snapshot previous;
+    private final Snapshot current;
+    private final boolean scheduleChanged;
+    private final Set<FlicaTask> addedTasks;
+    private final Set<FlicaTask> removedTasks;
+    private final Set<Transition> addedTransitions;
+
+    /** previous may be null, in which case everything in current is new. */
+    public Delta(Snapshot previous, Snapshot current) {
+      if (previous == null) {
+        previous = Snapshot.EMPTY;
+      }
+      this.previous = previous;
+      this.current = current;
+      this.scheduleChanged = !Objects.equals(previous.schedule, current.schedule);
+      Set<FlicaTask> previousTasks = nullToEmpty(previous.tasks);
+      Set<FlicaTask> currentTasks = nullToEmpty(current.tasks);
+      this.addedTasks = Sets.difference(currentTasks, previousTasks).immutableCopy();
+      this.removedTasks = Sets.difference(previousTasks, currentTasks).immutableCopy();
+      this.addedTransitions = Sets.difference(
+          current.transitions, previous.transitions).immutableCopy();
+    }
+
+    private static Set<FlicaTask> nullToEmpty(Set<FlicaTask> tasks) {
+      return tasks == null ? ImmutableSet.of() : tasks;
+    }
+
+    public Snapshot getPrevious() {
+      return previous;
+    }
+
+    public Snapshot getCurrent() {
+      return current;
+    }
+
+    public boolean isScheduleChanged() {
+      return scheduleChanged;
+    }
+
+    /** True if opentime was offered again, even if no tasks changed. */
+    public boolean isOpentimeRefreshed() {
+      return previous.opentimeVersion != current.opentimeVersion;
+    }
+
+    public Set<FlicaTask> getAddedTasks() {
+      return addedTasks;
+    }
+
+    public Set<FlicaTask> getRemovedTasks() {
+      return removedTasks;
+    }
+
+    public Set<Transition> getAddedTransitions() {
+      return addedTransitions;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("v%d->v%d schedule %s, %d tasks added, %d removed, "
+          + "%d transitions added",
+          previous.version, current.version,
+          scheduleChanged ? "changed" : "unchanged",
+          addedTasks.size(), removedTasks.size(), addedTransitions.size());
+    }
+  }
+
+  /** Does nothing if the schedule is unchanged. */
+  public void offer(Schedule schedule) {
+    publish(snapshot -> schedule.equals(snapshot.schedule)
+        ? snapshot
+        : snapshot.withSchedule(schedule));
   }
 
-  public synchronized void offerTransitions(Set<Transition> transitions) {
-    this.transitions.addAll(transitions);
-    this.initialTransitionPopulated = true;
-    this.notify();
+  public void offer(Set<FlicaTask> tasks) {
+    Set<FlicaTask> copy = ImmutableSet.copyOf(tasks);
+    publish(snapshot -> snapshot.withTasks(copy));
   }
 
-  public synchronized void beginWork(boolean blockUntilBidPeriodOpens) {
-    // Blocks until schedule and tasks have loaded, and there are tasks to consider.
-    // Also, if this is a catch-up run (eg the program was started after the bid
-    // period opened), blocks until the transitions are read.
-    while (schedule == null || tasks == null || tasks.size() == 0
-        || (!blockUntilBidPeriodOpens && !initialTransitionPopulated)) {
+  public void offerTransitions(Set<Transition> transitions) {
+    publish(snapshot -> snapshot.withTransitions(ImmutableSet.<Transition>builder()
+        .addAll(snapshot.transitions)
+        .addAll(transitions)
+        .build()));
+  }
+
+  private void publish(UnaryOperator<Snapshot> update) {
+    Snapshot previous;
+    Snapshot next;
+    do {
+      previous = latest.get();
+      next = update.apply(previous);
+    } while (!latest.compareAndSet(previous, next));
+    if (next != previous) {
+      // Dropped if the worker has yet to take an earlier signal.
+      signal.offer(SIGNAL);
+    }
+  }
+
+  public Snapshot getSnapshot() {
+    return latest.get();
+  }
+
+  /**
+   * Blocks until schedule and tasks have loaded, there are tasks to consider,
+   * and the schedule has changed or opentime has been refreshed since the
+   * last call. Also, if this is a catch-up run (eg the program was started
+   * after the bid period opened), blocks until the transitions are read.
+   */
+  public void beginWork(boolean blockUntilBidPeriodOpens) {
+    while (!tryBeginWork(blockUntilBidPeriodOpens)) {
       try {
-        this.wait();
+        signal.take();
       } catch (InterruptedException e) {
         logger.log(Level.WARNING, "interrupt", e);
       }
     }
-    currentSchedule = schedule;
-    currentTasks = new HashSet<>(tasks);
+  }
+
+  /**
+   * As beginWork, but returns false rather than blocking if there is
+   * nothing new to work on.
+   */
+  public boolean tryBeginWork(boolean blockUntilBidPeriodOpens) {
+    Snapshot snapshot = latest.get();
+    if (isReady(snapshot, blockUntilBidPeriodOpens)) {
+      Delta delta = new Delta(current, snapshot);
+      if (current == null || delta.isScheduleChanged() || delta.isOpentimeRefreshed()) {
+        currentDelta = delta;
+        current = snapshot;
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private boolean isReady(Snapshot snapshot, boolean blockUntilBidPeriodOpens) {
+    return snapshot.schedule != null
+        && snapshot.tasks != null
+        && !snapshot.tasks.isEmpty()
+        && (blockUntilBidPeriodOpens || snapshot.initialTransitionPopulated);
   }
 
   public Schedule getCurrentSchedule() {
-    return currentSchedule;
+    return current.schedule;
   }
 
   public Set<FlicaTask> getCurrentTasks() {
-    return currentTasks;
+    return current.tasks;
+  }
+
+  /** What changed between the last two calls to beginWork. */
+  public Delta getCurrentDelta() {
+    return currentDelta;
   }
 
-  public synchronized boolean hasTransition(Transition transition) {
-    return transitions.contains(transition);
+  public boolean hasTransition(Transition transition) {
+    return latest.get().transitions.contains(transition);
   }
 }
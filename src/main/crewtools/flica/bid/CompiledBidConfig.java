@@ -0,0 +1,259 @@
+/**
+ * Copyright 2020 Iron City Software LLC
+ *
+ * This file is part of CrewTools.
+ *
+ * CrewTools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CrewTools is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CrewTools.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package crewtools.flica.bid;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.joda.time.LocalDate;
+import org.joda.time.YearMonth;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import crewtools.flica.Proto.CrewMember;
+import crewtools.flica.pojo.Trip;
+import crewtools.rpc.Proto.BidConfig;
+import crewtools.rpc.Proto.ScoreAdjustment;
+import crewtools.util.DayMask;
+import crewtools.util.Period;
+
+/**
+ * A BidConfig prepared for the scoring and strategy classes, which consult
+ * it for every trip and every comparison. Lists become hash sets or index
+ * maps, and dates are parsed once and kept as day masks of the bid period.
+ */
+public class CompiledBidConfig {
+  private final BidConfig bidConfig;
+  private final BidConfig scoringFields;
+  private final YearMonth yearMonth;
+  private final DayMask dayMask;
+  private final Period minimumCredit;
+  private final Set<String> favoriteOvernights;
+  private final Set<String> favoriteTurns;
+  private final Set<String> despisedTurns;
+  private final Map<String, Integer> monthlyBidOverrideIndex;
+  private final Map<String, Integer> loserLineIndex;
+  private final Dates vacationDays;
+  private final Dates requiredDaysOff;
+  private final List<CompiledScoreAdjustment> scoreAdjustments;
+
+  public CompiledBidConfig(BidConfig bidConfig) {
+    this.bidConfig = bidConfig;
+    this.scoringFields = getScoringFields(bidConfig);
+    this.yearMonth = bidConfig.hasYearMonth()
+        ? YearMonth.parse(bidConfig.getYearMonth())
+        : null;
+    this.dayMask = yearMonth == null ? null : new DayMask(yearMonth);
+    this.minimumCredit = Period.hours(bidConfig.getMinimumCreditHours());
+    this.favoriteOvernights = ImmutableSet.copyOf(bidConfig.getFavoriteOvernightList());
+    this.favoriteTurns = ImmutableSet.copyOf(bidConfig.getFavoriteTurnList());
+    this.despisedTurns = ImmutableSet.copyOf(bidConfig.getDespisedTurnList());
+    this.monthlyBidOverrideIndex = getIndex(bidConfig.getMonthlyBidOverrideList());
+    this.loserLineIndex = getIndex(bidConfig.getLoserLineList());
+    this.vacationDays = new Dates(bidConfig.getVacationDateList(), dayMask);
+    this.requiredDaysOff = new Dates(bidConfig.getRequiredDayOffList(), dayMask);
+    ImmutableList.Builder<CompiledScoreAdjustment> scoreAdjustments =
+        ImmutableList.builder();
+    for (ScoreAdjustment scoreAdjustment : bidConfig.getScoreAdjustmentList()) {
+      scoreAdjustments.add(new CompiledScoreAdjustment(scoreAdjustment, dayMask));
+    }
+    this.scoreAdjustments = scoreAdjustments.build();
+  }
+
+  /** Keep in sync with the fields read by TripScore. */
+  private static BidConfig getScoringFields(BidConfig bidConfig) {
+    return BidConfig.newBuilder()
+        .addAllVacationDate(bidConfig.getVacationDateList())
+        .addAllFavoriteOvernight(bidConfig.getFavoriteOvernightList())
+        .addAllFavoriteTurn(bidConfig.getFavoriteTurnList())
+        .addAllDespisedTurn(bidConfig.getDespisedTurnList())
+        .setEnableDingPartialTrips(bidConfig.getEnableDingPartialTrips())
+        .setEnableEfficiencyScore(bidConfig.getEnableEfficiencyScore())
+        .addAllScoreAdjustment(bidConfig.getScoreAdjustmentList())
+        .build();
+  }
+
+  /** The first occurrence of a name wins, as with List.indexOf. */
+  private static Map<String, Integer> getIndex(List<String> names) {
+    Map<String, Integer> index = new HashMap<>();
+    for (int i = 0; i < names.size(); ++i) {
+      index.putIfAbsent(names.get(i), i);
+    }
+    return ImmutableMap.copyOf(index);
+  }
+
+  public BidConfig getBidConfig() {
+    return bidConfig;
+  }
+
+  /** Returns only the fields which affect TripScore. */
+  public BidConfig getScoringFields() {
+    return scoringFields;
+  }
+
+  /** Returns null if the BidConfig has no year_month. */
+  public YearMonth getYearMonth() {
+    return yearMonth;
+  }
+
+  public Period getMinimumCredit() {
+    return minimumCredit;
+  }
+
+  public boolean isFavoriteOvernight(String airportCode) {
+    return favoriteOvernights.contains(airportCode);
+  }
+
+  public boolean hasFavoriteOvernights() {
+    return !favoriteOvernights.isEmpty();
+  }
+
+  public boolean isFavoriteTurn(String airportCode) {
+    return favoriteTurns.contains(airportCode);
+  }
+
+  public boolean isDespisedTurn(String airportCode) {
+    return despisedTurns.contains(airportCode);
+  }
+
+  /** Returns -1 if the line is not overridden. */
+  public int getMonthlyBidOverrideIndex(String lineName) {
+    return monthlyBidOverrideIndex.getOrDefault(lineName, -1);
+  }
+
+  /** Returns -1 if the line is not a loser. */
+  public int getLoserLineIndex(String lineName) {
+    return loserLineIndex.getOrDefault(lineName, -1);
+  }
+
+  public boolean isVacationDay(LocalDate date) {
+    return vacationDays.contains(date);
+  }
+
+  public boolean isRequiredDayOff(LocalDate date) {
+    return requiredDaysOff.contains(date);
+  }
+
+  public boolean spansRequiredDayOff(Trip trip) {
+    return requiredDaysOff.isSpannedBy(trip);
+  }
+
+  public List<CompiledScoreAdjustment> getScoreAdjustments() {
+    return scoreAdjustments;
+  }
+
+  public static class CompiledScoreAdjustment {
+    private final ScoreAdjustment scoreAdjustment;
+    private final Set<Integer> crewEmployeeIds;
+    private final Dates softDaysOff;
+
+    private CompiledScoreAdjustment(ScoreAdjustment scoreAdjustment, DayMask dayMask) {
+      this.scoreAdjustment = scoreAdjustment;
+      this.crewEmployeeIds = ImmutableSet.copyOf(scoreAdjustment.getCrewEmployeeIdList());
+      this.softDaysOff = new Dates(scoreAdjustment.getSoftDayOffList(), dayMask);
+    }
+
+    public int getScoreAdjustment() {
+      return scoreAdjustment.getScoreAdjustment();
+    }
+
+    public boolean getPreferWeekdays() {
+      return scoreAdjustment.getPreferWeekdays();
+    }
+
+    public boolean getPreferWeekends() {
+      return scoreAdjustment.getPreferWeekends();
+    }
+
+    public boolean hasCrewEmployeeIds() {
+      return !crewEmployeeIds.isEmpty();
+    }
+
+    public boolean containsCrewmember(Trip trip) {
+      for (CrewMember crewmember : trip.proto.getCrewList()) {
+        if (crewEmployeeIds.contains(crewmember.getEmployeeId())) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    public boolean hasSoftDaysOff() {
+      return !softDaysOff.isEmpty();
+    }
+
+    public boolean spansSoftDayOff(Trip trip) {
+      return softDaysOff.isSpannedBy(trip);
+    }
+
+    /** Returns true if any soft day off is in days. */
+    public boolean isAnySoftDayOffIn(Set<LocalDate> days) {
+      for (LocalDate date : softDaysOff.dates) {
+        if (days.contains(date)) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+
+  /** Parsed dates, and their mask when every date fits in the bid period's. */
+  private static class Dates {
+    private final Set<LocalDate> dates;
+    private final DayMask dayMask;
+    private final long mask;
+
+    Dates(List<String> dateStrings, DayMask dayMask) {
+      ImmutableSet.Builder<LocalDate> dates = ImmutableSet.builder();
+      boolean isMaskComplete = dayMask != null;
+      for (String dateString : dateStrings) {
+        LocalDate date = LocalDate.parse(dateString);
+        dates.add(date);
+        isMaskComplete &= dayMask != null && dayMask.contains(date);
+      }
+      this.dates = dates.build();
+      this.dayMask = isMaskComplete ? dayMask : null;
+      this.mask = isMaskComplete ? dayMask.getMask(this.dates) : 0;
+    }
+
+    boolean isEmpty() {
+      return dates.isEmpty();
+    }
+
+    boolean contains(LocalDate date) {
+      return dates.contains(date);
+    }
+
+    /** Same as Trip.spansDaysOfMonth. */
+    boolean isSpannedBy(Trip trip) {
+      if (dates.isEmpty()) {
+        return false;
+      }
+      if (dayMask != null && dayMask.getYearMonth().equals(trip.getDayMaskYearMonth())) {
+        return DayMask.overlaps(mask, trip.getDayMask());
+      }
+      return trip.spansDaysOfMonth(dates);
+    }
+  }
+}
@@ -23,20 +23,27 @@ import java.util.HashSet;
 import java.util.Set;
 
 import org.joda.time.LocalDate;
+import org.joda.time.YearMonth;
 
 import crewtools.flica.pojo.FlicaTask;
 import crewtools.flica.pojo.PairingKey;
+import crewtools.util.DayMask;
 import crewtools.util.Period;
 
 public class FlicaTaskWrapper {
   private FlicaTask flicaTask;
   private Set<LocalDate> dates;
   private PairingKey key;
+  private YearMonth dayMaskYearMonth;
+  private long dayMask;
 
   public FlicaTaskWrapper(FlicaTask flicaTask) {
     this.flicaTask = flicaTask;
     this.dates = getTaskDates(flicaTask);
     this.key = new PairingKey(flicaTask.pairingDate, flicaTask.pairingName);
+    DayMask days = DayMask.forDate(flicaTask.pairingDate);
+    this.dayMaskYearMonth = days.getYearMonth();
+    this.dayMask = days.getMask(dates);
   }
 
   public boolean isTwoHundred() {
@@ -51,6 +58,15 @@ public class FlicaTaskWrapper {
     return dates;
   }
 
+  /** The bid period of getDayMask(). */
+  public YearMonth getDayMaskYearMonth() {
+    return dayMaskYearMonth;
+  }
+
+  public long getDayMask() {
+    return dayMask;
+  }
+
   public String getPairingName() {
     return flicaTask.pairingName;
   }
@@ -27,21 +27,19 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.logging.Logger;
-import java.util.stream.Collectors;
 
 import org.joda.time.DateTimeConstants;
 import org.joda.time.LocalDate;
-import org.joda.time.YearMonth;
 
 import com.google.common.collect.ImmutableMap;
 
 import crewtools.flica.Proto;
+import crewtools.flica.bid.CompiledBidConfig.CompiledScoreAdjustment;
 import crewtools.flica.pojo.PairingKey;
 import crewtools.flica.pojo.Section;
 import crewtools.flica.pojo.ThinLine;
 import crewtools.flica.pojo.Trip;
 import crewtools.rpc.Proto.BidConfig;
-import crewtools.rpc.Proto.ScoreAdjustment;
 import crewtools.util.Calendar;
 import crewtools.util.Collections;
 import crewtools.util.Period;
@@ -51,7 +49,9 @@ public class LineScore {
 
   private final ThinLine line;
   private final Map<PairingKey, Trip> trips;
+  private final CompiledBidConfig config;
   private final BidConfig bidConfig;
+  private final TripScoreCache tripScoreCache;
   private final Period favoriteOvernightCredit;
   private final Period favoriteOvernightPeriod;
   private final Period nonOverlappingCarryInCredit;
@@ -68,16 +68,18 @@ public class LineScore {
 
   public LineScore(ThinLine line,
       Map<PairingKey, Trip> trips,
-      BidConfig bidConfig,
+      CompiledBidConfig config,
       Map<LocalDate, Period> carryInCredit,
-      Set<LocalDate> vacationDays) {
+      Set<LocalDate> vacationDays,
+      TripScoreCache tripScoreCache) {
     this.line = line;
     this.trips = trips;
-    this.bidConfig = bidConfig;
+    this.config = config;
+    this.bidConfig = config.getBidConfig();
+    this.tripScoreCache = tripScoreCache;
 
-    Period favoriteOvernightCredit = Period.ZERO;
-    Period allCredit = Period.ZERO;
-    Period favoriteOvernightPeriod = Period.ZERO;
+    int favoriteOvernightCreditMinutes = 0;
+    int favoriteOvernightMinutes = 0;
     int numFavoriteOvernights = 0;
     int numWeekendWorkdays = 0;
 
@@ -86,10 +88,9 @@ public class LineScore {
       // credit of this trip, handling overlapping CI credit, vacation credit.
       Period creditInMonth = trip.getCreditInMonth(
           vacationDays,
-          YearMonth.parse(bidConfig.getYearMonth()),
+          config.getYearMonth(),
           carryInCredit);
       creditsInMonthMap.put(trip, creditInMonth);
-      allCredit = allCredit.plus(creditInMonth);
 
       boolean hasFavoriteOvernight = false;
       for (Section section : trip.getSections()) {
@@ -98,13 +99,10 @@ public class LineScore {
           // This day will be dropped as it falls on vacation.
           continue;
         }
-        if (bidConfig.getFavoriteOvernightCount() > 0
-            && section.hasLayoverAirportCode()
-            && bidConfig.getFavoriteOvernightList().contains(
-                section.getLayoverAirportCode())) {
+        if (section.hasLayoverAirportCode()
+            && config.isFavoriteOvernight(section.getLayoverAirportCode())) {
           hasFavoriteOvernight = true;
-          favoriteOvernightPeriod = favoriteOvernightPeriod
-              .plus(section.getLayoverDuration());
+          favoriteOvernightMinutes += section.getLayoverDuration().getTotalMinutes();
           numFavoriteOvernights++;
         }
         if (section.getDepartureDate().getDayOfWeek() == DateTimeConstants.SATURDAY
@@ -113,44 +111,42 @@ public class LineScore {
         }
       }
       if (hasFavoriteOvernight) {
-        favoriteOvernightCredit = favoriteOvernightCredit.plus(creditInMonth);
+        favoriteOvernightCreditMinutes += creditInMonth.getTotalMinutes();
       }
     }
     for (LocalDate date : line.getCarryInDays()) {
       daysObligated.add(date);
     }
 
-    // Include non-overlapping CI credit in allCredit.
-    Period nonOverlappingCarryInCredit = Period.ZERO;
+    // Sum the CI credit of days not otherwise obligated.
+    int nonOverlappingCarryInMinutes = 0;
     for (LocalDate date : carryInCredit.keySet()) {
       if (!daysObligated.contains(date)) {
-        nonOverlappingCarryInCredit = nonOverlappingCarryInCredit
-            .plus(carryInCredit.get(date));
+        nonOverlappingCarryInMinutes += carryInCredit.get(date).getTotalMinutes();
       }
     }
 
     this.tripLengthToCount = computeHistogram(daysObligated);
-    this.nonOverlappingCarryInCredit = nonOverlappingCarryInCredit;
-    this.favoriteOvernightCredit = favoriteOvernightCredit;
-    this.favoriteOvernightPeriod = favoriteOvernightPeriod;
+    this.nonOverlappingCarryInCredit = Period.minutes(nonOverlappingCarryInMinutes);
+    this.favoriteOvernightCredit = Period.minutes(favoriteOvernightCreditMinutes);
+    this.favoriteOvernightPeriod = Period.minutes(favoriteOvernightMinutes);
     this.numFavoriteOvernights = numFavoriteOvernights;
     this.minimumTripsThatMeetMinCredit = evaluateMinCredit(creditsInMonthMap);
     this.NHighestCreditsPlusCarryIn = evaluateNCredit(creditsInMonthMap);
     this.numWeekendWorkdays = numWeekendWorkdays;
 
-    Period minimumTripFavoriteOvernightPeriod = Period.ZERO;
+    int minimumTripFavoriteOvernightMinutes = 0;
     for (Trip trip : minimumTripsThatMeetMinCredit.keySet()) {
       for (Section section : trip.getSections()) {
-        if (bidConfig.getFavoriteOvernightCount() > 0
-            && section.hasLayoverAirportCode()
-            && bidConfig.getFavoriteOvernightList().contains(
-                section.getLayoverAirportCode())) {
-          minimumTripFavoriteOvernightPeriod = minimumTripFavoriteOvernightPeriod
-              .plus(section.getLayoverDuration());
+        if (section.hasLayoverAirportCode()
+            && config.isFavoriteOvernight(section.getLayoverAirportCode())) {
+          minimumTripFavoriteOvernightMinutes +=
+              section.getLayoverDuration().getTotalMinutes();
         }
       }
     }
-    this.minimumTripFavoriteOvernightPeriod = minimumTripFavoriteOvernightPeriod;
+    this.minimumTripFavoriteOvernightPeriod =
+        Period.minutes(minimumTripFavoriteOvernightMinutes);
 
     int numEquipmentTwoHundredSegments = 0;
     for (Trip trip : trips.values()) {
@@ -168,7 +164,7 @@ public class LineScore {
   public int getScore() {
     int points = scoreAdjustmentPoints;
     for (Trip trip : getMinimumTrips()) {
-      points += new TripScore(trip, bidConfig).getPoints();
+      points += tripScoreCache.getPoints(trip, config);
     }
     return points;
   }
@@ -182,7 +178,7 @@ public class LineScore {
   }
 
   private Map<Integer, Integer> computeHistogram(Set<LocalDate> daysObligated) {
-    Calendar calendar = new Calendar(YearMonth.parse(bidConfig.getYearMonth()));
+    Calendar calendar = new Calendar(config.getYearMonth());
     Map<Integer, Integer> result = new HashMap<>();
     int currentTripLength = 0;
     for (LocalDate date : calendar.getDatesInPeriod()) {
@@ -200,11 +196,9 @@ public class LineScore {
   }
 
   private int getScoreAdjustments(Set<LocalDate> daysObligated) {
-    for (ScoreAdjustment scoreAdjustment : bidConfig.getScoreAdjustmentList()) {
-      for (String localDateString : scoreAdjustment.getSoftDayOffList()) {
-        if (daysObligated.contains(LocalDate.parse(localDateString))) {
-          return scoreAdjustment.getScoreAdjustment();
-        }
+    for (CompiledScoreAdjustment scoreAdjustment : config.getScoreAdjustments()) {
+      if (scoreAdjustment.isAnySoftDayOffIn(daysObligated)) {
+        return scoreAdjustment.getScoreAdjustment();
       }
     }
     return 0;
@@ -215,18 +209,20 @@ public class LineScore {
     Map<Trip, Period> largestToSmallestCredit = Collections
         .sortByValueDescending(creditsInMonth);
     ImmutableMap.Builder<Trip, Period> result = ImmutableMap.builder();
-    Period requiredCredit = Period.hours(bidConfig.getMinimumCreditHours());
-    requiredCredit = requiredCredit.minus(nonOverlappingCarryInCredit);
+    int numTrips = 0;
+    int requiredMinutes = config.getMinimumCredit().getTotalMinutes()
+        - nonOverlappingCarryInCredit.getTotalMinutes();
     for (Map.Entry<Trip, Period> entry : largestToSmallestCredit.entrySet()) {
       result.put(entry.getKey(), entry.getValue());
-      if (requiredCredit.compareTo(entry.getValue()) <= 0) {
+      numTrips++;
+      if (requiredMinutes <= entry.getValue().getTotalMinutes()) {
         // we're done
         return result.build();
       }
-      if (result.build().size() == bidConfig.getMinimumNumberOfTrips()) {
+      if (numTrips == bidConfig.getMinimumNumberOfTrips()) {
         break;
       }
-      requiredCredit = requiredCredit.minus(entry.getValue());
+      requiredMinutes -= entry.getValue().getTotalMinutes();
     }
     return ImmutableMap.of();
   }
@@ -234,18 +230,18 @@ public class LineScore {
   public Period evaluateNCredit(Map<Trip, Period> creditsInMonth) {
     Map<Trip, Period> largestToSmallestCredit = Collections
         .sortByValueDescending(creditsInMonth);
-    Period result = Period.ZERO.plus(nonOverlappingCarryInCredit);
+    int resultMinutes = nonOverlappingCarryInCredit.getTotalMinutes();
     int num = 0;
     for (Map.Entry<Trip, Period> entry : largestToSmallestCredit.entrySet()) {
       if (entry.getKey().isTwoHundred()) {
         continue;
       }
-      result = result.plus(entry.getValue());
+      resultMinutes += entry.getValue().getTotalMinutes();
       if (num++ == bidConfig.getMinimumNumberOfTrips()) {
         break;
       }
     }
-    return result;
+    return Period.minutes(resultMinutes);
   }
 
   /** Returns true if we want to consider this line for our bid. */
@@ -262,12 +258,11 @@ public class LineScore {
             continue;
           }
         } else {
-          if (bidConfig.getFavoriteOvernightCount() == 0) {
+          if (!config.hasFavoriteOvernights()) {
             // We're planning on keeping this trip. "All overnights are favorites".
             hasAnyFavoriteOvernights = true;
           } else {
-            int numFavoriteLayoverOvernights = countFavoriteOvernights(
-                bidConfig.getFavoriteOvernightList(), trip);
+            int numFavoriteLayoverOvernights = countFavoriteOvernights(trip);
             if (numFavoriteLayoverOvernights == 0) {
               // We're planning on dropping this trip in this line in the SAP anyway,
               // because it isn't a favorite overnight.
@@ -279,15 +274,13 @@ public class LineScore {
           }
         }
       }
-      Set<LocalDate> requiredDaysOff = bidConfig.getRequiredDayOffList()
-          .stream().map(s -> LocalDate.parse(s)).collect(Collectors.toSet());
-      if (trip.spansDaysOfMonth(requiredDaysOff)) {
+      if (config.spansRequiredDayOff(trip)) {
         // A trip on this line spans a desired day off. Disqualify the line.
         return false;
       }
       if (bidConfig.getEnableCarryInsRespectRequiredDaysOff()) {
         for (LocalDate carryInDay : line.getCarryInDays()) {
-          if (requiredDaysOff.contains(carryInDay)) {
+          if (config.isRequiredDayOff(carryInDay)) {
             return false;
           }
         }
@@ -302,11 +295,10 @@ public class LineScore {
     return hasMinimumTripsThatMeetMinCredit();
   }
 
-  private int countFavoriteOvernights(List<String> favoriteOvernights,
-      Trip trip) {
+  private int countFavoriteOvernights(Trip trip) {
     int numFavoriteOvernights = 0;
     for (Proto.Section section : trip.proto.getSectionList()) {
-      if (favoriteOvernights.contains(section.getLayoverAirportCode())) {
+      if (config.isFavoriteOvernight(section.getLayoverAirportCode())) {
         numFavoriteOvernights++;
       }
     }
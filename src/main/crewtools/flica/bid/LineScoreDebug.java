@@ -48,12 +48,14 @@ import crewtools.util.Period;
 /** Tool for inspecting scoring of arbitrary lines and trips. */
 public class LineScoreDebug {
   private final BidConfig bidConfig;
+  private final CompiledBidConfig compiledBidConfig;
   private final AwardDomicile awardDomicile;
   private final Rank rank;
   private final DataReader dataReader;
   private final Map<PairingKey, Trip> pairings;
   private final Map<String, ThinLine> lines;
   private final Set<LocalDate> vacationDays;
+  private final TripScoreCache tripScoreCache = new TripScoreCache();
 
   public static void main(String args[]) throws Exception {
     if (args.length == 0) {
@@ -65,6 +67,7 @@ public class LineScoreDebug {
 
   public LineScoreDebug() throws Exception {
     this.bidConfig = FileUtils.readBidConfig();
+    this.compiledBidConfig = new CompiledBidConfig(bidConfig);
     this.awardDomicile = AwardDomicile.valueOf(bidConfig.getAwardDomicile());
     this.rank = Rank.valueOf(bidConfig.getRank());
     YearMonth yearMonth = YearMonth.parse(bidConfig.getYearMonth());
@@ -79,7 +82,8 @@ public class LineScoreDebug {
     LineScore left = getLineScore(args[0]);
     LineScore right = getLineScore(args[1]);
     System.out.println("left=" + args[0] + "    right=" + args[1]);
-    MonthlyBidStrategy strategy = new MonthlyBidStrategy(bidConfig);
+    MonthlyBidStrategy strategy =
+        new MonthlyBidStrategy(compiledBidConfig, tripScoreCache);
     List<String> explanation = new ArrayList<>();
     strategy.setDebug(explanation);
     int result = strategy.compare(left, right);
@@ -97,8 +101,8 @@ public class LineScoreDebug {
               "Pairing not found: " + key));
     }
     Map<LocalDate, Period> carryInCredit = ImmutableMap.of();
-    return new LineScore(lines.get(lineName), trips, bidConfig, carryInCredit,
-        vacationDays);
+    return new LineScore(lines.get(lineName), trips, compiledBidConfig,
+        carryInCredit, vacationDays, tripScoreCache);
   }
 
   private Map<PairingKey, Trip> getAllPairings(YearMonth yearMonth)
@@ -24,13 +24,16 @@ import java.util.Comparator;
 public class MinimizeWorkMaximizeFunComparator implements Comparator<Solution> {
   @Override
   public int compare(Solution left, Solution right) {
-    Integer a = left.getProposedSchedule().getNumWorkingDays();
-    Integer b = right.getProposedSchedule().getNumWorkingDays();
-    if (a != b) {
-      return a.compareTo(b);
+    return compare(left.getProposedSchedule().getNumWorkingDays(), left.getScore(),
+        right.getProposedSchedule().getNumWorkingDays(), right.getScore());
+  }
+
+  /** Compares solutions by their keys, without building them. */
+  public static int compare(int leftWorkingDays, int leftScore,
+      int rightWorkingDays, int rightScore) {
+    if (leftWorkingDays != rightWorkingDays) {
+      return Integer.compare(leftWorkingDays, rightWorkingDays);
     }
-    a = left.getScore();
-    b = right.getScore();
-    return a.compareTo(b);
+    return Integer.compare(leftScore, rightScore);
   }
 }
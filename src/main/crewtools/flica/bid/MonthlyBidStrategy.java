@@ -21,7 +21,10 @@ package crewtools.flica.bid;
 
 import java.util.Comparator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
 
 import com.google.common.collect.Ordering;
 
@@ -32,13 +35,17 @@ import crewtools.util.Period;
 public class MonthlyBidStrategy implements Comparator<LineScore> {
   private final Logger logger = Logger.getLogger(MonthlyBidStrategy.class.getName());
 
+  private final CompiledBidConfig config;
   private final BidConfig bidConfig;
+  private final TripScoreCache tripScoreCache;
   private final Period minimumCredit;
   private List<String> currentDebug;
 
-  public MonthlyBidStrategy(BidConfig bidConfig) {
-    this.bidConfig = bidConfig;
-    this.minimumCredit = Period.hours(bidConfig.getMinimumCreditHours());
+  public MonthlyBidStrategy(CompiledBidConfig config, TripScoreCache tripScoreCache) {
+    this.config = config;
+    this.bidConfig = config.getBidConfig();
+    this.tripScoreCache = tripScoreCache;
+    this.minimumCredit = config.getMinimumCredit();
   }
 
   public void setDebug(List<String> debug) {
@@ -51,10 +58,75 @@ public class MonthlyBidStrategy implements Comparator<LineScore> {
     }
   }
 
+  /** Everything compare looks at, computed once per line. */
+  private class SortKey {
+    private final LineScore lineScore;
+    private final int overrideIndex;
+    private final int loserIndex;
+    private final boolean hasReserve;
+    private final boolean isDesirable;
+    private final int numWeekendWorkdays;
+    private final Period nHighestCredits;
+    private final int nHighestCreditsVsMinimum;
+    private final Integer maxLength;  // null if there are no trip lengths
+    private final int maxLengthCount;
+    private final int points;
+
+    private SortKey(LineScore lineScore) {
+      this.lineScore = lineScore;
+      this.overrideIndex = config.getMonthlyBidOverrideIndex(lineScore.getLineName());
+      this.loserIndex = config.getLoserLineIndex(lineScore.getLineName());
+      this.hasReserve = lineScore.hasReserve();
+      this.isDesirable = lineScore.isDesirableLine();
+      this.numWeekendWorkdays = lineScore.getNumWeekendWorkdays();
+      this.nHighestCredits = lineScore.getNHighestCreditsPlusCarryIn();
+      this.nHighestCreditsVsMinimum = nHighestCredits.compareTo(minimumCredit);
+      if (lineScore.getTripLengthToCount().isEmpty()) {
+        this.maxLength = null;
+        this.maxLengthCount = 0;
+      } else {
+        this.maxLength = Ordering.natural()
+            .max(lineScore.getTripLengthToCount().keySet());
+        this.maxLengthCount = lineScore.getTripLengthToCount().get(maxLength);
+      }
+      this.points = lineScore.getScore();
+    }
+
+    private int getMaxLength() {
+      if (maxLength == null) {
+        // As Ordering.max of no lengths.
+        throw new NoSuchElementException();
+      }
+      return maxLength;
+    }
+  }
+
+  private SortKey getSortKey(LineScore lineScore) {
+    return new SortKey(lineScore);
+  }
+
+  /**
+   * Sorts lineScores as Collections.sort with this comparator would, computing
+   * the sort keys of the lines concurrently.
+   */
+  public void sort(List<LineScore> lineScores) {
+    List<SortKey> keys = lineScores.parallelStream()
+        .map(this::getSortKey)
+        .collect(Collectors.toList());
+    keys.sort(this::compare);
+    for (int i = 0; i < keys.size(); ++i) {
+      lineScores.set(i, keys.get(i).lineScore);
+    }
+  }
+
   @Override
   public int compare(LineScore a, LineScore b) {
-    int aOverrideIndex = bidConfig.getMonthlyBidOverrideList().indexOf(a.getLineName());
-    int bOverrideIndex = bidConfig.getMonthlyBidOverrideList().indexOf(b.getLineName());
+    return compare(getSortKey(a), getSortKey(b));
+  }
+
+  private int compare(SortKey a, SortKey b) {
+    int aOverrideIndex = a.overrideIndex;
+    int bOverrideIndex = b.overrideIndex;
     if (aOverrideIndex > -1 && bOverrideIndex > -1) {
       debug("override:left %d vs right %d", aOverrideIndex, bOverrideIndex);
       return Integer.compare(aOverrideIndex, bOverrideIndex);
@@ -66,8 +138,8 @@ public class MonthlyBidStrategy implements Comparator<LineScore> {
       return +1;
     }
 
-    int aLoserIndex = bidConfig.getLoserLineList().indexOf(a.getLineName());
-    int bLoserIndex = bidConfig.getLoserLineList().indexOf(b.getLineName());
+    int aLoserIndex = a.loserIndex;
+    int bLoserIndex = b.loserIndex;
     if (aLoserIndex > -1 && bLoserIndex > -1) {
       debug("loser:left %d vs right %d", aLoserIndex, bLoserIndex);
       return Integer.compare(aLoserIndex, bLoserIndex);
@@ -79,36 +151,32 @@ public class MonthlyBidStrategy implements Comparator<LineScore> {
       return -1;
     }
 
-    int isReserve = new Boolean(a.hasReserve()).compareTo(b.hasReserve());
+    int isReserve = Boolean.compare(a.hasReserve, b.hasReserve);
     if (isReserve != 0) {
-      debug("reserve:left %s vs right %s", "" + a.hasReserve(), "" + b.hasReserve());
+      debug("reserve:left %s vs right %s", "" + a.hasReserve, "" + b.hasReserve);
       return -isReserve;
     }
 
     if (bidConfig.getEnableMonthlySortByDesirable()) {
-      int isDesirable = new Boolean(a.isDesirableLine())
-          .compareTo(b.isDesirableLine());
+      int isDesirable = Boolean.compare(a.isDesirable, b.isDesirable);
       if (isDesirable != 0) {
-        debug("desirable:left %s vs right %s", "" + a.isDesirableLine(),
-            "" + b.isDesirableLine());
+        debug("desirable:left %s vs right %s", "" + a.isDesirable,
+            "" + b.isDesirable);
         return -isDesirable;
       }
     }
 
     if (bidConfig.getEnableWeekendWorkScoring()) {
-      int weekendWork = new Integer(a.getNumWeekendWorkdays())
-          .compareTo(b.getNumWeekendWorkdays());
+      int weekendWork = Integer.compare(a.numWeekendWorkdays, b.numWeekendWorkdays);
       if (weekendWork != 0) {
-        debug("weekend work:left %d vs right %d", a.getNumWeekendWorkdays(),
-            b.getNumWeekendWorkdays());
+        debug("weekend work:left %d vs right %d", a.numWeekendWorkdays,
+            b.numWeekendWorkdays);
         return weekendWork;
       }
     }
 
-    int aHighest = new Integer(
-        a.getNHighestCreditsPlusCarryIn().compareTo(minimumCredit));
-    int bHighest = new Integer(
-        b.getNHighestCreditsPlusCarryIn().compareTo(minimumCredit));
+    int aHighest = a.nHighestCreditsVsMinimum;
+    int bHighest = b.nHighestCreditsVsMinimum;
     if (aHighest >= 0 ^ bHighest >= 0) {
       debug("NHighestCreditGreaterThanMinimumCredit:left %d vs right %d", aHighest,
           bHighest);
@@ -116,20 +184,18 @@ public class MonthlyBidStrategy implements Comparator<LineScore> {
     }
 
     if (bidConfig.getEnableMonthlySortByCredit()) {
-      int creditCmp = new Integer(
-          a.getNHighestCreditsPlusCarryIn().compareTo(
-              b.getNHighestCreditsPlusCarryIn()));
+      int creditCmp = a.nHighestCredits.compareTo(b.nHighestCredits);
       if (creditCmp != 0) {
         debug("sortedCredit:left %s vs right %s",
-            a.getNHighestCreditsPlusCarryIn().toString(),
-            b.getNHighestCreditsPlusCarryIn().toString());
+            a.nHighestCredits.toString(),
+            b.nHighestCredits.toString());
         return -creditCmp;
       }
     }
 
     // sort 5-days-in-a-row below 4-days-in-a-row
-    int aMaxLength = Ordering.natural().max(a.getTripLengthToCount().keySet());
-    int bMaxLength = Ordering.natural().max(b.getTripLengthToCount().keySet());
+    int aMaxLength = a.getMaxLength();
+    int bMaxLength = b.getMaxLength();
     if (bidConfig.getEnableTripLengthScoring()) {
       if (aMaxLength > 4 || bMaxLength > 4) {
         if (aMaxLength != bMaxLength) {
@@ -137,57 +203,44 @@ public class MonthlyBidStrategy implements Comparator<LineScore> {
           return Integer.compare(aMaxLength, bMaxLength);
         } else {
           debug("maxLength:%d count left %d vs count right %d",
-              aMaxLength,
-              a.getTripLengthToCount().get(aMaxLength),
-              b.getTripLengthToCount().get(bMaxLength));
-          return Integer.compare(
-              a.getTripLengthToCount().get(aMaxLength),
-              b.getTripLengthToCount().get(bMaxLength));
+              aMaxLength, a.maxLengthCount, b.maxLengthCount);
+          return Integer.compare(a.maxLengthCount, b.maxLengthCount);
         }
       }
     }
 
-    int aPoints = 0;
-    String aTrips = "";
-    for (Trip trip : a.getMinimumTrips()) {
-      TripScore tripScore = new TripScore(trip, bidConfig);
-      debug("Scoring left trip %s", trip.getPairingName());
-      for (String explanation : tripScore.getScoreExplanation()) {
-        debug("   %s", explanation);
-      }
-      debug(" left:%s points %d", trip.getPairingName(), tripScore.getPoints());
-      aPoints += tripScore.getPoints();
-      if (!aTrips.isEmpty()) {
-        aTrips += ", ";
-      }
-      aTrips += trip.getPairingName();
+    if (currentDebug != null) {
+      debugPoints("left", " left", a.lineScore);
+      debugPoints("right", "right", b.lineScore);
     }
-    debug(" left:adjst points %d", a.getScoreAdjustmentPoints());
-    aPoints += a.getScoreAdjustmentPoints();
-
-    int bPoints = 0;
-    String bTrips = "";
-    for (Trip trip : b.getMinimumTrips()) {
-      TripScore tripScore = new TripScore(trip, bidConfig);
-      debug("Scoring right trip %s", trip.getPairingName());
+
+    if (logger.isLoggable(Level.FINE)) {
+      logger.fine("T" + a.lineScore.getLineName() + " (" + getTripNames(a.lineScore)
+          + "=" + a.points + ") vs "
+          + "T" + b.lineScore.getLineName() + " (" + getTripNames(b.lineScore)
+          + "=" + b.points + ")");
+    }
+
+    debug("points:left %d vs right %d", a.points, b.points);
+
+    return -Integer.compare(a.points, b.points);
+  }
+
+  private void debugPoints(String side, String label, LineScore lineScore) {
+    for (Trip trip : lineScore.getMinimumTrips()) {
+      TripScore tripScore = tripScoreCache.getScore(trip, config);
+      debug("Scoring %s trip %s", side, trip.getPairingName());
       for (String explanation : tripScore.getScoreExplanation()) {
         debug("   %s", explanation);
       }
-      debug("right:%s points %d", trip.getPairingName(), tripScore.getPoints());
-      bPoints += tripScore.getPoints();
-      if (!bTrips.isEmpty()) {
-        bTrips += ", ";
-      }
-      bTrips += trip.getPairingName();
+      debug("%s:%s points %d", label, trip.getPairingName(), tripScore.getPoints());
     }
-    debug("right:adjst points %d", b.getScoreAdjustmentPoints());
-    bPoints += b.getScoreAdjustmentPoints();
-
-    logger.fine("T" + a.getLineName() + " (" + aTrips + "=" + aPoints + ") vs "
-        + "T" + b.getLineName() + " (" + bTrips + "=" + bPoints + ")");
-
-    debug("points:left %d vs right %d", aPoints, bPoints);
+    debug("%s:adjst points %d", label, lineScore.getScoreAdjustmentPoints());
+  }
 
-    return -((Integer) aPoints).compareTo(bPoints);
+  private String getTripNames(LineScore lineScore) {
+    return lineScore.getMinimumTrips().stream()
+        .map(Trip::getPairingName)
+        .collect(Collectors.joining(", "));
   }
 }
@@ -21,8 +21,8 @@ package crewtools.flica.bid;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -45,10 +45,7 @@ import crewtools.flica.Proto.DayOfWeek;
 import crewtools.flica.Proto.Rank;
 import crewtools.flica.adapters.PairingAdapter;
 import crewtools.flica.adapters.ScheduleAdapter;
-import crewtools.flica.parser.LineParser;
-import crewtools.flica.parser.PairingParser;
 import crewtools.flica.parser.ParseException;
-import crewtools.flica.parser.ScheduleParser;
 import crewtools.flica.pojo.PairingKey;
 import crewtools.flica.pojo.Schedule;
 import crewtools.flica.pojo.Section;
@@ -67,8 +64,10 @@ public class MonthlyBidder {
   private final Logger logger = Logger.getLogger(MonthlyBidder.class.getName());
   private final MonthlyBidderCommandLineConfig cmdLine;
   private final BidConfig bidConfig;
+  private final CompiledBidConfig compiledBidConfig;
   private final AwardDomicile awardDomicile;
   private final Rank rank;
+  private final TripScoreCache tripScoreCache = new TripScoreCache();
 
   public static void main(String args[]) throws Exception {
     new MonthlyBidder(args).run();
@@ -77,6 +76,7 @@ public class MonthlyBidder {
   public MonthlyBidder(String args[]) throws Exception {
     this.cmdLine = new MonthlyBidderCommandLineConfig(args);
     this.bidConfig = FileUtils.readBidConfig();
+    this.compiledBidConfig = new CompiledBidConfig(bidConfig);
     this.awardDomicile = AwardDomicile.valueOf(bidConfig.getAwardDomicile());
     this.rank = Rank.valueOf(bidConfig.getRank());
   }
@@ -100,7 +100,6 @@ public class MonthlyBidder {
     logger.info(pairings.size() + " pairings read for " + yearMonth);
     List<ThinLine> lines = getAllLines(service, yearMonth);
     logger.info(lines.size() + " lines read for " + yearMonth);
-    Map<String, ThinLine> linesByName = new HashMap<>();
 
     Schedule priorMonthSchedule = getSchedule(service, yearMonth.minusMonths(1));
     Map<LocalDate, Period> carryInCredit = priorMonthSchedule
@@ -109,39 +108,38 @@ public class MonthlyBidder {
     Set<LocalDate> vacationDays = bidConfig.getVacationDateList()
         .stream().map(s -> LocalDate.parse(s)).collect(Collectors.toSet());
 
-    List<LineScore> lineScores = new ArrayList<>();
-    for (ThinLine line : lines) {
-      if (line.hasReserve()) {
-        continue;
-      }
-      linesByName.put(line.getLineName(), line);
-      Map<PairingKey, Trip> trips = new HashMap<>();
-      for (PairingKey key : line.getPairingKeys()) {
-        logger.fine("Line " + line.getLineName() + " key " + key);
-        trips.put(key,
-            Preconditions.checkNotNull(pairings.get(key),
-                "Pairing not found: " + key));
-      }
-      LineScore lineScore = new LineScore(line, trips, bidConfig, carryInCredit,
-          vacationDays);
-      if (!cmdLine.desirableOnly() || lineScore.isDesirableLine()) {
-        lineScores.add(lineScore);
-      }
-    }
-    Collections.sort(lineScores, new MonthlyBidStrategy(bidConfig));
+    // Lines are scored, sorted and formatted concurrently, but always
+    // collected in the order of the serial loops they replace.
+    List<LineScore> lineScores = lines.parallelStream()
+        .filter(line -> !line.hasReserve())
+        .map(line -> scoreLine(line, pairings, carryInCredit, vacationDays))
+        .filter(lineScore -> !cmdLine.desirableOnly() || lineScore.isDesirableLine())
+        .collect(Collectors.toList());
+    new MonthlyBidStrategy(compiledBidConfig, tripScoreCache).sort(lineScores);
 
     logger.info("Computed bids:");
 
     List<LocalDate> datesInPeriod = new Calendar(yearMonth).getDatesInPeriod();
+    Map<LocalDate, Integer> dateIndex = new HashMap<>();
+    for (int i = 0; i < datesInPeriod.size(); ++i) {
+      dateIndex.put(datesInPeriod.get(i), i);
+    }
     System.out.println(header(datesInPeriod));
-    LinkedList<String> bids = new LinkedList<>();
+    Set<String> bidLineNames = new HashSet<>();
+    List<LineScore> bidLineScores = new ArrayList<>();
     for (LineScore lineScore : lineScores) {
-      if (!bids.contains(lineScore.getLineName())) {
-        bids.add(lineScore.getLineName());
-        String text = formatLine(datesInPeriod, lineScore, pairings, yearMonth);
-        System.out.println(text);
+      if (bidLineNames.add(lineScore.getLineName())) {
+        bidLineScores.add(lineScore);
       }
     }
+    List<String> texts = bidLineScores.parallelStream()
+        .map(lineScore -> formatLine(dateIndex, lineScore, pairings))
+        .collect(Collectors.toList());
+    LinkedList<String> bids = new LinkedList<>();
+    for (int i = 0; i < bidLineScores.size(); ++i) {
+      bids.add(bidLineScores.get(i).getLineName());
+      System.out.println(texts.get(i));
+    }
 
     if (cmdLine.submitBids()) {
       logger.info("Submitting bids!");
@@ -163,14 +161,27 @@ public class MonthlyBidder {
     return result.toString();
   }
 
-  private String formatLine(List<LocalDate> datesInPeriod, LineScore lineScore,
-      Map<PairingKey, Trip> allPairings, YearMonth yearMonth) {
+  private LineScore scoreLine(ThinLine line, Map<PairingKey, Trip> pairings,
+      Map<LocalDate, Period> carryInCredit, Set<LocalDate> vacationDays) {
+    Map<PairingKey, Trip> trips = new HashMap<>();
+    for (PairingKey key : line.getPairingKeys()) {
+      logger.fine("Line " + line.getLineName() + " key " + key);
+      trips.put(key,
+          Preconditions.checkNotNull(pairings.get(key),
+              "Pairing not found: " + key));
+    }
+    return new LineScore(line, trips, compiledBidConfig,
+        carryInCredit, vacationDays, tripScoreCache);
+  }
+
+  private String formatLine(Map<LocalDate, Integer> dateIndex, LineScore lineScore,
+      Map<PairingKey, Trip> allPairings) {
     StringBuilder result = new StringBuilder();
     ThinLine line = lineScore.getThinLine();
 
     result.append(line.getLineName());
 
-    char dates[] = THIRTY_ONE_SPACES.substring(0, datesInPeriod.size()).toCharArray();
+    char dates[] = THIRTY_ONE_SPACES.substring(0, dateIndex.size()).toCharArray();
     List<String> supplement = new ArrayList<>();
     for (PairingKey key : line.getPairingKeys()) {
       Trip trip = allPairings.get(key);
@@ -184,12 +195,13 @@ public class MonthlyBidder {
         Section section = trip.getSections().get(i);
 
         Proto.Section proto = trip.proto.getSection(i);
-        if (datesInPeriod.contains(section.getDepartureDate())) {
+        Integer index = dateIndex.get(section.getDepartureDate());
+        if (index != null) {
           boolean isWeekend = section.getDepartureDate()
               .getDayOfWeek() == DateTimeConstants.SATURDAY
               || section.getDepartureDate().getDayOfWeek() == DateTimeConstants.SUNDAY;
           char glyph = isWeekend ? '!' : '.';
-          dates[datesInPeriod.indexOf(section.getDepartureDate())] = glyph;
+          dates[index] = glyph;
         }
         if (proto.hasLayoverAirportCode()) {
           if (layover.length() > 2) {
@@ -198,7 +210,7 @@ public class MonthlyBidder {
           layover += proto.getLayoverAirportCode();
         }
       }
-      TripScore tripScore = new TripScore(trip, bidConfig);
+      TripScore tripScore = tripScoreCache.getScore(trip, compiledBidConfig);
       layover += "/" + String.format("%4d", tripScore.getPoints());
       supplement.add(layover);
     }
@@ -226,15 +238,15 @@ public class MonthlyBidder {
       String rawPairings = service.getAllPairings(awardDomicile, rank,
           bidConfig.getRound(),
           yearMonth);
-      PairingParser pairingParser = new PairingParser(rawPairings, yearMonth,
+      pairingList = service.parseAllPairings(rawPairings, yearMonth,
           cmdLine.parseCanceled());
-      pairingList = pairingParser.parse();
     } else {
       DataReader dataReader = new DataReader();
       pairingList = dataReader.readPairings(yearMonth, awardDomicile);
     }
 
-    PairingAdapter pairingAdapter = new PairingAdapter();
+    // Stored pairings were checked when they were retrieved.
+    PairingAdapter pairingAdapter = new PairingAdapter(!cmdLine.useProto());
     Map<PairingKey, Trip> trips = new HashMap<>();
     for (Proto.Trip protoTrip : pairingList.getTripList()) {
       for (PairingOverride override : bidConfig.getPairingOverrideList()) {
@@ -272,8 +284,7 @@ public class MonthlyBidder {
     if (!cmdLine.useProto()) {
       String rawLines = service.getAllLines(awardDomicile, rank, bidConfig.getRound(),
           yearMonth);
-      LineParser lineParser = new LineParser(rawLines);
-      lineList = lineParser.parse();
+      lineList = service.parseAllLines(rawLines);
     } else {
       DataReader dataReader = new DataReader();
       lineList = dataReader.readLines(yearMonth, awardDomicile,
@@ -288,8 +299,7 @@ public class MonthlyBidder {
   private Schedule getSchedule(FlicaService service, YearMonth yearMonth)
       throws IOException, ParseException {
     String scheduleText = service.getSchedule(yearMonth);
-    ScheduleParser parser = new ScheduleParser(scheduleText);
-    Proto.Schedule proto = parser.parse();
+    Proto.Schedule proto = service.parseSchedule(scheduleText);
     ScheduleAdapter adapter = new ScheduleAdapter();
     return adapter.adapt(proto);
   }
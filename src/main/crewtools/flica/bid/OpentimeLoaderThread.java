@@ -83,9 +83,8 @@ public class OpentimeLoaderThread extends PeriodicDaemonThread {
         logger.info("Opentime not yet published");
         return WorkResult.INCOMPLETE;
       }
+      // WorkerThread wakes as soon as this is offered.
       collector.offer(new HashSet<>(trips));
-      boolean blockUntilBidPeriodOpens = initialDelay.isLongerThan(Duration.ZERO);
-      worker.run(blockUntilBidPeriodOpens);
       interval = worker.getOpentimeRefreshInterval();
       return WorkResult.COMPLETE;
     } catch (URISyntaxException | IOException | ParseException e) {
@@ -108,7 +107,8 @@ public class OpentimeLoaderThread extends PeriodicDaemonThread {
     if (replayManager.isReplaying()) {
       rawOpenTime = replayManager.getNextOpentime();
     } else {
-      rawOpenTime = service.getOpenTime(domicile, rank, round, yearMonth);
+      rawOpenTime = FlicaService.await(
+          service.getOpenTimeAsync(domicile, rank, round, yearMonth));
       replayManager.saveOpentimeForReplay(rawOpenTime);
     }
     OpenTimeParser openTimeParser = new OpenTimeParser(
@@ -71,7 +71,8 @@ public class OpentimeRequestLoaderThread extends PeriodicDaemonThread {
       if (replayManager.isReplaying()) {
         raw = replayManager.getNextRequestStatus();
       } else {
-        raw = service.getOpentimeRequests(config.getRound(), yearMonth);
+        raw = FlicaService.await(
+            service.getOpentimeRequestsAsync(config.getRound(), yearMonth));
         replayManager.saveRequestStatusForReplay(raw);
       }
       List<OpentimeRequest> requests = new OpentimeRequestParser(raw).parse();
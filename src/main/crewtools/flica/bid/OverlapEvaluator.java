@@ -19,9 +19,9 @@
 
 package crewtools.flica.bid;
 
-import java.util.Collection;
-import java.util.Collections;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Objects;
 import java.util.Set;
 import java.util.logging.Logger;
@@ -33,11 +33,11 @@ import org.joda.time.LocalTime;
 import com.google.common.base.MoreObjects;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.Ordering;
 
 import crewtools.flica.bid.OverlapEvaluator.OverlapEvaluation.Overlap;
 import crewtools.flica.pojo.Trip;
 import crewtools.rpc.Proto.BidConfig;
+import crewtools.util.DayMask;
 
 public class OverlapEvaluator {
   private final Logger logger = Logger.getLogger(OverlapEvaluator.class.getName());
@@ -86,72 +86,122 @@ public class OverlapEvaluator {
     }
   }
 
-  private final Set<LocalDate> requiredDaysOff;
+  private static final OverlapEvaluation UNDROPPABLE =
+      new OverlapEvaluation(Overlap.UNDROPPABLE);
+  private static final OverlapEvaluation DAY_OFF =
+      new OverlapEvaluation(Overlap.DAY_OFF);
+  private static final OverlapEvaluation NO_OVERLAP =
+      new OverlapEvaluation(Overlap.NO_OVERLAP);
+
   private final Set<Interval> nonTripIntervals;
   private final ReducedSchedule alteredSchedule;
   private final BidConfig bidConfig;
 
+  // Masks are all in the DayMask of the altered schedule's bid period.
+  private final DayMask dayMask;
+  private final long requiredDaysOffMask;
+  private final long nonTripMask;
+  private final List<Trip> retainedTrips;
+  private final long[] retainedTripMasks;
+  // Every day on which a proposed trip might conflict with a retained trip.
+  private final long retainedTripNeighborhood;
+
   private static final LocalTime LOCALTIME_END_OF_DAY = LocalTime.parse("23:59");
 
   public OverlapEvaluator(ReducedSchedule alteredSchedule,
       Set<LocalDate> requiredDaysOff, BidConfig bidConfig) {
     this.alteredSchedule = alteredSchedule;
     this.nonTripIntervals = alteredSchedule.getNonTripIntervals();
-    this.requiredDaysOff = requiredDaysOff;
     this.bidConfig = bidConfig;
+    this.dayMask = new DayMask(alteredSchedule.getYearMonth());
+    this.requiredDaysOffMask = dayMask.getMask(requiredDaysOff);
+
+    long nonTripMask = 0;
+    for (Interval interval : nonTripIntervals) {
+      // Widened by a day since the interval may be in another time zone.
+      LocalDate date = interval.getStart().toLocalDate().minusDays(1);
+      LocalDate last = interval.getEnd().toLocalDate().plusDays(1);
+      for (; !date.isAfter(last); date = date.plusDays(1)) {
+        if (interval.overlaps(getDayInterval(date))) {
+          nonTripMask |= dayMask.getMask(date);
+        }
+      }
+    }
+    this.nonTripMask = nonTripMask;
+
+    this.retainedTrips = new ArrayList<>(alteredSchedule.getRetainedTrips());
+    this.retainedTripMasks = new long[retainedTrips.size()];
+    long retainedTripNeighborhood = 0;
+    for (int i = 0; i < retainedTrips.size(); ++i) {
+      long mask = getMask(retainedTrips.get(i));
+      Preconditions.checkState(mask != 0);
+      retainedTripMasks[i] = mask;
+      retainedTripNeighborhood |= mask;
+    }
+    this.retainedTripNeighborhood = DayMask.spread(retainedTripNeighborhood,
+        Math.max(1, bidConfig.getMinimumNumberOfDaysBetweenTrips()));
+  }
+
+  private static Interval getDayInterval(LocalDate date) {
+    return new Interval(date.toDateTimeAtStartOfDay(),
+        date.toDateTime(LOCALTIME_END_OF_DAY));
+  }
+
+  private long getMask(Trip trip) {
+    if (dayMask.getYearMonth().equals(trip.getDayMaskYearMonth())) {
+      return trip.getDayMask();
+    }
+    return dayMask.getMask(trip.getDepartureDates());
   }
 
   /** dates are the dates of the trip we're looking at adding. */
   public OverlapEvaluation evaluate(Set<LocalDate> dates) {
-    LocalDate first = Ordering.natural().min(dates);
-    LocalDate last = Ordering.natural().max(dates);
-    // Company vacation or training.
-    Interval taskInterval = new Interval(first.toDateTimeAtStartOfDay(),
-        last.toDateTime(LOCALTIME_END_OF_DAY));
-    if (overlapsNonTrip(taskInterval)) {
-      return new OverlapEvaluation(Overlap.UNDROPPABLE);
-    }
+    return evaluate(dayMask.getMask(dates));
+  }
 
-    // Hard-and-fast days off.
-    if (overlaps(dates, requiredDaysOff)) {
-      return new OverlapEvaluation(Overlap.DAY_OFF);
+  public OverlapEvaluation evaluate(FlicaTaskWrapper task) {
+    if (dayMask.getYearMonth().equals(task.getDayMaskYearMonth())) {
+      return evaluate(task.getDayMask());
     }
+    return evaluate(task.getTaskDates());
+  }
 
-    Set<Trip> overlappedTrips = new HashSet<>();
-    for (Trip trip : alteredSchedule.getRetainedTrips()) {
-      if (overlapsDates(trip, dates)) {
-        overlappedTrips.add(trip);
-      }
-    }
-    if (!overlappedTrips.isEmpty()) {
-      return new OverlapEvaluation(Overlap.RETAINED_TRIP, overlappedTrips);
+  private OverlapEvaluation evaluate(long mask) {
+    // Company vacation or training.
+    if (DayMask.overlaps(DayMask.fill(mask), nonTripMask)) {
+      return UNDROPPABLE;
     }
-
-    return new OverlapEvaluation(Overlap.NO_OVERLAP);
+    return evaluateDays(mask);
   }
 
   public OverlapEvaluation evaluate(Trip proposedTrip) {
     // Company vacation or training.
     if (overlapsNonTrip(proposedTrip.getInterval())) {
-      return new OverlapEvaluation(Overlap.UNDROPPABLE);
+      return UNDROPPABLE;
     }
+    return evaluateDays(getMask(proposedTrip));
+  }
 
+  private OverlapEvaluation evaluateDays(long mask) {
     // Hard-and-fast days off.
-    if (overlaps(proposedTrip.getDepartureDates(), requiredDaysOff)) {
-      return new OverlapEvaluation(Overlap.DAY_OFF);
+    if (DayMask.overlaps(mask, requiredDaysOffMask)) {
+      return DAY_OFF;
     }
 
+    if (!DayMask.overlaps(mask, retainedTripNeighborhood)) {
+      return NO_OVERLAP;
+    }
     Set<Trip> overlappedTrips = new HashSet<>();
-    for (Trip trip : alteredSchedule.getRetainedTrips()) {
-      if (overlapsDates(trip, proposedTrip.getDepartureDates())) {
-        overlappedTrips.add(trip);
+    for (int i = 0; i < retainedTripMasks.length; ++i) {
+      if (overlapsDates(retainedTripMasks[i], mask)) {
+        overlappedTrips.add(retainedTrips.get(i));
       }
     }
     if (!overlappedTrips.isEmpty()) {
       return new OverlapEvaluation(Overlap.RETAINED_TRIP, overlappedTrips);
     }
 
-    return new OverlapEvaluation(Overlap.NO_OVERLAP);
+    return NO_OVERLAP;
   }
 
   private boolean overlapsNonTrip(Interval interval) {
@@ -167,44 +217,32 @@ public class OverlapEvaluator {
 
   // TODO use Interval instead.
   // Returns true if the potential trip dates conflict with a scheduled trip.
-  private boolean overlapsDates(Trip scheduledTrip, Set<LocalDate> potentialTripDates) {
-    // Add the day before and after a scheduled trip.
-    // We don't want to end up with adjacent trips.
-    Set<LocalDate> scheduledDates = new HashSet<>(
-        scheduledTrip.getDepartureDates());
-    Preconditions.checkState(!scheduledDates.isEmpty());
+  private boolean overlapsDates(long scheduledDates, long potentialTripDates) {
     // Pure overlap.
     // TODO: this does not account for time of day.
     // Hence the comment above to use intervals.
-    if (overlaps(scheduledDates, potentialTripDates)) {
+    if (DayMask.overlaps(scheduledDates, potentialTripDates)) {
       return true;
     }
 
     // Check for abutment within N days of existing trip.
     if (bidConfig.getMinimumNumberOfDaysBetweenTrips() > 0) {
-      Set<LocalDate> extendedScheduledDates = new HashSet<>(scheduledDates);
-      for (int i = 0; i < bidConfig.getMinimumNumberOfDaysBetweenTrips(); ++i) {
-        extendedScheduledDates
-            .add(Ordering.natural().min(extendedScheduledDates).minusDays(1));
-        extendedScheduledDates
-            .add(Ordering.natural().max(extendedScheduledDates).plusDays(1));
-      }
-      if (overlaps(extendedScheduledDates, potentialTripDates)) {
+      long extendedScheduledDates = DayMask.extend(scheduledDates,
+          bidConfig.getMinimumNumberOfDaysBetweenTrips());
+      if (DayMask.overlaps(extendedScheduledDates, potentialTripDates)) {
         return true;
       }
     }
 
-    LocalDate priorDate = Ordering.natural().min(scheduledDates).minusDays(1);
-    LocalDate nextDate = Ordering.natural().max(scheduledDates).plusDays(1);
-    if (potentialTripDates.contains(priorDate)
-        || potentialTripDates.contains(nextDate)) {
-      return scheduledDates.size() + potentialTripDates.size() > MAX_DAYS_IN_A_ROW;
+    // Add the day before and after a scheduled trip.
+    // We don't want to end up with adjacent trips.
+    long adjacentDates = DayMask.getDayBefore(scheduledDates)
+        | DayMask.getDayAfter(scheduledDates);
+    if (DayMask.overlaps(adjacentDates, potentialTripDates)) {
+      return DayMask.getNumDays(scheduledDates)
+          + DayMask.getNumDays(potentialTripDates) > MAX_DAYS_IN_A_ROW;
     } else {
       return false;
     }
   }
-
-  private boolean overlaps(Collection<LocalDate> a, Collection<LocalDate> b) {
-    return !Collections.disjoint(a, b);
-  }
 }
@@ -19,19 +19,14 @@
 
 package crewtools.flica.bid;
 
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashSet;
-import java.util.Iterator;
-import java.util.List;
 import java.util.Objects;
 import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import org.joda.time.LocalDate;
-
 import crewtools.flica.pojo.PairingKey;
+import crewtools.util.DayMask;
 import crewtools.util.Period;
 
 public class ProposedSchedule {
@@ -51,6 +46,10 @@ public class ProposedSchedule {
     this.numWorkingDays = numWorkingDays;
   }
 
+  public Set<FlicaTaskWrapper> getTasks() {
+    return tasks;
+  }
+
   public Set<PairingKey> getAddedKeys() {
     Set<PairingKey> keys = new HashSet<>();
     for (FlicaTaskWrapper task : tasks) {
@@ -71,42 +70,48 @@ public class ProposedSchedule {
     return reducedSchedule.getNumWorkingDays() + numWorkingDays;
   }
 
-  private static final Period SIXTY_FIVE = Period.hours(65);
-  private static final int MAX_CONSECUTIVE = 5;
+  static final Period SIXTY_FIVE = Period.hours(65);
+  static final int MAX_CONSECUTIVE = 5;
 
   // Careful. Called product of power sets.
   public boolean isValid(OverlapEvaluator evaluator) {
     // CHECK: check that we have 65.
-    Period credit = reducedSchedule.getCredit();
-    String debugTaskCredit = "";
+    int credit = reducedSchedule.getCredit().getTotalMinutes();
     for (FlicaTaskWrapper task : tasks) {
-      credit = credit.plus(task.getCredit());
-      debugTaskCredit += String.format("%s@%s,", task.getPairingName(), task.getCredit());
+      credit += task.getCredit().getTotalMinutes();
     }
-    if (credit.isLessThan(SIXTY_FIVE)) {
-      logger.fine("Invalid: credit is " + credit);
+    if (credit < SIXTY_FIVE.getTotalMinutes()) {
+      if (logger.isLoggable(Level.FINE)) {
+        logger.fine("Invalid: credit is " + Period.minutes(credit));
+      }
       return false;
-    } else {
+    } else if (logger.isLoggable(Level.FINE)) {
+      String debugTaskCredit = "";
+      for (FlicaTaskWrapper task : tasks) {
+        debugTaskCredit += String.format("%s@%s,", task.getPairingName(),
+            task.getCredit());
+      }
       logger.fine(
-          reducedSchedule.getDebugCredit() + " plus " + debugTaskCredit + " = " + credit);
+          reducedSchedule.getDebugCredit() + " plus " + debugTaskCredit + " = "
+              + Period.minutes(credit));
     }
 
     // CHECK: check that the task combination doesn't overlap.
     int numTaskWorkingDays = 0;
-    Set<LocalDate> allDates = new HashSet<>();
+    long allDates = 0;
     for (FlicaTaskWrapper task : tasks) {
       numTaskWorkingDays += task.getNumDays();
-      allDates.addAll(task.getTaskDates());
+      allDates |= task.getDayMask();
     }
-    if (allDates.size() != numTaskWorkingDays) {
+    if (DayMask.getNumDays(allDates) != numTaskWorkingDays) {
       // Tasks overlap with each other. Forget this combination.
       if (logger.isLoggable(Level.FINE)) {
-        logger.fine("Invalid: task overlap (allDates=" + allDates + "; "
+        logger.fine("Invalid: task overlap (tasks=" + tasks + "; "
             + "numTaskWorkingDays=" + numTaskWorkingDays);
       }
       return false;
     }
-    if (exceedsConsecutive(MAX_CONSECUTIVE, allDates)) {
+    if (DayMask.getLongestRun(allDates) > MAX_CONSECUTIVE) {
       logger.fine("Invalid: exceeds consecutive");
       return false;
     }
@@ -120,34 +125,6 @@ public class ProposedSchedule {
     return true;
   }
 
-  boolean exceedsConsecutive(int limit, Set<LocalDate> dates) {
-    if (dates.size() <= limit) {
-      return false;
-    }
-    List<LocalDate> orderedDates = new ArrayList<>(dates);
-    Collections.sort(orderedDates);
-    Iterator<LocalDate> it = orderedDates.iterator();
-    LocalDate currentDate = it.next();
-    LocalDate endDate = orderedDates.get(orderedDates.size() - 1);
-    int numConsecutive = 0;
-    while (!currentDate.isAfter(endDate)) {
-      if (++numConsecutive > limit) {
-        return true;
-      }
-      currentDate = currentDate.plusDays(1);
-      if (dates.contains(currentDate)) {
-        continue;
-      } else {
-        if (!it.hasNext()) {
-          return false;
-        }
-        currentDate = it.next();
-        numConsecutive = 0;
-      }
-    }
-    return false;
-  }
-
   @Override
   public boolean equals(Object o) {
     if (o == null || !(o instanceof ProposedSchedule)) {
@@ -26,6 +26,7 @@ import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
 import org.joda.time.Interval;
+import org.joda.time.YearMonth;
 
 import com.google.common.base.Preconditions;
 
@@ -48,7 +49,7 @@ public class ReducedSchedule {
   private final Set<PairingKey> retainedKeys;
 
   public ReducedSchedule(Schedule schedule, Set<PairingKey> retainedTripKeys,
-      BidConfig bidConfig) {
+      BidConfig bidConfig, TripScoreCache tripScoreCache) {
     this.schedule = schedule;
     this.retainedKeys = retainedTripKeys;
 
@@ -60,7 +61,7 @@ public class ReducedSchedule {
     this.numWorkingDays = numWorkingDays;
 
     this.retainedTrips = new HashSet<>();
-    Period credit = schedule.getNonTripCreditInMonth();
+    int credit = schedule.getNonTripCreditInMonth().getTotalMinutes();
     int score = 0;
 
     String debugCredit = "";
@@ -69,12 +70,12 @@ public class ReducedSchedule {
       Preconditions.checkNotNull(trip);
       retainedTrips.add(trip);
       Period creditInMonth = schedule.getTripCreditInMonth().get(retainedTripKey);
-      credit = credit.plus(creditInMonth);
+      credit += creditInMonth.getTotalMinutes();
       debugCredit += retainedTripKey.getPairingName() + "@" + creditInMonth + ",";
-      score += new TripScore(trip, bidConfig).getPoints();
+      score += tripScoreCache.getPoints(trip, bidConfig);
     }
     this.debugCredit = debugCredit;
-    this.credit = credit;
+    this.credit = Period.minutes(credit);
     this.score = score;
 
     this.dropKeys = new HashSet<>();
@@ -85,6 +86,10 @@ public class ReducedSchedule {
     }
   }
 
+  public YearMonth getYearMonth() {
+    return schedule.yearMonth;
+  }
+
   public int getOriginalNumWorkingDays() {
     return schedule.getTotalNumWorkDays();
   }
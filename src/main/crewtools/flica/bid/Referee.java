@@ -80,25 +80,25 @@ public class Referee {
   public Duration getInitialDelay(Clock clock) {
     switch (bidConfig.getRound()) {
       case FlicaService.BID_CA_SAP: {
-        DateTime biddingStartTime = new DateTime().withTimeAtStartOfDay()
+        DateTime biddingStartTime = clock.now().withTimeAtStartOfDay()
             .withDayOfMonth(14)
             .withHourOfDay(17);
         return new Duration(clock.now(), biddingStartTime);
       }
       case FlicaService.BID_FO_SAP: {
-        DateTime biddingStartTime = new DateTime().withTimeAtStartOfDay()
+        DateTime biddingStartTime = clock.now().withTimeAtStartOfDay()
             .withDayOfMonth(16)
             .withHourOfDay(19);
         return new Duration(clock.now(), biddingStartTime);
       }
       case FlicaService.BID_CA_SBB: {
-        DateTime biddingStartTime = new DateTime().withTimeAtStartOfDay()
+        DateTime biddingStartTime = clock.now().withTimeAtStartOfDay()
             .withDayOfMonth(24).withHourOfDay(17);
         return new Duration(clock.now(), biddingStartTime);
       }
       case FlicaService.BID_FIRST_COME:
         // 28th at 5pm until 1st at 5pm.
-        DateTime otOpens = new DateTime().withTimeAtStartOfDay().withDayOfMonth(28)
+        DateTime otOpens = clock.now().withTimeAtStartOfDay().withDayOfMonth(28)
             .withHourOfDay(17);
         // return new Duration(clock.now(), otOpens);
         return Duration.ZERO;
@@ -0,0 +1,161 @@
+/**
+ * Copyright 2020 Iron City Software LLC
+ *
+ * This file is part of CrewTools.
+ *
+ * CrewTools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CrewTools is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CrewTools.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package crewtools.flica.bid;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.logging.Logger;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.Duration;
+import org.joda.time.YearMonth;
+
+import com.google.common.base.Preconditions;
+
+import crewtools.flica.BaseFlicaConnection;
+import crewtools.flica.FlicaService;
+import crewtools.rpc.Proto.BidConfig;
+import crewtools.test.FakeClock;
+import crewtools.util.FileUtils;
+
+/**
+ * Replays a session recorded by AutoBidder as fast as it will run.
+ *
+ * Rather than waiting on their timers, the loaders and the worker all run
+ * on this thread, in the order the snapshots were recorded, with a
+ * FakeClock set to the time of each snapshot. Every swap the worker would
+ * have asked for is written to a transcript with that time, so replaying
+ * a session again after a solver change shows exactly what changed.
+ *
+ * Whether to wait for the bid period to open is decided at each snapshot,
+ * so a session recorded across the opening replays both sides of it.
+ */
+public class ReplayHarness implements Closeable {
+  private final Logger logger = Logger.getLogger(ReplayHarness.class.getName());
+
+  // The bid period opens at a time of day in FLICA's time zone, whatever
+  // the zone of the machine replaying.
+  private static final DateTimeZone EASTERN = DateTimeZone.forID("America/New_York");
+
+  private final ReplayManager replayManager;
+  private final FakeClock clock;
+  private final Worker worker;
+  private final ScheduleLoaderThread scheduleLoader;
+  private final OpentimeLoaderThread opentimeLoader;
+  private final OpentimeRequestLoaderThread requestStatusLoader;
+  private final Referee referee;
+
+  public static void main(String args[]) throws Exception {
+    if (args.length < 1) {
+      System.err.println("replayHarness replayDir [transcript]");
+      System.exit(-1);
+    }
+    try (ReplayHarness harness = new ReplayHarness(FileUtils.readBidConfig(), args[0]);
+        PrintWriter transcript = args.length > 1
+            ? new PrintWriter(Files.newBufferedWriter(Paths.get(args[1])))
+            : new PrintWriter(System.out)) {
+      harness.run(transcript);
+    }
+  }
+
+  public ReplayHarness(BidConfig bidConfig, String replayDir) throws Exception {
+    // Nothing is requested while replaying, so the service never connects.
+    this(bidConfig, replayDir,
+        new FlicaService(new BaseFlicaConnection("replay", "")));
+  }
+
+  ReplayHarness(BidConfig bidConfig, String replayDir, FlicaService service)
+      throws Exception {
+    YearMonth yearMonth = YearMonth.parse(bidConfig.getYearMonth());
+    this.replayManager = new ReplayManager(true, replayDir);
+    long start = getNextTimestamp();
+    Preconditions.checkState(start >= 0, "Nothing recorded in " + replayDir);
+    this.clock = new FakeClock(new DateTime(start, EASTERN));
+
+    TripDatabase tripDatabase = new TripDatabase(
+        service, false, yearMonth, bidConfig, replayManager);
+    Collector collector = new Collector();
+    this.referee = new Referee(bidConfig);
+    this.worker = new Worker(bidConfig, yearMonth, collector, service,
+        clock, tripDatabase, replayManager, false, false);
+    this.scheduleLoader = new ScheduleLoaderThread(
+        referee.getScheduleRefreshInterval(), yearMonth,
+        collector, tripDatabase, service, replayManager);
+    this.opentimeLoader = new OpentimeLoaderThread(yearMonth, Duration.ZERO,
+        service, collector, bidConfig, worker, replayManager);
+    this.requestStatusLoader = new OpentimeRequestLoaderThread(yearMonth,
+        Duration.ZERO, referee.getOpentimeRequestRefreshInterval(),
+        service, collector, bidConfig, replayManager);
+  }
+
+  /** Replays every snapshot and returns the number of swaps. */
+  public int run(PrintWriter transcript) throws Exception {
+    int numSnapshots = 0;
+    int numSwaps = 0;
+    long timestamp;
+    while ((timestamp = getNextTimestamp()) >= 0) {
+      clock.setNow(new DateTime(timestamp, EASTERN));
+      // Snapshots recorded in the same millisecond are taken in this order.
+      if (timestamp == replayManager.getNextScheduleTimestamp()) {
+        scheduleLoader.doPeriodicWork();
+      } else if (timestamp == replayManager.getNextRequestStatusTimestamp()) {
+        requestStatusLoader.doPeriodicWork();
+      } else {
+        opentimeLoader.doPeriodicWork();
+      }
+      numSnapshots++;
+      boolean blockUntilBidPeriodOpens =
+          referee.getInitialDelay(clock).isLongerThan(Duration.ZERO);
+      List<Transition> transitions = worker.runIfReady(blockUntilBidPeriodOpens);
+      if (transitions != null) {
+        for (Transition transition : transitions) {
+          transcript.println(clock.now().withZone(DateTimeZone.UTC) + " " + transition);
+          numSwaps++;
+        }
+      }
+    }
+    transcript.flush();
+    logger.info("Replayed " + numSnapshots + " snapshots into " + numSwaps + " swaps");
+    return numSwaps;
+  }
+
+  @Override
+  public void close() throws IOException {
+    replayManager.close();
+  }
+
+  private long getNextTimestamp() {
+    long next = -1;
+    for (long timestamp : new long[] {
+        replayManager.getNextScheduleTimestamp(),
+        replayManager.getNextRequestStatusTimestamp(),
+        replayManager.getNextOpentimeTimestamp() }) {
+      if (timestamp >= 0 && (next < 0 || timestamp < next)) {
+        next = timestamp;
+      }
+    }
+    return next;
+  }
+}
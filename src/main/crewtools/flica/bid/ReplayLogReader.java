@@ -0,0 +1,315 @@
+/**
+ * Copyright 2020 Iron City Software LLC
+ *
+ * This file is part of CrewTools.
+ *
+ * CrewTools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CrewTools is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CrewTools.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package crewtools.flica.bid;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads a replay log written by ReplayLogWriter, in timestamp order.
+ *
+ * A log is a directory of segments, each named by the zero-padded
+ * timestamp of its first record. A segment is a sequence of records:
+ * timestamp (8 bytes), CRC32 of the deflated text (4), text length (4),
+ * deflated length (4) and the deflated UTF-8 text. Next to it, an index
+ * holds a timestamp and offset pair for the first record of the segment
+ * and then one record in every INDEX_INTERVAL_BYTES or so.
+ *
+ * Segments are memory mapped. A torn record at the end of a segment, as
+ * left by a crash, ends the segment: one cut short, or a zeroed or corrupt
+ * one followed by nothing but zeros. A zeroed or corrupt record anywhere
+ * else is an error.
+ *
+ * The Inflater is only created once a record is read, and is ended by
+ * close().
+ */
+public class ReplayLogReader implements Closeable {
+  private final Logger logger = Logger.getLogger(ReplayLogReader.class.getName());
+
+  static final String SEGMENT_SUFFIX = ".log";
+  static final String INDEX_SUFFIX = ".idx";
+  static final int HEADER_BYTES = 20;
+  static final int INDEX_ENTRY_BYTES = 16;
+
+  private final Path dir;
+  private Inflater inflater;
+  private List<Long> segments;
+  private int segmentIndex = -1;
+  private MappedByteBuffer segment;
+  private long lastTimestamp = -1;
+  // The position in segment of the record hasRecord() last checked, so
+  // that peeking at a record and then reading it checks its CRC once.
+  private int checkedPosition = -1;
+
+  public ReplayLogReader(Path dir) throws IOException {
+    this.dir = dir;
+    this.segments = listSegments(dir);
+  }
+
+  static String getSegmentName(long firstTimestamp) {
+    return String.format("%019d", firstTimestamp);
+  }
+
+  static List<Long> listSegments(Path dir) throws IOException {
+    if (!Files.isDirectory(dir)) {
+      return Collections.emptyList();
+    }
+    try (Stream<Path> paths = Files.list(dir)) {
+      return paths
+          .map(p -> p.getFileName().toString())
+          .filter(name -> name.endsWith(SEGMENT_SUFFIX))
+          .map(name -> Long.parseLong(
+              name.substring(0, name.length() - SEGMENT_SUFFIX.length())))
+          .sorted()
+          .collect(Collectors.toList());
+    }
+  }
+
+  public boolean isEmpty() {
+    return segments.isEmpty();
+  }
+
+  /** Returns the timestamp of the record last returned by next(), or -1. */
+  public long getLastTimestamp() {
+    return lastTimestamp;
+  }
+
+  /** Returns the text of the next record, or null at the end of the log. */
+  public String next() throws IOException {
+    return peekTimestamp() < 0 ? null : readRecord();
+  }
+
+  /**
+   * Returns the timestamp of the record next() would return, without
+   * reading it, or -1 at the end of the log.
+   */
+  public long peekTimestamp() throws IOException {
+    while (true) {
+      if (segment != null && hasRecord()) {
+        return segment.getLong(segment.position());
+      }
+      if (!openSegment(segmentIndex + 1)) {
+        return -1;
+      }
+    }
+  }
+
+  /**
+   * Positions the reader so that next() returns the first record with a
+   * timestamp at or after timestamp.
+   */
+  public void seek(long timestamp) throws IOException {
+    segments = listSegments(dir);
+    // The last segment starting before timestamp, as the one before a
+    // segment starting at timestamp may end with records at timestamp.
+    int index = Collections.binarySearch(segments, timestamp);
+    index = Math.max(0, index >= 0 ? index - 1 : -index - 2);
+    if (!openSegment(index)) {
+      return;
+    }
+    segment.position((int) findIndexedPosition(index, timestamp));
+    // A segment may be named a little after its first record, so keep
+    // looking in the following segments.
+    do {
+      while (hasRecord()) {
+        int start = segment.position();
+        long recordTimestamp = segment.getLong(start);
+        if (recordTimestamp >= timestamp) {
+          return;
+        }
+        segment.position(start + HEADER_BYTES + segment.getInt(start + 16));
+        lastTimestamp = recordTimestamp;
+      }
+    } while (openSegment(segmentIndex + 1));
+  }
+
+  /** Returns the timestamp of the last record in the log, or -1. */
+  public long readLastTimestamp() throws IOException {
+    segments = listSegments(dir);
+    // The last segment may be empty if a writer stopped before appending.
+    for (int i = segments.size() - 1; i >= 0; --i) {
+      openSegment(i);
+      segment.position((int) findIndexedPosition(i, Long.MAX_VALUE));
+      long last = -1;
+      while (hasRecord()) {
+        int start = segment.position();
+        last = segment.getLong(start);
+        segment.position(start + HEADER_BYTES + segment.getInt(start + 16));
+      }
+      if (last >= 0) {
+        return last;
+      }
+    }
+    return -1;
+  }
+
+  @Override
+  public void close() {
+    if (inflater != null) {
+      inflater.end();
+      inflater = null;
+    }
+    segment = null;
+  }
+
+  private boolean openSegment(int index) throws IOException {
+    if (index >= segments.size()) {
+      // A log being recorded may have grown.
+      segments = listSegments(dir);
+      if (index >= segments.size()) {
+        return false;
+      }
+    }
+    Path path = dir.resolve(getSegmentName(segments.get(index)) + SEGMENT_SUFFIX);
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+    segmentIndex = index;
+    checkedPosition = -1;
+    return true;
+  }
+
+  // The offset of the last indexed record before timestamp, or 0.
+  private long findIndexedPosition(int index, long timestamp) throws IOException {
+    Path path = dir.resolve(getSegmentName(segments.get(index)) + INDEX_SUFFIX);
+    if (!Files.exists(path)) {
+      return 0;
+    }
+    ByteBuffer entries = ByteBuffer.wrap(Files.readAllBytes(path));
+    int low = 0;
+    int high = entries.limit() / INDEX_ENTRY_BYTES - 1;
+    long position = 0;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      if (entries.getLong(mid * INDEX_ENTRY_BYTES) < timestamp) {
+        position = entries.getLong(mid * INDEX_ENTRY_BYTES + 8);
+        low = mid + 1;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return position <= segment.limit() ? position : 0;
+  }
+
+  /**
+   * Checks that a whole, uncorrupted record starts at the current position,
+   * and skips to the end of the segment if a torn one does.
+   */
+  private boolean hasRecord() throws IOException {
+    int start = segment.position();
+    if (start == checkedPosition) {
+      return true;
+    }
+    if (!segment.hasRemaining()) {
+      return false;
+    }
+    if (segment.remaining() < HEADER_BYTES) {
+      return skipTornTail();
+    }
+    int rawLength = segment.getInt(start + 12);
+    int length = segment.getInt(start + 16);
+    if (rawLength < 0 || length < 0 || length > segment.remaining() - HEADER_BYTES) {
+      return skipTornTail();
+    }
+    int end = start + HEADER_BYTES + length;
+    // Even an empty text deflates to a few bytes, so this is a zeroed header.
+    if (length == 0) {
+      if (isZeroFrom(start)) {
+        return skipTornTail();
+      }
+      throw new IOException("Zeroed record at offset " + start + " of segment "
+          + getSegmentName(segments.get(segmentIndex)) + " in " + dir);
+    }
+    ByteBuffer compressed = segment.duplicate();
+    compressed.position(start + HEADER_BYTES);
+    compressed.limit(end);
+    CRC32 crc32 = new CRC32();
+    crc32.update(compressed);
+    if ((int) crc32.getValue() != segment.getInt(start + 8)) {
+      if (isZeroFrom(end)) {
+        return skipTornTail();
+      }
+      throw new IOException("Corrupt record at " + segment.getLong(start)
+          + " in segment " + getSegmentName(segments.get(segmentIndex)) + " in " + dir);
+    }
+    checkedPosition = start;
+    return true;
+  }
+
+  // Whether the segment holds nothing but zeros from position on.
+  private boolean isZeroFrom(int position) {
+    for (int i = position; i < segment.limit(); ++i) {
+      if (segment.get(i) != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private boolean skipTornTail() {
+    logger.warning("Ignoring " + segment.remaining() + " bytes at the end of segment "
+        + getSegmentName(segments.get(segmentIndex)) + " in " + dir);
+    segment.position(segment.limit());
+    return false;
+  }
+
+  // Reads the record hasRecord() has checked.
+  private String readRecord() throws IOException {
+    long timestamp = segment.getLong();
+    segment.getInt();  // The CRC
+    byte raw[] = new byte[segment.getInt()];
+    byte compressed[] = new byte[segment.getInt()];
+    segment.get(compressed);
+    if (inflater == null) {
+      inflater = new Inflater();
+    }
+    inflater.reset();
+    inflater.setInput(compressed);
+    try {
+      int length = 0;
+      while (length < raw.length && !inflater.finished()) {
+        int inflated = inflater.inflate(raw, length, raw.length - length);
+        if (inflated == 0 && inflater.needsInput()) {
+          throw new DataFormatException("Record is shorter than its length");
+        }
+        length += inflated;
+      }
+    } catch (DataFormatException e) {
+      throw new IOException("Corrupt record at " + timestamp + " in " + dir, e);
+    }
+    lastTimestamp = timestamp;
+    return new String(raw, StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,167 @@
+/**
+ * Copyright 2020 Iron City Software LLC
+ *
+ * This file is part of CrewTools.
+ *
+ * CrewTools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CrewTools is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CrewTools.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package crewtools.flica.bid;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Appends timestamped text records to a replay log. See ReplayLogReader
+ * for the format. Timestamps never go backwards: a record earlier than
+ * the last one is given the last one's timestamp.
+ *
+ * Opening an existing log starts a new segment, so a segment torn by a
+ * crash is never appended to.
+ */
+public class ReplayLogWriter implements Closeable {
+  static final long DEFAULT_SEGMENT_BYTES = 64L << 20;
+  static final long DEFAULT_INDEX_INTERVAL_BYTES = 1L << 20;
+
+  private final Path dir;
+  private final long segmentBytes;
+  private final long indexIntervalBytes;
+  private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+  private final byte buffer[] = new byte[64 * 1024];
+
+  private FileChannel segment;
+  private FileChannel index;
+  private long lastIndexedPosition;
+  private long lastTimestamp;
+  private long lastSegmentName = -1;
+  private boolean isClosed;
+
+  public ReplayLogWriter(Path dir) throws IOException {
+    this(dir, DEFAULT_SEGMENT_BYTES, DEFAULT_INDEX_INTERVAL_BYTES);
+  }
+
+  ReplayLogWriter(Path dir, long segmentBytes, long indexIntervalBytes)
+      throws IOException {
+    this.dir = dir;
+    this.segmentBytes = segmentBytes;
+    this.indexIntervalBytes = indexIntervalBytes;
+    Files.createDirectories(dir);
+    // Only reads record headers, so the reader never creates an Inflater.
+    try (ReplayLogReader reader = new ReplayLogReader(dir)) {
+      this.lastTimestamp = reader.readLastTimestamp();
+    }
+    for (long name : ReplayLogReader.listSegments(dir)) {
+      lastSegmentName = Math.max(lastSegmentName, name);
+    }
+  }
+
+  public synchronized void append(long timestamp, String text) throws IOException {
+    if (isClosed) {
+      throw new IOException("Replay log " + dir + " is closed");
+    }
+    timestamp = Math.max(timestamp, lastTimestamp);
+    byte raw[] = text.getBytes(StandardCharsets.UTF_8);
+    byte compressed[] = deflate(raw);
+    int recordBytes = ReplayLogReader.HEADER_BYTES + compressed.length;
+    if (segment == null
+        || (segment.position() > 0 && segment.position() + recordBytes > segmentBytes)) {
+      openSegment(timestamp);
+    }
+    CRC32 crc32 = new CRC32();
+    crc32.update(compressed);
+    ByteBuffer record = ByteBuffer.allocate(recordBytes);
+    record.putLong(timestamp);
+    record.putInt((int) crc32.getValue());
+    record.putInt(raw.length);
+    record.putInt(compressed.length);
+    record.put(compressed);
+    record.flip();
+    long position = segment.position();
+    writeFully(segment, record);
+    if (position == 0 || position - lastIndexedPosition >= indexIntervalBytes) {
+      ByteBuffer entry = ByteBuffer.allocate(ReplayLogReader.INDEX_ENTRY_BYTES);
+      entry.putLong(timestamp);
+      entry.putLong(position);
+      entry.flip();
+      writeFully(index, entry);
+      lastIndexedPosition = position;
+    }
+    lastTimestamp = timestamp;
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    if (isClosed) {
+      return;
+    }
+    isClosed = true;
+    try {
+      closeSegment();
+    } finally {
+      deflater.end();
+    }
+  }
+
+  // Segment names must increase, so a log reopened within the same
+  // millisecond names its new segment after the old one.
+  private void openSegment(long firstTimestamp) throws IOException {
+    closeSegment();
+    lastSegmentName = Math.max(firstTimestamp, lastSegmentName + 1);
+    String name = ReplayLogReader.getSegmentName(lastSegmentName);
+    segment = FileChannel.open(dir.resolve(name + ReplayLogReader.SEGMENT_SUFFIX),
+        StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+    index = FileChannel.open(dir.resolve(name + ReplayLogReader.INDEX_SUFFIX),
+        StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+    lastIndexedPosition = 0;
+  }
+
+  private void closeSegment() throws IOException {
+    if (segment != null) {
+      try {
+        segment.close();
+      } finally {
+        index.close();
+        segment = null;
+        index = null;
+      }
+    }
+  }
+
+  private byte[] deflate(byte raw[]) {
+    deflater.reset();
+    deflater.setInput(raw);
+    deflater.finish();
+    ByteArrayOutputStream output = new ByteArrayOutputStream(raw.length / 4 + 64);
+    while (!deflater.finished()) {
+      output.write(buffer, 0, deflater.deflate(buffer));
+    }
+    return output.toByteArray();
+  }
+
+  private static void writeFully(FileChannel channel, ByteBuffer buffer)
+      throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+}
@@ -19,24 +19,32 @@
 
 package crewtools.flica.bid;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
 import java.util.Collections;
-import java.util.Optional;
-import java.util.function.Predicate;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.joda.time.YearMonth;
 
 import crewtools.flica.Proto;
 import crewtools.flica.pojo.PairingKey;
 
-public class ReplayManager {
+/**
+ * Records the opentime, schedule and request status snapshots of a session
+ * to replay logs, or replays them in order. Pairings are kept as files by
+ * key. Closing the manager closes the logs.
+ */
+public class ReplayManager implements Closeable {
   private static final Logger logger = Logger.getLogger(ReplayManager.class.getName());
 
   private final Path BASE_DIR = Paths.get(
@@ -48,9 +56,12 @@ public class ReplayManager {
   private Path REQUEST_STATUS_DIR;
   private Path SWAP_RECORD;
 
-  private long lastOpentimeTimestamp = -1;
-  private long lastScheduleTimestamp = -1;
-  private long lastRequestStatusTimestamp = -1;
+  private ReplayLogReader opentimeReader;
+  private ReplayLogReader scheduleReader;
+  private ReplayLogReader requestStatusReader;
+  private ReplayLogWriter opentimeWriter;
+  private ReplayLogWriter scheduleWriter;
+  private ReplayLogWriter requestStatusWriter;
 
   private final boolean isReplaying;
 
@@ -76,81 +87,122 @@ public class ReplayManager {
     SCHEDULE_DIR = REPLAY_DIR.resolve("schedule");
     PAIRING_DIR = REPLAY_DIR.resolve("pairings");
     REQUEST_STATUS_DIR = REPLAY_DIR.resolve("request-status");
-    if (!isReplaying) {
-      try {
-        Files.createDirectories(OPENTIME_DIR);
-        Files.createDirectories(SCHEDULE_DIR);
+    try {
+      if (isReplaying) {
+        opentimeReader = openForReplay(OPENTIME_DIR);
+        scheduleReader = openForReplay(SCHEDULE_DIR);
+        requestStatusReader = openForReplay(REQUEST_STATUS_DIR);
+      } else {
         Files.createDirectories(PAIRING_DIR);
-        Files.createDirectories(REQUEST_STATUS_DIR);
-      } catch (IOException ioe) {
-        logger.log(Level.WARNING, "Error creating directories", ioe);
+        opentimeWriter = new ReplayLogWriter(OPENTIME_DIR);
+        scheduleWriter = new ReplayLogWriter(SCHEDULE_DIR);
+        requestStatusWriter = new ReplayLogWriter(REQUEST_STATUS_DIR);
       }
-    }
-    if (!Files.exists(SWAP_RECORD)) {
-      Files.createFile(SWAP_RECORD);
+      if (!Files.exists(SWAP_RECORD)) {
+        Files.createFile(SWAP_RECORD);
+      }
+    } catch (IOException | RuntimeException e) {
+      // Rather than failing on every snapshot later.
+      try {
+        close();
+      } catch (IOException closeError) {
+        e.addSuppressed(closeError);
+      }
+      throw e;
     }
     this.isReplaying = isReplaying;
   }
 
+  @Override
+  public void close() throws IOException {
+    for (ReplayLogReader reader : new ReplayLogReader[] {
+        opentimeReader, scheduleReader, requestStatusReader }) {
+      if (reader != null) {
+        reader.close();
+      }
+    }
+    IOException error = null;
+    for (ReplayLogWriter writer : new ReplayLogWriter[] {
+        opentimeWriter, scheduleWriter, requestStatusWriter }) {
+      try {
+        if (writer != null) {
+          writer.close();
+        }
+      } catch (IOException e) {
+        if (error == null) {
+          error = e;
+        } else {
+          error.addSuppressed(e);
+        }
+      }
+    }
+    if (error != null) {
+      throw error;
+    }
+  }
+
   public boolean isReplaying() {
     return isReplaying;
   }
 
+  /**
+   * Returns when the next opentime snapshot was recorded, in milliseconds
+   * since the epoch, or -1 if there are no more.
+   */
+  public long getNextOpentimeTimestamp() {
+    return peekTimestamp(opentimeReader);
+  }
+
+  public long getNextScheduleTimestamp() {
+    return peekTimestamp(scheduleReader);
+  }
+
+  public long getNextRequestStatusTimestamp() {
+    return peekTimestamp(requestStatusReader);
+  }
+
   public String getNextOpentime() {
-    Path next = getNextPath(OPENTIME_DIR, lastOpentimeTimestamp);
-    lastOpentimeTimestamp = getTimestamp(next);
-    try {
-      logger.info("Replaying opentime from " + next);
-      return com.google.common.io.Files.toString(
-          next.toFile(),
-          StandardCharsets.UTF_8);
-    } catch (IOException ioe) {
-      throw new IllegalStateException(ioe);
-    }
+    return getNext(opentimeReader, "opentime");
   }
 
   public void saveOpentimeForReplay(String opentime) {
-    saveForReplay(OPENTIME_DIR, opentime);
+    saveForReplay(opentimeWriter, opentime);
   }
 
   public String getNextSchedule() {
-    Path next = getNextPath(SCHEDULE_DIR, lastScheduleTimestamp);
-    lastScheduleTimestamp = getTimestamp(next);
-    try {
-      logger.info("Replaying schedule from " + next);
-      return com.google.common.io.Files.toString(
-          next.toFile(),
-          StandardCharsets.UTF_8);
-    } catch (IOException ioe) {
-      throw new IllegalStateException(ioe);
-    }
+    return getNext(scheduleReader, "schedule");
   }
 
   public void saveScheduleForReplay(String schedule) {
-    saveForReplay(SCHEDULE_DIR, schedule);
+    saveForReplay(scheduleWriter, schedule);
   }
 
   public String getNextRequestStatus() {
-    Path next = getNextPath(REQUEST_STATUS_DIR, lastRequestStatusTimestamp);
-    lastRequestStatusTimestamp = getTimestamp(next);
+    return getNext(requestStatusReader, "request status");
+  }
+
+  public void saveRequestStatusForReplay(String status) {
+    saveForReplay(requestStatusWriter, status);
+  }
+
+  /**
+   * Skips every snapshot recorded before timestamp, in milliseconds since
+   * the epoch.
+   */
+  public void seek(long timestamp) {
     try {
-      logger.info("Replaying request status from " + next);
-      return com.google.common.io.Files.toString(
-          next.toFile(),
-          StandardCharsets.UTF_8);
+      opentimeReader.seek(timestamp);
+      scheduleReader.seek(timestamp);
+      requestStatusReader.seek(timestamp);
     } catch (IOException ioe) {
       throw new IllegalStateException(ioe);
     }
   }
 
-  public void saveRequestStatusForReplay(String status) {
-    saveForReplay(REQUEST_STATUS_DIR, status);
-  }
-
   public Proto.PairingList readPairingList(YearMonth yearMonth) {
     Path input = PAIRING_DIR.resolve("" + yearMonth);
     try {
-      return Proto.PairingList.parseFrom(Files.newInputStream(input));
+      return Proto.PairingList.parseFrom(Files.readAllBytes(input));
     } catch (IOException ioe) {
       throw new IllegalStateException(ioe);
     }
@@ -159,7 +211,7 @@ public class ReplayManager {
   public void writePairingList(YearMonth yearMonth, Proto.PairingList pairings) {
     Path output = PAIRING_DIR.resolve("" + yearMonth);
     try {
-      pairings.writeTo(Files.newOutputStream(output));
+      Files.write(output, pairings.toByteArray());
     } catch (IOException ioe) {
       logger.log(Level.WARNING, "Error saving for replay", ioe);
     }
@@ -178,7 +230,7 @@ public class ReplayManager {
   public void writePairing(PairingKey key, String pairing) {
     Path output = PAIRING_DIR.resolve("" + key);
     try {
-      Files.newOutputStream(output).write(pairing.getBytes(StandardCharsets.UTF_8));
+      Files.write(output, pairing.getBytes(StandardCharsets.UTF_8));
     } catch (IOException ioe) {
       logger.log(Level.WARNING, "Error saving for replay", ioe);
     }
@@ -195,34 +247,97 @@ public class ReplayManager {
     }
   }
 
-  private void saveForReplay(Path path, String text) {
+  private void saveForReplay(ReplayLogWriter writer, String text) {
     try {
-      Files.write(
-          path.resolve("" + System.currentTimeMillis()),
-          text.getBytes(StandardCharsets.UTF_8));
+      writer.append(System.currentTimeMillis(), text);
     } catch (IOException ioe) {
       logger.log(Level.WARNING, "Error saving for replay", ioe);
     }
   }
 
-  public Path getNextPath(Path path, long lastTimestamp) {
-    Predicate<Path> following = p -> getTimestamp(p) > lastTimestamp;
+  private String getNext(ReplayLogReader reader, String description) {
     try {
-      Optional<Path> next = Files
-          .list(path)
-          .filter(following)
-          .sorted()
-          .findFirst();
-      if (!next.isPresent()) {
-        logger.warning("Out of data");
-        return null;
+      String next = reader.next();
+      if (next == null) {
+        throw new IllegalStateException("Out of " + description + " data");
       }
-      return next.get();
+      logger.info("Replaying " + description + " from " + reader.getLastTimestamp());
+      return next;
+    } catch (IOException ioe) {
+      throw new IllegalStateException(ioe);
+    }
+  }
+
+  private static long peekTimestamp(ReplayLogReader reader) {
+    try {
+      return reader.peekTimestamp();
     } catch (IOException ioe) {
       throw new IllegalStateException(ioe);
     }
   }
 
+  // Sessions recorded before the log kept one file per snapshot, named by
+  // timestamp. They are imported into a log in this subdirectory.
+  private static final String IMPORTED_LOG = "imported";
+
+  private static ReplayLogReader openForReplay(Path dir) throws IOException {
+    ReplayLogReader reader = new ReplayLogReader(dir);
+    if (reader.isEmpty()) {
+      reader.close();
+      Path importedDir = dir.resolve(IMPORTED_LOG);
+      if (!Files.isDirectory(importedDir)) {
+        importSnapshotFiles(dir, importedDir);
+      }
+      reader = new ReplayLogReader(importedDir);
+    }
+    return reader;
+  }
+
+  /**
+   * Copies the snapshot files in dir into a log at importedDir. The log is
+   * written to a temporary directory and then renamed, so an interrupted
+   * import is started over rather than replayed in part.
+   */
+  private static void importSnapshotFiles(Path dir, Path importedDir)
+      throws IOException {
+    if (!Files.isDirectory(dir)) {
+      return;
+    }
+    List<Path> files;
+    try (Stream<Path> paths = Files.list(dir)) {
+      files = paths
+          .filter(p -> p.getFileName().toString().matches("[0-9]+"))
+          .sorted((a, b) -> Long.compare(getTimestamp(a), getTimestamp(b)))
+          .collect(Collectors.toList());
+    }
+    if (files.isEmpty()) {
+      return;
+    }
+    logger.info("Importing " + files.size() + " snapshots in " + dir);
+    Path tempDir = dir.resolve(IMPORTED_LOG + ".tmp");
+    deleteLog(tempDir);
+    try (ReplayLogWriter writer = new ReplayLogWriter(tempDir)) {
+      for (Path file : files) {
+        writer.append(getTimestamp(file),
+            new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+      }
+    }
+    Files.move(tempDir, importedDir, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  // A log directory holds only segment and index files.
+  private static void deleteLog(Path dir) throws IOException {
+    if (!Files.isDirectory(dir)) {
+      return;
+    }
+    try (Stream<Path> paths = Files.list(dir)) {
+      for (Path path : (Iterable<Path>) paths::iterator) {
+        Files.delete(path);
+      }
+    }
+    Files.delete(dir);
+  }
+
   private static long getTimestamp(Path path) {
     String filename = path.getFileName().toString();
     return Long.parseLong(filename);
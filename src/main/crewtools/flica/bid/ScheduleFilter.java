@@ -30,7 +30,9 @@ import com.google.common.collect.Sets;
 
 import crewtools.flica.pojo.PairingKey;
 import crewtools.flica.pojo.Schedule;
+import crewtools.flica.pojo.Trip;
 import crewtools.util.Clock;
+import crewtools.util.DayMask;
 
 public class ScheduleFilter implements Predicate<Set<PairingKey>> {
 
@@ -48,9 +50,14 @@ public class ScheduleFilter implements Predicate<Set<PairingKey>> {
         .builder();
 
     // Required drops due to overlap with days off.
+    DayMask dayMask = new DayMask(schedule.yearMonth);
+    long requiredDaysOffMask = dayMask.getMask(requiredDaysOff);
     for (PairingKey key : schedule.getTrips().keySet()) {
-      Set<LocalDate> workDays = schedule.getTrips().get(key).getDepartureDates();
-      if (!Sets.intersection(workDays, requiredDaysOff).isEmpty()) {
+      Trip trip = schedule.getTrips().get(key);
+      long workDays = trip.getDayMaskYearMonth().equals(schedule.yearMonth)
+          ? trip.getDayMask()
+          : dayMask.getMask(trip.getDepartureDates());
+      if (DayMask.overlaps(workDays, requiredDaysOffMask)) {
         requiredDrops.add(key);
       }
     }
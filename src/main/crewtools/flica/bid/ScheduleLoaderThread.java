@@ -29,7 +29,6 @@ import crewtools.flica.FlicaService;
 import crewtools.flica.Proto;
 import crewtools.flica.adapters.ScheduleAdapter;
 import crewtools.flica.parser.ParseException;
-import crewtools.flica.parser.ScheduleParser;
 import crewtools.flica.pojo.Schedule;
 import crewtools.util.FileUtils;
 import crewtools.util.PeriodicDaemonThread;
@@ -89,14 +88,13 @@ public class ScheduleLoaderThread extends PeriodicDaemonThread {
       if (replayManager.isReplaying()) {
         rawSchedule = replayManager.getNextSchedule();
       } else {
-        rawSchedule = service.getSchedule(yearMonth);
+        rawSchedule = FlicaService.await(service.getScheduleAsync(yearMonth));
         replayManager.saveScheduleForReplay(rawSchedule);
       }
       if (rawSchedule.contains(NO_SCHEDULE_AVAILABLE)) {
         throw new ParseException("No schedule available for " + yearMonth);
       }
-      ScheduleParser scheduleParser = new ScheduleParser(rawSchedule);
-      Proto.Schedule protoSchedule = scheduleParser.parse();
+      Proto.Schedule protoSchedule = service.parseSchedule(rawSchedule);
       ScheduleAdapter scheduleAdapter = new ScheduleAdapter();
       return scheduleAdapter.adapt(protoSchedule);
     } catch (Exception e) {
@@ -32,7 +32,6 @@ import crewtools.flica.FlicaConnection;
 import crewtools.flica.FlicaService;
 import crewtools.flica.Proto;
 import crewtools.flica.adapters.PairingAdapter;
-import crewtools.flica.parser.IndividualPairingParser;
 import crewtools.flica.pojo.Pairing;
 import crewtools.flica.pojo.PairingKey;
 import crewtools.flica.pojo.Trip;
@@ -77,8 +76,7 @@ public class Scorer {
     }
     String rawPairingDetail = service.getPairingDetail(key.getPairingName(),
         key.getPairingDate());
-    IndividualPairingParser parser = new IndividualPairingParser(key, rawPairingDetail);
-    Proto.Trip trip = parser.parse();
+    Proto.Trip trip = service.parsePairingDetail(key, rawPairingDetail);
     PairingAdapter pairingAdapter = new PairingAdapter();
     return pairingAdapter.adaptTrip(trip);
   }
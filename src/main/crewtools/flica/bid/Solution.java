@@ -39,7 +39,7 @@ public class Solution {
     for (PairingKey addKey : proposedSchedule.getAddedKeys()) {
       try {
         Trip trip = tripDatabase.getTrip(addKey);
-        TripScore tripScore = new TripScore(trip, bidConfig);
+        TripScore tripScore = tripDatabase.getTripScoreCache().getScore(trip, bidConfig);
         score += tripScore.getPoints();
       } catch (Exception e) {
         logger.log(Level.WARNING, "Error getting trip " + addKey, e);
@@ -49,6 +49,12 @@ public class Solution {
     this.score = score;
   }
 
+  /** For a score already summed from the reduced schedule and added trips. */
+  Solution(ProposedSchedule proposedSchedule, int score) {
+    this.proposedSchedule = proposedSchedule;
+    this.score = score;
+  }
+
   public ProposedSchedule getProposedSchedule() {
     return proposedSchedule;
   }
@@ -0,0 +1,141 @@
+/**
+ * Copyright 2020 Iron City Software LLC
+ *
+ * This file is part of CrewTools.
+ *
+ * CrewTools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CrewTools is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CrewTools.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package crewtools.flica.bid;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Predicate;
+
+/**
+ * Keeps the first limit solutions offered in MinimizeWorkMaximizeFunComparator
+ * order. Solutions which compare equal keep the order of their sequence
+ * numbers, so the result is what sorting every solution stably by sequence
+ * and then taking the first limit would give.
+ *
+ * A solution's keys can be checked with isCompetitive before it is built.
+ * Not safe to share between threads.
+ */
+public class SolutionCollector {
+  private static final Comparator<Entry> ORDER = (left, right) -> {
+    int result = MinimizeWorkMaximizeFunComparator.compare(
+        left.workingDays, left.score, right.workingDays, right.score);
+    return result != 0 ? result : Long.compare(left.sequence, right.sequence);
+  };
+
+  private final int limit;
+  // The worst solution kept is at the head.
+  private final PriorityQueue<Entry> entries =
+      new PriorityQueue<>(Collections.reverseOrder(ORDER));
+  private boolean isTruncated;
+
+  public SolutionCollector(int limit) {
+    this.limit = limit;
+  }
+
+  private static class Entry {
+    private final Solution solution;
+    private final int workingDays;
+    private final int score;
+    private final long sequence;
+
+    Entry(Solution solution, long sequence) {
+      this.solution = solution;
+      this.workingDays = solution.getProposedSchedule().getNumWorkingDays();
+      this.score = solution.getScore();
+      this.sequence = sequence;
+    }
+
+    Entry(int workingDays, int score, long sequence) {
+      this.solution = null;
+      this.workingDays = workingDays;
+      this.score = score;
+      this.sequence = sequence;
+    }
+  }
+
+  /**
+   * Returns false if a solution with these keys would not be kept. The
+   * collector is then truncated, as the caller is expected to drop it.
+   */
+  public boolean isCompetitive(int workingDays, int score, long sequence) {
+    if (entries.size() < limit
+        || ORDER.compare(new Entry(workingDays, score, sequence), entries.peek()) < 0) {
+      return true;
+    }
+    isTruncated = true;
+    return false;
+  }
+
+  public void offer(Solution solution, long sequence) {
+    offer(new Entry(solution, sequence));
+  }
+
+  private void offer(Entry entry) {
+    if (entries.size() < limit) {
+      entries.add(entry);
+    } else if (ORDER.compare(entry, entries.peek()) < 0) {
+      entries.poll();
+      entries.add(entry);
+      isTruncated = true;
+    } else {
+      isTruncated = true;
+    }
+  }
+
+  /** Offers every solution kept by that. */
+  public void addAll(SolutionCollector that) {
+    that.entries.forEach(this::offer);
+    isTruncated |= that.isTruncated;
+  }
+
+  /** Returns true if any solution was removed. */
+  public boolean removeIf(Predicate<Solution> filter) {
+    return entries.removeIf(entry -> filter.test(entry.solution));
+  }
+
+  /**
+   * True if a solution has ever been dropped for not being among the best,
+   * so that removing solutions may leave fewer than would otherwise be kept.
+   */
+  public boolean isTruncated() {
+    return isTruncated;
+  }
+
+  public void clear() {
+    entries.clear();
+    isTruncated = false;
+  }
+
+  public int size() {
+    return entries.size();
+  }
+
+  /** Returns the solutions kept, best first. */
+  public List<Solution> getSolutions() {
+    List<Entry> sorted = new ArrayList<>(entries);
+    sorted.sort(ORDER);
+    List<Solution> solutions = new ArrayList<>(sorted.size());
+    sorted.forEach(entry -> solutions.add(entry.solution));
+    return solutions;
+  }
+}
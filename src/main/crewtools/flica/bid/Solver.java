@@ -23,20 +23,24 @@ import java.io.IOException;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Comparator;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
 
 import org.joda.time.LocalDate;
 import org.joda.time.YearMonth;
 
 import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.Iterators;
 import com.google.common.collect.Sets;
 
 import crewtools.flica.bid.OverlapEvaluator.OverlapEvaluation.Overlap;
@@ -45,38 +49,54 @@ import crewtools.flica.pojo.PairingKey;
 import crewtools.flica.pojo.Schedule;
 import crewtools.flica.pojo.Trip;
 import crewtools.rpc.Proto.BidConfig;
-import crewtools.util.Calendar;
 import crewtools.util.Clock;
-import crewtools.util.Collections;
+import crewtools.util.DayMask;
 
 public class Solver {
   private final Logger logger = Logger.getLogger(Solver.class.getName());
 
-  public static final int MAX_POWERSET_INPUT_SIZE = 30;
-
   private final Schedule schedule;
-  private final Collection<FlicaTaskWrapper> tasks;
+  private Collection<FlicaTaskWrapper> tasks;
   private final YearMonth yearMonth;
   private final BidConfig bidConfig;
-  private final Calendar calendar;
+  private final long periodMask;
   private final TripDatabase tripDatabase;
   private final int originalScore;
   private final ScheduleFilter scheduleFilter;
-  private final TaskFilter taskFilter;
   private final Set<LocalDate> requiredDaysOff;
+  // Only successful scores are kept, so that a failed trip is tried again.
+  private final Map<PairingKey, Integer> candidateScores = new ConcurrentHashMap<>();
+  private final int maxSolutions;
+
+  // Kept between calls to solve, for as long as the schedule does not change.
+  private List<Set<PairingKey>> retainedTripSets;
+  private Combination[] combinations;
 
   public Solver(Schedule schedule, Collection<FlicaTaskWrapper> tasks,
       YearMonth yearMonth, BidConfig bidConfig, TripDatabase tripDatabase,
       Clock clock) {
+    this(schedule, tasks, yearMonth, bidConfig, tripDatabase, clock, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Only the first maxSolutions solutions in MinimizeWorkMaximizeFunComparator
+   * order are kept, and a combination which could not be among them is
+   * dropped before its Solution is built. Among solutions which compare
+   * equal, an incremental solve may keep different ones than a new Solver.
+   */
+  public Solver(Schedule schedule, Collection<FlicaTaskWrapper> tasks,
+      YearMonth yearMonth, BidConfig bidConfig, TripDatabase tripDatabase,
+      Clock clock, int maxSolutions) {
+    this.maxSolutions = maxSolutions;
     this.schedule = schedule;
-    this.tasks = tasks;
+    this.tasks = new ArrayList<>(tasks);
     this.yearMonth = yearMonth;
     this.bidConfig = bidConfig;
-    this.calendar = new Calendar(yearMonth);
+    this.periodMask = new DayMask(yearMonth).getPeriodMask();
     this.tripDatabase = tripDatabase;
     int originalScore = 0;
     for (Trip trip : schedule.getTrips().values()) {
-      originalScore += new TripScore(trip, bidConfig).getPoints();
+      originalScore += tripDatabase.getTripScoreCache().getPoints(trip, bidConfig);
     }
     this.originalScore = originalScore;
     ImmutableSet.Builder<LocalDate> builder = ImmutableSet.builder();
@@ -88,103 +108,320 @@ public class Solver {
         .forEach(key -> requiredDrops.add(PairingKey.parse(key)));
     this.scheduleFilter = new ScheduleFilter(
         schedule, clock, requiredDaysOff, requiredDrops.build());
-    this.taskFilter = new TaskFilter(bidConfig);
+  }
+
+  /** The number of schedule combinations considered, once solved. */
+  public synchronized int getNumCombinations() {
+    return combinations == null ? 0 : combinations.length;
   }
 
   public List<Solution> solve() throws ParseException, IOException, URISyntaxException {
-    List<Solution> solutions = new ArrayList<>();
-
-    Iterator<Set<PairingKey>> retainedTripsSet = Sets
-        .powerSet(schedule.getTripCreditInMonth().keySet())
-        .stream()
-        .filter(scheduleFilter)
-        .iterator();
-
-    int count = 1;
-    while (retainedTripsSet.hasNext()) {
-      Set<PairingKey> retainedTrips = retainedTripsSet.next();
-      ReducedSchedule reducedSchedule = new ReducedSchedule(schedule, retainedTrips,
-          bidConfig);
-      if (logger.isLoggable(Level.FINE)) {
-        logger.fine(
-            "Considering schedule combination " + count + ": " + retainedTrips);
-      }
-      count++;
-      enumerateSolutions(count, solutions, reducedSchedule);
-    }
-    logger.info("Considered " + count + " schedule combinations x "
-        + tasks.size() + " tasks");
+    return solve(tasks);
+  }
+
+  /**
+   * Solves for newTasks. The first call evaluates every schedule combination
+   * against every task. Later calls keep each combination's candidates and
+   * solutions, drop those involving tasks which have gone from opentime, and
+   * only search task combinations which include a task new to opentime.
+   * The solutions are the same as a new Solver would find, best first.
+   */
+  public synchronized List<Solution> solve(Collection<FlicaTaskWrapper> newTasks) {
+    List<FlicaTaskWrapper> addedTasks;
+    Set<TaskKey> removedTasks;
+    if (combinations == null) {
+      retainedTripSets = Sets
+          .powerSet(schedule.getTripCreditInMonth().keySet())
+          .stream()
+          .filter(scheduleFilter)
+          .collect(Collectors.toList());
+      combinations = new Combination[retainedTripSets.size()];
+      addedTasks = new ArrayList<>(newTasks);
+      removedTasks = ImmutableSet.of();
+    } else {
+      Set<TaskKey> previousTasks = getTaskKeys(tasks);
+      Set<TaskKey> currentTasks = getTaskKeys(newTasks);
+      addedTasks = newTasks.stream()
+          .filter(task -> !previousTasks.contains(new TaskKey(task)))
+          .collect(Collectors.toList());
+      removedTasks = Sets.difference(previousTasks, currentTasks).immutableCopy();
+      logger.info("Opentime changed by " + addedTasks.size() + " added and "
+          + removedTasks.size() + " removed tasks");
+    }
+    this.tasks = new ArrayList<>(newTasks);
+    scoreTasks(newTasks);
+
+    SolutionCollector solutions;
+    if (bidConfig.getEnableParallelSolver()) {
+      solutions = ForkJoinPool.commonPool().invoke(
+          new SolveTask(addedTasks, removedTasks, 0, combinations.length));
+    } else {
+      solutions = solve(addedTasks, removedTasks, 0, combinations.length);
+    }
+    logger.info("Considered " + combinations.length + " schedule combinations x "
+        + addedTasks.size() + " tasks");
+    return solutions.getSolutions();
+  }
+
+  /**
+   * What the solver reads from a task. FlicaTask equality only compares
+   * pairing names, which opentime may keep for a re-dated or changed task.
+   */
+  private static class TaskKey {
+    private final PairingKey pairingKey;
+    private final int creditMinutes;
+    private final int numDays;
+
+    TaskKey(FlicaTaskWrapper task) {
+      this.pairingKey = task.getPairingKey();
+      this.creditMinutes = task.getCredit().getTotalMinutes();
+      this.numDays = task.getNumDays();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (o == null || !(o instanceof TaskKey)) {
+        return false;
+      }
+      TaskKey that = (TaskKey) o;
+      return pairingKey.equals(that.pairingKey)
+          && creditMinutes == that.creditMinutes
+          && numDays == that.numDays;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(pairingKey, creditMinutes, numDays);
+    }
+  }
+
+  private static Set<TaskKey> getTaskKeys(Collection<FlicaTaskWrapper> tasks) {
+    Set<TaskKey> keys = new HashSet<>();
+    tasks.forEach(task -> keys.add(new TaskKey(task)));
+    return keys;
+  }
+
+  /** Solves combinations[from..to). */
+  private SolutionCollector solve(List<FlicaTaskWrapper> addedTasks,
+      Set<TaskKey> removedTasks, int from, int to) {
+    SolutionCollector solutions = new SolutionCollector(maxSolutions);
+    for (int i = from; i < to; ++i) {
+      if (combinations[i] == null) {
+        Set<PairingKey> retainedTrips = retainedTripSets.get(i);
+        if (logger.isLoggable(Level.FINE)) {
+          logger.fine(
+              "Considering schedule combination " + (i + 1) + ": " + retainedTrips);
+        }
+        combinations[i] = new Combination(i + 1, retainedTrips);
+      }
+      combinations[i].update(addedTasks, removedTasks);
+      solutions.addAll(combinations[i].solutions);
+    }
     return solutions;
   }
 
-  /** Called once for every set of retained trips in the schedule. */
-  private void enumerateSolutions(int count, List<Solution> solutions,
-      ReducedSchedule reducedSchedule)
-      throws ParseException, IOException, URISyntaxException {
-    OverlapEvaluator evaluator = new OverlapEvaluator(
-        reducedSchedule, requiredDaysOff, bidConfig);
-    // Find all opentime trips which could possibly be added.
-    Set<FlicaTaskWrapper> candidateTasks = new HashSet<>();
-    for (FlicaTaskWrapper task : tasks) {
-      if (!bidConfig.getEnableAllowTwoHundredTrips() && task.isTwoHundred()) {
-        logger.fine(".. ignoring 200 trip " + task.getPairingName());
-        continue;
+  private static final int PARALLEL_BATCH_SIZE = 4;
+
+  /**
+   * Splits schedule combinations across the pool. Solutions are numbered by
+   * combination, so the result is the same as the serial solver's.
+   */
+  private class SolveTask extends RecursiveTask<SolutionCollector> {
+    private static final long serialVersionUID = 1L;
+
+    private final List<FlicaTaskWrapper> addedTasks;
+    private final Set<TaskKey> removedTasks;
+    private final int from;
+    private final int to;
+
+    SolveTask(List<FlicaTaskWrapper> addedTasks, Set<TaskKey> removedTasks,
+        int from, int to) {
+      this.addedTasks = addedTasks;
+      this.removedTasks = removedTasks;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected SolutionCollector compute() {
+      if (to - from <= PARALLEL_BATCH_SIZE) {
+        return solve(addedTasks, removedTasks, from, to);
       }
-      if (!checkTaskDatesWithinPeriod(task.getPairingName(), task.getTaskDates())) {
-        continue;
+      int middle = (from + to) >>> 1;
+      SolveTask left = new SolveTask(addedTasks, removedTasks, from, middle);
+      SolveTask right = new SolveTask(addedTasks, removedTasks, middle, to);
+      left.fork();
+      SolutionCollector solutions = right.compute();
+      solutions.addAll(left.join());
+      return solutions;
+    }
+  }
+
+  /** A set of retained trips in the schedule, and what has been found for it. */
+  private class Combination {
+    private final int count;
+    private final ReducedSchedule reducedSchedule;
+    private final OverlapEvaluator evaluator;
+    private final int maxAdds;
+    // Opentime trips which could possibly be added.
+    // These may overlap with each other but not with trips retained
+    // on the schedule.
+    private final List<FlicaTaskWrapper> candidateTasks = new ArrayList<>();
+    private final SolutionCollector solutions = new SolutionCollector(maxSolutions);
+    // Numbers solutions in the order found, after those of earlier combinations.
+    private long nextSequence;
+
+    Combination(int count, Set<PairingKey> retainedTrips) {
+      this.count = count;
+      this.reducedSchedule = new ReducedSchedule(schedule, retainedTrips,
+          bidConfig, tripDatabase.getTripScoreCache());
+      this.evaluator = new OverlapEvaluator(reducedSchedule, requiredDaysOff, bidConfig);
+      // Unlikely to pick up this many adds at once, and,
+      // we don't want them, even if we can get them.
+      int maxAdds = bidConfig.getEnableMultipleAdds()
+          ? bidConfig.getMaximumNumberOfAddsPerSwap()
+          : 1;
+      // Avoid a 4-day turning into two 2-days.
+      this.maxAdds = Math.min(maxAdds, reducedSchedule.getDropKeys().size());
+      this.nextSequence = (long) count << 32;
+    }
+
+    void update(List<FlicaTaskWrapper> addedTasks, Set<TaskKey> removedTasks) {
+      boolean searchAll = false;
+      if (!removedTasks.isEmpty()) {
+        candidateTasks.removeIf(task -> removedTasks.contains(new TaskKey(task)));
+        boolean removed = solutions.removeIf(solution -> solution.getProposedSchedule()
+            .getTasks().stream()
+            .anyMatch(task -> removedTasks.contains(new TaskKey(task))));
+        if (removed && solutions.isTruncated()) {
+          // Solutions dropped for not being among the best may be now.
+          solutions.clear();
+          searchAll = !candidateTasks.isEmpty();
+        }
       }
-      if (evaluator.evaluate(task.getTaskDates()).overlap != Overlap.NO_OVERLAP) {
-        logger.fine(".. ignoring " + task.getPairingName() + " due to overlap");
-        continue;
+
+      List<FlicaTaskWrapper> addedCandidates = new ArrayList<>();
+      for (FlicaTaskWrapper task : addedTasks) {
+        if (isCandidate(task)) {
+          addedCandidates.add(task);
+        }
       }
+      if (addedCandidates.isEmpty() && !searchAll) {
+        return;
+      }
+      candidateTasks.addAll(addedCandidates);
+      candidateTasks.sort(CANDIDATE_ORDER);
 
       if (bidConfig.getEnableMultipleAdds()) {
-        candidateTasks.add(task);
-        // now, these may overlap with each other but not with
-        // trips retained on the schedule.
-      } else {
-        evaluateTasks(solutions, reducedSchedule, ImmutableSet.of(task), evaluator);
+        logger.info("For schedule combination " + count + ", there are "
+            + candidateTasks.size() + " task candidates");
       }
+
+      Map<FlicaTaskWrapper, Integer> scores = getCandidateScores(candidateTasks);
+      TaskSearch search = new TaskSearch(reducedSchedule, candidateTasks,
+          scores, maxAdds, originalScore);
+      Set<FlicaTaskWrapper> required = searchAll
+          ? ImmutableSet.copyOf(candidateTasks)
+          : ImmutableSet.copyOf(addedCandidates);
+      search.search(required, taskCombination -> {
+        if (evaluateTasks(solutions, nextSequence, reducedSchedule, taskCombination,
+            scores, evaluator)) {
+          nextSequence++;
+        }
+      });
     }
 
-    if (!bidConfig.getEnableMultipleAdds()) {
-      return;
+    private boolean isCandidate(FlicaTaskWrapper task) {
+      if (!bidConfig.getEnableAllowTwoHundredTrips() && task.isTwoHundred()) {
+        logger.fine(".. ignoring 200 trip " + task.getPairingName());
+        return false;
+      }
+      if (!checkTaskDatesWithinPeriod(task)) {
+        return false;
+      }
+      if (evaluator.evaluate(task).overlap != Overlap.NO_OVERLAP) {
+        logger.fine(".. ignoring " + task.getPairingName() + " due to overlap");
+        return false;
+      }
+      return true;
     }
+  }
 
-    logger.info("For schedule combination " + count + ", there are "
-        + candidateTasks.size() + " task candidates");
+  private static final Comparator<FlicaTaskWrapper> CANDIDATE_ORDER =
+      Comparator.comparing(FlicaTaskWrapper::getPairingKey);
 
-    // PowerSet requires <= 30 elements.
-    if (candidateTasks.size() > MAX_POWERSET_INPUT_SIZE) {
-      logger.info("WARNING: Paring down candidate set due to too many inputs");
-      candidateTasks = selectBestCandidates(candidateTasks);
+  /**
+   * Scores the tasks which may be candidates and have no score yet. This
+   * runs before the search, rather than on its fork/join workers, as
+   * getting a trip may retrieve it from FLICA.
+   */
+  private void scoreTasks(Collection<FlicaTaskWrapper> tasks) {
+    for (FlicaTaskWrapper task : tasks) {
+      PairingKey key = task.getPairingKey();
+      if (candidateScores.containsKey(key)
+          || (!bidConfig.getEnableAllowTwoHundredTrips() && task.isTwoHundred())
+          || !checkTaskDatesWithinPeriod(task)) {
+        continue;
+      }
+      try {
+        Trip trip = tripDatabase.getTrip(key);
+        candidateScores.put(key,
+            tripDatabase.getTripScoreCache().getPoints(trip, bidConfig));
+      } catch (Exception e) {
+        logger.log(Level.WARNING, "Error scoring trip " + key, e);
+      }
     }
+  }
 
-    Iterator<Set<FlicaTaskWrapper>> taskCombinations = Sets
-        .powerSet(candidateTasks)
-        .stream()
-        .filter(taskFilter)
-        .iterator();
-
-    while (taskCombinations.hasNext()) {
-      Set<FlicaTaskWrapper> taskCombination = taskCombinations.next();
-      evaluateTasks(solutions, reducedSchedule, taskCombination, evaluator);
+  /**
+   * Returns scores for the candidates, omitting any which could not be scored.
+   * Keyed by identity, as tasks on different dates may share a pairing name.
+   */
+  private Map<FlicaTaskWrapper, Integer> getCandidateScores(
+      List<FlicaTaskWrapper> candidates) {
+    Map<FlicaTaskWrapper, Integer> result = new IdentityHashMap<>();
+    for (FlicaTaskWrapper task : candidates) {
+      Integer points = candidateScores.get(task.getPairingKey());
+      if (points != null) {
+        result.put(task, points);
+      }
     }
+    return result;
   }
 
-  private void evaluateTasks(List<Solution> solutions,
+  /**
+   * Offers a solution for taskCombinations if it is valid, and returns true
+   * if it was. Its score is taken from scores when every task has one, and
+   * a solution which could not be kept is dropped before it is built.
+   */
+  private boolean evaluateTasks(SolutionCollector solutions, long sequence,
       ReducedSchedule reducedSchedule,
       Set<FlicaTaskWrapper> taskCombinations,
+      Map<FlicaTaskWrapper, Integer> scores,
       OverlapEvaluator evaluator) {
     ProposedSchedule schedule = new ProposedSchedule(reducedSchedule, taskCombinations);
+    Integer score = reducedSchedule.getScore();
+    for (FlicaTaskWrapper task : taskCombinations) {
+      Integer points = scores.get(task);
+      score = points == null ? null : score + points;
+      if (score == null) {
+        break;
+      }
+    }
+    if (score != null
+        && !solutions.isCompetitive(schedule.getNumWorkingDays(), score, sequence)) {
+      return false;
+    }
     if (schedule.isValid(evaluator)) {
-      Solution solution = new Solution(schedule, tripDatabase, bidConfig);
+      Solution solution = score != null
+          ? new Solution(schedule, score)
+          : new Solution(schedule, tripDatabase, bidConfig);
       int numAdds = solution.getProposedSchedule().getAddedKeys().size();
       int numDrops = solution.getProposedSchedule().getReducedSchedule().getDropKeys()
           .size();
       if (numAdds > numDrops) {
         // Avoid a 4-day turning into two 2-days.
-        return;
+        return false;
       }
 
       boolean workLess = schedule.getNumWorkingDays() < reducedSchedule
@@ -198,39 +435,19 @@ public class Solver {
           + " betterSchedule: " + betterSchedule
           + " (" + solution.getScore() + " vs " + originalScore + ")");
       if (workLess || (workSame && betterSchedule)) {
-        solutions.add(solution);
+        solutions.offer(solution, sequence);
+        return true;
       }
     }
+    return false;
   }
 
-  private boolean checkTaskDatesWithinPeriod(
-      String pairingName, Set<LocalDate> proposedDates) {
-    for (LocalDate date : proposedDates) {
-      if (!calendar.isWithinPeriod(date)) {
-        logger.fine(".. ignoring " + pairingName + " due to blend");
-        return false;
-      }
+  private boolean checkTaskDatesWithinPeriod(FlicaTaskWrapper task) {
+    if (!task.getDayMaskYearMonth().equals(yearMonth)
+        || DayMask.overlaps(task.getDayMask(), ~periodMask)) {
+      logger.fine(".. ignoring " + task.getPairingName() + " due to blend");
+      return false;
     }
     return true;
   }
-
-  Set<FlicaTaskWrapper> selectBestCandidates(Set<FlicaTaskWrapper> candidates)
-      throws URISyntaxException, IOException, ParseException {
-    logger.info("Whittling down " + candidates.size() + " candidates based on score.");
-    Map<Trip, FlicaTaskWrapper> trips = new HashMap<>();
-    Map<Trip, TripScore> scores = new HashMap<>();
-    for (FlicaTaskWrapper task : candidates) {
-      Trip trip = tripDatabase.getTrip(task.getPairingKey());
-      trips.put(trip, task);
-      scores.put(trip, new TripScore(trip, bidConfig));
-    }
-    scores = Collections.sortByValueDescending(scores);
-    Iterator<Trip> it = Iterators.limit(scores.keySet().iterator(),
-        MAX_POWERSET_INPUT_SIZE);
-    Set<FlicaTaskWrapper> result = new HashSet<>();
-    while (it.hasNext()) {
-      result.add(trips.get(it.next()));
-    }
-    return result;
-  }
 }
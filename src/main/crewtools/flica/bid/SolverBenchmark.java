@@ -0,0 +1,297 @@
+/**
+ * Copyright 2020 Iron City Software LLC
+ *
+ * This file is part of CrewTools.
+ *
+ * CrewTools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CrewTools is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CrewTools.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package crewtools.flica.bid;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.joda.time.DateTime;
+import org.joda.time.LocalDate;
+import org.joda.time.YearMonth;
+
+import com.google.common.base.Splitter;
+import com.google.common.io.Files;
+
+import crewtools.flica.BaseFlicaConnection;
+import crewtools.flica.FlicaService;
+import crewtools.flica.adapters.ScheduleAdapter;
+import crewtools.flica.parser.OpenTimeParser;
+import crewtools.flica.pojo.FlicaTask;
+import crewtools.flica.pojo.PairingKey;
+import crewtools.flica.pojo.Schedule;
+import crewtools.flica.pojo.Trip;
+import crewtools.rpc.Proto.BidConfig;
+import crewtools.test.FakeClock;
+import crewtools.test.ScheduleBuilder;
+import crewtools.test.TripBuilder;
+import crewtools.util.Clock;
+import crewtools.util.FileUtils;
+import crewtools.util.Period;
+
+/**
+ * Measures Solver.solve on synthetic schedules of 5 to 15 trips against 20
+ * to 500 opentime tasks, with multiple adds off and on, and optionally on
+ * the last schedule and opentime of a recorded session. The synthetic clock
+ * is set so that only the last MAX_DROPPABLE_TRIPS trips can be dropped, as
+ * part way through a month, since every subset of 15 would take minutes.
+ *
+ * Each scenario reports the time per solve, solutions per second and heap
+ * allocated per solution, after warming up. Given a baseline report, such
+ * as scripts/solverBenchmark.baseline.txt, it also shows how the time per
+ * solve has changed.
+ *
+ * solverBenchmark [baseline=report.txt] [replay=replayDir] [seconds=2]
+ */
+public class SolverBenchmark {
+  private static final YearMonth YEAR_MONTH = YearMonth.parse("2019-10");
+  private static final int[] NUM_SCHEDULE_TRIPS = { 5, 10, 15 };
+  private static final int[] NUM_TASKS = { 20, 100, 500 };
+  private static final String[] OVERNIGHTS = { "LGA", "BOS", "HVN", "GSP", "SAV" };
+  private static final int MAX_DROPPABLE_TRIPS = 6;
+  private static final int WARMUP_ITERATIONS = 2;
+  private static final int MIN_ITERATIONS = 3;
+  private static final Splitter EQUALS = Splitter.on('=').trimResults();
+  private static final Splitter WHITESPACE =
+      Splitter.on(' ').trimResults().omitEmptyStrings();
+  private static final String FORMAT = "%-28s %6s %6s %9s %10s %12s %14s %9s\n";
+
+  // Held so that the level is not lost when the logger is collected.
+  private static final Logger SOLVER_LOGGER = Logger.getLogger("crewtools.flica.bid");
+
+  private final com.sun.management.ThreadMXBean threads =
+      (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+  private final Map<String, Double> baseline;
+  private final long minNanos;
+
+  public static void main(String args[]) throws Exception {
+    File baselineFile = null;
+    String replayDir = null;
+    int seconds = 2;
+    for (String arg : args) {
+      List<String> parameter = EQUALS.splitToList(arg);
+      String value = parameter.size() == 1 ? "" : parameter.get(1);
+      if (parameter.get(0).equals("baseline")) {
+        baselineFile = new File(value);
+      } else if (parameter.get(0).equals("replay")) {
+        replayDir = value;
+      } else if (parameter.get(0).equals("seconds")) {
+        seconds = Integer.parseInt(value);
+      } else {
+        System.err.println(
+            "solverBenchmark [baseline=report.txt] [replay=replayDir] [seconds=2]");
+        System.exit(-1);
+      }
+    }
+    SOLVER_LOGGER.setLevel(Level.WARNING);
+    SolverBenchmark benchmark = new SolverBenchmark(
+        baselineFile == null ? new HashMap<>() : readBaseline(baselineFile),
+        seconds * 1_000_000_000L);
+    System.out.printf("# java %s, %d processors\n", System.getProperty("java.version"),
+        Runtime.getRuntime().availableProcessors());
+    System.out.printf(FORMAT, "# scenario", "combos", "tasks", "solutions",
+        "ms/solve", "solutions/s", "bytes/solution", "vs base");
+    for (int numTrips : NUM_SCHEDULE_TRIPS) {
+      for (int numTasks : NUM_TASKS) {
+        for (boolean multipleAdds : new boolean[] { false, true }) {
+          benchmark.runSynthetic(numTrips, numTasks, multipleAdds);
+        }
+      }
+    }
+    if (replayDir != null) {
+      BidConfig bidConfig = FileUtils.readBidConfig();
+      for (boolean multipleAdds : new boolean[] { false, true }) {
+        benchmark.runReplay(bidConfig, replayDir, multipleAdds);
+      }
+    }
+    System.exit(0);
+  }
+
+  public SolverBenchmark(Map<String, Double> baseline, long minNanos) {
+    this.baseline = baseline;
+    this.minNanos = minNanos;
+  }
+
+  /** Reads the time per solve of each scenario in a report. */
+  static Map<String, Double> readBaseline(File file) throws Exception {
+    Map<String, Double> baseline = new HashMap<>();
+    for (String line : Files.readLines(file, StandardCharsets.UTF_8)) {
+      List<String> fields = WHITESPACE.splitToList(line);
+      if (fields.size() >= 5 && !line.startsWith("#")) {
+        baseline.put(fields.get(0), Double.parseDouble(fields.get(4)));
+      }
+    }
+    return baseline;
+  }
+
+  private static String getName(String prefix, boolean multipleAdds) {
+    return prefix + (multipleAdds ? "-multi" : "-single");
+  }
+
+  private static BidConfig getBidConfig(BidConfig bidConfig, boolean multipleAdds) {
+    BidConfig.Builder builder = bidConfig.toBuilder()
+        .setEnableParallelSolver(false)
+        .setEnableIncrementalSolver(false)
+        .setEnableMultipleAdds(multipleAdds);
+    if (multipleAdds && !bidConfig.hasMaximumNumberOfAddsPerSwap()) {
+      builder.setMaximumNumberOfAddsPerSwap(2);
+    }
+    return builder.build();
+  }
+
+  public void runSynthetic(int numTrips, int numTasks, boolean multipleAdds)
+      throws Exception {
+    // The same schedule and opentime for a given size on every run.
+    Random random = new Random(numTrips * 1000 + numTasks);
+    Map<PairingKey, Trip> trips = new HashMap<>();
+    Trip scheduleTrips[] = new Trip[numTrips];
+    int spacing = 30 / numTrips;
+    int numDays = Math.max(1, spacing - 1);
+    Period dailyBlock = Period.minutes(80 * 60 / (numTrips * numDays));
+    for (int i = 0; i < numTrips; ++i) {
+      scheduleTrips[i] = buildTrip("L" + (100 + i),
+          YEAR_MONTH.toLocalDate(1 + i * spacing), numDays, dailyBlock,
+          OVERNIGHTS[random.nextInt(OVERNIGHTS.length)]);
+    }
+    List<FlicaTaskWrapper> tasks = new ArrayList<>();
+    for (int i = 0; i < numTasks; ++i) {
+      int taskDays = 1 + random.nextInt(4);
+      LocalDate date = YEAR_MONTH.toLocalDate(2 + random.nextInt(27 - taskDays));
+      Period block = Period.minutes(4 * 60 + random.nextInt(4 * 60));
+      Trip trip = buildTrip("A" + (1000 + i), date, taskDays, block,
+          OVERNIGHTS[random.nextInt(OVERNIGHTS.length)]);
+      trips.put(trip.getPairingKey(), trip);
+      tasks.add(new FlicaTaskWrapper(
+          new FlicaTask(trip.getPairingKey(), trip.getCredit(), taskDays)));
+    }
+    // Trips departing on or before today cannot be dropped.
+    LocalDate today = numTrips > MAX_DROPPABLE_TRIPS
+        ? scheduleTrips[numTrips - MAX_DROPPABLE_TRIPS - 1].getEarliestDepartureDate()
+        : YEAR_MONTH.toLocalDate(1).minusDays(15);
+    TripDatabase tripDatabase = new TripDatabase(null) {
+      @Override
+      public Trip getTrip(PairingKey key) {
+        return trips.get(key);
+      }
+    };
+    BidConfig bidConfig = getBidConfig(
+        BidConfig.newBuilder().addFavoriteOvernight("LGA").build(), multipleAdds);
+    run(getName(String.format("synthetic-%dx%d", numTrips, numTasks), multipleAdds),
+        new ScheduleBuilder().withTrips(scheduleTrips).build(), tasks, YEAR_MONTH,
+        bidConfig, tripDatabase, new FakeClock(today));
+  }
+
+  private static Trip buildTrip(String name, LocalDate date, int numDays,
+      Period dailyBlock, String overnight) {
+    TripBuilder builder = new TripBuilder()
+        .withLocalDate(date)
+        .withName(name);
+    for (int i = 0; i < numDays; ++i) {
+      boolean isLastDay = i == numDays - 1;
+      builder.withLeg(i == 0 ? "CLT" : overnight, isLastDay ? "CLT" : overnight,
+          dailyBlock);
+      if (!isLastDay) {
+        builder.withLayover(overnight, Period.hours(12));
+      }
+    }
+    return builder.build();
+  }
+
+  /** Solves the last schedule and published opentime of a recorded session. */
+  public void runReplay(BidConfig bidConfig, String replayDir, boolean multipleAdds)
+      throws Exception {
+    YearMonth yearMonth = YearMonth.parse(bidConfig.getYearMonth());
+    try (ReplayManager replayManager = new ReplayManager(true, replayDir)) {
+      FlicaService service = new FlicaService(new BaseFlicaConnection("replay", ""));
+      TripDatabase tripDatabase = new TripDatabase(
+          service, false, yearMonth, bidConfig, replayManager);
+      Schedule schedule = null;
+      while (replayManager.getNextScheduleTimestamp() >= 0) {
+        String raw = replayManager.getNextSchedule();
+        try {
+          schedule = new ScheduleAdapter().adapt(service.parseSchedule(raw));
+        } catch (Exception e) {
+          // Such as before schedules are available.
+        }
+      }
+      List<FlicaTaskWrapper> tasks = new ArrayList<>();
+      long timestamp = -1;
+      long next;
+      while ((next = replayManager.getNextOpentimeTimestamp()) >= 0) {
+        OpenTimeParser parser = new OpenTimeParser(
+            yearMonth.getYear(), replayManager.getNextOpentime());
+        List<FlicaTask> parsed = parser.parse();
+        if (parser.isPublished()) {
+          tasks.clear();
+          parsed.forEach(task -> tasks.add(new FlicaTaskWrapper(task)));
+          timestamp = next;
+        }
+      }
+      if (schedule == null || tasks.isEmpty()) {
+        System.err.println("No schedule or opentime recorded in " + replayDir);
+        return;
+      }
+      tripDatabase.addTripsFromSchedule(schedule);
+      // As the worker saw it when that opentime was recorded.
+      Clock clock = new FakeClock(new DateTime(timestamp));
+      run(getName("replay", multipleAdds), schedule, tasks, yearMonth,
+          getBidConfig(bidConfig, multipleAdds), tripDatabase, clock);
+    }
+  }
+
+  private void run(String name, Schedule schedule, List<FlicaTaskWrapper> tasks,
+      YearMonth yearMonth, BidConfig bidConfig, TripDatabase tripDatabase,
+      Clock clock) throws Exception {
+    for (int i = 0; i < WARMUP_ITERATIONS; ++i) {
+      new Solver(schedule, tasks, yearMonth, bidConfig, tripDatabase, clock).solve();
+    }
+    long threadId = Thread.currentThread().getId();
+    long startBytes = threads.getThreadAllocatedBytes(threadId);
+    long startNanos = System.nanoTime();
+    int iterations = 0;
+    int numSolutions = 0;
+    int numCombinations = 0;
+    while (iterations < MIN_ITERATIONS || System.nanoTime() - startNanos < minNanos) {
+      Solver solver = new Solver(schedule, tasks, yearMonth, bidConfig,
+          tripDatabase, clock);
+      numSolutions = solver.solve().size();
+      numCombinations = solver.getNumCombinations();
+      iterations++;
+    }
+    long nanos = System.nanoTime() - startNanos;
+    long bytes = threads.getThreadAllocatedBytes(threadId) - startBytes;
+    double millisPerSolve = nanos / 1e6 / iterations;
+    Double baselineMillis = baseline.get(name);
+    System.out.printf(FORMAT, name, numCombinations, tasks.size(), numSolutions,
+        String.format("%.2f", millisPerSolve),
+        String.format("%.0f", numSolutions * 1000 / millisPerSolve),
+        bytes / iterations / Math.max(1, numSolutions),
+        baselineMillis == null
+            ? "-"
+            : String.format("%+.0f%%", (millisPerSolve / baselineMillis - 1) * 100));
+  }
+}
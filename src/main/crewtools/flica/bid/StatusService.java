@@ -121,7 +121,7 @@ public class StatusService extends Thread {
       PairingKey key = PairingKey.parseShort(keyString,
           YearMonth.parse(bidConfig.getYearMonth()));
       Trip trip = trips.getTrip(key);
-      TripScore score = new TripScore(trip, bidConfig);
+      TripScore score = trips.getTripScoreCache().getScore(trip, bidConfig);
       for (String line : score.getScoreExplanation()) {
         builder.addLine(line);
       }
@@ -41,7 +41,6 @@ import crewtools.flica.Proto.Rank;
 import crewtools.flica.adapters.ScheduleAdapter;
 import crewtools.flica.parser.OpenTimeParser;
 import crewtools.flica.parser.ParseException;
-import crewtools.flica.parser.ScheduleParser;
 import crewtools.flica.pojo.FlicaTask;
 import crewtools.flica.pojo.PairingKey;
 import crewtools.flica.pojo.Schedule;
@@ -149,8 +148,7 @@ public class SubmitSwap {
   private Schedule getSchedule(FlicaService service, YearMonth yearMonth)
       throws IOException, ParseException {
     String rawSchedule = service.getSchedule(yearMonth);
-    ScheduleParser scheduleParser = new ScheduleParser(rawSchedule);
-    Proto.Schedule protoSchedule = scheduleParser.parse();
+    Proto.Schedule protoSchedule = service.parseSchedule(rawSchedule);
     ScheduleAdapter scheduleAdapter = new ScheduleAdapter();
     return scheduleAdapter.adapt(protoSchedule);
   }
@@ -0,0 +1,199 @@
+/**
+ * Copyright 2019 Iron City Software LLC
+ *
+ * This file is part of CrewTools.
+ *
+ * CrewTools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CrewTools is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CrewTools.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package crewtools.flica.bid;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import com.google.common.collect.ImmutableSet;
+
+import crewtools.util.DayMask;
+
+/**
+ * Branch-and-bound search over the combinations of opentime tasks which
+ * could be added to a reduced schedule. Candidates must all be in the
+ * bid period of the reduced schedule, so that their day masks agree.
+ *
+ * Every rule in ProposedSchedule.isValid other than minimum credit only gets
+ * worse as tasks are added, so a branch is abandoned as soon as it breaks
+ * one. Minimum credit and score are bounded by the best the remaining
+ * candidates could possibly contribute.
+ */
+public class TaskSearch {
+  private final ReducedSchedule reducedSchedule;
+  private final List<FlicaTaskWrapper> candidates;
+  private final int maxAdds;
+  private final int originalScore;
+
+  private final int[] credit;
+  private final int[] score;
+  private final boolean isScoreBounded;
+
+  // Bounds over candidates[i..n).
+  private final int[] suffixCredit;
+  private final int[] suffixPositiveScore;
+  private final int[] suffixMinDays;
+
+  // Candidates which every reported combination must include at least one of.
+  private boolean[] isRequired;
+  private int[] suffixRequired;
+
+  // Current branch.
+  private final List<FlicaTaskWrapper> tasks = new ArrayList<>();
+  private long branchDates;
+  private int branchCredit;
+  private int branchScore;
+  private int branchDays;
+  private int branchRequired;
+
+  /**
+   * candidates must be in a stable order. scores maps each candidate to its
+   * TripScore points, and may omit a candidate whose score is unknown, which
+   * disables score pruning.
+   */
+  public TaskSearch(ReducedSchedule reducedSchedule,
+      List<FlicaTaskWrapper> candidates, Map<FlicaTaskWrapper, Integer> scores,
+      int maxAdds, int originalScore) {
+    this.reducedSchedule = reducedSchedule;
+    this.candidates = candidates;
+    this.maxAdds = maxAdds;
+    this.originalScore = originalScore;
+
+    int n = candidates.size();
+    this.credit = new int[n];
+    this.score = new int[n];
+    this.suffixCredit = new int[n + 1];
+    this.suffixPositiveScore = new int[n + 1];
+    this.suffixMinDays = new int[n + 1];
+    boolean isScoreBounded = true;
+    suffixMinDays[n] = Integer.MAX_VALUE;
+    for (int i = n - 1; i >= 0; --i) {
+      FlicaTaskWrapper task = candidates.get(i);
+      credit[i] = task.getCredit().getTotalMinutes();
+      Integer points = scores.get(task);
+      if (points == null) {
+        isScoreBounded = false;
+      } else {
+        score[i] = points;
+      }
+      suffixCredit[i] = suffixCredit[i + 1] + Math.max(0, credit[i]);
+      suffixPositiveScore[i] = suffixPositiveScore[i + 1] + Math.max(0, score[i]);
+      suffixMinDays[i] = Math.min(suffixMinDays[i + 1], task.getNumDays());
+    }
+    this.isScoreBounded = isScoreBounded;
+  }
+
+  /**
+   * Calls consumer for every non-empty combination of tasks which might
+   * be a valid ProposedSchedule. Callers should still check isValid.
+   */
+  public void search(Consumer<Set<FlicaTaskWrapper>> consumer) {
+    search(ImmutableSet.copyOf(candidates), consumer);
+  }
+
+  /**
+   * As search(consumer), but only for combinations which include at least one
+   * of the required candidates, such as tasks new to opentime.
+   */
+  public void search(Set<FlicaTaskWrapper> required,
+      Consumer<Set<FlicaTaskWrapper>> consumer) {
+    int n = candidates.size();
+    isRequired = new boolean[n];
+    suffixRequired = new int[n + 1];
+    for (int i = n - 1; i >= 0; --i) {
+      isRequired[i] = required.contains(candidates.get(i));
+      suffixRequired[i] = suffixRequired[i + 1] + (isRequired[i] ? 1 : 0);
+    }
+    tasks.clear();
+    branchRequired = 0;
+    branchDates = 0;
+    branchCredit = reducedSchedule.getCredit().getTotalMinutes();
+    branchScore = reducedSchedule.getScore();
+    branchDays = reducedSchedule.getNumWorkingDays();
+    if (maxAdds > 0) {
+      search(0, consumer);
+    }
+  }
+
+  private void search(int start, Consumer<Set<FlicaTaskWrapper>> consumer) {
+    int minimumCredit = ProposedSchedule.SIXTY_FIVE.getTotalMinutes();
+    int originalDays = reducedSchedule.getOriginalNumWorkingDays();
+    for (int i = start; i < candidates.size(); ++i) {
+      if (branchCredit + suffixCredit[i] < minimumCredit) {
+        // Even every remaining candidate would not reach minimum credit.
+        return;
+      }
+      if (branchRequired == 0 && suffixRequired[i] == 0) {
+        // No required candidate is left to include.
+        return;
+      }
+      FlicaTaskWrapper task = candidates.get(i);
+      if (branchDays + task.getNumDays() > originalDays) {
+        continue;
+      }
+      if (DayMask.overlaps(branchDates, task.getDayMask())) {
+        continue;
+      }
+      long dates = branchDates | task.getDayMask();
+      if (DayMask.getLongestRun(dates) > ProposedSchedule.MAX_CONSECUTIVE) {
+        continue;
+      }
+      branchDates = dates;
+      tasks.add(task);
+      branchCredit += credit[i];
+      branchScore += score[i];
+      branchDays += task.getNumDays();
+      branchRequired += isRequired[i] ? 1 : 0;
+
+      if (branchCredit >= minimumCredit && branchRequired > 0) {
+        consumer.accept(ImmutableSet.copyOf(tasks));
+      }
+      if (tasks.size() < maxAdds && isWorthExtending(i + 1, originalDays)) {
+        search(i + 1, consumer);
+      }
+
+      branchRequired -= isRequired[i] ? 1 : 0;
+      branchDays -= task.getNumDays();
+      branchScore -= score[i];
+      branchCredit -= credit[i];
+      tasks.remove(tasks.size() - 1);
+      branchDates &= ~task.getDayMask();
+    }
+  }
+
+  /**
+   * Solver keeps a solution if it works less, or works the same and scores
+   * better. Once any extension works at least as much as the original
+   * schedule, only the score bound can justify going deeper.
+   */
+  private boolean isWorthExtending(int next, int originalDays) {
+    if (next >= candidates.size()) {
+      return false;
+    }
+    if (!isScoreBounded) {
+      return true;
+    }
+    boolean mightWorkLess = branchDays + suffixMinDays[next] < originalDays;
+    return mightWorkLess || branchScore + suffixPositiveScore[next] > originalScore;
+  }
+}
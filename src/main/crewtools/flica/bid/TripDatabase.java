@@ -22,9 +22,12 @@ package crewtools.flica.bid;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.URISyntaxException;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.logging.Logger;
 
 import org.joda.time.YearMonth;
@@ -34,8 +37,6 @@ import crewtools.flica.FlicaService;
 import crewtools.flica.Proto;
 import crewtools.flica.Proto.Rank;
 import crewtools.flica.adapters.PairingAdapter;
-import crewtools.flica.parser.IndividualPairingParser;
-import crewtools.flica.parser.PairingParser;
 import crewtools.flica.parser.ParseException;
 import crewtools.flica.pojo.Pairing;
 import crewtools.flica.pojo.PairingKey;
@@ -52,10 +53,14 @@ public class TripDatabase {
   private final Map<PairingKey, Trip> trips;
   private final ReplayManager replayManager;
   private final BidConfig bidConfig;
+  private final TripScoreCache tripScoreCache = new TripScoreCache();
+  // Retrievals in progress, so that concurrent misses share one request.
+  private final Map<PairingKey, CompletableFuture<Trip>> pendingTrips =
+      new ConcurrentHashMap<>();
 
   public TripDatabase(FlicaService service) throws IOException {
     this.service = service;
-    this.trips = new HashMap<>();
+    this.trips = new ConcurrentHashMap<>();
     this.useProto = false;
     this.replayManager = new ReplayManager(false /* not replaying */, null);
     this.bidConfig = null;
@@ -106,11 +111,57 @@ public class TripDatabase {
 
   public Trip getTrip(PairingKey key)
       throws URISyntaxException, IOException, ParseException {
-    if (!trips.containsKey(key)) {
-      Trip trip = getIndividualPairingDetails(key);
-      trips.put(key, trip);
+    // The solver may call this from several threads.
+    Trip trip = trips.get(key);
+    if (trip != null) {
+      return trip;
+    }
+    CompletableFuture<Trip> future = new CompletableFuture<>();
+    CompletableFuture<Trip> pending = pendingTrips.putIfAbsent(key, future);
+    if (pending != null) {
+      return await(pending);
+    }
+    try {
+      // Another retrieval may have finished since the first check.
+      trip = trips.get(key);
+      if (trip == null) {
+        trip = getIndividualPairingDetails(key);
+        trips.put(key, trip);
+      }
+      future.complete(trip);
+      return trip;
+    } catch (URISyntaxException | IOException | ParseException | RuntimeException e) {
+      future.completeExceptionally(e);
+      throw e;
+    } finally {
+      pendingTrips.remove(key, future);
     }
-    return trips.get(key);
+  }
+
+  private static Trip await(CompletableFuture<Trip> future)
+      throws URISyntaxException, IOException, ParseException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted waiting for trip");
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof URISyntaxException) {
+        throw (URISyntaxException) cause;
+      } else if (cause instanceof IOException) {
+        throw (IOException) cause;
+      } else if (cause instanceof ParseException) {
+        throw (ParseException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new IOException(cause);
+    }
+  }
+
+  public TripScoreCache getTripScoreCache() {
+    return tripScoreCache;
   }
 
   private Proto.PairingList getAllPairings(YearMonth yearMonth)
@@ -122,11 +173,10 @@ public class TripDatabase {
           Rank.valueOf(bidConfig.getRank()),
           bidConfig.getRound(),
           yearMonth);
-      PairingParser pairingParser = new PairingParser(
+      pairingList = service.parseAllPairings(
           rawPairings,
           yearMonth,
           false /* cancelled */);
-      pairingList = pairingParser.parse();
     } else {
       String filename = new DataReader().getPairingFilename(yearMonth, AwardDomicile.CLT);
       Proto.PairingList.Builder builder = Proto.PairingList.newBuilder();
@@ -138,8 +188,9 @@ public class TripDatabase {
   }
 
   private Map<PairingKey, Trip> adapt(Proto.PairingList pairingList) {
-    PairingAdapter pairingAdapter = new PairingAdapter();
-    Map<PairingKey, Trip> trips = new HashMap<>();
+    // Replayed pairings were checked when they were recorded.
+    PairingAdapter pairingAdapter = new PairingAdapter(!replayManager.isReplaying());
+    Map<PairingKey, Trip> trips = new ConcurrentHashMap<>();
     for (Proto.Trip protoTrip : pairingList.getTripList()) {
       Pairing pairing = pairingAdapter.adaptPairing(protoTrip);
       for (Trip trip: pairing.getTrips()) {
@@ -159,9 +210,8 @@ public class TripDatabase {
           key.getPairingDate());
       replayManager.writePairing(key, rawPairingDetail);
     }
-    IndividualPairingParser parser = new IndividualPairingParser(key, rawPairingDetail);
     PairingAdapter pairingAdapter = new PairingAdapter();
-    Proto.Trip trip = parser.parse();
+    Proto.Trip trip = service.parsePairingDetail(key, rawPairingDetail);
     return pairingAdapter.adaptTrip(trip);
   }
 }
@@ -24,17 +24,16 @@ import java.util.List;
 import java.util.Objects;
 import java.util.Set;
 import java.util.logging.Logger;
-import java.util.stream.Collectors;
 
 import org.joda.time.DateTimeConstants;
 import org.joda.time.LocalDate;
 
 import com.google.common.collect.ImmutableSet;
 
+import crewtools.flica.bid.CompiledBidConfig.CompiledScoreAdjustment;
 import crewtools.flica.pojo.Section;
 import crewtools.flica.pojo.Trip;
 import crewtools.rpc.Proto.BidConfig;
-import crewtools.rpc.Proto.ScoreAdjustment;
 import crewtools.util.Period;
 
 public class TripScore implements Comparable<TripScore> {
@@ -55,19 +54,22 @@ public class TripScore implements Comparable<TripScore> {
   private final int points;
   private final List<String> scoreExplanation = new ArrayList<>();
   private final Trip trip;
-  private final Set<LocalDate> vacationDays;
+  private final CompiledBidConfig config;
 
   public TripScore(Trip trip, BidConfig bidConfig) {
+    this(trip, new CompiledBidConfig(bidConfig));
+  }
+
+  public TripScore(Trip trip, CompiledBidConfig config) {
     this.trip = trip;
+    this.config = config;
+    BidConfig bidConfig = config.getBidConfig();
     int goodPoints = 0;
     int badPoints = 0;
 
     Period favoriteOvernightPeriod = Period.ZERO;
     int numFavoriteOvernights = 0;
 
-    vacationDays = bidConfig.getVacationDateList()
-        .stream().map(s -> LocalDate.parse(s)).collect(Collectors.toSet());
-
     int numLegs = 0;
     int numSections = 0;
     for (Section section : trip.getSections()) {
@@ -76,8 +78,7 @@ public class TripScore implements Comparable<TripScore> {
       }
       numSections++;
       if (section.hasLayoverAirportCode()
-          && bidConfig.getFavoriteOvernightList()
-              .contains(section.getLayoverAirportCode())) {
+          && config.isFavoriteOvernight(section.getLayoverAirportCode())) {
         favoriteOvernightPeriod = favoriteOvernightPeriod
             .plus(section.getLayoverDuration());
         numFavoriteOvernights++;
@@ -129,11 +130,11 @@ public class TripScore implements Comparable<TripScore> {
         continue;
       }
       for (String airportCode : section.getAllTurnAirports()) {
-        if (bidConfig.getFavoriteTurnList().contains(airportCode)) {
+        if (config.isFavoriteTurn(airportCode)) {
           goodPoints++;
           scoreExplanation.add("+1 for a turn to " + airportCode);
         }
-        if (bidConfig.getDespisedTurnList().contains(airportCode)) {
+        if (config.isDespisedTurn(airportCode)) {
           badPoints += DESPISED_TURN_PENALITY;
           scoreExplanation
               .add("-" + DESPISED_TURN_PENALITY + " for a turn to " + airportCode);
@@ -190,20 +191,16 @@ public class TripScore implements Comparable<TripScore> {
       goodPoints += factor;
     }
 
-    for (ScoreAdjustment scoreAdjustment : bidConfig.getScoreAdjustmentList()) {
+    for (CompiledScoreAdjustment scoreAdjustment : config.getScoreAdjustments()) {
       int adjustment = scoreAdjustment.getScoreAdjustment();
-      if (scoreAdjustment.getCrewEmployeeIdCount() > 0
-          && trip.containsCrewmember(scoreAdjustment.getCrewEmployeeIdList())) {
+      if (scoreAdjustment.hasCrewEmployeeIds()
+          && scoreAdjustment.containsCrewmember(trip)) {
         goodPoints += adjustment;
         scoreExplanation.add(String.format("%d for crew", adjustment));
       }
-      if (scoreAdjustment.getSoftDayOffCount() > 0) {
-        Set<LocalDate> softDaysOff = scoreAdjustment.getSoftDayOffList()
-            .stream().map(s -> LocalDate.parse(s)).collect(Collectors.toSet());
-        if (trip.spansDaysOfMonth(softDaysOff)) {
-          goodPoints += adjustment;
-          scoreExplanation.add(String.format("%d for soft day off", adjustment));
-        }
+      if (scoreAdjustment.spansSoftDayOff(trip)) {
+        goodPoints += adjustment;
+        scoreExplanation.add(String.format("%d for soft day off", adjustment));
       }
       if (scoreAdjustment.getPreferWeekdays()) {
         int dayAdjustment = computeDayAdjustment(trip.getDepartureDates(), WEEKDAYS,
@@ -224,7 +221,7 @@ public class TripScore implements Comparable<TripScore> {
   }
 
   private boolean onVacation(Section section) {
-    return vacationDays.contains(section.date);
+    return config.isVacationDay(section.date);
   }
 
   //@formatter:off
@@ -0,0 +1,134 @@
+/**
+ * Copyright 2020 Iron City Software LLC
+ *
+ * This file is part of CrewTools.
+ *
+ * CrewTools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CrewTools is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CrewTools.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package crewtools.flica.bid;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import crewtools.flica.pojo.PairingKey;
+import crewtools.flica.pojo.Trip;
+import crewtools.rpc.Proto.BidConfig;
+
+/**
+ * Remembers TripScores by pairing key and the parts of the BidConfig which
+ * TripScore reads, so that changes to other fields keep their scores.
+ * Safe to share between threads.
+ *
+ * A schedule may hold a modified trip under the same key as the pairing
+ * from opentime, so a cached score is only used for an equal trip.
+ */
+public class TripScoreCache {
+  private final Map<Key, Entry> scores = new ConcurrentHashMap<>();
+  private final Map<BidConfig, CompiledBidConfig> compiledConfigs =
+      new ConcurrentHashMap<>();
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  public TripScore getScore(Trip trip, BidConfig bidConfig) {
+    return getScore(trip, getCompiledConfig(bidConfig));
+  }
+
+  public TripScore getScore(Trip trip, CompiledBidConfig config) {
+    Key key = new Key(trip.getPairingKey(), config.getScoringFields());
+    Entry entry = scores.get(key);
+    if (entry != null && (entry.trip == trip || entry.trip.equals(trip))) {
+      hits.incrementAndGet();
+      return entry.score;
+    }
+    misses.incrementAndGet();
+    TripScore score = new TripScore(trip, config);
+    scores.put(key, new Entry(trip, score));
+    return score;
+  }
+
+  public int getPoints(Trip trip, BidConfig bidConfig) {
+    return getScore(trip, bidConfig).getPoints();
+  }
+
+  public int getPoints(Trip trip, CompiledBidConfig config) {
+    return getScore(trip, config).getPoints();
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+  public int size() {
+    return scores.size();
+  }
+
+  public void clear() {
+    scores.clear();
+    compiledConfigs.clear();
+  }
+
+  private CompiledBidConfig getCompiledConfig(BidConfig bidConfig) {
+    CompiledBidConfig config = compiledConfigs.get(bidConfig);
+    if (config == null) {
+      config = new CompiledBidConfig(bidConfig);
+      compiledConfigs.put(bidConfig, config);
+    }
+    return config;
+  }
+
+  private static class Key {
+    private final PairingKey pairingKey;
+    private final BidConfig scoringConfig;
+    private final int hashCode;
+
+    Key(PairingKey pairingKey, BidConfig scoringConfig) {
+      this.pairingKey = pairingKey;
+      this.scoringConfig = scoringConfig;
+      this.hashCode = Objects.hash(pairingKey, scoringConfig);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (o == null || !(o instanceof Key)) {
+        return false;
+      }
+      Key that = (Key) o;
+      return pairingKey.equals(that.pairingKey)
+          && (scoringConfig == that.scoringConfig
+              || scoringConfig.equals(that.scoringConfig));
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+  }
+
+  private static class Entry {
+    private final Trip trip;
+    private final TripScore score;
+
+    Entry(Trip trip, TripScore score) {
+      this.trip = trip;
+      this.score = score;
+    }
+  }
+}
@@ -21,8 +21,7 @@ package crewtools.flica.bid;
 
 import java.io.IOException;
 import java.net.URISyntaxException;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -30,6 +29,7 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.joda.time.Duration;
+import org.joda.time.LocalDate;
 import org.joda.time.YearMonth;
 
 import crewtools.flica.FlicaService;
@@ -52,10 +52,14 @@ public class Worker {
   private final Collector collector;
   private final ReplayManager replayManager;
   private Duration opentimeRefreshInterval = Duration.standardMinutes(6);
-  private final Comparator<Solution> comparator = new MinimizeWorkMaximizeFunComparator();
   private final boolean isDebug;
   private final boolean isNoSwap;
 
+  // With enable_incremental_solver, the solver for the schedule last solved.
+  private Solver solver;
+  private Schedule solverSchedule;
+  private LocalDate solverDate;
+
   public Worker(BidConfig bidConfig, YearMonth yearMonth, Collector collector,
       FlicaService service, Clock clock, TripDatabase tripDatabase,
       ReplayManager replayManager, boolean isDebug, boolean isNoSwap) {
@@ -75,22 +79,59 @@ public class Worker {
   }
 
   private static final int MAX_SWAPS_PER_RUN = 10;
+  // The loop in work() tries one more than MAX_SWAPS_PER_RUN.
+  private static final int MAX_SOLUTIONS_PER_RUN = MAX_SWAPS_PER_RUN + 1;
 
   // If true, this parameter means the program was started before the
-  // bid period opened.
-  public void run(boolean blockUntilBidPeriodOpens)
+  // bid period opened. Returns the transitions swapped for, in order.
+  public List<Transition> run(boolean blockUntilBidPeriodOpens)
       throws ParseException, IOException, URISyntaxException {
     collector.beginWork(blockUntilBidPeriodOpens);
+    return work();
+  }
+
+  /**
+   * As run, but works on the last schedule and opentime again if nothing
+   * newer has arrived, as after a failed run.
+   */
+  public List<Transition> rerun(boolean blockUntilBidPeriodOpens)
+      throws ParseException, IOException, URISyntaxException {
+    collector.tryBeginWork(blockUntilBidPeriodOpens);
+    return work();
+  }
+
+  /** As run, but returns null at once if there is nothing new to work on. */
+  public List<Transition> runIfReady(boolean blockUntilBidPeriodOpens)
+      throws ParseException, IOException, URISyntaxException {
+    if (!collector.tryBeginWork(blockUntilBidPeriodOpens)) {
+      return null;
+    }
+    return work();
+  }
+
+  private List<Transition> work()
+      throws ParseException, IOException, URISyntaxException {
     logger.info("------------------ Worker run -----------------------");
+    logger.info("| " + collector.getCurrentDelta());
     Schedule schedule = collector.getCurrentSchedule();
 
     Set<FlicaTaskWrapper> tasks = new HashSet<>();
     collector.getCurrentTasks().forEach(t -> tasks.add(new FlicaTaskWrapper(t)));
-    Solver solver = new Solver(schedule, tasks, yearMonth,
-        bidConfig, tripDatabase, clock);
-    List<Solution> solutions = solver.solve();
-    Collections.sort(solutions, comparator);
+    List<Solution> solutions;
+    if (bidConfig.getEnableIncrementalSolver()
+        && schedule.equals(solverSchedule)
+        && clock.today().equals(solverDate)) {
+      solutions = solver.solve(tasks);
+    } else {
+      solver = new Solver(schedule, tasks, yearMonth,
+          bidConfig, tripDatabase, clock, MAX_SOLUTIONS_PER_RUN);
+      solverSchedule = schedule;
+      solverDate = clock.today();
+      solutions = solver.solve();
+    }
+    // Solutions come back best first.
     logger.info("| Found " + solutions.size() + " solutions");
+    List<Transition> transitions = new ArrayList<>();
     int count = 0;
     for (Solution solution : solutions) {
       if (count++ > MAX_SWAPS_PER_RUN) {
@@ -98,7 +139,9 @@ public class Worker {
       }
       Transition transition = solution.getProposedSchedule().getTransition();
       swap(transition);
+      transitions.add(transition);
     }
+    return transitions;
   }
 
   private void swap(Transition transition) {
@@ -123,8 +166,8 @@ public class Worker {
   private boolean swap(List<PairingKey> adds, List<PairingKey> drops) {
     logger.info("SWAP!!!! DROP " + drops + " for " + adds);
     try {
-      String html = service.submitSwap(bidConfig.getRound(), yearMonth, clock.today(), adds,
-          drops);
+      String html = FlicaService.await(service.submitSwapAsync(bidConfig.getRound(),
+          yearMonth, clock.today(), adds, drops));
       logger.info("Result from SWAP: " + html);
       SwapResponseParser swapResponseParser = new SwapResponseParser(html);
       if (swapResponseParser.parse() == SwapResponseParser.Status.DUPLICATE) {
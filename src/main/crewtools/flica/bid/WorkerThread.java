@@ -0,0 +1,80 @@
+/**
+ * Copyright 2019 Iron City Software LLC
+ *
+ * This file is part of CrewTools.
+ *
+ * CrewTools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CrewTools is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CrewTools.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package crewtools.flica.bid;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.joda.time.Duration;
+
+import crewtools.flica.parser.ParseException;
+
+/**
+ * Runs the worker whenever the collector has a new schedule or opentime,
+ * rather than on the loaders' timers.
+ */
+public class WorkerThread extends Thread {
+  private final Logger logger = Logger.getLogger(WorkerThread.class.getName());
+
+  // A failed run is retried as OpentimeLoaderThread used to retry a failed
+  // refresh: every 10 seconds for 3 minutes, then at the next refresh.
+  private static final Duration FAILURE_DURATION = Duration.standardSeconds(10);
+  private static final int MAX_RETRIES = 18;
+
+  private final Worker worker;
+  private final boolean blockUntilBidPeriodOpens;
+
+  // blockUntilBidPeriodOpens is true if the program was started before the
+  // bid period opened.
+  public WorkerThread(Worker worker, boolean blockUntilBidPeriodOpens) {
+    this.worker = worker;
+    this.blockUntilBidPeriodOpens = blockUntilBidPeriodOpens;
+    this.setName("Worker");
+    this.setDaemon(false);
+  }
+
+  @Override
+  public void run() {
+    int numFailures = 0;
+    while (true) {
+      try {
+        if (numFailures == 0) {
+          worker.run(blockUntilBidPeriodOpens);
+        } else {
+          worker.rerun(blockUntilBidPeriodOpens);
+        }
+        numFailures = 0;
+      } catch (URISyntaxException | IOException | ParseException e) {
+        logger.log(Level.SEVERE, "Error running worker", e);
+        if (++numFailures > MAX_RETRIES) {
+          numFailures = 0;
+          continue;
+        }
+        try {
+          Thread.sleep(FAILURE_DURATION.getMillis());
+        } catch (InterruptedException ie) {
+          logger.log(Level.SEVERE, "Error sleeping", ie);
+        }
+      }
+    }
+  }
+}
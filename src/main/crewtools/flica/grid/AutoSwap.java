@@ -19,11 +19,15 @@
 
 package crewtools.flica.grid;
 
+import java.util.Set;
 import java.util.logging.Logger;
 
 import org.joda.time.Duration;
 import org.joda.time.YearMonth;
 
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableSet;
+
 import crewtools.flica.AwardDomicile;
 import crewtools.flica.FlicaConnection;
 import crewtools.flica.FlicaService;
@@ -41,14 +45,14 @@ public class AutoSwap {
   private static final Duration GRID_LOAD_INTERVAL = Duration.standardMinutes(15);
 
   private AwardDomicile fromDomicile;
-  private AwardDomicile toDomicile;
+  private Set<AwardDomicile> toDomiciles;
   private Rank rank;
   private YearMonth yearMonth;
   private FlicaService service;
 
   public static void main(String args[]) throws Exception {
     if (args.length == 0) {
-      System.err.println("AutoSwap PHL TYS CAPTAIN 2019-06");
+      System.err.println("AutoSwap PHL TYS[,CLT...] CAPTAIN 2019-06");
       System.exit(-1);
     }
     new AutoSwap(args).run();
@@ -56,7 +60,10 @@ public class AutoSwap {
 
   public AutoSwap(String args[]) throws Exception {
     fromDomicile = AwardDomicile.valueOf(args[0]);
-    toDomicile = AwardDomicile.valueOf(args[1]);
+    ImmutableSet.Builder<AwardDomicile> toDomiciles = ImmutableSet.builder();
+    Splitter.on(',').trimResults().omitEmptyStrings().split(args[1])
+        .forEach(domicile -> toDomiciles.add(AwardDomicile.valueOf(domicile)));
+    this.toDomiciles = toDomiciles.build();
     rank = Rank.valueOf(args[2]);
     yearMonth = YearMonth.parse(args[3]);
     FlicaConnection connection = new FlicaConnection(FlicaConfig.readConfig());
@@ -66,18 +73,20 @@ public class AutoSwap {
 
   public void run() throws Exception {
     logger.info(String.format("Welcome to AutoSwap for %s->%s %s %s",
-        fromDomicile, toDomicile, rank, yearMonth));
+        fromDomicile, toDomiciles, rank, yearMonth));
     service.connect();
     BidConfig bidConfig = FileUtils.readBidConfig();
     TripDatabase tripDatabase = new TripDatabase(service);
     Processor processor = new Processor(new SystemClock(), yearMonth,
-        service, fromDomicile, toDomicile, bidConfig, tripDatabase);
+        service, fromDomicile, toDomiciles, bidConfig, tripDatabase);
     processor.start();
     new ScheduleLoaderThread(SCHEDULE_LOAD_INTERVAL, yearMonth, service, processor)
         .start();
     new GridObserverationThread(GRID_LOAD_INTERVAL, yearMonth, service,
         fromDomicile, rank, processor).start();
-    new GridObserverationThread(GRID_LOAD_INTERVAL, yearMonth, service,
-        toDomicile, rank, processor).start();
+    for (AwardDomicile toDomicile : toDomiciles) {
+      new GridObserverationThread(GRID_LOAD_INTERVAL, yearMonth, service,
+          toDomicile, rank, processor).start();
+    }
   }
 }
@@ -0,0 +1,127 @@
+/**
+ * Copyright 2020 Iron City Software LLC
+ *
+ * This file is part of CrewTools.
+ *
+ * CrewTools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CrewTools is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CrewTools.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package crewtools.flica.grid;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.joda.time.LocalDate;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableSortedMap;
+
+import crewtools.flica.bid.FlicaTaskWrapper;
+import crewtools.flica.bid.TripDatabase;
+import crewtools.flica.parser.ParseException;
+import crewtools.flica.pojo.FlicaTask;
+import crewtools.flica.pojo.Trip;
+import crewtools.util.Period;
+
+/**
+ * The opentime trips of one domicile as of one retrieval, indexed by
+ * departure date and credit so that every drop candidate can be matched
+ * against them without retrieving or resolving them again.
+ */
+public class OpentimeSnapshot {
+  private final Logger logger = Logger.getLogger(OpentimeSnapshot.class.getName());
+
+  // In opentime order.
+  private final ImmutableList<Trip> trips;
+  private final ImmutableListMultimap<LocalDate, Integer> byDepartureDate;
+  private final ImmutableSortedMap<Integer, ImmutableList<Integer>> byCreditMinutes;
+
+  /** Two-hundred tasks, and tasks whose trip cannot be retrieved, are left out. */
+  public OpentimeSnapshot(List<FlicaTask> tasks, TripDatabase tripDatabase) {
+    ImmutableList.Builder<Trip> trips = ImmutableList.builder();
+    ImmutableListMultimap.Builder<LocalDate, Integer> byDepartureDate =
+        ImmutableListMultimap.builder();
+    NavigableMap<Integer, ImmutableList.Builder<Integer>> byCreditMinutes =
+        new TreeMap<>();
+    int index = 0;
+    for (FlicaTask bareTask : tasks) {
+      FlicaTaskWrapper task = new FlicaTaskWrapper(bareTask);
+      if (task.isTwoHundred()) {
+        continue;
+      }
+      Trip trip;
+      try {
+        trip = tripDatabase.getTrip(task.getPairingKey());
+      } catch (URISyntaxException | IOException | ParseException e) {
+        logger.log(Level.WARNING, "Error retrieving " + task.getPairingKey(), e);
+        continue;
+      }
+      trips.add(trip);
+      for (LocalDate date : trip.getDepartureDates()) {
+        byDepartureDate.put(date, index);
+      }
+      byCreditMinutes.computeIfAbsent(trip.getCredit().getTotalMinutes(),
+          minutes -> ImmutableList.<Integer>builder()).add(index);
+      index++;
+    }
+    this.trips = trips.build();
+    this.byDepartureDate = byDepartureDate.build();
+    ImmutableSortedMap.Builder<Integer, ImmutableList<Integer>> byCredit =
+        ImmutableSortedMap.naturalOrder();
+    for (Map.Entry<Integer, ImmutableList.Builder<Integer>> entry
+        : byCreditMinutes.entrySet()) {
+      byCredit.put(entry.getKey(), entry.getValue().build());
+    }
+    this.byCreditMinutes = byCredit.build();
+  }
+
+  public List<Trip> getTrips() {
+    return trips;
+  }
+
+  /**
+   * Returns the trips with at least minCredit which depart on none of
+   * blockedDates, in opentime order.
+   */
+  public List<Trip> getTrips(Set<LocalDate> blockedDates, Period minCredit) {
+    BitSet matches = new BitSet(trips.size());
+    for (Collection<Integer> indexes
+        : byCreditMinutes.tailMap(minCredit.getTotalMinutes(), true).values()) {
+      indexes.forEach(matches::set);
+    }
+    for (LocalDate date : blockedDates) {
+      byDepartureDate.get(date).forEach(matches::clear);
+    }
+    List<Trip> result = new ArrayList<>(matches.cardinality());
+    for (int i = matches.nextSetBit(0); i >= 0; i = matches.nextSetBit(i + 1)) {
+      result.add(trips.get(i));
+    }
+    return result;
+  }
+
+  public int size() {
+    return trips.size();
+  }
+}
@@ -26,10 +26,10 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
 
 import javax.mail.internet.AddressException;
 
@@ -38,6 +38,7 @@ import org.joda.time.YearMonth;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 
 import crewtools.flica.AwardDomicile;
@@ -45,7 +46,6 @@ import crewtools.flica.FlicaService;
 import crewtools.flica.Proto;
 import crewtools.flica.Proto.Rank;
 import crewtools.flica.adapters.ScheduleAdapter;
-import crewtools.flica.bid.FlicaTaskWrapper;
 import crewtools.flica.bid.OverlapEvaluator;
 import crewtools.flica.bid.OverlapEvaluator.OverlapEvaluation;
 import crewtools.flica.bid.ReducedSchedule;
@@ -65,6 +65,13 @@ import crewtools.util.Collections;
 import crewtools.util.Notifier;
 import crewtools.util.Period;
 
+/**
+ * Looks for trips to swap out of the from domicile for opentime in any of
+ * the to domiciles. Each time a schedule or grid arrives, opentime is
+ * retrieved once per to domicile into an OpentimeSnapshot, every droppable
+ * trip is evaluated against it concurrently, and the resulting swaps are
+ * then tried in order.
+ */
 public class Processor extends Thread implements Observer {
   private final Logger logger = Logger.getLogger(Processor.class.getName());
 
@@ -74,37 +81,43 @@ public class Processor extends Thread implements Observer {
   private final FlicaService flicaService;
   private final BidConfig bidConfig;
   private final AwardDomicile fromDomicile;
-  private final AwardDomicile toDomicile;
+  private final ImmutableSet<AwardDomicile> toDomiciles;
   private final YearMonth yearMonth;
   private final TripDatabase tripDatabase;
   private final Notifier notifier;
-  private final CountDownLatch initLatch;
+  private final ImmutableSet<LocalDate> requiredDaysOff;
 
   private AtomicBoolean shouldExit = new AtomicBoolean(false);
-  private Proto.Schedule protoSchedule = null;
-  private GridObservation toGrid = null;
-  private GridObservation fromGrid = null;
   private ScheduleAdapter scheduleAdapter = new ScheduleAdapter();
   private Map<PairingKey, PairingKey> submittedSwaps = new HashMap<>();
-  private long lastInfoProcessedMillis = 0;
-  private long informationTimeMillis = 0;
-  private Object blockUntilNewInformation = new Object();
+
+  // Guarded by this.
+  private Proto.Schedule protoSchedule = null;
+  private final Map<AwardDomicile, GridObservation> grids = new HashMap<>();
+  private long informationVersion = 0;
+  private long processedVersion = 0;
 
   public Processor(Clock clock, YearMonth yearMonth, FlicaService flicaService,
-      AwardDomicile fromDomicile, AwardDomicile toDomicile, BidConfig bidConfig,
+      AwardDomicile fromDomicile, Set<AwardDomicile> toDomiciles, BidConfig bidConfig,
       TripDatabase tripDatabase)
       throws IOException, URISyntaxException, ParseException, AddressException {
+    Preconditions.checkArgument(!toDomiciles.isEmpty(), "No to domiciles");
+    Preconditions.checkArgument(!toDomiciles.contains(fromDomicile),
+        "From domicile %s is also a to domicile", fromDomicile);
     this.clock = clock;
     this.yearMonth = yearMonth;
     this.flicaService = flicaService;
     this.fromDomicile = fromDomicile;
-    this.toDomicile = toDomicile;
+    this.toDomiciles = ImmutableSet.copyOf(toDomiciles);
     this.bidConfig = bidConfig;
     this.tripDatabase = tripDatabase;
     this.notifier = new Notifier(
         bidConfig.getNotificationFromAddress(),
         bidConfig.getNotificationToAddress());
-    this.initLatch = new CountDownLatch(3);
+    ImmutableSet.Builder<LocalDate> requiredDaysOff = ImmutableSet.builder();
+    bidConfig.getRequiredDayOffList()
+        .forEach(s -> requiredDaysOff.add(LocalDate.parse(s)));
+    this.requiredDaysOff = requiredDaysOff.build();
     this.setName("Processor");
     this.setDaemon(false);
   }
@@ -112,40 +125,41 @@ public class Processor extends Thread implements Observer {
   @Override
   public void observe(GridObservation observation) {
     AwardDomicile domicile = AwardDomicile.valueOf(observation.getDomicile());
+    if (!domicile.equals(fromDomicile) && !toDomiciles.contains(domicile)) {
+      throw new IllegalStateException("Unexpected grid from domicile "
+          + domicile + " which was not " + fromDomicile + " or one of " + toDomiciles);
+    }
     synchronized (this) {
-      if (domicile.equals(toDomicile)) {
-        toGrid = observation;
-        informationTimeMillis = System.currentTimeMillis();
-        blockUntilNewInformation.notify();
-        initLatch.countDown();
-      } else if (domicile.equals(fromDomicile)) {
-        fromGrid = observation;
-        informationTimeMillis = System.currentTimeMillis();
-        blockUntilNewInformation.notify();
-        initLatch.countDown();
-      } else {
-        throw new IllegalStateException("Unexpected grid from domicile "
-            + domicile + " which was not " + toDomicile + " or " + fromDomicile);
-      }
+      grids.put(domicile, observation);
+      informationVersion++;
+      notifyAll();
     }
   }
 
   @Override
   public void observe(Proto.Schedule schedule) {
-    synchronized(this) {
+    boolean isDone = areAllDroppableTripsInDomicile(schedule);
+    synchronized (this) {
       this.protoSchedule = schedule;
-      informationTimeMillis = System.currentTimeMillis();
-      blockUntilNewInformation.notify();
-      initLatch.countDown();
+      shouldExit.set(isDone);
+      informationVersion++;
+      notifyAll();
     }
-    shouldExit.set(areAllDroppableTripsInDomicile(schedule));
+  }
+
+  private boolean isInToDomicile(String pairingName) {
+    for (AwardDomicile toDomicile : toDomiciles) {
+      if (pairingName.charAt(0) == toDomicile.getAwardId()) {
+        return true;
+      }
+    }
+    return false;
   }
 
   private boolean areAllDroppableTripsInDomicile(Proto.Schedule protoSchedule) {
     Schedule schedule = scheduleAdapter.adapt(protoSchedule);
     for (Trip trip : schedule.getTrips().values()) {
-      if (trip.getPairingName().charAt(0) != toDomicile.getAwardId()
-          && trip.isDroppable()) {
+      if (!isInToDomicile(trip.getPairingName()) && trip.isDroppable()) {
         return false;
       }
     }
@@ -154,87 +168,141 @@ public class Processor extends Thread implements Observer {
 
   public void run() {
     while (!shouldExit.get()) {
-      // if we received a notify() while processing, don't wait.
-      boolean needsProcessing;
-      synchronized (this) {
-        needsProcessing = informationTimeMillis > lastInfoProcessedMillis;
-      }
-      if (!needsProcessing) {
-        try {
-          blockUntilNewInformation.wait();
-          // This isn't quite right either.
-        } catch (InterruptedException e) {
-          logger.log(Level.WARNING, "Error awaiting new info", e);
-        }
-      }
-      synchronized (this) {
-        lastInfoProcessedMillis = informationTimeMillis;
-      }
-
-      try {
-        initLatch.await();
-      } catch (InterruptedException e) {
-        logger.log(Level.WARNING, "Error awaiting init latch", e);
-      }
-
-      GridObservation fromGridCopy;
-      GridObservation toGridCopy;
       Proto.Schedule protoScheduleCopy;
+      Map<AwardDomicile, GridObservation> gridsCopy;
       synchronized (this) {
+        // Anything observed while processing has already bumped the version.
+        while (informationVersion == processedVersion && !shouldExit.get()) {
+          try {
+            wait();
+          } catch (InterruptedException e) {
+            logger.log(Level.WARNING, "Interrupted awaiting new info", e);
+            return;
+          }
+        }
+        if (shouldExit.get()) {
+          break;
+        }
+        processedVersion = informationVersion;
         if (protoSchedule == null) {
           logger.info("Waiting for schedule retrieval");
           continue;
         }
-        if (fromGrid == null) {
-          logger.info("Waiting for from grid retrieval");
+        if (!grids.containsKey(fromDomicile)) {
+          logger.info("Waiting for " + fromDomicile + " grid retrieval");
           continue;
         }
-        if (toGrid == null) {
-          logger.info("Waiting for to grid retrieval");
+        Set<AwardDomicile> missing = new HashSet<>(toDomiciles);
+        missing.removeAll(grids.keySet());
+        if (!missing.isEmpty()) {
+          logger.info("Waiting for " + missing + " grid retrieval");
           continue;
         }
-        protoScheduleCopy = protoSchedule.toBuilder().build();
-        fromGridCopy = fromGrid.toBuilder().build();
-        toGridCopy = toGrid.toBuilder().build();
+        protoScheduleCopy = protoSchedule;
+        gridsCopy = ImmutableMap.copyOf(grids);
       }
-      process(fromGridCopy, toGridCopy, scheduleAdapter.adapt(protoScheduleCopy));
+      process(gridsCopy, scheduleAdapter.adapt(protoScheduleCopy));
     }
     logger.info("Shutting down as our work is done.");
   }
 
-  private void process(GridObservation fromGrid, GridObservation toGrid,
-      Schedule schedule) {
+  /** Opentime and the grids of one to domicile, as of one refresh. */
+  private static class Target {
+    final AwardDomicile domicile;
+    final OpentimeSnapshot opentime;
+    final GridEvaluator gridEvaluator;
+
+    Target(AwardDomicile domicile, OpentimeSnapshot opentime,
+        GridEvaluator gridEvaluator) {
+      this.domicile = domicile;
+      this.opentime = opentime;
+      this.gridEvaluator = gridEvaluator;
+    }
+  }
+
+  /** Opentime trips which could replace dropTrip, best first. */
+  private static class EligibleAdds {
+    final Trip dropTrip;
+    final Map<Trip, TripScore> adds;
+    final Set<Trip> callScheduling;
+
+    EligibleAdds(Trip dropTrip, Map<Trip, TripScore> adds, Set<Trip> callScheduling) {
+      this.dropTrip = dropTrip;
+      this.adds = adds;
+      this.callScheduling = callScheduling;
+    }
+  }
+
+  private void process(Map<AwardDomicile, GridObservation> grids, Schedule schedule) {
     logger.info("Processing...");
     LocalDate changeHorizon = clock.today().plusDays(1);
-    schedule.getTrips().forEach((key, trip) -> {
-      if (key.getPairingName().charAt(0) != toDomicile.getAwardId()
-          && trip.isDroppable() // it is an actual trip.
-          && trip.getEarliestDepartureDate().isAfter(changeHorizon)) {
-        try {
-          attemptTripDrop(schedule, fromGrid, toGrid, trip);
-        } catch (URISyntaxException | IOException | ParseException e) {
-          logger.log(Level.WARNING, "Error", e);
-        }
+    List<Trip> dropTrips = schedule.getTrips().values().stream()
+        .filter(trip -> !isInToDomicile(trip.getPairingName())
+            && trip.isDroppable() // it is an actual trip.
+            && trip.getEarliestDepartureDate().isAfter(changeHorizon))
+        .collect(Collectors.toList());
+    if (dropTrips.isEmpty()) {
+      return;
+    }
+
+    ImmutableList.Builder<Target> targets = ImmutableList.builder();
+    for (AwardDomicile toDomicile : toDomiciles) {
+      try {
+        OpentimeSnapshot opentime = new OpentimeSnapshot(
+            getOpentimeTrips(toDomicile), tripDatabase);
+        logger.info(toDomicile + " opentime has " + opentime.size() + " trips");
+        targets.add(new Target(toDomicile, opentime,
+            new GridEvaluator(yearMonth, grids.get(fromDomicile), grids.get(toDomicile))));
+      } catch (URISyntaxException | IOException | ParseException e) {
+        logger.log(Level.WARNING, "Error retrieving " + toDomicile + " opentime", e);
       }
-    });
+    }
+    List<Target> targetList = targets.build();
+
+    // Evaluation only reads shared state; swaps are tried serially, in order.
+    List<List<EligibleAdds>> results = dropTrips.parallelStream()
+        .map(dropTrip -> getEligibleAdds(schedule, dropTrip, targetList))
+        .collect(Collectors.toList());
+    results.forEach(eligibleAdds -> eligibleAdds.forEach(this::attemptTripDrop));
   }
 
-  private void attemptTripDrop(
-      Schedule schedule,
-      GridObservation fromGrid,
-      GridObservation toGrid,
-      Trip dropTrip) throws URISyntaxException, IOException, ParseException {
+  private List<EligibleAdds> getEligibleAdds(Schedule schedule, Trip dropTrip,
+      List<Target> targets) {
     logger.info("Attempting to drop trip " + dropTrip.getPairingName());
-    Set<Trip> callScheduling = new HashSet<>();
-    Map<Trip, TripScore> eligibleAdds = getEligibleAdds(schedule, dropTrip,
-        callScheduling);
-    if (eligibleAdds.isEmpty()) {
-      return;
+    // Constructs a reduced schedule.
+    Set<PairingKey> retainedKeys = new HashSet<>(schedule.getTrips().keySet());
+    retainedKeys.remove(dropTrip.getPairingKey());
+    ReducedSchedule reducedSchedule = new ReducedSchedule(
+        schedule, retainedKeys, bidConfig, tripDatabase.getTripScoreCache());
+    OverlapEvaluator evaluator = new OverlapEvaluator(
+        reducedSchedule, requiredDaysOff, bidConfig);
+
+    // An add departing the same day as a retained trip overlaps it, and
+    // one with less credit than this would leave us below minimum credit.
+    Set<LocalDate> blockedDates = new HashSet<>();
+    reducedSchedule.getRetainedTrips()
+        .forEach(trip -> blockedDates.addAll(trip.getDepartureDates()));
+    Period minAddCredit = MIN_CREDIT.minus(
+        schedule.getCreditInMonth().minus(dropTrip.getCredit()));
+
+    ImmutableList.Builder<EligibleAdds> result = ImmutableList.builder();
+    for (Target target : targets) {
+      Set<Trip> callScheduling = new HashSet<>();
+      Map<Trip, TripScore> adds = getEligibleAdds(dropTrip, evaluator, target,
+          target.opentime.getTrips(blockedDates, minAddCredit), callScheduling);
+      if (!adds.isEmpty()) {
+        result.add(new EligibleAdds(dropTrip, adds, callScheduling));
+      }
     }
+    return result.build();
+  }
+
+  private void attemptTripDrop(EligibleAdds eligibleAdds) {
+    Trip dropTrip = eligibleAdds.dropTrip;
     PairingKey dropKey = dropTrip.getPairingKey();
-    TripScore dropScore = new TripScore(dropTrip, bidConfig);
-    for (Trip addTrip : eligibleAdds.keySet()) {
-      TripScore addScore = eligibleAdds.get(addTrip);
+    TripScore dropScore = tripDatabase.getTripScoreCache().getScore(dropTrip, bidConfig);
+    for (Trip addTrip : eligibleAdds.adds.keySet()) {
+      TripScore addScore = eligibleAdds.adds.get(addTrip);
       PairingKey addKey = addTrip.getPairingKey();
       if (submittedSwaps.containsKey(addKey)
           && submittedSwaps.get(addKey).equals(dropKey)) {
@@ -247,15 +315,19 @@ public class Processor extends Thread implements Observer {
             dropTrip.getPairingName(),
             dropScore.getPoints()));
       }
-      if (callScheduling.contains(addTrip)) {
+      if (eligibleAdds.callScheduling.contains(addTrip)) {
         logger.info("CALL SCHEDULING: drop " + dropKey + ", add " + addKey);
         notifier.notify("CALL SCHEDULING",
             "Drop " + dropKey + ", add " + addKey + "\n");
       } else {
         notifier.notify("TRY FLICA", "SWAP: drop " + dropKey + ", add " + addKey + "\n");
         if (false) {
-          flicaService.submitSwap(FlicaService.BID_FIRST_COME, yearMonth,
-              clock.today(), ImmutableList.of(addKey), ImmutableList.of(dropKey));
+          try {
+            flicaService.submitSwap(FlicaService.BID_FIRST_COME, yearMonth,
+                clock.today(), ImmutableList.of(addKey), ImmutableList.of(dropKey));
+          } catch (URISyntaxException | IOException e) {
+            logger.log(Level.WARNING, "Error", e);
+          }
         } else {
           logger.info("SWAP: drop " + dropKey + ", add " + addKey);
         }
@@ -264,7 +336,8 @@ public class Processor extends Thread implements Observer {
     }
   }
 
-  private List<FlicaTask> getOpentimeTrips() throws URISyntaxException, IOException, ParseException {
+  private List<FlicaTask> getOpentimeTrips(AwardDomicile toDomicile)
+      throws URISyntaxException, IOException, ParseException {
     String rawOpenTime = flicaService.getOpenTime(
         toDomicile, Rank.CAPTAIN, FlicaService.BID_FIRST_COME, yearMonth);
     OpenTimeParser openTimeParser = new OpenTimeParser(
@@ -272,35 +345,12 @@ public class Processor extends Thread implements Observer {
     return openTimeParser.parse();
   }
 
-  private Map<Trip, TripScore> getEligibleAdds(
-      Schedule schedule, Trip dropTrip, Set<Trip> callScheduling)
-      throws URISyntaxException, IOException, ParseException {
-    Period creditWithoutDropTrip = schedule
-        .getCreditInMonth().minus(dropTrip.getCredit());
-
-    // Constructs a reduced schedule.
-    Set<PairingKey> retainedKeys = new HashSet<>(schedule.getTrips().keySet());
-    retainedKeys.remove(dropTrip.getPairingKey());
-    ReducedSchedule reducedSchedule = new ReducedSchedule(
-        schedule, retainedKeys, bidConfig);
-
-    GridEvaluator gridEvaluator = new GridEvaluator(yearMonth, fromGrid, toGrid);
-
+  /** candidates are already known to meet minimum credit. */
+  private Map<Trip, TripScore> getEligibleAdds(Trip dropTrip,
+      OverlapEvaluator evaluator, Target target, List<Trip> candidates,
+      Set<Trip> callScheduling) {
     Map<Trip, TripScore> result = new HashMap<>();
-    for (FlicaTask bareTask : getOpentimeTrips()) {
-      FlicaTaskWrapper task = new FlicaTaskWrapper(bareTask);
-      Trip addTrip = tripDatabase.getTrip(task.getPairingKey());
-
-      if (task.isTwoHundred()) {
-        continue;
-      }
-
-      ImmutableSet.Builder<LocalDate> builder = ImmutableSet.builder();
-      bidConfig.getRequiredDayOffList()
-          .forEach(s -> builder.add(LocalDate.parse(s)));
-
-      OverlapEvaluator evaluator = new OverlapEvaluator(
-          reducedSchedule, builder.build(), bidConfig);
+    for (Trip addTrip : candidates) {
       OverlapEvaluation eval = evaluator.evaluate(addTrip);
       switch (eval.overlap) {
         case UNDROPPABLE:
@@ -332,20 +382,13 @@ public class Processor extends Thread implements Observer {
           break;
       }
 
-      // Checks credit.
-      Period newCredit = creditWithoutDropTrip.plus(addTrip.getCredit());
-      if (newCredit.isLessThan(MIN_CREDIT)) {
-        logger.info("Considered " + addTrip.getPairingName()
-            + " but the new credit would be less than min credit at " + newCredit);
-        continue;
-      }
-
       // Checks reserve grid.
-      GridEvaluation gridEval = gridEvaluator.evaluate(
+      GridEvaluation gridEval = target.gridEvaluator.evaluate(
           dropTrip.getDepartureDates(),
           addTrip.getDepartureDates());
       if (gridEval.swappable) {
-        result.put(addTrip, new TripScore(addTrip, bidConfig));
+        result.put(addTrip,
+            tripDatabase.getTripScoreCache().getScore(addTrip, bidConfig));
       }
       if (gridEval.requiresCrewScheduling) {
         callScheduling.add(addTrip);
@@ -30,7 +30,6 @@ import crewtools.flica.Proto;
 import crewtools.flica.Proto.Schedule;
 import crewtools.flica.adapters.ScheduleAdapter;
 import crewtools.flica.parser.ParseException;
-import crewtools.flica.parser.ScheduleParser;
 import crewtools.util.PeriodicDaemonThread;
 
 public class ScheduleLoaderThread extends PeriodicDaemonThread {
@@ -74,7 +73,6 @@ public class ScheduleLoaderThread extends PeriodicDaemonThread {
     if (rawSchedule.contains(NO_SCHEDULE_AVAILABLE)) {
       throw new ParseException("No schedule available for " + yearMonth);
     }
-    ScheduleParser scheduleParser = new ScheduleParser(rawSchedule);
-    return scheduleParser.parse();
+    return service.parseSchedule(rawSchedule);
   }
 }
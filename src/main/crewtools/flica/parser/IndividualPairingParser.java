@@ -35,6 +35,9 @@ import crewtools.flica.pojo.PairingKey;
 public class IndividualPairingParser {
   private final Logger logger = Logger.getLogger(IndividualPairingParser.class.getName());
 
+  // The cache version of parse(); see CachingFlicaService.
+  public static final int VERSION = 1;
+
   private final PairingKey key;
   private final String input;
   private final ScheduleParserHelper helper;
@@ -43,6 +43,9 @@ import crewtools.util.Calendar;
 
 public class LineParser {
   private final Logger logger = Logger.getLogger(LineParser.class.getName());
+
+  // The cache version of parse(); see CachingFlicaService.
+  public static final int VERSION = 1;
   private static final String LINE_NAME_HEADER_TEXT = "Line #";
   private static final Splitter SPACE_SPLITTER = Splitter.on(' ').omitEmptyStrings();
   private static final String NBSP = "\u00a0";
@@ -32,18 +32,19 @@ import crewtools.flica.Proto.PairingList;
 import crewtools.flica.Proto.Trip;
 
 public class PairingParser {
-  private final Logger logger = Logger.getLogger(PairingParser.class.getName());
+  private static final Logger logger = Logger.getLogger(PairingParser.class.getName());
+
+  // The cache version of parse(); see CachingFlicaService.
+  public static final int VERSION = 1;
 
   private final String input;
   private final YearMonth yearMonth;
   private final boolean parseCanceled;
-  private final ScheduleParserHelper helper;
 
   public PairingParser(String input, YearMonth yearMonth, boolean parseCanceled) {
     this.input = input;
     this.yearMonth = yearMonth;
     this.parseCanceled = parseCanceled;
-    this.helper = new ScheduleParserHelper();
   }
 
   public PairingList parse() throws ParseException {
@@ -58,39 +59,57 @@ public class PairingParser {
 
   private static final String PAIRING_CANCELED = "Pairing Canceled";
 
+  static final String TABLE_SELECTOR =
+      "table[name=pagination] > tbody > tr > td > table";
+
   protected PairingList parseInternal() throws ParseException {
     PairingList.Builder pairingList = PairingList.newBuilder();
     pairingList.setYearMonth(yearMonth.toString());
     Document document = Jsoup.parse(input);
-    Elements containerCells = document.select("table[name=pagination] > tbody > tr > td > table");
+    Elements containerCells = document.select(TABLE_SELECTOR);
     for (Element table : containerCells) {
-      if (table.hasAttr("name") && table.attr("name").equals("header")) {
-        // JSoup doesn't seem to be able to filter on not attribute value.
-        // note: although this is called 'header', it contains a steel blue
-        // line, not the actual column headers.
-        continue;
-      }
-      // JSoup returns all recursive children unless we limit it with >
-      Elements rows = table.select("> tbody > tr");
-      if (rows.size() == 1 && rows.select("> td").text().isEmpty()) {
-        // The full pairing list has an empty table at the end.
-        logger.info("Ignoring trailing empty table");
-        continue;
+      Trip.Builder trip = parseTable(table, yearMonth, parseCanceled);
+      if (trip != null) {
+        pairingList.addTrip(trip);
       }
-      Iterator<Element> rowsIterator = rows.iterator();
-      Element headerRow = rowsIterator.next();
-      if (headerRow.toString().contains(PAIRING_CANCELED)) {
-        if (!parseCanceled) {
-          logger.fine("Skipping canceled pairing");
-          continue;
-        } else {
-          headerRow = rowsIterator.next();
-        }
-      }
-      Trip.Builder trip = pairingList.addTripBuilder();
-      String localReportTime = helper.parseHeader(headerRow, trip, yearMonth.getYear());
-      helper.parseTrip(localReportTime, rowsIterator, trip, yearMonth.getYear());
     }
     return pairingList.build();
   }
+
+  /**
+   * Returns the trip in one of the tables within the pagination table, or
+   * null if the table doesn't hold a trip to be parsed. Each table is
+   * independent of the rest of the page.
+   */
+  static Trip.Builder parseTable(Element table, YearMonth yearMonth,
+      boolean parseCanceled) throws ParseException {
+    if (table.hasAttr("name") && table.attr("name").equals("header")) {
+      // JSoup doesn't seem to be able to filter on not attribute value.
+      // note: although this is called 'header', it contains a steel blue
+      // line, not the actual column headers.
+      return null;
+    }
+    // JSoup returns all recursive children unless we limit it with >
+    Elements rows = table.select("> tbody > tr");
+    if (rows.size() == 1 && rows.select("> td").text().isEmpty()) {
+      // The full pairing list has an empty table at the end.
+      logger.info("Ignoring trailing empty table");
+      return null;
+    }
+    Iterator<Element> rowsIterator = rows.iterator();
+    Element headerRow = rowsIterator.next();
+    if (headerRow.toString().contains(PAIRING_CANCELED)) {
+      if (!parseCanceled) {
+        logger.fine("Skipping canceled pairing");
+        return null;
+      } else {
+        headerRow = rowsIterator.next();
+      }
+    }
+    Trip.Builder trip = Trip.newBuilder();
+    ScheduleParserHelper helper = new ScheduleParserHelper();
+    String localReportTime = helper.parseHeader(headerRow, trip, yearMonth.getYear());
+    helper.parseTrip(localReportTime, rowsIterator, trip, yearMonth.getYear());
+    return trip;
+  }
 }
@@ -0,0 +1,116 @@
+/**
+ * Copyright 2020 Iron City Software LLC
+ *
+ * This file is part of CrewTools.
+ *
+ * CrewTools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CrewTools is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CrewTools.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package crewtools.flica.parser;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.joda.time.YearMonth;
+
+import com.google.common.io.ByteStreams;
+
+import crewtools.flica.Proto.PairingList;
+import crewtools.flica.Proto.Trip;
+
+/**
+ * Compares StreamingPairingParser with PairingParser on saved all-pairings
+ * pages, which may be gzipped as in the response cache.
+ */
+public class PairingParserComparison {
+  public static void main(String args[]) throws Exception {
+    if (args.length < 2) {
+      System.err.println("PairingParserComparison 2020-03 page.html [page.html...]");
+      System.exit(1);
+    }
+    YearMonth yearMonth = YearMonth.parse(args[0]);
+    int numDifferent = 0;
+    for (int i = 1; i < args.length; ++i) {
+      String page = readPage(new File(args[i]));
+      List<String> differences = compare(page, yearMonth, true);
+      if (differences.isEmpty()) {
+        System.out.println("SAME " + args[i]);
+      } else {
+        numDifferent++;
+        System.out.println("DIFFERENT " + args[i]);
+        differences.forEach(difference -> System.out.println("  " + difference));
+      }
+    }
+    System.exit(numDifferent == 0 ? 0 : 1);
+  }
+
+  private static String readPage(File file) throws IOException {
+    try (InputStream input = file.getName().endsWith(".gz")
+        ? new GZIPInputStream(new FileInputStream(file))
+        : new FileInputStream(file)) {
+      return new String(ByteStreams.toByteArray(input), StandardCharsets.UTF_8);
+    }
+  }
+
+  /** Returns the ways in which the two parsers disagree on page. */
+  public static List<String> compare(String page, YearMonth yearMonth,
+      boolean parseCanceled) {
+    List<String> differences = new ArrayList<>();
+    PairingList expected = null;
+    PairingList actual = null;
+    String expectedError = null;
+    String actualError = null;
+    try {
+      expected = new PairingParser(page, yearMonth, parseCanceled).parse();
+    } catch (ParseException e) {
+      expectedError = String.valueOf(e.getMessage());
+    }
+    try {
+      actual = new StreamingPairingParser(page, yearMonth, parseCanceled).parse();
+    } catch (ParseException e) {
+      actualError = String.valueOf(e.getMessage());
+    }
+    if (expected == null || actual == null) {
+      if (expected != null || actual != null) {
+        differences.add(String.format("PairingParser error: %s, streaming error: %s",
+            expectedError, actualError));
+      }
+      return differences;
+    }
+    if (expected.getTripCount() != actual.getTripCount()) {
+      differences.add(String.format("%d trips, streaming parsed %d",
+          expected.getTripCount(), actual.getTripCount()));
+    }
+    int numTrips = Math.min(expected.getTripCount(), actual.getTripCount());
+    for (int i = 0; i < numTrips; ++i) {
+      Trip expectedTrip = expected.getTrip(i);
+      Trip actualTrip = actual.getTrip(i);
+      if (!expectedTrip.equals(actualTrip)) {
+        differences.add(String.format("trip %d: %s %s, streaming parsed %s %s", i,
+            expectedTrip.getPairingName(), expectedTrip.getStartDate(),
+            actualTrip.getPairingName(), actualTrip.getStartDate()));
+      }
+    }
+    if (differences.isEmpty() && !expected.equals(actual)) {
+      differences.add("pairing lists differ");
+    }
+    return differences;
+  }
+}
@@ -0,0 +1,303 @@
+/**
+ * Copyright 2020 Iron City Software LLC
+ *
+ * This file is part of CrewTools.
+ *
+ * CrewTools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CrewTools is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CrewTools.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package crewtools.flica.parser;
+
+import java.io.IOException;
+import java.io.PushbackReader;
+import java.io.Reader;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Scans the all-pairings page tag by tag, without building a DOM, and
+ * passes on the html of each table found directly within a cell of the
+ * pagination table. These are the tables PairingParser.TABLE_SELECTOR
+ * selects, one per pairing: tables nested within another element of the
+ * cell, or within a header or footer row, are not passed on.
+ *
+ * Comments and the contents of script and style elements are skipped,
+ * as they are by Jsoup.
+ */
+class PairingTableSplitter {
+  interface TableConsumer {
+    void accept(String tableHtml) throws ParseException;
+  }
+
+  private static final Pattern PAGINATION_NAME = Pattern.compile(
+      "\\sname\\s*=\\s*[\"']?\\s*pagination\\s*[\"']?(\\s|/|>)",
+      Pattern.CASE_INSENSITIVE);
+
+  // The cache version of split(); see CachingFlicaService.
+  static final int VERSION = 2;
+
+  // Elements that have no end tag.
+  private static final ImmutableSet<String> VOID_ELEMENTS = ImmutableSet.of(
+      "area", "base", "br", "col", "embed", "hr", "img", "input", "link", "meta",
+      "param", "source", "track", "wbr");
+
+  private final PushbackReader input;
+  private final TableConsumer consumer;
+
+  // Tables open at the current position, innermost first.
+  private final Deque<Table> tables = new ArrayDeque<>();
+  private StringBuilder capture;
+  private int captureDepth;
+
+  PairingTableSplitter(Reader input, TableConsumer consumer) {
+    this.input = new PushbackReader(input, 1);
+    this.consumer = consumer;
+  }
+
+  void split() throws IOException, ParseException {
+    int c;
+    while ((c = input.read()) != -1) {
+      if (c != '<') {
+        append((char) c);
+        continue;
+      }
+      int next = input.read();
+      if (next == '!') {
+        readDeclaration();
+      } else if (next == '/' || Character.isLetter(next)) {
+        readTag((char) next);
+      } else {
+        // A bare '<' in text.
+        append('<');
+        if (next != -1) {
+          input.unread(next);
+        }
+      }
+    }
+  }
+
+  private void append(char c) {
+    if (capture != null) {
+      capture.append(c);
+    }
+  }
+
+  private void append(CharSequence text) {
+    if (capture != null) {
+      capture.append(text);
+    }
+  }
+
+  /** Reads a comment or doctype, having read "<!". */
+  private void readDeclaration() throws IOException {
+    StringBuilder text = new StringBuilder("<!");
+    int c = input.read();
+    if (c == '-') {
+      text.append((char) c);
+      c = input.read();
+      if (c == '-') {
+        text.append((char) c);
+        readUntil(text, "-->");
+        append(text);
+        return;
+      }
+    }
+    if (c != -1) {
+      text.append((char) c);
+    }
+    if (c != '>') {
+      readUntil(text, ">");
+    }
+    append(text);
+  }
+
+  private void readUntil(StringBuilder text, String terminator) throws IOException {
+    int c;
+    while ((c = input.read()) != -1) {
+      text.append((char) c);
+      int start = text.length() - terminator.length();
+      if (start >= 0 && text.indexOf(terminator, start) == start) {
+        return;
+      }
+    }
+  }
+
+  /** Reads a start or end tag, having read its first character after '<'. */
+  private void readTag(char first) throws IOException, ParseException {
+    StringBuilder tag = new StringBuilder();
+    tag.append('<').append(first);
+    boolean isEndTag = first == '/';
+    char lastNonSpace = first;
+    int c;
+    while ((c = input.read()) != -1) {
+      tag.append((char) c);
+      if (c == '>') {
+        break;
+      }
+      if ((c == '"' || c == '\'') && lastNonSpace == '=') {
+        readUntil(tag, String.valueOf((char) c));
+        lastNonSpace = (char) c;
+        continue;
+      }
+      if (!Character.isWhitespace(c)) {
+        lastNonSpace = (char) c;
+      }
+    }
+    String name = getTagName(tag, isEndTag);
+    if (isEndTag) {
+      handleEndTag(name, tag);
+      return;
+    }
+    handleStartTag(name, tag);
+    if (name.equals("script") || name.equals("style")) {
+      readRawText(name);
+    }
+  }
+
+  /** Reads the raw text of a script or style element and its end tag. */
+  private void readRawText(String name) throws IOException, ParseException {
+    String endTag = "</" + name;
+    StringBuilder text = new StringBuilder();
+    int c;
+    while ((c = input.read()) != -1) {
+      text.append((char) c);
+      int start = text.length() - endTag.length();
+      if (start >= 0 && text.substring(start).equalsIgnoreCase(endTag)) {
+        StringBuilder tag = new StringBuilder(text.substring(start));
+        text.setLength(start);
+        append(text);
+        readUntil(tag, ">");
+        handleEndTag(name, tag);
+        return;
+      }
+    }
+    append(text);
+  }
+
+  private static String getTagName(CharSequence tag, boolean isEndTag) {
+    int start = isEndTag ? 2 : 1;
+    int end = start;
+    while (end < tag.length() && Character.isLetterOrDigit(tag.charAt(end))) {
+      end++;
+    }
+    return tag.subSequence(start, end).toString().toLowerCase(Locale.ROOT);
+  }
+
+  private void handleStartTag(String name, CharSequence tag) {
+    Table parent = tables.peek();
+    switch (name) {
+      case "table":
+        if (capture == null && parent != null && parent.isPagination
+            && parent.isInCell && parent.cellElements.isEmpty()) {
+          capture = new StringBuilder();
+          captureDepth = tables.size() + 1;
+        }
+        append(tag);
+        tables.push(new Table(PAGINATION_NAME.matcher(tag).find()));
+        return;
+      case "td":
+        setInCell(parent, parent != null && parent.isInBody);
+        break;
+      case "th":
+      case "tr":
+        setInCell(parent, false);
+        break;
+      case "tbody":
+      case "thead":
+      case "tfoot":
+        setInCell(parent, false);
+        if (parent != null) {
+          parent.isInBody = name.equals("tbody");
+        }
+        break;
+      default:
+        if (parent != null && parent.isInCell && !VOID_ELEMENTS.contains(name)
+            && !isSelfClosing(tag)) {
+          parent.cellElements.push(name);
+        }
+        break;
+    }
+    append(tag);
+  }
+
+  private static boolean isSelfClosing(CharSequence tag) {
+    int length = tag.length();
+    return length >= 2 && tag.charAt(length - 2) == '/';
+  }
+
+  private void handleEndTag(String name, CharSequence tag) throws ParseException {
+    append(tag);
+    Table table = tables.peek();
+    switch (name) {
+      case "table":
+        if (table == null) {
+          return;
+        }
+        if (capture != null && tables.size() == captureDepth) {
+          String tableHtml = capture.toString();
+          capture = null;
+          consumer.accept(tableHtml);
+        }
+        tables.pop();
+        break;
+      case "td":
+      case "th":
+      case "tr":
+        setInCell(table, false);
+        break;
+      case "tbody":
+      case "thead":
+      case "tfoot":
+        setInCell(table, false);
+        if (table != null) {
+          // Jsoup puts any later rows in a tbody.
+          table.isInBody = true;
+        }
+        break;
+      default:
+        // As an HTML parser does, closes the elements opened since name.
+        if (table != null && table.cellElements.contains(name)) {
+          String open;
+          do {
+            open = table.cellElements.pop();
+          } while (!open.equals(name));
+        }
+        break;
+    }
+  }
+
+  private void setInCell(Table table, boolean isInCell) {
+    if (table != null) {
+      table.isInCell = isInCell;
+      table.cellElements.clear();
+    }
+  }
+
+  private static class Table {
+    private final boolean isPagination;
+    // Rows outside thead and tfoot are in the tbody that Jsoup adds.
+    private boolean isInBody = true;
+    private boolean isInCell;
+    // Elements open within the current cell, innermost first.
+    private final Deque<String> cellElements = new ArrayDeque<>();
+
+    Table(boolean isPagination) {
+      this.isPagination = isPagination;
+    }
+  }
+}
@@ -42,6 +42,9 @@ import crewtools.flica.Proto.Trip;
 public class ScheduleParser {
   private final Logger logger = Logger.getLogger(ScheduleParser.class.getName());
 
+  // The cache version of parse(); see CachingFlicaService.
+  public static final int VERSION = 1;
+
   protected final String input;
   private final ScheduleParserHelper helper;
 
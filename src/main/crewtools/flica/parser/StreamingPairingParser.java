@@ -0,0 +1,173 @@
+/**
+ * Copyright 2020 Iron City Software LLC
+ *
+ * This file is part of CrewTools.
+ *
+ * CrewTools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CrewTools is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CrewTools.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package crewtools.flica.parser;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import org.joda.time.YearMonth;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Element;
+
+import crewtools.flica.Proto.PairingList;
+import crewtools.flica.Proto.Trip;
+
+/**
+ * Parses the all-pairings page one pairing at a time. Rather than building
+ * a DOM of the whole page, which runs to several megabytes, the page is
+ * split into the table for each pairing, and only that table is parsed
+ * by Jsoup. The output is identical to PairingParser's.
+ */
+public class StreamingPairingParser {
+  public interface TripConsumer {
+    void accept(Trip.Builder trip) throws ParseException;
+  }
+
+  // The cache version of parse(), which also depends on the splitter;
+  // see CachingFlicaService.
+  public static final String VERSION = 1 + "." + PairingTableSplitter.VERSION;
+
+  // Puts a pairing's table back where PairingParser.TABLE_SELECTOR finds it.
+  private static final String TABLE_PREFIX = "<table name=\"pagination\"><tr><td>";
+  private static final String TABLE_SUFFIX = "</td></tr></table>";
+
+  // Bounds the tables split from the page but not yet added to the result.
+  private static final int MAX_IN_FLIGHT_PER_THREAD = 4;
+
+  private final Reader input;
+  private final YearMonth yearMonth;
+  private final boolean parseCanceled;
+
+  public StreamingPairingParser(String input, YearMonth yearMonth,
+      boolean parseCanceled) {
+    this(new StringReader(input), yearMonth, parseCanceled);
+  }
+
+  /** Reads the page as UTF-8 from input, which is not closed. */
+  public StreamingPairingParser(InputStream input, YearMonth yearMonth,
+      boolean parseCanceled) {
+    this(new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8)),
+        yearMonth, parseCanceled);
+  }
+
+  public StreamingPairingParser(Reader input, YearMonth yearMonth,
+      boolean parseCanceled) {
+    this.input = input;
+    this.yearMonth = yearMonth;
+    this.parseCanceled = parseCanceled;
+  }
+
+  public PairingList parse() throws ParseException {
+    PairingList.Builder pairingList = PairingList.newBuilder();
+    pairingList.setYearMonth(yearMonth.toString());
+    parse(trip -> pairingList.addTrip(trip));
+    return pairingList.build();
+  }
+
+  /** Passes each trip to consumer in the order they appear on the page. */
+  public void parse(TripConsumer consumer) throws ParseException {
+    split(tableHtml -> {
+      Trip.Builder trip = parseTable(tableHtml);
+      if (trip != null) {
+        consumer.accept(trip);
+      }
+    });
+  }
+
+  /**
+   * As parse(), but parses the pairings' tables on pool, as each holds an
+   * independent trip. Each table is submitted as soon as it is split from
+   * the page, and splitting waits for the oldest table once
+   * MAX_IN_FLIGHT_PER_THREAD tables per thread of pool are outstanding.
+   * Trips are still returned in page order.
+   */
+  public PairingList parse(ForkJoinPool pool) throws ParseException {
+    PairingList.Builder pairingList = PairingList.newBuilder();
+    pairingList.setYearMonth(yearMonth.toString());
+    int maxInFlight = MAX_IN_FLIGHT_PER_THREAD * pool.getParallelism();
+    Deque<Future<Trip.Builder>> inFlight = new ArrayDeque<>();
+    try {
+      split(tableHtml -> {
+        if (inFlight.size() >= maxInFlight) {
+          addTrip(pairingList, inFlight.removeFirst());
+        }
+        inFlight.addLast(pool.submit(() -> parseTable(tableHtml)));
+      });
+      while (!inFlight.isEmpty()) {
+        addTrip(pairingList, inFlight.removeFirst());
+      }
+    } finally {
+      inFlight.forEach(trip -> trip.cancel(false));
+    }
+    return pairingList.build();
+  }
+
+  private static void addTrip(PairingList.Builder pairingList,
+      Future<Trip.Builder> future) throws ParseException {
+    Trip.Builder trip;
+    try {
+      trip = future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ParseException(e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof ParseException) {
+        throw (ParseException) cause;
+      }
+      throw new ParseException(cause instanceof Exception
+          ? (Exception) cause : new IllegalStateException(cause));
+    }
+    if (trip != null) {
+      pairingList.addTrip(trip);
+    }
+  }
+
+  private void split(PairingTableSplitter.TableConsumer consumer)
+      throws ParseException {
+    try {
+      new PairingTableSplitter(input, consumer).split();
+    } catch (ParseException pe) {
+      throw pe;
+    } catch (IOException | RuntimeException e) {
+      throw new ParseException(e);
+    }
+  }
+
+  private Trip.Builder parseTable(String tableHtml) throws ParseException {
+    Element table = Jsoup.parse(TABLE_PREFIX + tableHtml + TABLE_SUFFIX)
+        .select(PairingParser.TABLE_SELECTOR)
+        .first();
+    if (table == null) {
+      throw new ParseException("Unable to parse pairing table " + tableHtml);
+    }
+    return PairingParser.parseTable(table, yearMonth, parseCanceled);
+  }
+}
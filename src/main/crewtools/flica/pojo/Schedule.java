@@ -71,19 +71,19 @@ public class Schedule {
     this.undroppable = null;
 
     Calendar calendar = new Calendar(yearMonth);
-    Period totalCreditInMonth = Period.ZERO;
-    Period nonTripCreditInMonth = Period.ZERO;
+    int totalCreditInMonth = 0;
+    int nonTripCreditInMonth = 0;
     int totalNumWorkDays = 0;
     ImmutableMap.Builder<PairingKey, Period> tripCreditsInMonth = ImmutableMap.builder();
     ImmutableMap.Builder<PairingKey, Integer> numWorkDays = ImmutableMap.builder();
     for (Trip trip : trips) {
       if (calendar.isWithinPeriod(trip.getEarliestDepartureDate())) {
         Period creditInMonth = trip.getCreditInMonth(yearMonth);
-        totalCreditInMonth = totalCreditInMonth.plus(creditInMonth);
+        totalCreditInMonth += creditInMonth.getTotalMinutes();
         if (trip.hasScheduleType()) {
           // vacation, training...
           mergeNonTripInterval(trip.getInterval());
-          nonTripCreditInMonth = nonTripCreditInMonth.plus(creditInMonth);
+          nonTripCreditInMonth += creditInMonth.getTotalMinutes();
         } else {
           tripCreditsInMonth.put(trip.getPairingKey(), creditInMonth);
           int numDays = 0;
@@ -100,8 +100,8 @@ public class Schedule {
 
     this.totalNumWorkDays = totalNumWorkDays;
     this.numWorkDays = numWorkDays.build();
-    this.creditInMonth = totalCreditInMonth;
-    this.nonTripCreditInMonth = nonTripCreditInMonth;
+    this.creditInMonth = Period.minutes(totalCreditInMonth);
+    this.nonTripCreditInMonth = Period.minutes(nonTripCreditInMonth);
     this.tripCreditsInMonth = tripCreditsInMonth.build();
 
     ImmutableMap.Builder<PairingKey, Trip> result = ImmutableMap.builder();
@@ -42,6 +42,7 @@ import crewtools.flica.Proto.CrewPosition;
 import crewtools.flica.Proto.ScheduleType;
 import crewtools.flica.parser.ParseUtils;
 import crewtools.util.Calendar;
+import crewtools.util.DayMask;
 import crewtools.util.Period;
 import crewtools.util.TimeUtils;
 
@@ -67,6 +68,9 @@ public class Trip implements Comparable<Trip> {
     this.proto = proto;
     this.departureDates = departureDates;
     this.earliestDepartureDate = Ordering.natural().min(departureDates);
+    DayMask days = DayMask.forDate(earliestDepartureDate);
+    this.dayMaskYearMonth = days.getYearMonth();
+    this.dayMask = days.getMask(departureDates);
   }
 
   public String getPairingName() {
@@ -115,6 +119,16 @@ public class Trip implements Comparable<Trip> {
     return departureDates;
   }
 
+  /** The bid period of getDayMask(). */
+  public YearMonth getDayMaskYearMonth() {
+    return dayMaskYearMonth;
+  }
+
+  /** Departure dates as a DayMask of the bid period of the first departure. */
+  public long getDayMask() {
+    return dayMask;
+  }
+
   public List<Section> getSections() {
     return sections;
   }
@@ -129,6 +143,8 @@ public class Trip implements Comparable<Trip> {
   public List<String> scoreInfo = new ArrayList<>();
   private Set<LocalDate> departureDates;
   private LocalDate earliestDepartureDate;
+  private YearMonth dayMaskYearMonth;
+  private long dayMask;
 
   public boolean isTwoHundred() {
     if (proto.getEquipment().equals(Proto.Equipment.RJ2)) {
@@ -22,12 +22,18 @@ package crewtools.flica.retriever;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
 import java.util.logging.Logger;
 
+import org.joda.time.Duration;
 import org.joda.time.LocalDate;
 import org.joda.time.YearMonth;
 
+import com.google.protobuf.Message;
+
 import crewtools.flica.AwardDomicile;
 import crewtools.flica.FlicaConnection;
 import crewtools.flica.FlicaService;
@@ -38,26 +44,39 @@ import crewtools.flica.Proto.SeniorityList;
 import crewtools.flica.Proto.ThinLineList;
 import crewtools.flica.parser.AwardParser;
 import crewtools.flica.parser.LineParser;
-import crewtools.flica.parser.PairingParser;
-import crewtools.flica.parser.ParseException;
 import crewtools.flica.parser.SeniorityParser;
+import crewtools.flica.parser.StreamingPairingParser;
 import crewtools.flica.stats.DataReader;
+import crewtools.flica.stats.LegSearch;
 import crewtools.util.FlicaConfig;
 
 public class MonthlyDataRetriever {
   private final Logger logger = Logger.getLogger(MonthlyDataRetriever.class.getName());
 
+  private static final double REQUESTS_PER_SECOND = 2.0;
+  private static final int MAX_ATTEMPTS = 4;
+  private static final Duration INITIAL_BACKOFF = Duration.standardSeconds(5);
+
   private final YearMonth yearMonth;
   private final int seniorityDocumentId;
+  private final int numWorkers;
   private final DataReader dataReader;
+  private final ForkJoinPool parsePool;
 
   public static void main(String args[]) throws Exception {
     new MonthlyDataRetriever(args).run();
   }
 
   public MonthlyDataRetriever(String args[]) throws IOException {
+    this(args, ForkJoinPool.commonPool());
+  }
+
+  /** Parses each page of pairings on parsePool. */
+  public MonthlyDataRetriever(String args[], ForkJoinPool parsePool)
+      throws IOException {
     if (args.length == 0) {
-      System.err.println("MonthlyDataRetriever 2018-01 seniority-document-id");
+      System.err.println(
+          "MonthlyDataRetriever 2018-01 seniority-document-id [num-workers]");
       System.exit(1);
     }
     this.yearMonth = YearMonth.parse(args[0]);
@@ -66,7 +85,13 @@ public class MonthlyDataRetriever {
     } else {
       this.seniorityDocumentId = 0;
     }
+    if (args.length > 2) {
+      this.numWorkers = Integer.parseInt(args[2]);
+    } else {
+      this.numWorkers = 1;
+    }
     this.dataReader = new DataReader();
+    this.parsePool = parsePool;
   }
 
   public void run() throws Exception {
@@ -75,126 +100,173 @@ public class MonthlyDataRetriever {
     FlicaService service = new FlicaService(connection);
     service.connect();
 
-    getLinesForAllDomiciles(service);
-    getPairingsForAllDomiciles(service);
-    getSeniority(service, config);
-    getAwards(service);
+    ParallelRetriever retriever = new ParallelRetriever(numWorkers,
+        REQUESTS_PER_SECOND, MAX_ATTEMPTS, INITIAL_BACKOFF);
+    getLinesForAllDomiciles(retriever, service);
+    getPairingsForAllDomiciles(retriever, service);
+    getSeniority(retriever, service, config);
+    getAwards(retriever, service);
+    retriever.awaitAll();
   }
 
-  private void getLinesForAllDomiciles(FlicaService service)
-      throws ParseException, URISyntaxException, IOException {
+  private void getLinesForAllDomiciles(ParallelRetriever retriever,
+      FlicaService service) throws Exception {
     // If only retrieiving round 2, an error will be returned if round 1 is
     // not retrieved first.
-    String linesUnused = service.getAllLines(AwardDomicile.CLT, Rank.CAPTAIN, 1,
-        yearMonth);
+    String linesUnused = retriever.fetch("lines CLT CAPTAIN round 1",
+        () -> service.getAllLines(AwardDomicile.CLT, Rank.CAPTAIN, 1, yearMonth));
     for (AwardDomicile awardDomicile : AwardDomicile.values()) {
+      // round 1 lines are the same for captains and first officers.
+      CompletableFuture<Void> roundOne = submitLines(retriever, service,
+          CompletableFuture.completedFuture(null), awardDomicile, Rank.CAPTAIN, 1);
       for (Rank rank : Rank.values()) {
-        for (int round = 1; round < 3; ++round) {
-          if (round == 1 && !rank.equals(Rank.CAPTAIN)) {
-            // round 1 lines are the same for captains and first officers.
-            continue;
-          }
-          File outputFile = new File(
-              dataReader.getLineFilename(yearMonth, awardDomicile, rank, round));
-          if (outputFile.exists()) {
-            logger.info("SKIP " + outputFile + " as it exists");
-            continue;
-          }
-          LocalDate today = new LocalDate();
-          if (yearMonth.minusMonths(1).toLocalDate(16).isAfter(today)
-              && round == 2) {
-            logger.info("SKIP as round 2 has not been published");
-            continue;
-          }
-          logger.info("Retrieve lines for round " + round + " rank " + rank + " in "
-              + awardDomicile);
-          String lines = service.getAllLines(awardDomicile, rank, round,
-              yearMonth);
-          LineParser lineParser = new LineParser(lines);
-          ThinLineList lineList = lineParser.parse();
-          FileOutputStream output = new FileOutputStream(outputFile);
-          lineList.writeTo(output);
-          output.close();
-          logger.info("WROTE " + outputFile);
-        }
+        submitLines(retriever, service, roundOne, awardDomicile, rank, 2);
       }
     }
   }
 
-  private void getPairingsForAllDomiciles(FlicaService service)
-      throws IOException, URISyntaxException, ParseException {
-    for (AwardDomicile awardDomicile : AwardDomicile.values()) {
-      File outputFile = new File(dataReader.getPairingFilename(yearMonth, awardDomicile));
+  private CompletableFuture<Void> submitLines(ParallelRetriever retriever,
+      FlicaService service, CompletableFuture<Void> prerequisite,
+      AwardDomicile awardDomicile, Rank rank, int round) {
+    String name = "lines for round " + round + " rank " + rank + " in " + awardDomicile;
+    return retriever.submitAfter(prerequisite, name, () -> {
+      File outputFile = new File(
+          dataReader.getLineFilename(yearMonth, awardDomicile, rank, round));
       if (outputFile.exists()) {
         logger.info("SKIP " + outputFile + " as it exists");
-        continue;
+        return;
       }
-      logger.info("Retrieve pairings for " + awardDomicile + " (arbitrarily as "
-          + "FO round 1)");
-      String pairings = service.getAllPairings(awardDomicile, Rank.FIRST_OFFICER,
-          FlicaService.BID_ROUND_ONE, yearMonth);
-      PairingParser pairingParser = new PairingParser(pairings, yearMonth, true);
-      PairingList pairingList = pairingParser.parse();
-
-      String pairings2 = service.getAllPairings(awardDomicile, Rank.CAPTAIN,
-          FlicaService.BID_ROUND_TWO, yearMonth);
-      PairingParser pairingParser2 = new PairingParser(pairings2, yearMonth, true);
-      PairingList pairingList2 = pairingParser2.parse();
-
-      PairingList combinedPairingList = PairingList.newBuilder()
-          .addAllTrip(pairingList.getTripList())
-          .addAllTrip(pairingList2.getTripList())
-          .build();
-
-      FileOutputStream output = new FileOutputStream(outputFile);
-      combinedPairingList.writeTo(output);
-      output.close();
-      logger.info("WROTE " + outputFile);
-    }
+      LocalDate today = new LocalDate();
+      if (yearMonth.minusMonths(1).toLocalDate(16).isAfter(today)
+          && round == 2) {
+        logger.info("SKIP as round 2 has not been published");
+        return;
+      }
+      logger.info("Retrieve " + name);
+      String lines = retriever.fetch(name,
+          () -> service.getAllLines(awardDomicile, rank, round, yearMonth));
+      LineParser lineParser = new LineParser(lines);
+      ThinLineList lineList = lineParser.parse();
+      writeProto(lineList, outputFile);
+    });
   }
 
-  public void getSeniority(FlicaService service, FlicaConfig config) throws Exception {
-    File outputFile = new File(dataReader.getSeniorityFilename(yearMonth));
-    if (outputFile.exists()) {
-      logger.info("SKIP " + outputFile + " as it exists");
-      return;
-    }
-    if (seniorityDocumentId == 0) {
-      logger.warning("No seniority document id specified, unable to retrieve seniority.");
-      return;
+  private void getPairingsForAllDomiciles(ParallelRetriever retriever,
+      FlicaService service) {
+    for (AwardDomicile awardDomicile : AwardDomicile.values()) {
+      retriever.submit("pairings in " + awardDomicile, () -> {
+        File outputFile = new File(
+            dataReader.getPairingFilename(yearMonth, awardDomicile));
+        File indexFile = new File(
+            dataReader.getLegIndexFilename(yearMonth, awardDomicile));
+        if (outputFile.exists()) {
+          logger.info("SKIP " + outputFile + " as it exists");
+          PairingList pairingList = dataReader.readPairings(yearMonth, awardDomicile);
+          if (!indexFile.exists() || !LegSearch.isIndexOf(
+              dataReader.readLegIndex(yearMonth, awardDomicile), pairingList)) {
+            writeProto(LegSearch.buildIndex(yearMonth, pairingList), indexFile);
+          }
+          return;
+        }
+        logger.info("Retrieve pairings for " + awardDomicile + " (arbitrarily as "
+            + "FO round 1)");
+        String pairings = retriever.fetch("pairings round 1 in " + awardDomicile,
+            () -> service.getAllPairings(awardDomicile, Rank.FIRST_OFFICER,
+                FlicaService.BID_ROUND_ONE, yearMonth));
+        StreamingPairingParser pairingParser =
+            new StreamingPairingParser(pairings, yearMonth, true);
+        PairingList pairingList =
+            pairingParser.parse(parsePool);
+
+        String pairings2 = retriever.fetch("pairings round 2 in " + awardDomicile,
+            () -> service.getAllPairings(awardDomicile, Rank.CAPTAIN,
+                FlicaService.BID_ROUND_TWO, yearMonth));
+        StreamingPairingParser pairingParser2 =
+            new StreamingPairingParser(pairings2, yearMonth, true);
+        PairingList pairingList2 =
+            pairingParser2.parse(parsePool);
+
+        PairingList combinedPairingList = PairingList.newBuilder()
+            .addAllTrip(pairingList.getTripList())
+            .addAllTrip(pairingList2.getTripList())
+            .build();
+        writeProto(combinedPairingList, outputFile);
+        writeProto(LegSearch.buildIndex(yearMonth, combinedPairingList), indexFile);
+      });
     }
-    byte pdf[] = service.getDocument(AwardDomicile.CLT, Rank.FIRST_OFFICER,
-        FlicaService.BID_ROUND_ONE, yearMonth, seniorityDocumentId,
-        "SYSSEN");
-    SeniorityParser parser = new SeniorityParser(pdf, config.getDomiciles());
-    SeniorityList list = parser.parse();
-    list.writeTo(new FileOutputStream(outputFile));
-    logger.info("Wrote " + outputFile);
   }
 
-  public void getAwards(FlicaService service) throws Exception {
+  public void getSeniority(ParallelRetriever retriever, FlicaService service,
+      FlicaConfig config) {
+    retriever.submit("seniority", () -> {
+      File outputFile = new File(dataReader.getSeniorityFilename(yearMonth));
+      if (outputFile.exists()) {
+        logger.info("SKIP " + outputFile + " as it exists");
+        return;
+      }
+      if (seniorityDocumentId == 0) {
+        logger.warning("No seniority document id specified, unable to retrieve "
+            + "seniority.");
+        return;
+      }
+      byte pdf[] = retriever.fetch("seniority",
+          () -> service.getDocument(AwardDomicile.CLT, Rank.FIRST_OFFICER,
+              FlicaService.BID_ROUND_ONE, yearMonth, seniorityDocumentId,
+              "SYSSEN"));
+      SeniorityParser parser = new SeniorityParser(pdf, config.getDomiciles());
+      SeniorityList list = parser.parse();
+      writeProto(list, outputFile);
+    });
+  }
+
+  public void getAwards(ParallelRetriever retriever, FlicaService service) {
     for (AwardDomicile awardDomicile : AwardDomicile.values()) {
       for (Rank rank : Rank.values()) {
+        CompletableFuture<Void> previousRound = CompletableFuture.completedFuture(null);
         for (int round = 1; round < 3; round++) {
-          File outputFile = new File(dataReader.getAwardFilename(
-              yearMonth, awardDomicile, rank, round));
-          if (outputFile.exists()) {
-            logger.info("SKIP " + outputFile + " as it exists");
-            continue;
-          }
-          logger.info("Retrieve awards for round " + round + " rank " + rank + " in "
-              + awardDomicile);
-          String award = service.getBidAward(awardDomicile, rank, round, yearMonth);
-          if (award.indexOf("An error has occurred") > -1) {
-            logger.info("SKIP as unpublished");
-            continue;
-          }
-          AwardParser parser = new AwardParser(award, awardDomicile, rank, round);
-          DomicileAward protoAward = parser.parse();
-          protoAward.writeTo(new FileOutputStream(outputFile));
-          logger.info("Wrote " + outputFile);
+          previousRound = submitAward(retriever, service, previousRound,
+              awardDomicile, rank, round);
         }
       }
     }
   }
+
+  private CompletableFuture<Void> submitAward(ParallelRetriever retriever,
+      FlicaService service, CompletableFuture<Void> prerequisite,
+      AwardDomicile awardDomicile, Rank rank, int round) {
+    String name = "awards for round " + round + " rank " + rank + " in "
+        + awardDomicile;
+    return retriever.submitAfter(prerequisite, name, () -> {
+      File outputFile = new File(dataReader.getAwardFilename(
+          yearMonth, awardDomicile, rank, round));
+      if (outputFile.exists()) {
+        logger.info("SKIP " + outputFile + " as it exists");
+        return;
+      }
+      logger.info("Retrieve " + name);
+      String award = retriever.fetch(name,
+          () -> service.getBidAward(awardDomicile, rank, round, yearMonth));
+      if (award.indexOf("An error has occurred") > -1) {
+        logger.info("SKIP as unpublished");
+        return;
+      }
+      AwardParser parser = new AwardParser(award, awardDomicile, rank, round);
+      DomicileAward protoAward = parser.parse();
+      writeProto(protoAward, outputFile);
+    });
+  }
+
+  /**
+   * Writes to a temporary file first, so that an interrupted run never
+   * leaves a partial file which the next run would skip.
+   */
+  private void writeProto(Message message, File outputFile) throws IOException {
+    File tempFile = new File(outputFile.getPath() + ".tmp");
+    try (FileOutputStream output = new FileOutputStream(tempFile)) {
+      message.writeTo(output);
+    }
+    Files.move(tempFile.toPath(), outputFile.toPath(),
+        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    logger.info("WROTE " + outputFile);
+  }
 }
@@ -0,0 +1,184 @@
+/**
+ * Copyright 2020 Iron City Software LLC
+ *
+ * This file is part of CrewTools.
+ *
+ * CrewTools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CrewTools is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CrewTools.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package crewtools.flica.retriever;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.joda.time.Duration;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import crewtools.flica.parser.ParseException;
+
+/**
+ * Runs retrievals on a fixed number of worker threads.
+ *
+ * Every fetch from FLICA waits for the rate limiter, which is shared by
+ * all workers as they all talk to one host. A fetch which fails with
+ * anything other than a ParseException is retried, doubling the backoff
+ * between attempts. A retrieval may depend on another, eg round 2 on
+ * round 1, and is skipped if its prerequisite fails.
+ */
+public class ParallelRetriever {
+  private final Logger logger = Logger.getLogger(ParallelRetriever.class.getName());
+
+  public interface Retrieval {
+    void run() throws Exception;
+  }
+
+  private final ExecutorService executor;
+  private final RateLimiter rateLimiter;
+  private final int maxAttempts;
+  private final Duration initialBackoff;
+
+  private final List<CompletableFuture<Void>> futures = new ArrayList<>();
+  private final AtomicInteger numSubmitted = new AtomicInteger();
+  private final AtomicInteger numCompleted = new AtomicInteger();
+  private final AtomicInteger numFailed = new AtomicInteger();
+  private final AtomicInteger numRetries = new AtomicInteger();
+
+  public ParallelRetriever(int numWorkers, double requestsPerSecond,
+      int maxAttempts, Duration initialBackoff) {
+    Preconditions.checkArgument(numWorkers > 0, "numWorkers");
+    Preconditions.checkArgument(maxAttempts > 0, "maxAttempts");
+    this.executor = Executors.newFixedThreadPool(numWorkers,
+        new ThreadFactoryBuilder()
+            .setNameFormat("Retriever-%d")
+            .setDaemon(true)
+            .build());
+    this.rateLimiter = RateLimiter.create(requestsPerSecond);
+    this.maxAttempts = maxAttempts;
+    this.initialBackoff = initialBackoff;
+  }
+
+  public synchronized CompletableFuture<Void> submit(String name,
+      Retrieval retrieval) {
+    return track(CompletableFuture.runAsync(() -> run(name, retrieval), executor));
+  }
+
+  /** Runs retrieval once prerequisite has completed successfully. */
+  public synchronized CompletableFuture<Void> submitAfter(
+      CompletableFuture<Void> prerequisite, String name, Retrieval retrieval) {
+    return track(prerequisite.thenRunAsync(() -> run(name, retrieval), executor));
+  }
+
+  private CompletableFuture<Void> track(CompletableFuture<Void> future) {
+    numSubmitted.incrementAndGet();
+    futures.add(future);
+    return future;
+  }
+
+  /**
+   * Returns the result of fetcher, waiting for the rate limiter before
+   * each attempt.
+   */
+  public <T> T fetch(String name, Callable<T> fetcher) throws Exception {
+    long backoffMillis = initialBackoff.getMillis();
+    for (int attempt = 1; ; ++attempt) {
+      rateLimiter.acquire();
+      try {
+        return fetcher.call();
+      } catch (ParseException | InterruptedException e) {
+        throw e;
+      } catch (Exception e) {
+        if (attempt >= maxAttempts) {
+          throw e;
+        }
+        numRetries.incrementAndGet();
+        logger.log(Level.WARNING, String.format("Attempt %d of %d for %s failed; "
+            + "retrying in %dms", attempt, maxAttempts, name, backoffMillis), e);
+        Thread.sleep(backoffMillis);
+        backoffMillis *= 2;
+      }
+    }
+  }
+
+  private void run(String name, Retrieval retrieval) {
+    try {
+      retrieval.run();
+      logProgress("DONE " + name);
+    } catch (Exception e) {
+      numFailed.incrementAndGet();
+      logProgress("FAILED " + name);
+      throw new CompletionException(e);
+    }
+  }
+
+  private void logProgress(String message) {
+    logger.info(String.format("[%d/%d] %s", numCompleted.incrementAndGet(),
+        numSubmitted.get(), message));
+  }
+
+  /**
+   * Waits for every submitted retrieval, then throws the first failure,
+   * if any. Retrievals skipped because a prerequisite failed are not
+   * counted as failures themselves.
+   */
+  public void awaitAll() throws Exception {
+    List<CompletableFuture<Void>> all;
+    synchronized (this) {
+      all = new ArrayList<>(futures);
+    }
+    Throwable failure = null;
+    int numUnsuccessful = 0;
+    for (CompletableFuture<Void> future : all) {
+      try {
+        future.join();
+      } catch (CompletionException e) {
+        numUnsuccessful++;
+        if (failure == null) {
+          failure = e.getCause();
+        }
+      }
+    }
+    logger.info(String.format("%d retrievals, %d failed, %d skipped, %d retries",
+        all.size(), numFailed.get(), numUnsuccessful - numFailed.get(),
+        numRetries.get()));
+    executor.shutdown();
+    if (failure instanceof Exception) {
+      throw (Exception) failure;
+    } else if (failure != null) {
+      throw new IllegalStateException(failure);
+    }
+  }
+
+  public int getNumCompleted() {
+    return numCompleted.get();
+  }
+
+  public int getNumFailed() {
+    return numFailed.get();
+  }
+
+  public int getNumRetries() {
+    return numRetries.get();
+  }
+}
@@ -20,22 +20,20 @@
 package crewtools.flica.stats;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Collection;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
 import java.util.logging.Logger;
 
 import org.joda.time.YearMonth;
 
 import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 
 import crewtools.flica.AwardDomicile;
-import crewtools.flica.Proto.PairingList;
-import crewtools.flica.Proto.ThinLineList;
-import crewtools.flica.Proto.Trip;
 import crewtools.util.Period;
 
 public class BlockReport {
@@ -52,23 +50,21 @@ public class BlockReport {
   }
 
   public void run() throws Exception {
-    Map<YearMonth, Map<AwardDomicile, ThinLineList>> lineLists = dataReader.readLines();
-    Map<YearMonth, Map<AwardDomicile, PairingList>> pairingLists = dataReader
-        .readPairings();
+    PairingStore store = dataReader.readPairingStore();
     Map<String, GraphData> lineTokenToDataMap = new HashMap<>();
     Map<String, GraphData> blockTokenToDataMap = new HashMap<>();
 
     for (AwardDomicile awardDomicile : AwardDomicile.values()) {
       lineTokenToDataMap.put("$" + awardDomicile + "_DATA",
-          getLineGraphData(Optional.of(awardDomicile), lineLists));
+          getLineGraphData(Optional.of(awardDomicile), store));
       blockTokenToDataMap.put("$" + awardDomicile + "_DATA",
-          getBlockGraphData(Optional.of(awardDomicile), lineLists, pairingLists));
+          getBlockGraphData(Optional.of(awardDomicile), store));
     }
 
     lineTokenToDataMap.put("$ALL_DATA",
-        getLineGraphData(Optional.absent(), lineLists));
+        getLineGraphData(Optional.absent(), store));
     blockTokenToDataMap.put("$ALL_DATA",
-        getBlockGraphData(Optional.absent(), lineLists, pairingLists));
+        getBlockGraphData(Optional.absent(), store));
 
     new ChartRenderer(ImmutableMap.of("$TITLE_SUFFIX", "Round One lines"),
         lineTokenToDataMap, "generic.template", "/tmp/line.html").render();
@@ -77,56 +73,65 @@ public class BlockReport {
   }
 
   private GraphData getLineGraphData(Optional<AwardDomicile> awardDomicile,
-      Map<YearMonth, Map<AwardDomicile, ThinLineList>> thinLineLists) {
+      PairingStore store) {
     QuotedColumn<YearMonth> labelColumn = new QuotedColumn<>("Month");
     GraphData graphData = new GraphData();
     graphData.add(labelColumn);
     WorkaroundColumn<Integer> column = new WorkaroundColumn<>("Round One Lines");
-    List<YearMonth> sortedMonths = new ArrayList<>(thinLineLists.keySet());
-    Collections.sort(sortedMonths);
-    for (YearMonth yearMonth : sortedMonths) {
+    for (YearMonth yearMonth : getLineMonths(store)) {
       labelColumn.add(yearMonth);
-      Integer numLines = getNumRoundOneLines(
-          awardDomicile,
-          thinLineLists.get(yearMonth));
+      Integer numLines = getNumRoundOneLines(awardDomicile, yearMonth, store);
       column.add(numLines);
     }
     graphData.add(column);
     return graphData;
   }
 
-  private Integer getNumRoundOneLines(Optional<AwardDomicile> awardDomicile,
-      Map<AwardDomicile, ThinLineList> lines) {
-    if (lines == null) {
-      return null;
+  private SortedSet<YearMonth> getLineMonths(PairingStore store) {
+    SortedSet<YearMonth> result = new TreeSet<>();
+    for (YearMonth yearMonth : store.getYearMonths()) {
+      for (int partition : store.getPartitions(yearMonth)) {
+        if (store.hasLines(partition)) {
+          result.add(yearMonth);
+          break;
+        }
+      }
     }
+    return result;
+  }
+
+  /** Returns the month's partition for awardDomicile, or all of them if absent. */
+  private Collection<Integer> getPartitions(Optional<AwardDomicile> awardDomicile,
+      YearMonth yearMonth, PairingStore store) {
     if (!awardDomicile.isPresent()) {
-      int numLines = 0;
-      for (ThinLineList thinLineList : lines.values()) {
-        numLines += thinLineList.getThinLineCount();
-      }
-      return numLines;
+      return store.getPartitions(yearMonth);
     }
-    if (!lines.containsKey(awardDomicile.get())) {
-      return null;
+    int partition = store.getPartition(yearMonth, awardDomicile.get());
+    return partition == PairingStore.NONE
+        ? ImmutableList.of()
+        : ImmutableList.of(partition);
+  }
+
+  private Integer getNumRoundOneLines(Optional<AwardDomicile> awardDomicile,
+      YearMonth yearMonth, PairingStore store) {
+    Integer numLines = null;
+    for (int partition : getPartitions(awardDomicile, yearMonth, store)) {
+      if (store.hasLines(partition)) {
+        numLines = (numLines == null ? 0 : numLines) + store.getNumLines(partition);
+      }
     }
-    return lines.get(awardDomicile.get()).getThinLineCount();
+    return numLines;
   }
 
   private GraphData getBlockGraphData(Optional<AwardDomicile> awardDomicile,
-      Map<YearMonth, Map<AwardDomicile, ThinLineList>> thinLineLists,
-      Map<YearMonth, Map<AwardDomicile, PairingList>> pairingLists) {
+      PairingStore store) {
     QuotedColumn<YearMonth> labelColumn = new QuotedColumn<>("Month");
     GraphData graphData = new GraphData();
     graphData.add(labelColumn);
     Column<Integer> column = new WorkaroundColumn<>("Block hours");
-    List<YearMonth> sortedMonths = new ArrayList<>(thinLineLists.keySet());
-    Collections.sort(sortedMonths);
-    for (YearMonth yearMonth : sortedMonths) {
+    for (YearMonth yearMonth : getLineMonths(store)) {
       labelColumn.add(yearMonth);
-      Period block = getBlockTime(
-          awardDomicile,
-          pairingLists.get(yearMonth));
+      Period block = getBlockTime(awardDomicile, yearMonth, store);
       column.add(block == null ? null : block.getHours());
     }
     graphData.add(column);
@@ -134,25 +139,22 @@ public class BlockReport {
   }
 
   private Period getBlockTime(Optional<AwardDomicile> targetAwardDomicile,
-      Map<AwardDomicile, PairingList> pairingLists) {
-    if (pairingLists == null) {
-      return null;
-    }
-    if (targetAwardDomicile.isPresent()
-        && !pairingLists.containsKey(targetAwardDomicile.get())) {
-      return null;
-    }
-    Period result = Period.ZERO;
-    for (AwardDomicile awardDomicile : pairingLists.keySet()) {
-      if (targetAwardDomicile.isPresent() &&
-          !targetAwardDomicile.get().equals(awardDomicile)) {
+      YearMonth yearMonth, PairingStore store) {
+    Integer minutes = null;
+    for (int partition : getPartitions(targetAwardDomicile, yearMonth, store)) {
+      if (!store.hasPairings(partition)) {
         continue;
       }
-      PairingList list = pairingLists.get(awardDomicile);
-      for (Trip trip : list.getTripList()) {
-        result = result.plus(Period.fromText(trip.getBlockDuration()));
+      int partitionMinutes = 0;
+      for (int trip = store.getFirstTrip(partition);
+          trip < store.getEndTrip(partition); ++trip) {
+        int tripMinutes = store.getTripBlockMinutes(trip);
+        if (tripMinutes != PairingStore.NONE) {
+          partitionMinutes += tripMinutes;
+        }
       }
+      minutes = (minutes == null ? 0 : minutes) + partitionMinutes;
     }
-    return result;
+    return minutes == null ? null : Period.minutes(minutes);
   }
 }
@@ -158,7 +158,7 @@ public class Commutability {
       return;
     }
     PairingList pairings = dataReader.readPairings(yearMonth, awardDomicile);
-    PairingAdapter adapter = new PairingAdapter();
+    PairingAdapter adapter = new PairingAdapter(false);
     for (Proto.Trip protoTrip : pairings.getTripList()) {
       Trip trip = adapter.adaptTrip(protoTrip);
       LocalDate startDate = trip.getDutyStart().toLocalDate();
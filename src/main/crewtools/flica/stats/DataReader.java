@@ -24,20 +24,34 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.function.BiFunction;
+import java.util.function.Predicate;
 import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.joda.time.YearMonth;
 
 import com.google.common.base.Preconditions;
-import com.google.common.io.Files;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import com.google.protobuf.TextFormat;
 
 import crewtools.flica.AwardDomicile;
 import crewtools.flica.Proto.DomicileAward;
+import crewtools.flica.Proto.LegIndex;
 import crewtools.flica.Proto.PairingList;
 import crewtools.flica.Proto.PeriodicAwards;
 import crewtools.flica.Proto.Rank;
@@ -50,8 +64,44 @@ public class DataReader {
   private final Logger logger = Logger.getLogger(DataReader.class.getName());
   private final String dataDir;
 
+  // Shared by every DataReader, so that tools run in one process read each
+  // file once for as long as memory allows.
+  private static final Cache<String, Object> cache =
+      CacheBuilder.newBuilder().softValues().build();
+
   public DataReader() throws IOException {
-    dataDir = FlicaConfig.readConfig().getDataDirectory();
+    this(FlicaConfig.readConfig().getDataDirectory());
+  }
+
+  DataReader(String dataDir) {
+    this.dataDir = dataDir;
+  }
+
+  private interface FileParser<T> {
+    T parse(InputStream input) throws IOException;
+  }
+
+  /**
+   * Returns the parsed contents of file, from the cache unless the file
+   * has changed since it was read.
+   */
+  @SuppressWarnings("unchecked")
+  private <T> T read(File file, FileParser<T> parser) throws IOException {
+    Preconditions.checkState(file.exists(),
+        "File doesn't exist: " + file.getAbsolutePath());
+    String key = file.getAbsolutePath() + " " + file.lastModified() + " " + file.length();
+    try {
+      return (T) cache.get(key, () -> {
+        logger.info("Reading " + file.getAbsolutePath());
+        try (InputStream input = new FileInputStream(file)) {
+          return parser.parse(input);
+        }
+      });
+    } catch (ExecutionException | UncheckedExecutionException e) {
+      Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+      Throwables.throwIfUnchecked(e.getCause());
+      throw new IllegalStateException(e.getCause());
+    }
   }
 
   public String getSeniorityFilename(YearMonth yearMonth) {
@@ -85,6 +135,13 @@ public class DataReader {
         + "-"+ yearMonth + ".io";
   }
 
+  public String getLegIndexFilename(YearMonth yearMonth, AwardDomicile awardDomicile) {
+    return dataDir
+        + "legs-"
+        + awardDomicile.name().toLowerCase()
+        + "-" + yearMonth + ".io";
+  }
+
   public String getAwardFilename(YearMonth yearMonth, AwardDomicile awardDomicile,
       Rank rank, int round) {
     return dataDir
@@ -101,163 +158,215 @@ public class DataReader {
     return new File(getAwardFilename(yearMonth, awardDomicile, rank, round)).exists();
   }
 
-  private static YearMonth MAXIMUM_SENIORITY_LIST = YearMonth.parse("2023-12");
+  private static final YearMonth FIRST_SENIORITY_LIST = YearMonth.parse("2017-01");
 
+  /** Returns every seniority list up to next month's, read as needed. */
   public Map<YearMonth, SeniorityList> readSeniorityLists() throws Exception {
-    Map<YearMonth, SeniorityList> lists = new TreeMap<>();
-    for (YearMonth yearMonth = YearMonth.parse("2017-1");
-        !yearMonth.equals(MAXIMUM_SENIORITY_LIST.plusMonths(1));
+    Set<YearMonth> yearMonths = new TreeSet<>();
+    YearMonth last = YearMonth.now().plusMonths(1);
+    for (YearMonth yearMonth = FIRST_SENIORITY_LIST;
+        !yearMonth.isAfter(last);
         yearMonth = yearMonth.plusMonths(1)) {
-      File pdf = new File(getSeniorityFilename(yearMonth));
-      if (!pdf.exists()) {
-        continue;
+      if (new File(getSeniorityFilename(yearMonth)).exists()) {
+        yearMonths.add(yearMonth);
       }
-      logger.info("Reading " + pdf.getAbsolutePath());
-      SeniorityList.Builder builder = SeniorityList.newBuilder();
-      builder.mergeFrom(new FileInputStream(pdf));
-      lists.put(yearMonth, builder.build());
     }
-    return lists;
+    return new LazyMap<>(yearMonths, this::readSeniorityList);
   }
 
   private static final int MONTHS_IN_PAST_CUTOFF = 60;
   private static final int MAX_STRIKES = 2;
 
-  public Map<YearMonth, Map<AwardDomicile, ThinLineList>> readLines() throws Exception {
-    Map<YearMonth, Map<AwardDomicile, ThinLineList>> result = new HashMap<>();
+  // TODO round 2
+  static final Rank ROUND_ONE_RANK = Rank.CAPTAIN;
+
+  /**
+   * Returns the months, newest first, from next month back to the first gap
+   * of more than MAX_STRIKES months for which hasData is false.
+   */
+  private List<YearMonth> findMonths(Predicate<YearMonth> hasData) {
+    List<YearMonth> result = new ArrayList<>();
     YearMonth startingMonth = YearMonth.now().plusMonths(1);
     int monthsInPast = 0;
     int strikes = 0;
     while (strikes <= MAX_STRIKES
         && monthsInPast < MONTHS_IN_PAST_CUTOFF) {
       YearMonth yearMonth = startingMonth.minusMonths(monthsInPast);
-      boolean anyFound = false;
-      for (AwardDomicile awardDomicile : AwardDomicile.values()) {
-        // TODO round 2
-        for (int round = 1; round < 2; ++round) {
-          File line = new File(
-              getLineFilename(yearMonth, awardDomicile, Rank.CAPTAIN, round));
-          if (!line.exists()) {
-            continue;
-          }
-          anyFound = true;
-          logger.info("Reading " + line.getAbsolutePath());
-          ThinLineList.Builder builder = ThinLineList.newBuilder();
-          builder.mergeFrom(new FileInputStream(line));
-          if (!result.containsKey(yearMonth)) {
-            result.put(yearMonth, new HashMap<>());
-          }
-          result.get(yearMonth).put(awardDomicile, builder.build());
-        }
-      }
-      if (!anyFound) {
+      if (!hasData.test(yearMonth)) {
         strikes++;
       } else {
         strikes = 0;
+        result.add(yearMonth);
       }
       monthsInPast++;
     }
     return result;
   }
 
+  private File getLineFile(YearMonth yearMonth, AwardDomicile awardDomicile) {
+    return new File(getLineFilename(yearMonth, awardDomicile, ROUND_ONE_RANK, 1));
+  }
+
+  private File getPairingFile(YearMonth yearMonth, AwardDomicile awardDomicile) {
+    return new File(getPairingFilename(yearMonth, awardDomicile));
+  }
+
+  private List<YearMonth> findLineMonths() {
+    return findMonths(yearMonth -> Arrays.stream(AwardDomicile.values())
+        .anyMatch(awardDomicile -> getLineFile(yearMonth, awardDomicile).exists()));
+  }
+
+  private List<YearMonth> findPairingMonths() {
+    return findMonths(yearMonth -> Arrays.stream(AwardDomicile.values())
+        .anyMatch(awardDomicile -> getPairingFile(yearMonth, awardDomicile).exists()));
+  }
+
+  /**
+   * Returns the round one lines of each month, read as needed. Each month's
+   * domiciles are read in parallel, as are all months when iterating.
+   */
+  public Map<YearMonth, Map<AwardDomicile, ThinLineList>> readLines() throws Exception {
+    return new LazyMap<>(new TreeSet<>(findLineMonths()),
+        yearMonth -> new LazyMap<>(
+            getDomicilesWith(yearMonth, this::getLineFile),
+            awardDomicile -> readLines(yearMonth, awardDomicile, ROUND_ONE_RANK, 1))
+            .loadAll());
+  }
+
+  /** As readLines(), but for pairings. */
   public Map<YearMonth, Map<AwardDomicile, PairingList>> readPairings() throws Exception {
-    Map<YearMonth, Map<AwardDomicile, PairingList>> result = new HashMap<>();
-    YearMonth startingMonth = YearMonth.now().plusMonths(1);
-    int monthsInPast = 0;
-    int strikes = 0;
-    while (strikes <= MAX_STRIKES
-        && monthsInPast < MONTHS_IN_PAST_CUTOFF) {
-      YearMonth yearMonth = startingMonth.minusMonths(monthsInPast);
-      boolean anyFound = false;
+    return new LazyMap<>(new TreeSet<>(findPairingMonths()),
+        yearMonth -> new LazyMap<>(
+            getDomicilesWith(yearMonth, this::getPairingFile),
+            awardDomicile -> readPairings(yearMonth, awardDomicile))
+            .loadAll());
+  }
+
+  private Set<AwardDomicile> getDomicilesWith(YearMonth yearMonth,
+      BiFunction<YearMonth, AwardDomicile, File> getFile) {
+    Set<AwardDomicile> result = EnumSet.noneOf(AwardDomicile.class);
+    for (AwardDomicile awardDomicile : AwardDomicile.values()) {
+      if (getFile.apply(yearMonth, awardDomicile).exists()) {
+        result.add(awardDomicile);
+      }
+    }
+    return result;
+  }
+
+  /** The pairing and line files of one month and domicile. */
+  static class MonthlyFiles {
+    final YearMonth yearMonth;
+    final AwardDomicile awardDomicile;
+    final File pairingFile;  // null if not retrieved
+    final File lineFile;  // null if not retrieved
+
+    MonthlyFiles(YearMonth yearMonth, AwardDomicile awardDomicile,
+        File pairingFile, File lineFile) {
+      this.yearMonth = yearMonth;
+      this.awardDomicile = awardDomicile;
+      this.pairingFile = pairingFile;
+      this.lineFile = lineFile;
+    }
+  }
+
+  // The month of a pairing or round one line file.
+  private static final Pattern MONTHLY_FILENAME = Pattern.compile(
+      "(?:pairings-[a-z]+-(\\d{4}-\\d{2})|lines-[a-z]+-(\\d{4}-\\d{2})-rd1)\\.io");
+
+  /**
+   * Returns the pairing and round one line files of every month in the data
+   * directory, oldest month first. Unlike readPairings() and readLines(),
+   * this isn't limited to recent months, so that the pairing store holds
+   * every month that was retrieved.
+   */
+  List<MonthlyFiles> findMonthlyFiles() {
+    Set<YearMonth> allMonths = new TreeSet<>();
+    String[] filenames = new File(dataDir).list();
+    for (String filename : filenames == null ? new String[0] : filenames) {
+      Matcher matcher = MONTHLY_FILENAME.matcher(filename);
+      if (matcher.matches()) {
+        String month = matcher.group(1) != null ? matcher.group(1) : matcher.group(2);
+        allMonths.add(YearMonth.parse(month));
+      }
+    }
+    List<MonthlyFiles> result = new ArrayList<>();
+    for (YearMonth yearMonth : allMonths) {
       for (AwardDomicile awardDomicile : AwardDomicile.values()) {
-        File line = new File(getPairingFilename(yearMonth, awardDomicile));
-        if (!line.exists()) {
-          continue;
-        }
-        anyFound = true;
-        logger.info("Reading " + line.getAbsolutePath());
-        PairingList.Builder builder = PairingList.newBuilder();
-        builder.mergeFrom(new FileInputStream(line));
-        if (!result.containsKey(yearMonth)) {
-          result.put(yearMonth, new HashMap<>());
+        File pairingFile = getPairingFile(yearMonth, awardDomicile);
+        File lineFile = getLineFile(yearMonth, awardDomicile);
+        if (pairingFile.exists() || lineFile.exists()) {
+          result.add(new MonthlyFiles(yearMonth, awardDomicile,
+              pairingFile.exists() ? pairingFile : null,
+              lineFile.exists() ? lineFile : null));
         }
-        result.get(yearMonth).put(awardDomicile, builder.build());
-      }
-      if (!anyFound) {
-        strikes++;
-      } else {
-        strikes = 0;
       }
-      monthsInPast++;
     }
     return result;
   }
 
+  public String getPairingStoreFilename() {
+    return dataDir + "pairings.store";
+  }
+
+  /**
+   * Returns the data of readPairings() and readLines() as a PairingStore,
+   * compacting it again first if any of the files are newer.
+   */
+  public PairingStore readPairingStore() throws IOException {
+    File file = new File(getPairingStoreFilename());
+    if (PairingStoreWriter.isStale(this, file)) {
+      logger.info("Compacting " + file.getAbsolutePath());
+      PairingStoreWriter.compact(this, file);
+    }
+    logger.info("Reading " + file.getAbsolutePath());
+    return PairingStore.open(file);
+  }
+
   public ThinLineList readLines(YearMonth yearMonth, AwardDomicile awardDomicile,
       Rank rank, int round)
       throws FileNotFoundException, IOException {
     File line = new File(getLineFilename(yearMonth, awardDomicile, rank, round));
-    Preconditions.checkState(line.exists(),
-        "File doesn't exist: " + line.getAbsolutePath());
-    logger.info("Reading " + line.getAbsolutePath());
-    ThinLineList.Builder builder = ThinLineList.newBuilder();
-    builder.mergeFrom(new FileInputStream(line));
-    return builder.build();
+    return read(line, ThinLineList.PARSER::parseFrom);
   }
 
   public PairingList readPairings(YearMonth yearMonth, AwardDomicile awardDomicile)
       throws FileNotFoundException, IOException {
     File pairing = new File(getPairingFilename(yearMonth, awardDomicile));
-    Preconditions.checkState(pairing.exists(),
-        "File doesn't exist: " + pairing.getAbsolutePath());
-    logger.info("Reading " + pairing.getAbsolutePath());
-    PairingList.Builder builder = PairingList.newBuilder();
-    builder.mergeFrom(new FileInputStream(pairing));
-    return builder.build();
+    return read(pairing, PairingList.PARSER::parseFrom);
+  }
+
+  public LegIndex readLegIndex(YearMonth yearMonth, AwardDomicile awardDomicile)
+      throws FileNotFoundException, IOException {
+    File index = new File(getLegIndexFilename(yearMonth, awardDomicile));
+    return read(index, LegIndex.PARSER::parseFrom);
   }
 
   public DomicileAward readAwards(YearMonth yearMonth, AwardDomicile awardDomicile,
       Rank rank, int round)
       throws FileNotFoundException, IOException {
     File award = new File(getAwardFilename(yearMonth, awardDomicile, rank, round));
-    Preconditions.checkState(award.exists(),
-        "File doesn't exist: " + award.getAbsolutePath());
-    logger.info("Reading " + award.getAbsolutePath());
-    DomicileAward.Builder builder = DomicileAward.newBuilder();
-    builder.mergeFrom(new FileInputStream(award));
-    return builder.build();
+    return read(award, DomicileAward.PARSER::parseFrom);
   }
 
   public SeniorityList readSeniorityList(YearMonth yearMonth)
       throws FileNotFoundException, IOException {
     File seniority = new File(getSeniorityFilename(yearMonth));
-    Preconditions.checkState(seniority.exists(),
-        "File doesn't exist: " + seniority.getAbsolutePath());
-    logger.info("Reading " + seniority.getAbsolutePath());
-    SeniorityList.Builder builder = SeniorityList.newBuilder();
-    builder.mergeFrom(new FileInputStream(seniority));
-    return builder.build();
+    return read(seniority, SeniorityList.PARSER::parseFrom);
   }
 
   public PeriodicAwards readPeriodicAwards() throws FileNotFoundException, IOException {
     File periodicAward = new File(getPeriodicAwardFilename());
-    Preconditions.checkState(periodicAward.exists(),
-        "File doesn't exist: " + periodicAward.getAbsolutePath());
-    logger.info("Reading " + periodicAward.getAbsolutePath());
-    PeriodicAwards.Builder builder = PeriodicAwards.newBuilder();
-    TextFormat.getParser().merge(
-        Files.toString(periodicAward, StandardCharsets.UTF_8), builder);
-    return builder.build();
+    return read(periodicAward, input -> {
+      PeriodicAwards.Builder builder = PeriodicAwards.newBuilder();
+      TextFormat.getParser().merge(
+          new InputStreamReader(input, StandardCharsets.UTF_8), builder);
+      return builder.build();
+    });
   }
 
   public FlightListFile readTimetable(YearMonth yearMonth)
       throws FileNotFoundException, IOException {
     File flightList = new File(getTimetableFilename(yearMonth));
-    Preconditions.checkState(flightList.exists(),
-        "File doesn't exist: " + flightList.getAbsolutePath());
-    logger.info("Reading " + flightList.getAbsolutePath());
-    try (InputStream input = java.nio.file.Files.newInputStream(flightList.toPath())) {
-      return FlightListFile.parseFrom(input);
-    }
+    return read(flightList, FlightListFile.PARSER::parseFrom);
   }
 }
@@ -19,11 +19,14 @@
 
 package crewtools.flica.stats;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Logger;
 
 import org.joda.time.LocalDate;
@@ -34,15 +37,16 @@ import org.joda.time.format.DateTimeFormatter;
 import crewtools.flica.AwardDomicile;
 import crewtools.flica.CachingFlicaService;
 import crewtools.flica.FlicaConnection;
+import crewtools.flica.FlicaService;
 import crewtools.flica.Proto;
 import crewtools.flica.Proto.CrewMember;
 import crewtools.flica.Proto.CrewPosition;
+import crewtools.flica.Proto.LegIndex;
 import crewtools.flica.Proto.PairingList;
 import crewtools.flica.Proto.Rank;
 import crewtools.flica.adapters.PairingAdapter;
-import crewtools.flica.parser.PairingParser;
 import crewtools.flica.pojo.Leg;
-import crewtools.flica.pojo.Pairing;
+import crewtools.flica.pojo.PairingKey;
 import crewtools.flica.pojo.Trip;
 import crewtools.util.FlicaConfig;
 
@@ -63,6 +67,7 @@ public class FindPairing {
   private final String destination;
   private final PairingAdapter pairingAdapter;
   private final YearMonth yearMonth;
+  private CachingFlicaService service;
 
   public FindPairing(String date, String origin, String destination, String yearMonth)
       throws IOException {
@@ -70,18 +75,18 @@ public class FindPairing {
     this.date = date.equals(".") ? null : LocalDate.parse(date);
     this.origin = origin;
     this.destination = destination;
-    this.pairingAdapter = new PairingAdapter();
+    this.pairingAdapter = new PairingAdapter(false);
     this.yearMonth = yearMonth == null
         ? new YearMonth(this.date.getYear(), this.date.getMonthOfYear())
         : YearMonth.parse(yearMonth);
   }
 
   private void run() throws Exception {
-    List<PairingList> pairingLists = retrieveAllPairings(yearMonth);
-
     List<Result> results = new ArrayList<>();
-    for (PairingList pairingList : pairingLists) {
-      results.addAll(search(pairingList));
+    for (AwardDomicile awardDomicile : AwardDomicile.values()) {
+      PairingList pairingList = readPairings(awardDomicile);
+      LegSearch legSearch = new LegSearch(readLegIndex(awardDomicile, pairingList));
+      results.addAll(search(pairingList, legSearch));
     }
     Collections.sort(results, new Comparator<Result>() {
       @Override
@@ -124,50 +129,90 @@ public class FindPairing {
         result.captain);
   }
 
-  private List<Result> search(PairingList pairingList) {
+  private List<Result> search(PairingList pairingList, LegSearch legSearch) {
     List<Result> results = new ArrayList<>();
-    for (Proto.Trip protoTrip : pairingList.getTripList()) {
-      Pairing pairing = pairingAdapter.adaptPairing(protoTrip);
-      for (Trip trip : pairing.getTrips()) {
-        for (Leg leg : trip.getLegs()) {
-          if ((origin.equals(".")
-              || leg.getDepartureAirportCode().equals(origin))
-              && (destination.equals(".")
-                  || leg.getArrivalAirportCode().equals(destination))
-              && (date == null || leg.getDate().equals(date))) {
-            String captain = "?";
-            for (CrewMember member : protoTrip.getCrewList()) {
-              if (member.getCrewPosition().equals(CrewPosition.CA)) {
-                captain = member.getName() + "/" + member.getEmployeeId();
-              }
-            }
-            String firstOrLastCode = " ";
-            if (leg.equals(trip.getLegs().get(0))) {
-              firstOrLastCode = "F";
-            } else if (leg.equals(trip.getLegs().get(trip.getLegs().size() - 1))) {
-              firstOrLastCode = "L";
-            }
-            results.add(new Result(
-                protoTrip.getStartDate() + ":" + protoTrip.getPairingName(),
-                firstOrLastCode,
-                captain,
-                leg));
-          }
+    Map<PairingKey, Integer> lastListings = new HashMap<>();
+    for (int i = 0; i < pairingList.getTripCount(); ++i) {
+      lastListings.put(getPairingKey(pairingList.getTrip(i)), i);
+    }
+    Map<Integer, List<Trip>> adaptedTrips = new HashMap<>();
+    for (long position : legSearch.find(date,
+        origin.equals(".") ? null : origin,
+        destination.equals(".") ? null : destination)) {
+      int tripIndex = LegSearch.getTripIndex(position);
+      Proto.Trip protoTrip = pairingList.getTrip(tripIndex);
+      if (lastListings.get(getPairingKey(protoTrip)) != tripIndex) {
+        // Listed again in round two, which supersedes round one.
+        continue;
+      }
+      if (!adaptedTrips.containsKey(tripIndex)) {
+        adaptedTrips.put(tripIndex, pairingAdapter.adaptPairing(protoTrip).getTrips());
+      }
+      Trip trip = adaptedTrips.get(tripIndex).get(LegSearch.getInstanceIndex(position));
+      Leg leg = trip.getLegs().get(LegSearch.getLegIndex(position));
+      String captain = "?";
+      for (CrewMember member : protoTrip.getCrewList()) {
+        if (member.getCrewPosition().equals(CrewPosition.CA)) {
+          captain = member.getName() + "/" + member.getEmployeeId();
         }
       }
+      String firstOrLastCode = " ";
+      if (leg.equals(trip.getLegs().get(0))) {
+        firstOrLastCode = "F";
+      } else if (leg.equals(trip.getLegs().get(trip.getLegs().size() - 1))) {
+        firstOrLastCode = "L";
+      }
+      results.add(new Result(
+          protoTrip.getStartDate() + ":" + protoTrip.getPairingName(),
+          firstOrLastCode,
+          captain,
+          leg));
     }
     return results;
   }
 
-  private List<PairingList> retrieveAllPairings(YearMonth yearMonth) throws Exception {
-    FlicaConnection connection = new FlicaConnection(FlicaConfig.readConfig());
-    CachingFlicaService service = new CachingFlicaService(connection);
-    List<PairingList> result = new ArrayList<>();
-    for (AwardDomicile awardDomicile : AwardDomicile.values()) {
-      String raw = service.getAllPairings(awardDomicile, Rank.CAPTAIN, 1, yearMonth);
-      PairingParser pairingParser = new PairingParser(raw, yearMonth, true);
-      result.add(pairingParser.parse());
+  private static PairingKey getPairingKey(Proto.Trip protoTrip) {
+    return new PairingKey(LocalDate.parse(protoTrip.getStartDate()),
+        protoTrip.getPairingName());
+  }
+
+  /**
+   * Reads the pairings MonthlyDataRetriever wrote, or retrieves them as it
+   * would if it hasn't run for the month: the first officer round one
+   * pairings, then the captain round two pairings. A pairing may be listed
+   * in both.
+   */
+  private PairingList readPairings(AwardDomicile awardDomicile) throws Exception {
+    if (new File(dataReader.getPairingFilename(yearMonth, awardDomicile)).exists()) {
+      return dataReader.readPairings(yearMonth, awardDomicile);
+    }
+    if (service == null) {
+      FlicaConnection connection = new FlicaConnection(FlicaConfig.readConfig());
+      service = new CachingFlicaService(connection);
+    }
+    String roundOne = service.getAllPairings(awardDomicile, Rank.FIRST_OFFICER,
+        FlicaService.BID_ROUND_ONE, yearMonth);
+    String roundTwo = service.getAllPairings(awardDomicile, Rank.CAPTAIN,
+        FlicaService.BID_ROUND_TWO, yearMonth);
+    return PairingList.newBuilder()
+        .setYearMonth(yearMonth.toString())
+        .addAllTrip(service.parseAllPairings(roundOne, yearMonth, true).getTripList())
+        .addAllTrip(service.parseAllPairings(roundTwo, yearMonth, true).getTripList())
+        .build();
+  }
+
+  // The index MonthlyDataRetriever wrote, unless it is of other pairings.
+  private LegIndex readLegIndex(AwardDomicile awardDomicile, PairingList pairingList)
+      throws IOException {
+    if (new File(dataReader.getPairingFilename(yearMonth, awardDomicile)).exists()
+        && new File(dataReader.getLegIndexFilename(yearMonth, awardDomicile))
+            .exists()) {
+      LegIndex index = dataReader.readLegIndex(yearMonth, awardDomicile);
+      if (LegSearch.isIndexOf(index, pairingList)) {
+        return index;
+      }
+      logger.warning("Rebuilding stale leg index for " + awardDomicile);
     }
-    return result;
+    return LegSearch.buildIndex(yearMonth, pairingList);
   }
 }
@@ -0,0 +1,95 @@
+/**
+ * Copyright 2020 Iron City Software LLC
+ *
+ * This file is part of CrewTools.
+ *
+ * CrewTools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CrewTools is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CrewTools.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package crewtools.flica.stats;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.AbstractMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+
+/**
+ * Read-only map whose keys are known up front, but whose values are only
+ * loaded when asked for. Iterating the entries or values loads them all in
+ * parallel. Values are not kept here, so loaders should be cached.
+ * An IOException while loading is thrown as an UncheckedIOException.
+ */
+class LazyMap<K, V> extends AbstractMap<K, V> {
+  interface Loader<K, V> {
+    V load(K key) throws IOException;
+  }
+
+  private final ImmutableSet<K> keys;
+  private final Loader<K, V> loader;
+
+  /** Iteration follows the order of keys. */
+  LazyMap(Set<K> keys, Loader<K, V> loader) {
+    this.keys = ImmutableSet.copyOf(keys);
+    this.loader = loader;
+  }
+
+  @Override
+  public int size() {
+    return keys.size();
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return keys.contains(key);
+  }
+
+  @Override
+  public Set<K> keySet() {
+    return keys;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public V get(Object key) {
+    return keys.contains(key) ? load((K) key) : null;
+  }
+
+  @Override
+  public Set<Map.Entry<K, V>> entrySet() {
+    return loadAll().entrySet();
+  }
+
+  /** Loads every value in parallel. */
+  ImmutableMap<K, V> loadAll() {
+    List<Map.Entry<K, V>> entries = keys.asList().parallelStream()
+        .map(key -> Maps.immutableEntry(key, load(key)))
+        .collect(Collectors.toList());
+    return ImmutableMap.copyOf(entries);
+  }
+
+  private V load(K key) {
+    try {
+      return loader.load(key);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
@@ -0,0 +1,239 @@
+/**
+ * Copyright 2020 Iron City Software LLC
+ *
+ * This file is part of CrewTools.
+ *
+ * CrewTools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CrewTools is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CrewTools.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package crewtools.flica.stats;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.joda.time.Days;
+import org.joda.time.LocalDate;
+import org.joda.time.YearMonth;
+
+import com.google.common.base.Preconditions;
+import com.google.common.hash.Hashing;
+import com.google.common.primitives.Longs;
+
+import crewtools.flica.Proto.LegIndex;
+import crewtools.flica.Proto.LegPosting;
+import crewtools.flica.Proto.PairingList;
+import crewtools.flica.adapters.PairingAdapter;
+import crewtools.flica.pojo.Leg;
+import crewtools.flica.pojo.Trip;
+
+/**
+ * Finds legs of a PairingList by departure airport, arrival airport and
+ * date, using a LegIndex built when the pairings were retrieved.
+ *
+ * A leg's position packs its date, the index of its proto trip in the
+ * PairingList, the index of the dated trip in Pairing.getTrips(), and the
+ * index of the leg in Trip.getLegs(). Postings are sorted by position,
+ * and so by date.
+ *
+ * An index records a fingerprint of the PairingList it was built from, so
+ * that one left behind by pairings retrieved again is not used with them.
+ */
+public class LegSearch {
+  private static final int LEG_BITS = 8;
+  private static final int INSTANCE_BITS = 12;
+  private static final int TRIP_BITS = 20;
+  private static final int DATE_SHIFT = LEG_BITS + INSTANCE_BITS + TRIP_BITS;
+  private static final LocalDate EPOCH = new LocalDate(1970, 1, 1);
+
+  private static final String ANY = "";
+
+  private final Map<String, long[]> postings = new HashMap<>();
+  private final List<long[]> originPostings = new ArrayList<>();
+
+  public LegSearch(LegIndex index) {
+    for (LegPosting posting : index.getPostingList()) {
+      long positions[] = Longs.toArray(posting.getPositionList());
+      postings.put(getKey(posting.getDepartureAirportCode(),
+          posting.getArrivalAirportCode(), posting.getDate()), positions);
+      if (posting.getArrivalAirportCode().equals(ANY)) {
+        originPostings.add(positions);
+      }
+    }
+  }
+
+  /** Indexes every leg of every dated trip of pairingList. */
+  public static LegIndex buildIndex(YearMonth yearMonth, PairingList pairingList) {
+    PairingAdapter adapter = new PairingAdapter();
+    Map<String, List<Long>> positions = new TreeMap<>();
+    for (int trip = 0; trip < pairingList.getTripCount(); ++trip) {
+      List<Trip> instances =
+          adapter.adaptPairing(pairingList.getTrip(trip)).getTrips();
+      for (int instance = 0; instance < instances.size(); ++instance) {
+        List<Leg> legs = instances.get(instance).getLegs();
+        for (int leg = 0; leg < legs.size(); ++leg) {
+          Leg pojoLeg = legs.get(leg);
+          long position = encode(pojoLeg.getDate(), trip, instance, leg);
+          String origin = pojoLeg.getDepartureAirportCode();
+          String destination = pojoLeg.getArrivalAirportCode();
+          add(positions, getKey(origin, destination, pojoLeg.getDate().toString()),
+              position);
+          add(positions, getKey(origin, ANY, ANY), position);
+          add(positions, getKey(ANY, destination, ANY), position);
+        }
+      }
+    }
+    LegIndex.Builder index = LegIndex.newBuilder()
+        .setYearMonth(yearMonth.toString())
+        .setSourceFingerprint(getSourceFingerprint(pairingList));
+    for (Map.Entry<String, List<Long>> entry : positions.entrySet()) {
+      String key[] = entry.getKey().split(" ", -1);
+      long sorted[] = Longs.toArray(entry.getValue());
+      Arrays.sort(sorted);
+      index.addPostingBuilder()
+          .setDepartureAirportCode(key[0])
+          .setArrivalAirportCode(key[1])
+          .setDate(key[2])
+          .addAllPosition(Longs.asList(sorted));
+    }
+    return index.build();
+  }
+
+  /** Returns whether index was built from pairingList. */
+  public static boolean isIndexOf(LegIndex index, PairingList pairingList) {
+    return index.hasSourceFingerprint()
+        && index.getSourceFingerprint() == getSourceFingerprint(pairingList);
+  }
+
+  static long getSourceFingerprint(PairingList pairingList) {
+    return Hashing.sha256().hashBytes(pairingList.toByteArray()).asLong();
+  }
+
+  private static void add(Map<String, List<Long>> positions, String key,
+      long position) {
+    List<Long> list = positions.get(key);
+    if (list == null) {
+      list = new ArrayList<>();
+      positions.put(key, list);
+    }
+    list.add(position);
+  }
+
+  private static String getKey(String origin, String destination, String date) {
+    return origin + " " + destination + " " + date;
+  }
+
+  /**
+   * Returns the sorted positions of legs matching every non-null argument.
+   */
+  public long[] find(LocalDate date, String origin, String destination) {
+    if (origin != null && destination != null && date != null) {
+      return get(getKey(origin, destination, date.toString()));
+    }
+    long result[];
+    if (origin != null && destination != null) {
+      result = intersect(get(getKey(origin, ANY, ANY)),
+          get(getKey(ANY, destination, ANY)));
+    } else if (origin != null) {
+      result = get(getKey(origin, ANY, ANY));
+    } else if (destination != null) {
+      result = get(getKey(ANY, destination, ANY));
+    } else {
+      result = getAll();
+    }
+    return date == null ? result : filter(result, date);
+  }
+
+  private long[] get(String key) {
+    long result[] = postings.get(key);
+    return result == null ? new long[0] : result;
+  }
+
+  /** Every leg has exactly one departure airport. */
+  private long[] getAll() {
+    long result[] = Longs.concat(originPostings.toArray(new long[0][]));
+    Arrays.sort(result);
+    return result;
+  }
+
+  private static long[] intersect(long a[], long b[]) {
+    long result[] = new long[Math.min(a.length, b.length)];
+    int size = 0;
+    for (int i = 0, j = 0; i < a.length && j < b.length;) {
+      if (a[i] < b[j]) {
+        i++;
+      } else if (a[i] > b[j]) {
+        j++;
+      } else {
+        result[size++] = a[i];
+        i++;
+        j++;
+      }
+    }
+    return Arrays.copyOf(result, size);
+  }
+
+  private static long[] filter(long positions[], LocalDate date) {
+    long start = (long) getDays(date) << DATE_SHIFT;
+    return Arrays.copyOfRange(positions, lowerBound(positions, start),
+        lowerBound(positions, start + (1L << DATE_SHIFT)));
+  }
+
+  private static int lowerBound(long positions[], long value) {
+    int index = Arrays.binarySearch(positions, value);
+    if (index < 0) {
+      return -index - 1;
+    }
+    while (index > 0 && positions[index - 1] == value) {
+      index--;
+    }
+    return index;
+  }
+
+  private static int getDays(LocalDate date) {
+    return Days.daysBetween(EPOCH, date).getDays();
+  }
+
+  static long encode(LocalDate date, int trip, int instance, int leg) {
+    Preconditions.checkArgument(trip < 1 << TRIP_BITS, trip);
+    Preconditions.checkArgument(instance < 1 << INSTANCE_BITS, instance);
+    Preconditions.checkArgument(leg < 1 << LEG_BITS, leg);
+    return ((long) getDays(date) << DATE_SHIFT)
+        | ((long) trip << (INSTANCE_BITS + LEG_BITS))
+        | (instance << LEG_BITS)
+        | leg;
+  }
+
+  public static LocalDate getDate(long position) {
+    return EPOCH.plusDays((int) (position >>> DATE_SHIFT));
+  }
+
+  /** Returns the index of the leg's proto trip in the PairingList. */
+  public static int getTripIndex(long position) {
+    return (int) (position >>> (INSTANCE_BITS + LEG_BITS)) & ((1 << TRIP_BITS) - 1);
+  }
+
+  /** Returns the index of the leg's dated trip in Pairing.getTrips(). */
+  public static int getInstanceIndex(long position) {
+    return (int) (position >>> LEG_BITS) & ((1 << INSTANCE_BITS) - 1);
+  }
+
+  /** Returns the index of the leg in Trip.getLegs(). */
+  public static int getLegIndex(long position) {
+    return (int) position & ((1 << LEG_BITS) - 1);
+  }
+}
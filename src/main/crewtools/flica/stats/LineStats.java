@@ -32,9 +32,6 @@ import org.joda.time.YearMonth;
 import com.google.common.collect.Ordering;
 
 import crewtools.flica.AwardDomicile;
-import crewtools.flica.Proto.PairingList;
-import crewtools.flica.Proto.Section;
-import crewtools.flica.Proto.Trip;
 
 // You can't use lines for this because CI days are not populated in lines.
 // You have to instead use pairings.
@@ -75,12 +72,15 @@ public class LineStats {
   }
   
   public void run() throws Exception {
-    Map<YearMonth, Map<AwardDomicile, PairingList>> allPairings = dataReader
-        .readPairings();
-    YearMonth latestMonth = Ordering.natural().max(allPairings.keySet());
-    Map<AwardDomicile, PairingList> pairingLists =
-        allPairings.get(latestMonth);
-    Map<String, Overnight> overnightCounts = getOvernightCounts(pairingLists);
+    PairingStore store = dataReader.readPairingStore();
+    YearMonth latestMonth = null;
+    for (int partition = 0; partition < store.getNumPartitions(); ++partition) {
+      if (store.hasPairings(partition)) {
+        latestMonth = Ordering.natural().nullsFirst().max(
+            latestMonth, store.getYearMonth(partition));
+      }
+    }
+    Map<String, Overnight> overnightCounts = getOvernightCounts(store, latestMonth);
     
     GraphData graphData = new GraphData();
     Column<String> stationColumn = new QuotedColumn<>("Stations");
@@ -114,13 +114,20 @@ public class LineStats {
         .render();
   }
   
-  private Map<String, Overnight> getOvernightCounts(Map<AwardDomicile, PairingList> lines) {
+  private Map<String, Overnight> getOvernightCounts(PairingStore store,
+      YearMonth yearMonth) {
     Map<String, Overnight> result = new HashMap<>();
-    for (AwardDomicile awardDomicile : lines.keySet()) {
-      for (Trip trip : lines.get(awardDomicile).getTripList()) {
-        for (Section section : trip.getSectionList()) {
-          if (section.hasLayoverAirportCode()) {
-            String station = section.getLayoverAirportCode();
+    for (int partition : store.getPartitions(yearMonth)) {
+      if (!store.hasPairings(partition)) {
+        continue;
+      }
+      AwardDomicile awardDomicile = store.getAwardDomicile(partition);
+      for (int trip = store.getFirstTrip(partition);
+          trip < store.getEndTrip(partition); ++trip) {
+        for (int section = store.getFirstSection(trip);
+            section < store.getEndSection(trip); ++section) {
+          String station = store.getLayoverAirportCode(section);
+          if (station != null) {
             if (!result.containsKey(station)) {
               result.put(station, new Overnight(station));
             }
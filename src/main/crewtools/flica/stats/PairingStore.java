@@ -0,0 +1,436 @@
+/**
+ * Copyright 2020 Iron City Software LLC
+ *
+ * This file is part of CrewTools.
+ *
+ * CrewTools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CrewTools is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CrewTools.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package crewtools.flica.stats;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import org.joda.time.LocalDate;
+import org.joda.time.LocalTime;
+import org.joda.time.YearMonth;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableTable;
+
+import crewtools.flica.AwardDomicile;
+import crewtools.flica.Proto.Equipment;
+
+/**
+ * Read-only, memory-mapped view of the pairings and lines of many months,
+ * as written by PairingStoreWriter. Each month and domicile is a partition,
+ * which owns a range of trips; each trip owns a range of sections, and each
+ * section a range of legs. All of these are addressed by index, and every
+ * field lives in an int column of the mapped file, so scans do not create
+ * objects. Strings such as airport codes are dictionary encoded; compare
+ * ids from getStringId() rather than decoding them in a loop.
+ *
+ * Durations are in minutes, and times of day are minutes after local
+ * midnight. Either is -1 if FLICA did not give one, such as the layover of
+ * the last section of a trip.
+ */
+public class PairingStore {
+  static final int MAGIC = 0x43545053;  // CTPS
+  static final int VERSION = 3;
+  // Magic, version, table sizes, string bytes and the source fingerprint.
+  static final int HEADER_INTS = 10;
+
+  public static final int NONE = -1;
+
+  static final int HAS_PAIRINGS = 1;
+  static final int HAS_LINES = 2;
+  static final int IS_DEADHEAD = 1;
+
+  enum Table {
+    PARTITION, TRIP, SECTION, LEG, STRING
+  }
+
+  /**
+   * Columns in file order. Range columns hold one extra entry, so that
+   * element i covers [column[i], column[i + 1]) of the child table.
+   */
+  enum Column {
+    PARTITION_YEAR_MONTH(Table.PARTITION),  // year * 12 + month - 1
+    PARTITION_DOMICILE(Table.PARTITION),  // string id
+    PARTITION_FLAGS(Table.PARTITION),
+    PARTITION_NUM_LINES(Table.PARTITION),
+    PARTITION_TRIPS(Table.PARTITION, true),
+    TRIP_PAIRING_NAME(Table.TRIP),  // string id
+    TRIP_START_DATE(Table.TRIP),  // days since 1970-01-01
+    TRIP_EQUIPMENT(Table.TRIP),  // Equipment number
+    TRIP_BLOCK(Table.TRIP),
+    TRIP_CREDIT(Table.TRIP),
+    TRIP_DUTY(Table.TRIP),
+    TRIP_TAFB(Table.TRIP),
+    TRIP_SECTIONS(Table.TRIP, true),
+    SECTION_DUTY_START(Table.SECTION),
+    SECTION_DUTY_END(Table.SECTION),
+    SECTION_BLOCK(Table.SECTION),
+    SECTION_CREDIT(Table.SECTION),
+    SECTION_LAYOVER_AIRPORT(Table.SECTION),  // string id
+    SECTION_LAYOVER(Table.SECTION),
+    SECTION_LEGS(Table.SECTION, true),
+    LEG_FLIGHT_NUMBER(Table.LEG),
+    LEG_DAY_OF_MONTH(Table.LEG),
+    LEG_DEPARTURE_AIRPORT(Table.LEG),  // string id
+    LEG_ARRIVAL_AIRPORT(Table.LEG),  // string id
+    LEG_DEPARTURE_TIME(Table.LEG),
+    LEG_ARRIVAL_TIME(Table.LEG),
+    LEG_BLOCK(Table.LEG),
+    LEG_EQUIPMENT(Table.LEG),  // Equipment number
+    LEG_FLAGS(Table.LEG),
+    STRING_BYTES(Table.STRING, true);  // offsets into the string data
+
+    final Table table;
+    final boolean isRange;
+
+    Column(Table table) {
+      this(table, false);
+    }
+
+    Column(Table table, boolean isRange) {
+      this.table = table;
+      this.isRange = isRange;
+    }
+  }
+
+  static final LocalDate EPOCH = new LocalDate(1970, 1, 1);
+
+  private final int[] sizes = new int[Table.values().length];
+  private final IntBuffer[] columns = new IntBuffer[Column.values().length];
+  private final String[] strings;
+  private final Map<String, Integer> stringIds = new HashMap<>();
+  private final ImmutableTable<YearMonth, AwardDomicile, Integer> partitions;
+
+  public static PairingStore open(File file) throws IOException {
+    try (FileInputStream input = new FileInputStream(file);
+        FileChannel channel = input.getChannel()) {
+      return new PairingStore(channel.map(FileChannel.MapMode.READ_ONLY, 0,
+          channel.size()));
+    }
+  }
+
+  /** Returns the version of the store in file, or NONE if it isn't one. */
+  static int readVersion(File file) throws IOException {
+    int header[] = readHeader(file);
+    return header == null ? NONE : header[1];
+  }
+
+  /**
+   * Returns the fingerprint of the files the store in file was compacted
+   * from, as given to PairingStoreWriter.
+   */
+  static long readSourceFingerprint(File file) throws IOException {
+    int header[] = Preconditions.checkNotNull(readHeader(file), file);
+    return getSourceFingerprint(header);
+  }
+
+  private static int[] readHeader(File file) throws IOException {
+    try (DataInputStream input = new DataInputStream(new FileInputStream(file))) {
+      if (file.length() < HEADER_INTS * Integer.BYTES) {
+        return null;
+      }
+      int header[] = new int[HEADER_INTS];
+      for (int i = 0; i < HEADER_INTS; ++i) {
+        header[i] = input.readInt();
+      }
+      return header[0] == MAGIC ? header : null;
+    }
+  }
+
+  private static long getSourceFingerprint(int header[]) {
+    return ((long) header[HEADER_INTS - 2] << 32)
+        | (header[HEADER_INTS - 1] & 0xffffffffL);
+  }
+
+  private PairingStore(MappedByteBuffer buffer) throws IOException {
+    IntBuffer ints = buffer.asIntBuffer();
+    if (ints.limit() < HEADER_INTS || ints.get(0) != MAGIC) {
+      throw new IOException("Not a pairing store");
+    }
+    if (ints.get(1) != VERSION) {
+      throw new IOException("Unsupported pairing store version " + ints.get(1));
+    }
+    for (Table table : Table.values()) {
+      sizes[table.ordinal()] = ints.get(2 + table.ordinal());
+    }
+    int position = HEADER_INTS;
+    for (Column column : Column.values()) {
+      int length = getColumnLength(column, sizes[column.table.ordinal()]);
+      ints.limit(position + length).position(position);
+      columns[column.ordinal()] = ints.slice();
+      ints.limit(ints.capacity());
+      position += length;
+    }
+
+    IntBuffer offsets = columns[Column.STRING_BYTES.ordinal()];
+    ByteBuffer bytes = buffer.duplicate();
+    bytes.position(position * Integer.BYTES);
+    int start = bytes.position();
+    strings = new String[getNumStrings()];
+    for (int i = 0; i < strings.length; ++i) {
+      byte utf8[] = new byte[offsets.get(i + 1) - offsets.get(i)];
+      bytes.position(start + offsets.get(i));
+      bytes.get(utf8);
+      strings[i] = new String(utf8, StandardCharsets.UTF_8);
+      stringIds.put(strings[i], i);
+    }
+
+    ImmutableTable.Builder<YearMonth, AwardDomicile, Integer> partitions =
+        ImmutableTable.builder();
+    for (int partition = 0; partition < getNumPartitions(); ++partition) {
+      partitions.put(getYearMonth(partition), getAwardDomicile(partition), partition);
+    }
+    this.partitions = partitions.build();
+  }
+
+  static int getColumnLength(Column column, int tableSize) {
+    return column.isRange ? tableSize + 1 : tableSize;
+  }
+
+  private int get(Column column, int index) {
+    return columns[column.ordinal()].get(index);
+  }
+
+  // Strings.
+
+  public int getNumStrings() {
+    return sizes[Table.STRING.ordinal()];
+  }
+
+  /** Returns the id of text, or -1 if the store doesn't contain it. */
+  public int getStringId(String text) {
+    Integer id = stringIds.get(text);
+    return id == null ? NONE : id;
+  }
+
+  /** Returns the text of id, or null if id is -1. */
+  public String getString(int id) {
+    return id == NONE ? null : strings[id];
+  }
+
+  // Partitions.
+
+  public int getNumPartitions() {
+    return sizes[Table.PARTITION.ordinal()];
+  }
+
+  public YearMonth getYearMonth(int partition) {
+    int yearMonth = get(Column.PARTITION_YEAR_MONTH, partition);
+    return new YearMonth(yearMonth / 12, yearMonth % 12 + 1);
+  }
+
+  public AwardDomicile getAwardDomicile(int partition) {
+    return AwardDomicile.valueOf(getString(get(Column.PARTITION_DOMICILE, partition)));
+  }
+
+  /** Returns whether the partition's trips were read from a pairing list. */
+  public boolean hasPairings(int partition) {
+    return (get(Column.PARTITION_FLAGS, partition) & HAS_PAIRINGS) != 0;
+  }
+
+  /** Returns whether getNumLines() was read from a round one line list. */
+  public boolean hasLines(int partition) {
+    return (get(Column.PARTITION_FLAGS, partition) & HAS_LINES) != 0;
+  }
+
+  public int getNumLines(int partition) {
+    return get(Column.PARTITION_NUM_LINES, partition);
+  }
+
+  public int getFirstTrip(int partition) {
+    return get(Column.PARTITION_TRIPS, partition);
+  }
+
+  public int getEndTrip(int partition) {
+    return get(Column.PARTITION_TRIPS, partition + 1);
+  }
+
+  /** Returns the partition of the month and domicile, or -1 if there is none. */
+  public int getPartition(YearMonth yearMonth, AwardDomicile awardDomicile) {
+    Integer partition = partitions.get(yearMonth, awardDomicile);
+    return partition == null ? NONE : partition;
+  }
+
+  /** Returns the partitions of the month, in file order. */
+  public Collection<Integer> getPartitions(YearMonth yearMonth) {
+    return partitions.row(yearMonth).values();
+  }
+
+  /** Returns the months which have pairings, lines or both. */
+  public SortedSet<YearMonth> getYearMonths() {
+    return new TreeSet<>(partitions.rowKeySet());
+  }
+
+  // Trips.
+
+  public int getNumTrips() {
+    return sizes[Table.TRIP.ordinal()];
+  }
+
+  public String getPairingName(int trip) {
+    return getString(get(Column.TRIP_PAIRING_NAME, trip));
+  }
+
+  /** Returns null if FLICA did not give a start date. */
+  public LocalDate getStartDate(int trip) {
+    int days = get(Column.TRIP_START_DATE, trip);
+    return days == NONE ? null : EPOCH.plusDays(days);
+  }
+
+  /** Returns null if the trip has no equipment. */
+  public Equipment getTripEquipment(int trip) {
+    return Equipment.valueOf(get(Column.TRIP_EQUIPMENT, trip));
+  }
+
+  public int getTripBlockMinutes(int trip) {
+    return get(Column.TRIP_BLOCK, trip);
+  }
+
+  public int getTripCreditMinutes(int trip) {
+    return get(Column.TRIP_CREDIT, trip);
+  }
+
+  public int getTripDutyMinutes(int trip) {
+    return get(Column.TRIP_DUTY, trip);
+  }
+
+  public int getTripTafbMinutes(int trip) {
+    return get(Column.TRIP_TAFB, trip);
+  }
+
+  public int getFirstSection(int trip) {
+    return get(Column.TRIP_SECTIONS, trip);
+  }
+
+  public int getEndSection(int trip) {
+    return get(Column.TRIP_SECTIONS, trip + 1);
+  }
+
+  // Sections.
+
+  public int getNumSections() {
+    return sizes[Table.SECTION.ordinal()];
+  }
+
+  public int getDutyStartMinuteOfDay(int section) {
+    return get(Column.SECTION_DUTY_START, section);
+  }
+
+  public int getDutyEndMinuteOfDay(int section) {
+    return get(Column.SECTION_DUTY_END, section);
+  }
+
+  public int getSectionBlockMinutes(int section) {
+    return get(Column.SECTION_BLOCK, section);
+  }
+
+  public int getSectionCreditMinutes(int section) {
+    return get(Column.SECTION_CREDIT, section);
+  }
+
+  /** Returns the string id of the layover airport, or -1 if none. */
+  public int getLayoverAirportId(int section) {
+    return get(Column.SECTION_LAYOVER_AIRPORT, section);
+  }
+
+  public String getLayoverAirportCode(int section) {
+    return getString(getLayoverAirportId(section));
+  }
+
+  public int getLayoverMinutes(int section) {
+    return get(Column.SECTION_LAYOVER, section);
+  }
+
+  public int getFirstLeg(int section) {
+    return get(Column.SECTION_LEGS, section);
+  }
+
+  public int getEndLeg(int section) {
+    return get(Column.SECTION_LEGS, section + 1);
+  }
+
+  // Legs.
+
+  public int getNumLegs() {
+    return sizes[Table.LEG.ordinal()];
+  }
+
+  public int getFlightNumber(int leg) {
+    return get(Column.LEG_FLIGHT_NUMBER, leg);
+  }
+
+  public int getDayOfMonth(int leg) {
+    return get(Column.LEG_DAY_OF_MONTH, leg);
+  }
+
+  public int getDepartureAirportId(int leg) {
+    return get(Column.LEG_DEPARTURE_AIRPORT, leg);
+  }
+
+  public String getDepartureAirportCode(int leg) {
+    return getString(getDepartureAirportId(leg));
+  }
+
+  public int getArrivalAirportId(int leg) {
+    return get(Column.LEG_ARRIVAL_AIRPORT, leg);
+  }
+
+  public String getArrivalAirportCode(int leg) {
+    return getString(getArrivalAirportId(leg));
+  }
+
+  public int getDepartureMinuteOfDay(int leg) {
+    return get(Column.LEG_DEPARTURE_TIME, leg);
+  }
+
+  public int getArrivalMinuteOfDay(int leg) {
+    return get(Column.LEG_ARRIVAL_TIME, leg);
+  }
+
+  public int getLegBlockMinutes(int leg) {
+    return get(Column.LEG_BLOCK, leg);
+  }
+
+  public Equipment getLegEquipment(int leg) {
+    return Equipment.valueOf(get(Column.LEG_EQUIPMENT, leg));
+  }
+
+  public boolean isDeadhead(int leg) {
+    return (get(Column.LEG_FLAGS, leg) & IS_DEADHEAD) != 0;
+  }
+
+  /** Converts a minute of day from this store, or returns null for -1. */
+  public static LocalTime toLocalTime(int minuteOfDay) {
+    Preconditions.checkArgument(minuteOfDay >= NONE && minuteOfDay < 24 * 60);
+    return minuteOfDay == NONE ? null : LocalTime.fromMillisOfDay(minuteOfDay * 60000L);
+  }
+}
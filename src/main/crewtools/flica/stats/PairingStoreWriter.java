@@ -0,0 +1,290 @@
+/**
+ * Copyright 2020 Iron City Software LLC
+ *
+ * This file is part of CrewTools.
+ *
+ * CrewTools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CrewTools is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CrewTools.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package crewtools.flica.stats;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import org.joda.time.Days;
+import org.joda.time.LocalDate;
+import org.joda.time.YearMonth;
+
+import com.google.common.base.Preconditions;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import crewtools.flica.AwardDomicile;
+import crewtools.flica.Proto.Leg;
+import crewtools.flica.Proto.PairingList;
+import crewtools.flica.Proto.Section;
+import crewtools.flica.Proto.ThinLineList;
+import crewtools.flica.Proto.Trip;
+import crewtools.flica.stats.PairingStore.Column;
+import crewtools.flica.stats.PairingStore.Table;
+import crewtools.util.Period;
+
+/**
+ * Compacts monthly pairing and line lists into a PairingStore file.
+ * The columns are built in memory, which takes far less space than
+ * the protos they come from; only one month's protos need be held.
+ */
+public class PairingStoreWriter {
+  private final Logger logger = Logger.getLogger(PairingStoreWriter.class.getName());
+
+  public static void main(String args[]) throws Exception {
+    DataReader dataReader = new DataReader();
+    File file = new File(dataReader.getPairingStoreFilename());
+    compact(dataReader, file);
+    PairingStore store = PairingStore.open(file);
+    System.out.printf("Wrote %s: %d partitions, %d trips, %d legs\n", file,
+        store.getNumPartitions(), store.getNumTrips(), store.getNumLegs());
+  }
+
+  private final IntColumn columns[] = new IntColumn[Column.values().length];
+  private final int sizes[] = new int[Table.values().length];
+  private final Map<String, Integer> stringIds = new HashMap<>();
+  private final List<byte[]> strings = new ArrayList<>();
+  private long sourceFingerprint;
+
+  public PairingStoreWriter() {
+    for (Column column : Column.values()) {
+      columns[column.ordinal()] = new IntColumn();
+      if (column.isRange) {
+        columns[column.ordinal()].add(0);
+      }
+    }
+  }
+
+  /** Writes every month in the data directory to file. */
+  public static void compact(DataReader dataReader, File file) throws IOException {
+    PairingStoreWriter writer = new PairingStoreWriter();
+    List<DataReader.MonthlyFiles> monthlyFiles = dataReader.findMonthlyFiles();
+    // Taken before reading, so that a file changed meanwhile is seen as stale.
+    writer.setSourceFingerprint(getSourceFingerprint(monthlyFiles));
+    for (DataReader.MonthlyFiles files : monthlyFiles) {
+      PairingList pairingList = files.pairingFile == null
+          ? null
+          : dataReader.readPairings(files.yearMonth, files.awardDomicile);
+      ThinLineList lineList = files.lineFile == null
+          ? null
+          : dataReader.readLines(files.yearMonth, files.awardDomicile,
+              DataReader.ROUND_ONE_RANK, 1);
+      writer.add(files.yearMonth, files.awardDomicile, pairingList, lineList);
+    }
+    writer.write(file);
+  }
+
+  /**
+   * Returns whether file is missing, from an older version, or was
+   * compacted from a different set of files. A file that was added,
+   * removed, or changed in size or modification time, even to an older
+   * one, makes the store stale.
+   */
+  public static boolean isStale(DataReader dataReader, File file) throws IOException {
+    if (!file.exists() || PairingStore.readVersion(file) != PairingStore.VERSION) {
+      return true;
+    }
+    return PairingStore.readSourceFingerprint(file)
+        != getSourceFingerprint(dataReader.findMonthlyFiles());
+  }
+
+  static long getSourceFingerprint(List<DataReader.MonthlyFiles> monthlyFiles) {
+    Hasher hasher = Hashing.sha256().newHasher();
+    for (DataReader.MonthlyFiles files : monthlyFiles) {
+      for (File source : new File[] { files.pairingFile, files.lineFile }) {
+        hasher.putBoolean(source != null);
+        if (source != null) {
+          hasher.putString(source.getPath(), StandardCharsets.UTF_8)
+              .putLong(source.length())
+              .putLong(source.lastModified());
+        }
+      }
+    }
+    return hasher.hash().asLong();
+  }
+
+  /** Sets the fingerprint of the files the store is compacted from. */
+  void setSourceFingerprint(long sourceFingerprint) {
+    this.sourceFingerprint = sourceFingerprint;
+  }
+
+  /** Adds a partition. Either list may be null if it wasn't retrieved. */
+  public void add(YearMonth yearMonth, AwardDomicile awardDomicile,
+      PairingList pairingList, ThinLineList lineList) {
+    Preconditions.checkArgument(pairingList != null || lineList != null);
+    add(Column.PARTITION_YEAR_MONTH,
+        yearMonth.getYear() * 12 + yearMonth.getMonthOfYear() - 1);
+    add(Column.PARTITION_DOMICILE, getStringId(awardDomicile.name()));
+    add(Column.PARTITION_FLAGS, (pairingList == null ? 0 : PairingStore.HAS_PAIRINGS)
+        | (lineList == null ? 0 : PairingStore.HAS_LINES));
+    add(Column.PARTITION_NUM_LINES, lineList == null ? 0 : lineList.getThinLineCount());
+    if (pairingList != null) {
+      for (Trip trip : pairingList.getTripList()) {
+        addTrip(trip);
+      }
+    }
+    endRange(Column.PARTITION_TRIPS, Table.TRIP);
+    sizes[Table.PARTITION.ordinal()]++;
+  }
+
+  private void addTrip(Trip trip) {
+    add(Column.TRIP_PAIRING_NAME, getStringId(trip.getPairingName()));
+    add(Column.TRIP_START_DATE, trip.hasStartDate()
+        ? Days.daysBetween(PairingStore.EPOCH, LocalDate.parse(trip.getStartDate()))
+            .getDays()
+        : PairingStore.NONE);
+    add(Column.TRIP_EQUIPMENT,
+        trip.hasEquipment() ? trip.getEquipment().getNumber() : PairingStore.NONE);
+    add(Column.TRIP_BLOCK, getMinutes(trip.getBlockDuration()));
+    add(Column.TRIP_CREDIT, getMinutes(trip.getCreditDuration()));
+    add(Column.TRIP_DUTY, getMinutes(trip.getDutyDuration()));
+    add(Column.TRIP_TAFB, getMinutes(trip.getTimeAwayFromBaseDuration()));
+    for (Section section : trip.getSectionList()) {
+      addSection(section);
+    }
+    endRange(Column.TRIP_SECTIONS, Table.SECTION);
+    sizes[Table.TRIP.ordinal()]++;
+  }
+
+  private void addSection(Section section) {
+    add(Column.SECTION_DUTY_START, getMinuteOfDay(section.getLocalDutyStartTime()));
+    add(Column.SECTION_DUTY_END, getMinuteOfDay(section.getLocalDutyEndTime()));
+    add(Column.SECTION_BLOCK, getMinutes(section.getBlockDuration()));
+    add(Column.SECTION_CREDIT, getMinutes(section.getCreditDuration()));
+    add(Column.SECTION_LAYOVER_AIRPORT, section.hasLayoverAirportCode()
+        ? getStringId(section.getLayoverAirportCode())
+        : PairingStore.NONE);
+    add(Column.SECTION_LAYOVER, getMinutes(section.getLayoverDuration()));
+    for (Leg leg : section.getLegList()) {
+      addLeg(leg);
+    }
+    endRange(Column.SECTION_LEGS, Table.LEG);
+    sizes[Table.SECTION.ordinal()]++;
+  }
+
+  private void addLeg(Leg leg) {
+    add(Column.LEG_FLIGHT_NUMBER, leg.getFlightNumber());
+    add(Column.LEG_DAY_OF_MONTH, leg.getDayOfMonth());
+    add(Column.LEG_DEPARTURE_AIRPORT, getStringId(leg.getDepartureAirportCode()));
+    add(Column.LEG_ARRIVAL_AIRPORT, getStringId(leg.getArrivalAirportCode()));
+    add(Column.LEG_DEPARTURE_TIME, getMinuteOfDay(leg.getDepartureLocalTime()));
+    add(Column.LEG_ARRIVAL_TIME, getMinuteOfDay(leg.getArrivalLocalTime()));
+    add(Column.LEG_BLOCK, getMinutes(leg.getBlockDuration()));
+    add(Column.LEG_EQUIPMENT,
+        leg.hasEquipment() ? leg.getEquipment().getNumber() : PairingStore.NONE);
+    add(Column.LEG_FLAGS, leg.getIsDeadhead() ? PairingStore.IS_DEADHEAD : 0);
+    sizes[Table.LEG.ordinal()]++;
+  }
+
+  /** Writes the store to a temporary file, then moves it into place. */
+  public void write(File file) throws IOException {
+    File temp = new File(file.getPath() + ".tmp");
+    try (DataOutputStream output = new DataOutputStream(
+        new BufferedOutputStream(new FileOutputStream(temp)))) {
+      int numStringBytes = columns[Column.STRING_BYTES.ordinal()].getLast();
+      output.writeInt(PairingStore.MAGIC);
+      output.writeInt(PairingStore.VERSION);
+      for (Table table : Table.values()) {
+        output.writeInt(sizes[table.ordinal()]);
+      }
+      output.writeInt(numStringBytes);
+      output.writeLong(sourceFingerprint);
+      for (Column column : Column.values()) {
+        IntColumn values = columns[column.ordinal()];
+        Preconditions.checkState(values.size == PairingStore.getColumnLength(
+            column, sizes[column.table.ordinal()]), column);
+        for (int i = 0; i < values.size; ++i) {
+          output.writeInt(values.values[i]);
+        }
+      }
+      for (byte utf8[] : strings) {
+        output.write(utf8);
+      }
+    }
+    Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+    logger.info("Wrote " + sizes[Table.TRIP.ordinal()] + " trips to " + file);
+  }
+
+  private int getStringId(String text) {
+    Integer id = stringIds.get(text);
+    if (id == null) {
+      id = strings.size();
+      byte utf8[] = text.getBytes(StandardCharsets.UTF_8);
+      strings.add(utf8);
+      stringIds.put(text, id);
+      IntColumn offsets = columns[Column.STRING_BYTES.ordinal()];
+      offsets.add(offsets.getLast() + utf8.length);
+      sizes[Table.STRING.ordinal()]++;
+    }
+    return id;
+  }
+
+  private static int getMinutes(String hhMmText) {
+    return hhMmText.isEmpty()
+        ? PairingStore.NONE
+        : Period.fromText(hhMmText).getTotalMinutes();
+  }
+
+  private static int getMinuteOfDay(String hhMmText) {
+    if (hhMmText.isEmpty()) {
+      return PairingStore.NONE;
+    }
+    int hhMm = Integer.parseInt(hhMmText);
+    return (hhMm / 100) * 60 + hhMm % 100;
+  }
+
+  private void add(Column column, int value) {
+    columns[column.ordinal()].add(value);
+  }
+
+  /** Closes the current element's range of the child table. */
+  private void endRange(Column column, Table child) {
+    add(column, sizes[child.ordinal()]);
+  }
+
+  private static class IntColumn {
+    int values[] = new int[16];
+    int size;
+
+    void add(int value) {
+      if (size == values.length) {
+        values = Arrays.copyOf(values, size * 2);
+      }
+      values[size++] = value;
+    }
+
+    int getLast() {
+      return values[size - 1];
+    }
+  }
+}
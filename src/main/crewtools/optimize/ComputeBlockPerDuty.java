@@ -19,13 +19,12 @@
 
 package crewtools.optimize;
 
-import java.io.File;
-import java.io.FileInputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.joda.time.LocalDate;
 import org.joda.time.YearMonth;
 
 import com.google.common.base.Preconditions;
@@ -33,13 +32,10 @@ import com.google.common.base.Preconditions;
 import crewtools.flica.AwardDomicile;
 import crewtools.flica.Proto;
 import crewtools.flica.Proto.Rank;
-import crewtools.flica.adapters.PairingAdapter;
-import crewtools.flica.pojo.Pairing;
 import crewtools.flica.pojo.PairingKey;
-import crewtools.flica.pojo.Section;
 import crewtools.flica.pojo.ThinLine;
-import crewtools.flica.pojo.Trip;
 import crewtools.flica.stats.DataReader;
+import crewtools.flica.stats.PairingStore;
 import crewtools.util.Period;
 
 public class ComputeBlockPerDuty {
@@ -49,12 +45,12 @@ public class ComputeBlockPerDuty {
 
   public void run() throws Exception {
     YearMonth yearMonth = YearMonth.parse("2019-2");
-    Map<PairingKey, Trip> pairings = new HashMap<>();
-    List<ThinLine> lines = new ArrayList<>();
-    for (AwardDomicile domicile : AwardDomicile.values()) {
-      pairings.putAll(getAllPairings(yearMonth, domicile));
-      lines.addAll(getAllLines(yearMonth, domicile));
-    }
+    DataReader dataReader = new DataReader();
+    PairingStore store = dataReader.readPairingStore();
+    Preconditions.checkState(!store.getPartitions(yearMonth).isEmpty(),
+        "No pairings or lines for %s in %s", yearMonth,
+        dataReader.getPairingStoreFilename());
+    Map<String, List<Integer>> trips = getTripsByName(store, yearMonth);
 
     int numDutyDays = 0;
     Period totalBlock = Period.ZERO;
@@ -62,12 +58,22 @@ public class ComputeBlockPerDuty {
     // For each line, for each pairing in the line,
     // for each segment,
     // include block time in average.
-    for (ThinLine line : lines) {
-      for (PairingKey key : line.getPairingKeys()) {
-        Trip trip = Preconditions.checkNotNull(pairings.get(key));
-        for (Section section : trip.getSections()) {
-          numDutyDays++;
-          totalBlock = totalBlock.plus(section.block);
+    for (int partition : store.getPartitions(yearMonth)) {
+      if (!store.hasLines(partition)) {
+        continue;
+      }
+      AwardDomicile domicile = store.getAwardDomicile(partition);
+      for (ThinLine line : getAllLines(dataReader, yearMonth, domicile)) {
+        for (PairingKey key : line.getPairingKeys()) {
+          int trip = findTrip(store, trips, key);
+          for (int section = store.getFirstSection(trip);
+              section < store.getEndSection(trip); ++section) {
+            numDutyDays++;
+            int blockMinutes = store.getSectionBlockMinutes(section);
+            if (blockMinutes != PairingStore.NONE) {
+              totalBlock = totalBlock.plus(Period.minutes(blockMinutes));
+            }
+          }
         }
       }
     }
@@ -80,32 +86,51 @@ public class ComputeBlockPerDuty {
     }
   }
 
-  private Map<PairingKey, Trip> getAllPairings(
-      YearMonth yearMonth, AwardDomicile domicile) throws Exception {
-    String filename = new DataReader().getPairingFilename(yearMonth, domicile);
-    Proto.PairingList.Builder builder = Proto.PairingList.newBuilder();
-    FileInputStream inputStream = new FileInputStream(new File(filename));
-    builder.mergeFrom(inputStream);
-    Proto.PairingList pairingList = builder.build();
+  /** Returns the trips of every domicile in the month by pairing name. */
+  private Map<String, List<Integer>> getTripsByName(PairingStore store,
+      YearMonth yearMonth) {
+    Map<String, List<Integer>> result = new HashMap<>();
+    for (int partition : store.getPartitions(yearMonth)) {
+      for (int trip = store.getFirstTrip(partition);
+          trip < store.getEndTrip(partition); ++trip) {
+        result.computeIfAbsent(store.getPairingName(trip), name -> new ArrayList<>())
+            .add(trip);
+      }
+    }
+    return result;
+  }
 
-    PairingAdapter pairingAdapter = new PairingAdapter();
-    Map<PairingKey, Trip> trips = new HashMap<>();
-    for (Proto.Trip protoTrip : pairingList.getTripList()) {
-      Pairing pairing = pairingAdapter.adaptPairing(protoTrip);
-      for (Trip trip : pairing.getTrips()) {
-        trips.put(trip.getPairingKey(), trip);
+  /**
+   * The store keeps each pairing once, at its first date, rather than once
+   * per date it operates on. A pairing that operates on several dates is
+   * found as the one of its name that starts latest on or before the key's.
+   */
+  private int findTrip(PairingStore store, Map<String, List<Integer>> trips,
+      PairingKey key) {
+    List<Integer> candidates = trips.get(key.getPairingName());
+    Preconditions.checkState(candidates != null, "No pairing for %s", key);
+    int result = -1;
+    LocalDate resultDate = null;
+    for (int trip : candidates) {
+      LocalDate startDate = store.getStartDate(trip);
+      if (startDate != null && !startDate.isAfter(key.getPairingDate())
+          && (resultDate == null || startDate.isAfter(resultDate))) {
+        result = trip;
+        resultDate = startDate;
       }
     }
-    return trips;
+    Preconditions.checkState(result != -1, "No trip for %s", key);
+    return result;
   }
 
   private static final int ROUND_ONE = 1;
 
-  private List<ThinLine> getAllLines(YearMonth yearMonth, AwardDomicile domicile)
-      throws Exception {
-    Proto.ThinLineList lineList;
-    DataReader dataReader = new DataReader();
-    lineList = dataReader.readLines(yearMonth, domicile, Rank.FIRST_OFFICER, ROUND_ONE);
+  // The store keeps only the number of lines, so the lines themselves are
+  // still read from their lists.
+  private List<ThinLine> getAllLines(DataReader dataReader, YearMonth yearMonth,
+      AwardDomicile domicile) throws Exception {
+    Proto.ThinLineList lineList =
+        dataReader.readLines(yearMonth, domicile, Rank.FIRST_OFFICER, ROUND_ONE);
     List<ThinLine> result = new ArrayList<>();
     lineList.getThinLineList().forEach(line -> result.add(new ThinLine(line)));
     return result;
@@ -25,22 +25,20 @@ import org.joda.time.LocalDate;
 import crewtools.util.Clock;
 
 public class FakeClock implements Clock {
-  private final LocalDate today;
   private DateTime now;
   
   public FakeClock(LocalDate today) {
-    this.today = today;
     this.now = today.toDateTimeAtStartOfDay();
   }
   
   public FakeClock(DateTime now) {
-    this.today = now.toLocalDate();
     this.now = now;
   }
 
+  // Follows setNow, so that a replay can run across days.
   @Override
   public LocalDate today() {
-    return today;
+    return now.toLocalDate();
   }
   
   @Override
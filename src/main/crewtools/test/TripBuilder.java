@@ -111,6 +111,11 @@ public class TripBuilder {
     return this;
   }
   
+  /** Returns the proto of build(), as a parser would produce it for adapting. */
+  public Proto.Trip buildProto() {
+    return build().proto;
+  }
+
   public Trip build() {
     String tripName = null;
     Period sectionBlock = Period.ZERO;
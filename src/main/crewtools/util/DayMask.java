@@ -0,0 +1,155 @@
+/**
+ * Copyright 2020 Iron City Software LLC
+ *
+ * This file is part of CrewTools.
+ *
+ * CrewTools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CrewTools is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CrewTools.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package crewtools.util;
+
+import org.joda.time.Days;
+import org.joda.time.LocalDate;
+import org.joda.time.YearMonth;
+
+/**
+ * Represents sets of days around a bid period as bits in a long.
+ *
+ * Bit 0 is sixteen days before the first day of the period, so a mask
+ * covers the tail of trips carried in from the prior period, the period
+ * itself, and trips carried out into the next. Masks from different
+ * bid periods cannot be compared.
+ */
+public class DayMask {
+  private static final int DAYS_BEFORE_PERIOD = 16;
+  private static final int NUM_DAYS = Long.SIZE;
+
+  private final YearMonth yearMonth;
+  private final LocalDate origin;
+  private final long periodMask;
+
+  public DayMask(YearMonth yearMonth) {
+    Calendar calendar = new Calendar(yearMonth);
+    this.yearMonth = yearMonth;
+    this.origin = calendar.getFirstDateInPeriod().minusDays(DAYS_BEFORE_PERIOD);
+    this.periodMask = getRange(getIndex(calendar.getFirstDateInPeriod()),
+        getIndex(calendar.getLastDateInPeriod()));
+  }
+
+  /** Returns the DayMask of the bid period containing date. */
+  public static DayMask forDate(LocalDate date) {
+    return new DayMask(Calendar.getAssociatedYearMonth(date));
+  }
+
+  public YearMonth getYearMonth() {
+    return yearMonth;
+  }
+
+  /** Returns the days of the bid period itself. */
+  public long getPeriodMask() {
+    return periodMask;
+  }
+
+  public boolean contains(LocalDate date) {
+    int index = getIndex(date);
+    return index >= 0 && index < NUM_DAYS;
+  }
+
+  /** Dates too far from the bid period to be represented are ignored. */
+  public long getMask(Iterable<LocalDate> dates) {
+    long mask = 0;
+    for (LocalDate date : dates) {
+      if (contains(date)) {
+        mask |= 1L << getIndex(date);
+      }
+    }
+    return mask;
+  }
+
+  public long getMask(LocalDate date) {
+    return contains(date) ? 1L << getIndex(date) : 0;
+  }
+
+  private int getIndex(LocalDate date) {
+    return Days.daysBetween(origin, date).getDays();
+  }
+
+  /** Returns bits from..to inclusive, clipped to the mask. */
+  private static long getRange(int from, int to) {
+    from = Math.max(from, 0);
+    to = Math.min(to, NUM_DAYS - 1);
+    if (from > to) {
+      return 0;
+    }
+    long upToTo = to == NUM_DAYS - 1 ? -1L : (1L << (to + 1)) - 1;
+    return upToTo & (-1L << from);
+  }
+
+  public static boolean overlaps(long a, long b) {
+    return (a & b) != 0;
+  }
+
+  public static int getNumDays(long mask) {
+    return Long.bitCount(mask);
+  }
+
+  /** Returns the day before the first day of the mask. */
+  public static long getDayBefore(long mask) {
+    return Long.lowestOneBit(mask) >>> 1;
+  }
+
+  /** Returns the day after the last day of the mask. */
+  public static long getDayAfter(long mask) {
+    return Long.highestOneBit(mask) << 1;
+  }
+
+  /** Returns every day from the first day to the last day of the mask. */
+  public static long fill(long mask) {
+    if (mask == 0) {
+      return mask;
+    }
+    return getRange(Long.numberOfTrailingZeros(mask),
+        NUM_DAYS - 1 - Long.numberOfLeadingZeros(mask));
+  }
+
+  /** Adds numDays before the first day and after the last day of the mask. */
+  public static long extend(long mask, int numDays) {
+    if (mask == 0 || numDays <= 0) {
+      return mask;
+    }
+    int first = Long.numberOfTrailingZeros(mask);
+    int last = NUM_DAYS - 1 - Long.numberOfLeadingZeros(mask);
+    return mask
+        | getRange(first - numDays, first - 1)
+        | getRange(last + 1, last + numDays);
+  }
+
+  /** Adds numDays before and after every day of the mask. */
+  public static long spread(long mask, int numDays) {
+    for (int i = 0; i < numDays; ++i) {
+      mask |= (mask << 1) | (mask >>> 1);
+    }
+    return mask;
+  }
+
+  /** Returns the largest number of consecutive days in the mask. */
+  public static int getLongestRun(long mask) {
+    int run = 0;
+    while (mask != 0) {
+      mask &= mask << 1;
+      run++;
+    }
+    return run;
+  }
+}
@@ -31,14 +31,27 @@ public class Period implements Comparable<Period> {
 
   private final int minutes;
 
-  public static final Period ZERO = new Period(0);
+  // Periods are immutable, so the common ones are shared rather than
+  // allocated by every sum and parse.
+  private static final int MAX_CACHED_MINUTES = 48 * 60;
+  private static final Period CACHE[] = new Period[MAX_CACHED_MINUTES + 1];
+
+  static {
+    for (int i = 0; i <= MAX_CACHED_MINUTES; ++i) {
+      CACHE[i] = new Period(i);
+    }
+  }
+
+  public static final Period ZERO = CACHE[0];
 
   public static Period hours(int hours) {
-    return new Period(hours * 60);
+    return minutes(hours * 60);
   }
 
   public static Period minutes(int minutes) {
-    return new Period(minutes);
+    return minutes >= 0 && minutes <= MAX_CACHED_MINUTES
+        ? CACHE[minutes]
+        : new Period(minutes);
   }
 
   public static Period fromTextWithColon(String hhMmText) {
@@ -49,13 +62,45 @@ public class Period implements Comparable<Period> {
   }
 
   public static Period fromText(String hhMmText) {
-    if (hhMmText.length() == 5) {
+    return minutes(parseMinutes(hhMmText));
+  }
+
+  /**
+   * As fromText(hhMmText).getTotalMinutes(). Text of up to five digits is
+   * parsed by hand: HHHMM, or as the PeriodFormatter would, up to two digits
+   * of hours and then of minutes, with the empty string as zero.
+   */
+  public static int parseMinutes(String hhMmText) {
+    int length = hhMmText.length();
+    if (length <= 5 && isDigits(hhMmText)) {
+      int hoursLength = length == 5 ? 3 : Math.min(length, 2);
+      return parseDigits(hhMmText, 0, hoursLength) * 60
+          + parseDigits(hhMmText, hoursLength, length);
+    }
+    if (length == 5) {
       int hours = Integer.parseInt(hhMmText.substring(0, 3));
       int minutes = Integer.parseInt(hhMmText.substring(3));
-      return Period.hours(hours).plus(Period.minutes(minutes));
-    } else {
-      return Period.fromJodaPeriod(HHMM_PERIOD.parsePeriod(hhMmText));
+      return hours * 60 + minutes;
+    }
+    return Period.fromJodaPeriod(HHMM_PERIOD.parsePeriod(hhMmText)).minutes;
+  }
+
+  private static boolean isDigits(String text) {
+    for (int i = 0; i < text.length(); ++i) {
+      char c = text.charAt(i);
+      if (c < '0' || c > '9') {
+        return false;
+      }
     }
+    return true;
+  }
+
+  private static int parseDigits(String text, int start, int end) {
+    int result = 0;
+    for (int i = start; i < end; ++i) {
+      result = result * 10 + text.charAt(i) - '0';
+    }
+    return result;
   }
 
   private static Period fromJodaPeriod(org.joda.time.Period jodaPeriod) {
@@ -63,14 +108,28 @@ public class Period implements Comparable<Period> {
     Preconditions.checkState(jodaPeriod.getSeconds() == 0);
     Preconditions.checkState(jodaPeriod.getMonths() == 0);
     Preconditions.checkState(jodaPeriod.getYears() == 0);
-    return new Period(jodaPeriod.getMinutes()
+    return minutes(jodaPeriod.getMinutes()
         + jodaPeriod.getHours() * 60
         + jodaPeriod.getDays() * 24 * 60);
   }
 
   public Period(DateTime start, DateTime end) {
+    this.minutes = minutesBetween(start, end);
+  }
+
+  private static final long SHORTEST_DAY_MILLIS = 23 * 60 * 60 * 1000L;
+  private static final long MILLIS_PER_MINUTE = 60 * 1000L;
+
+  /** As new Period(start, end).getTotalMinutes(). */
+  public static int minutesBetween(DateTime start, DateTime end) {
+    long millis = end.getMillis() - start.getMillis();
+    if (Math.abs(millis) < SHORTEST_DAY_MILLIS) {
+      // Less than any day, so there are no imprecise fields to compute.
+      Preconditions.checkState(millis % MILLIS_PER_MINUTE == 0);
+      return (int) (millis / MILLIS_PER_MINUTE);
+    }
     org.joda.time.Period jodaPeriod = new org.joda.time.Period(start, end);
-    this.minutes = Period.fromJodaPeriod(jodaPeriod).minutes;
+    return Period.fromJodaPeriod(jodaPeriod).minutes;
   }
 
   public Period(Period other) {
@@ -82,11 +141,11 @@ public class Period implements Comparable<Period> {
   }
 
   public Period plus(Period that) {
-    return new Period(minutes + that.minutes);
+    return minutes(minutes + that.minutes);
   }
 
   public Period minus(Period that) {
-    return new Period(minutes - that.minutes);
+    return minutes(minutes - that.minutes);
   }
 
   public Period half() {
@@ -33,7 +33,7 @@ public class SimpleCookieJar implements CookieJar {
   private final HashMap<String, List<okhttp3.Cookie>> cookieStore = new HashMap<>();
 
   @Override
-  public void saveFromResponse(HttpUrl url, List<okhttp3.Cookie> cookies) {
+  public synchronized void saveFromResponse(HttpUrl url, List<okhttp3.Cookie> cookies) {
     for (okhttp3.Cookie cookie : cookies) {
       if (cookie.domain() != null) {
         add(cookie.domain(), cookie);
@@ -44,7 +44,7 @@ public class SimpleCookieJar implements CookieJar {
   }
 
   @Override
-  public List<okhttp3.Cookie> loadForRequest(HttpUrl url) {
+  public synchronized List<okhttp3.Cookie> loadForRequest(HttpUrl url) {
     List<okhttp3.Cookie> cookies = new ArrayList<>();
     for (String key : cookieStore.keySet()) {
       if (url.host().contains(key)) {
@@ -54,7 +54,7 @@ public class SimpleCookieJar implements CookieJar {
     return cookies;
   }
 
-  public void add(String key, okhttp3.Cookie cookie) {
+  public synchronized void add(String key, okhttp3.Cookie cookie) {
     if (cookieStore.containsKey(key)) {
       ListIterator<okhttp3.Cookie> it = cookieStore.get(key).listIterator();
       while (it.hasNext()) {
@@ -75,7 +75,7 @@ public class SimpleCookieJar implements CookieJar {
     }
   }
 
-  public void clear() {
+  public synchronized void clear() {
     cookieStore.clear();
   }
 }
@@ -0,0 +1,91 @@
+/**
+ * Copyright 2020 Iron City Software LLC
+ *
+ * This file is part of CrewTools.
+ *
+ * CrewTools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CrewTools is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CrewTools.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package crewtools.flica;
+
+import static org.junit.Assert.assertEquals;
+
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import crewtools.flica.parser.ParseException;
+import crewtools.test.FakeClock;
+
+public class CachingFlicaServiceTest {
+  private static final String LINES =
+      "<html><head><title>FLICA.Net - CLT CRJ FO Lines - Sep 2017</title></head>"
+      + "<body></body></html>";
+  private static final long MAX_BYTES = 1 << 20;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private ResponseCache cache;
+  private CachingFlicaService service;
+
+  @Before
+  public void setUp() throws Exception {
+    cache = new ResponseCache(folder.newFolder(),
+        new FakeClock(DateTime.parse("2017-09-01T10:00:00")), MAX_BYTES, MAX_BYTES);
+    service = new CachingFlicaService(
+        new BaseFlicaConnection("user", "password"), cache);
+  }
+
+  @Test
+  public void testParsesOnce() throws Exception {
+    Proto.ThinLineList lines = service.parseAllLines(LINES);
+    assertEquals("2017-09", lines.getYearMonth());
+    assertEquals(1, cache.getMisses());
+
+    // An equal response, even a different String, is a hit.
+    assertEquals(lines, service.parseAllLines(new String(LINES)));
+    assertEquals(1, cache.getMisses());
+    assertEquals(1, cache.getMemoryHits());
+
+    service.parseAllLines(LINES.replace("Sep", "Oct"));
+    assertEquals(2, cache.getMisses());
+  }
+
+  @Test
+  public void testParseFailureIsNotCached() throws Exception {
+    for (int i = 0; i < 2; ++i) {
+      try {
+        service.parseAllLines("<html></html>");
+      } catch (ParseException expected) {
+      }
+    }
+    assertEquals(2, cache.getMisses());
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void testStoreFailureKeepsParse() throws Exception {
+    // A file where the cache directory should be, so nothing can be stored.
+    ResponseCache unwritable = new ResponseCache(folder.newFile(),
+        new FakeClock(DateTime.parse("2017-09-01T10:00:00")), MAX_BYTES, MAX_BYTES);
+    CachingFlicaService unwritableService = new CachingFlicaService(
+        new BaseFlicaConnection("user", "password"), unwritable);
+    assertEquals("2017-09", unwritableService.parseAllLines(LINES).getYearMonth());
+    assertEquals(1, unwritable.getMisses());
+    assertEquals(0, unwritable.size());
+  }
+}
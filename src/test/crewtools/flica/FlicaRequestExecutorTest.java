@@ -0,0 +1,123 @@
+/**
+ * Copyright 2020 Iron City Software LLC
+ *
+ * This file is part of CrewTools.
+ *
+ * CrewTools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CrewTools is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CrewTools.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package crewtools.flica;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+import crewtools.flica.FlicaRequestExecutor.Priority;
+
+public class FlicaRequestExecutorTest {
+  private static final long TIMEOUT_SECONDS = 10;
+
+  @Test
+  public void testEndpointsOverlap() throws Exception {
+    FlicaRequestExecutor executor = new FlicaRequestExecutor(2);
+    CountDownLatch release = new CountDownLatch(1);
+    CompletableFuture<String> slow = executor.submit("opentime", Priority.REFRESH,
+        () -> {
+          release.await();
+          return "opentime";
+        });
+    CompletableFuture<String> fast = executor.submit("schedule", Priority.REFRESH,
+        () -> "schedule");
+    assertEquals("schedule", fast.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    assertFalse(slow.isDone());
+    release.countDown();
+    assertEquals("opentime", slow.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    executor.shutdown();
+  }
+
+  @Test
+  public void testEndpointLimit() throws Exception {
+    FlicaRequestExecutor executor = new FlicaRequestExecutor(2);
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    CompletableFuture<String> first = executor.submit("opentime", Priority.REFRESH,
+        () -> {
+          started.countDown();
+          release.await();
+          return "first";
+        });
+    assertTrue(started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    CompletableFuture<String> second = executor.submit("opentime", Priority.REFRESH,
+        () -> "second");
+    assertEquals(1, executor.getNumPending());
+    assertFalse(second.isDone());
+    release.countDown();
+    assertEquals("first", first.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    assertEquals("second", second.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    executor.shutdown();
+  }
+
+  @Test
+  public void testSubmitGoesFirst() throws Exception {
+    FlicaRequestExecutor executor = new FlicaRequestExecutor(1);
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    List<String> order = new CopyOnWriteArrayList<>();
+    executor.submit("schedule", Priority.REFRESH, () -> {
+      started.countDown();
+      release.await();
+      return null;
+    });
+    assertTrue(started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    executor.submit("requests", Priority.BACKGROUND, () -> order.add("requests"));
+    executor.submit("opentime", Priority.REFRESH, () -> order.add("opentime"));
+    CompletableFuture<Boolean> swap =
+        executor.submit("swap", Priority.SUBMIT, () -> order.add("swap"));
+    CompletableFuture<Boolean> last =
+        executor.submit("other", Priority.BACKGROUND, () -> order.add("other"));
+    release.countDown();
+    swap.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    last.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    assertEquals(ImmutableList.of("swap", "opentime", "requests", "other"), order);
+    executor.shutdown();
+  }
+
+  @Test
+  public void testAwaitRethrows() throws Exception {
+    FlicaRequestExecutor executor = new FlicaRequestExecutor(1);
+    CompletableFuture<String> future = executor.submit("schedule", Priority.REFRESH,
+        () -> {
+          throw new IOException("down");
+        });
+    try {
+      FlicaService.await(future);
+      fail();
+    } catch (IOException e) {
+      assertEquals("down", e.getMessage());
+    }
+    executor.shutdown();
+  }
+}
@@ -0,0 +1,246 @@
+/**
+ * Copyright 2020 Iron City Software LLC
+ *
+ * This file is part of CrewTools.
+ *
+ * CrewTools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CrewTools is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CrewTools.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package crewtools.flica;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.joda.time.DateTime;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import crewtools.flica.ResponseCache.Endpoint;
+import crewtools.test.FakeClock;
+
+public class ResponseCacheTest {
+  private static final DateTime NOW = DateTime.parse("2020-03-01T10:00:00");
+  private static final long MAX_BYTES = 1 << 20;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private final FakeClock clock = new FakeClock(NOW);
+  private final AtomicInteger numLoads = new AtomicInteger();
+
+  private String load(ResponseCache cache, Endpoint endpoint, String key, String value)
+      throws Exception {
+    return cache.getString(endpoint, key, () -> {
+      numLoads.incrementAndGet();
+      return value;
+    });
+  }
+
+  @Test
+  public void testMemoryAndDiskHits() throws Exception {
+    File dir = folder.newFolder();
+    ResponseCache cache = new ResponseCache(dir, clock, MAX_BYTES, MAX_BYTES);
+    assertEquals("lines", load(cache, Endpoint.ALL_LINES, "CLT", "lines"));
+    assertEquals("lines", load(cache, Endpoint.ALL_LINES, "CLT", "other"));
+    assertEquals(1, numLoads.get());
+    assertEquals(1, cache.getMemoryHits());
+    assertEquals(1, cache.getMisses());
+    cache.flush();
+
+    // A second cache finds the entry through the index.
+    ResponseCache reopened = new ResponseCache(dir, clock, MAX_BYTES, MAX_BYTES);
+    assertEquals(1, reopened.size());
+    assertEquals("lines", load(reopened, Endpoint.ALL_LINES, "CLT", "other"));
+    assertEquals(1, reopened.getDiskHits());
+    assertTrue(reopened.getBytesRead() > 0);
+    assertEquals(1, numLoads.get());
+  }
+
+  @Test
+  public void testEndpointsAreSeparate() throws Exception {
+    ResponseCache cache = new ResponseCache(folder.newFolder(), clock, MAX_BYTES,
+        MAX_BYTES);
+    assertEquals("lines", load(cache, Endpoint.ALL_LINES, "CLT", "lines"));
+    assertEquals("pairings", load(cache, Endpoint.ALL_PAIRINGS, "CLT", "pairings"));
+    assertEquals(2, numLoads.get());
+  }
+
+  @Test
+  public void testExpiry() throws Exception {
+    ResponseCache cache = new ResponseCache(folder.newFolder(), clock, MAX_BYTES,
+        MAX_BYTES);
+    load(cache, Endpoint.OPENTIME, "CLT", "old");
+    load(cache, Endpoint.ALL_PAIRINGS, "CLT", "pairings");
+    clock.setNow(NOW.plus(Endpoint.OPENTIME.getTimeToLive()).plusMinutes(1));
+    assertEquals("new", load(cache, Endpoint.OPENTIME, "CLT", "new"));
+    assertEquals("pairings", load(cache, Endpoint.ALL_PAIRINGS, "CLT", "other"));
+    assertEquals(3, numLoads.get());
+  }
+
+  @Test
+  public void testStoredCompressed() throws Exception {
+    File dir = folder.newFolder();
+    ResponseCache cache = new ResponseCache(dir, clock, MAX_BYTES, MAX_BYTES);
+    StringBuilder value = new StringBuilder();
+    for (int i = 0; i < 1000; ++i) {
+      value.append("<tr><td>L1234</td></tr>\n");
+    }
+    load(cache, Endpoint.ALL_PAIRINGS, "CLT", value.toString());
+    assertTrue(cache.getBytesWritten() < value.length() / 10);
+    for (File file : dir.listFiles()) {
+      if (file.getName().endsWith(".gz")) {
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        assertEquals((byte) 0x1f, bytes[0]);
+        assertEquals((byte) 0x8b, bytes[1]);
+      }
+    }
+  }
+
+  @Test
+  public void testMemoryIsBounded() throws Exception {
+    File dir = folder.newFolder();
+    ResponseCache cache = new ResponseCache(dir, clock, 10, MAX_BYTES);
+    load(cache, Endpoint.ALL_LINES, "a", "123456");
+    load(cache, Endpoint.ALL_LINES, "b", "123456");
+    // a was evicted from memory but is still on disk.
+    load(cache, Endpoint.ALL_LINES, "a", "other");
+    assertEquals(0, cache.getMemoryHits());
+    assertEquals(1, cache.getDiskHits());
+    assertEquals(2, numLoads.get());
+  }
+
+  @Test
+  public void testDiskIsBounded() throws Exception {
+    File dir = folder.newFolder();
+    ResponseCache cache = new ResponseCache(dir, clock, MAX_BYTES, 1);
+    load(cache, Endpoint.ALL_LINES, "a", "first");
+    clock.setNow(NOW.plusSeconds(1));
+    load(cache, Endpoint.ALL_LINES, "b", "second");
+    assertEquals(1, cache.size());
+    assertEquals("second", load(cache, Endpoint.ALL_LINES, "b", "other"));
+    assertEquals("again", load(cache, Endpoint.ALL_LINES, "a", "again"));
+    assertEquals(3, numLoads.get());
+  }
+
+  @Test(expected = IOException.class)
+  public void testLoaderFailureIsNotCached() throws Exception {
+    ResponseCache cache = new ResponseCache(folder.newFolder(), clock, MAX_BYTES,
+        MAX_BYTES);
+    cache.getString(Endpoint.SCHEDULE, "2020-03", () -> {
+      throw new IOException("down");
+    });
+  }
+
+  @Test(timeout = 10000)
+  public void testConcurrentMissesShareOneLoad() throws Exception {
+    ResponseCache cache = new ResponseCache(folder.newFolder(), clock, MAX_BYTES,
+        MAX_BYTES);
+    CountDownLatch loading = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    String results[] = new String[2];
+    Thread first = new Thread(() -> {
+      try {
+        results[0] = cache.getString(Endpoint.ALL_PAIRINGS, "CLT", () -> {
+          numLoads.incrementAndGet();
+          loading.countDown();
+          Uninterruptibles.awaitUninterruptibly(release);
+          return "pairings";
+        });
+      } catch (Exception e) {
+        throw new RuntimeException(e);
+      }
+    });
+    Thread second = new Thread(() -> {
+      try {
+        results[1] = load(cache, Endpoint.ALL_PAIRINGS, "CLT", "other");
+      } catch (Exception e) {
+        throw new RuntimeException(e);
+      }
+    });
+    first.start();
+    loading.await();
+    second.start();
+    // Until the second is waiting for the first's load.
+    while (second.getState() != Thread.State.WAITING) {
+      Thread.yield();
+    }
+    release.countDown();
+    first.join();
+    second.join();
+    assertEquals("pairings", results[0]);
+    assertEquals("pairings", results[1]);
+    assertEquals(1, numLoads.get());
+    assertEquals(1, cache.getMisses());
+  }
+
+  @Test
+  public void testIndexWritesAreBatched() throws Exception {
+    File dir = folder.newFolder();
+    ResponseCache cache = new ResponseCache(dir, clock, MAX_BYTES, MAX_BYTES);
+    load(cache, Endpoint.ALL_LINES, "a", "first");
+    load(cache, Endpoint.ALL_LINES, "b", "second");
+    assertEquals(0, new ResponseCache(dir, clock, MAX_BYTES, MAX_BYTES).size());
+
+    // Stores are flushed once the interval has passed.
+    clock.setNow(NOW.plusMinutes(1));
+    load(cache, Endpoint.ALL_LINES, "c", "third");
+    assertEquals(3, new ResponseCache(dir, clock, MAX_BYTES, MAX_BYTES).size());
+
+    load(cache, Endpoint.ALL_LINES, "d", "fourth");
+    cache.close();
+    assertEquals(4, new ResponseCache(dir, clock, MAX_BYTES, MAX_BYTES).size());
+  }
+
+  @Test
+  public void testFlushMergesWithoutEvictedEntries() throws Exception {
+    File dir = folder.newFolder();
+    ResponseCache first = new ResponseCache(dir, clock, MAX_BYTES, MAX_BYTES);
+    load(first, Endpoint.ALL_LINES, "a", "first");
+    first.flush();
+
+    long entryBytes = dir.listFiles((d, name) -> !name.equals("index.pb"))[0].length();
+
+    // The second cache only has room for one entry, so evicts a.
+    ResponseCache second = new ResponseCache(dir, clock, MAX_BYTES, entryBytes + 2);
+    clock.setNow(NOW.plusSeconds(1));
+    load(second, Endpoint.ALL_LINES, "b", "second");
+    second.flush();
+    assertEquals(1, second.size());
+
+    // The first adopts b, but still lists a when it writes the index.
+    first.flush();
+    assertEquals(2, first.size());
+    // The second does not take back a, whose file it deleted.
+    second.flush();
+    assertEquals(1, second.size());
+  }
+
+  @Test
+  public void testUnreadableIndexStartsEmpty() throws Exception {
+    File dir = folder.newFolder();
+    Files.write(new File(dir, "index.pb").toPath(), new byte[] { 1, 2, 3 });
+    ResponseCache cache = new ResponseCache(dir, clock, MAX_BYTES, MAX_BYTES);
+    assertEquals(0, cache.size());
+    assertEquals("lines", load(cache, Endpoint.ALL_LINES, "CLT", "lines"));
+  }
+}
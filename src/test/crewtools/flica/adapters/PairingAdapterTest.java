@@ -0,0 +1,93 @@
+/**
+ * Copyright 2020 Iron City Software LLC
+ *
+ * This file is part of CrewTools.
+ *
+ * CrewTools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CrewTools is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CrewTools.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package crewtools.flica.adapters;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.joda.time.LocalDate;
+import org.junit.Before;
+import org.junit.Test;
+
+import crewtools.flica.Proto;
+import crewtools.flica.pojo.Trip;
+import crewtools.test.TripBuilder;
+import crewtools.util.Period;
+
+public class PairingAdapterTest {
+
+  private Proto.Trip newTrip(int blockHours) {
+    return new TripBuilder()
+        .withLocalDate(LocalDate.parse("2018-01-01"))
+        .withName("L1000")
+        .withLeg("DCA", "LGA", Period.hours(blockHours))
+        .buildProto();
+  }
+
+  @Before
+  public void setUp() {
+    PairingAdapter.clearCache();
+  }
+
+  @Test
+  public void testEqualProtoIsAdaptedOnce() {
+    PairingAdapter adapter = new PairingAdapter();
+    Trip first = adapter.adaptTrip(newTrip(1));
+    long misses = PairingAdapter.getCacheStats().missCount();
+    Trip second = new PairingAdapter().adaptTrip(newTrip(1));
+    assertEquals(misses, PairingAdapter.getCacheStats().missCount());
+    assertEquals(first, second);
+    assertSame(first.getSections(), second.getSections());
+    assertEquals(60, second.block.getTotalMinutes());
+  }
+
+  @Test
+  public void testTripsAreNotShared() {
+    PairingAdapter adapter = new PairingAdapter();
+    Trip first = adapter.adaptTrip(newTrip(1));
+    first.scoreInfo.add("annotated");
+    Trip second = adapter.adaptTrip(newTrip(1));
+    assertNotSame(first, second);
+    assertTrue(second.scoreInfo.isEmpty());
+  }
+
+  @Test
+  public void testDifferentProtoIsAdaptedAgain() {
+    PairingAdapter adapter = new PairingAdapter();
+    adapter.adaptTrip(newTrip(1));
+    long misses = PairingAdapter.getCacheStats().missCount();
+    adapter.adaptTrip(newTrip(2));
+    assertEquals(misses + 1, PairingAdapter.getCacheStats().missCount());
+  }
+
+  @Test
+  public void testWithoutVerify() {
+    Trip unverified = new PairingAdapter(false).adaptTrip(newTrip(1));
+    // An unverified result is adapted again for an adapter that verifies.
+    Trip verified = new PairingAdapter().adaptTrip(newTrip(1));
+    assertNotSame(unverified.getSections(), verified.getSections());
+    assertEquals(unverified.getSections(), verified.getSections());
+    assertEquals(unverified.getCredit(), verified.getCredit());
+    Trip cached = new PairingAdapter(false).adaptTrip(newTrip(1));
+    assertSame(verified.getSections(), cached.getSections());
+  }
+}
@@ -0,0 +1,143 @@
+/**
+ * Copyright 2020 Iron City Software LLC
+ *
+ * This file is part of CrewTools.
+ *
+ * CrewTools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CrewTools is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CrewTools.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package crewtools.flica.bid;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.LocalDate;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableSet;
+
+import crewtools.flica.pojo.FlicaTask;
+import crewtools.flica.pojo.PairingKey;
+import crewtools.flica.pojo.Schedule;
+import crewtools.test.ScheduleBuilder;
+import crewtools.test.TripBuilder;
+import crewtools.util.Period;
+
+public class CollectorTest {
+  private static final LocalDate DATE = LocalDate.parse("2019-10-20");
+
+  private FlicaTask newTask(String name) {
+    return new FlicaTask(new PairingKey(DATE, name), Period.hours(5), 1);
+  }
+
+  private Schedule newSchedule(String name) {
+    return new ScheduleBuilder()
+        .withTrips(new TripBuilder()
+            .withLocalDate(DATE)
+            .withName(name)
+            .withLeg("CLT", "CLT", Period.hours(5))
+            .build())
+        .build();
+  }
+
+  @Test
+  public void testDeltas() {
+    Collector collector = new Collector();
+    Schedule schedule = newSchedule("L100");
+    collector.offer(schedule);
+    collector.offer(ImmutableSet.of(newTask("A1"), newTask("A2")));
+    collector.beginWork(true);
+    assertSame(schedule, collector.getCurrentSchedule());
+    assertEquals(2, collector.getCurrentTasks().size());
+    assertTrue(collector.getCurrentDelta().isScheduleChanged());
+    assertEquals(2, collector.getCurrentDelta().getAddedTasks().size());
+
+    // An equal schedule is not a change.
+    collector.offer(newSchedule("L100"));
+    assertEquals(2, collector.getSnapshot().getVersion());
+    collector.offer(ImmutableSet.of(newTask("A2"), newTask("A3")));
+    collector.beginWork(true);
+    Collector.Delta delta = collector.getCurrentDelta();
+    assertFalse(delta.isScheduleChanged());
+    assertTrue(delta.isOpentimeRefreshed());
+    assertEquals(ImmutableSet.of(newTask("A3")), delta.getAddedTasks());
+    assertEquals(ImmutableSet.of(newTask("A1")), delta.getRemovedTasks());
+  }
+
+  @Test
+  public void testCatchUpWaitsForTransitions() throws Exception {
+    Collector collector = new Collector();
+    collector.offer(newSchedule("L100"));
+    collector.offer(ImmutableSet.of(newTask("A1")));
+    CountDownLatch done = new CountDownLatch(1);
+    Thread worker = new Thread(() -> {
+      collector.beginWork(false);
+      done.countDown();
+    });
+    worker.start();
+    assertFalse(done.await(100, TimeUnit.MILLISECONDS));
+    Transition transition = new Transition(
+        ImmutableSet.of(new PairingKey(DATE, "A1")),
+        ImmutableSet.of(new PairingKey(DATE, "L100")));
+    collector.offerTransitions(ImmutableSet.of(transition));
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+    assertTrue(collector.hasTransition(transition));
+    assertEquals(1, collector.getCurrentDelta().getAddedTransitions().size());
+  }
+
+  @Test
+  public void testBurstOfUpdatesWakesWorkerOnce() throws Exception {
+    Collector collector = new Collector();
+    collector.offer(newSchedule("L100"));
+    collector.offer(ImmutableSet.of(newTask("A1")));
+    collector.beginWork(true);
+    for (int i = 2; i <= 10; ++i) {
+      collector.offer(ImmutableSet.of(newTask("A" + i)));
+    }
+    collector.beginWork(true);
+    assertEquals(ImmutableSet.of(newTask("A10")), collector.getCurrentTasks());
+    assertEquals(11, collector.getCurrentDelta().getCurrent().getVersion());
+
+    // Nothing new, so the worker waits.
+    CountDownLatch done = new CountDownLatch(1);
+    Thread worker = new Thread(() -> {
+      collector.beginWork(true);
+      done.countDown();
+    });
+    worker.start();
+    assertFalse(done.await(100, TimeUnit.MILLISECONDS));
+    collector.offer(newSchedule("L200"));
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+    assertTrue(collector.getCurrentDelta().isScheduleChanged());
+  }
+
+  @Test
+  public void testTryBeginWork() {
+    Collector collector = new Collector();
+    assertFalse(collector.tryBeginWork(true));
+    collector.offer(newSchedule("L100"));
+    assertFalse(collector.tryBeginWork(true));
+    collector.offer(ImmutableSet.of(newTask("A1")));
+    assertTrue(collector.tryBeginWork(true));
+    // Nothing new since.
+    assertFalse(collector.tryBeginWork(true));
+    collector.offer(ImmutableSet.of(newTask("A1")));
+    assertTrue(collector.tryBeginWork(true));
+  }
+}
@@ -0,0 +1,113 @@
+/**
+ * Copyright 2020 Iron City Software LLC
+ *
+ * This file is part of CrewTools.
+ *
+ * CrewTools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CrewTools is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CrewTools.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package crewtools.flica.bid;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.joda.time.LocalDate;
+import org.joda.time.YearMonth;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableSet;
+
+import crewtools.flica.pojo.Trip;
+import crewtools.rpc.Proto.BidConfig;
+import crewtools.rpc.Proto.ScoreAdjustment;
+import crewtools.test.TripBuilder;
+import crewtools.util.Period;
+
+public class CompiledBidConfigTest {
+
+  private Trip newTrip(String date) {
+    return new TripBuilder()
+        .withLocalDate(LocalDate.parse(date))
+        .withName("L1000")
+        .withLeg("DCA", "DCA", Period.hours(1))
+        .build();
+  }
+
+  @Test
+  public void testLookups() {
+    CompiledBidConfig config = new CompiledBidConfig(BidConfig.newBuilder()
+        .setMinimumCreditHours(65)
+        .addFavoriteOvernight("SFO")
+        .addFavoriteTurn("BOS")
+        .addDespisedTurn("LGA")
+        .addMonthlyBidOverride("101")
+        .addMonthlyBidOverride("102")
+        .addMonthlyBidOverride("101")
+        .addLoserLine("201")
+        .build());
+    assertEquals(Period.hours(65), config.getMinimumCredit());
+    assertTrue(config.hasFavoriteOvernights());
+    assertTrue(config.isFavoriteOvernight("SFO"));
+    assertFalse(config.isFavoriteOvernight("BOS"));
+    assertTrue(config.isFavoriteTurn("BOS"));
+    assertTrue(config.isDespisedTurn("LGA"));
+    assertEquals(0, config.getMonthlyBidOverrideIndex("101"));
+    assertEquals(1, config.getMonthlyBidOverrideIndex("102"));
+    assertEquals(-1, config.getMonthlyBidOverrideIndex("103"));
+    assertEquals(0, config.getLoserLineIndex("201"));
+    assertEquals(-1, config.getLoserLineIndex("101"));
+  }
+
+  @Test
+  public void testRequiredDaysOff() {
+    CompiledBidConfig config = new CompiledBidConfig(BidConfig.newBuilder()
+        .setYearMonth("2019-10")
+        .addRequiredDayOff("2019-10-12")
+        .build());
+    assertEquals(new YearMonth(2019, 10), config.getYearMonth());
+    assertTrue(config.isRequiredDayOff(LocalDate.parse("2019-10-12")));
+    assertTrue(config.spansRequiredDayOff(newTrip("2019-10-12")));
+    assertFalse(config.spansRequiredDayOff(newTrip("2019-10-13")));
+    // Another bid period.
+    assertFalse(config.spansRequiredDayOff(newTrip("2019-12-12")));
+  }
+
+  @Test
+  public void testRequiredDaysOffWithoutYearMonth() {
+    CompiledBidConfig config = new CompiledBidConfig(BidConfig.newBuilder()
+        .addRequiredDayOff("2019-10-12")
+        .build());
+    assertTrue(config.spansRequiredDayOff(newTrip("2019-10-12")));
+    assertFalse(config.spansRequiredDayOff(newTrip("2019-10-13")));
+  }
+
+  @Test
+  public void testScoreAdjustments() {
+    CompiledBidConfig config = new CompiledBidConfig(BidConfig.newBuilder()
+        .setYearMonth("2019-10")
+        .addScoreAdjustment(ScoreAdjustment.newBuilder()
+            .setScoreAdjustment(-5)
+            .addSoftDayOff("2019-10-12"))
+        .build());
+    CompiledBidConfig.CompiledScoreAdjustment adjustment =
+        config.getScoreAdjustments().get(0);
+    assertEquals(-5, adjustment.getScoreAdjustment());
+    assertFalse(adjustment.hasCrewEmployeeIds());
+    assertTrue(adjustment.spansSoftDayOff(newTrip("2019-10-12")));
+    assertFalse(adjustment.spansSoftDayOff(newTrip("2019-10-11")));
+    assertTrue(adjustment.isAnySoftDayOffIn(
+        ImmutableSet.of(LocalDate.parse("2019-10-12"))));
+  }
+}
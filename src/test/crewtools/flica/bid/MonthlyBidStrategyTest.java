@@ -0,0 +1,102 @@
+/**
+ * Copyright 2020 Iron City Software LLC
+ *
+ * This file is part of CrewTools.
+ *
+ * CrewTools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CrewTools is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CrewTools.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package crewtools.flica.bid;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.joda.time.LocalDate;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import crewtools.flica.Proto;
+import crewtools.flica.pojo.PairingKey;
+import crewtools.flica.pojo.ThinLine;
+import crewtools.flica.pojo.Trip;
+import crewtools.rpc.Proto.BidConfig;
+import crewtools.test.TripBuilder;
+import crewtools.util.Period;
+
+public class MonthlyBidStrategyTest {
+  private static final String[] OVERNIGHTS = { "SFO", "BOS", "LGA" };
+
+  private final CompiledBidConfig config = new CompiledBidConfig(BidConfig.newBuilder()
+      .setYearMonth("2019-10")
+      .setMinimumCreditHours(10)
+      .setMinimumNumberOfTrips(2)
+      .addFavoriteOvernight("SFO")
+      .addMonthlyBidOverride("L7")
+      .addLoserLine("L3")
+      .setEnableMonthlySortByCredit(true)
+      .setEnableWeekendWorkScoring(true)
+      .build());
+
+  private Trip newTrip(String name, LocalDate date, String overnight, int legs) {
+    TripBuilder builder = new TripBuilder()
+        .withLocalDate(date)
+        .withName(name);
+    for (int i = 0; i < legs; ++i) {
+      builder.withLeg(i == 0 ? "DCA" : overnight, overnight, Period.hours(2));
+    }
+    return builder.withLayover(overnight, Period.hours(10)).build();
+  }
+
+  private List<LineScore> newLineScores(TripScoreCache cache) {
+    List<LineScore> lineScores = new ArrayList<>();
+    for (int i = 0; i < 24; ++i) {
+      Proto.ThinLine.Builder line = Proto.ThinLine.newBuilder().setLineName("L" + i);
+      Map<PairingKey, Trip> trips = new HashMap<>();
+      for (int j = 0; j < 1 + i % 3; ++j) {
+        LocalDate date = new LocalDate(2019, 10, 3 + (i * 5 + j * 7) % 26);
+        Trip trip = newTrip("T" + i + j, date, OVERNIGHTS[(i + j) % 3], 1 + (i + j) % 5);
+        trips.put(trip.getPairingKey(), trip);
+        line.addThinPairingBuilder()
+            .setPairingName(trip.getPairingName())
+            .setDate(trip.getPairingKey().getPairingDate().toString());
+      }
+      lineScores.add(new LineScore(new ThinLine(line.build()), trips, config,
+          ImmutableMap.of(), ImmutableSet.of(), cache));
+    }
+    return lineScores;
+  }
+
+  @Test
+  public void testSortMatchesComparator() {
+    TripScoreCache cache = new TripScoreCache();
+    MonthlyBidStrategy strategy = new MonthlyBidStrategy(config, cache);
+    List<LineScore> expected = newLineScores(cache);
+    Collections.sort(expected, strategy);
+    List<LineScore> actual = newLineScores(cache);
+    strategy.sort(actual);
+    assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); ++i) {
+      assertEquals(expected.get(i).getLineName(), actual.get(i).getLineName());
+    }
+    assertEquals("L7", actual.get(0).getLineName());
+    assertEquals("L3", actual.get(actual.size() - 1).getLineName());
+  }
+}
@@ -25,6 +25,7 @@ import static org.mockito.Mockito.when;
 
 import org.joda.time.Interval;
 import org.joda.time.LocalDate;
+import org.joda.time.YearMonth;
 import org.junit.Test;
 
 import com.google.common.collect.ImmutableSet;
@@ -44,6 +45,7 @@ public class OverlapEvaluatorTest {
 
     ReducedSchedule reducedSchedule = mock(ReducedSchedule.class);
     when(reducedSchedule.getNonTripIntervals()).thenReturn(ImmutableSet.of());
+    when(reducedSchedule.getYearMonth()).thenReturn(new YearMonth(2019, 11));
 
     OverlapEvaluator evaluator = new OverlapEvaluator(
         reducedSchedule,
@@ -66,6 +68,7 @@ public class OverlapEvaluatorTest {
 
     ReducedSchedule reducedSchedule = mock(ReducedSchedule.class);
     when(reducedSchedule.getNonTripIntervals()).thenReturn(ImmutableSet.of());
+    when(reducedSchedule.getYearMonth()).thenReturn(new YearMonth(2019, 11));
     when(reducedSchedule.getRetainedTrips()).thenReturn(ImmutableSet.of(retainedTrip));
 
     OverlapEvaluator evaluator = new OverlapEvaluator(
@@ -94,6 +97,7 @@ public class OverlapEvaluatorTest {
 
     ReducedSchedule reducedSchedule = mock(ReducedSchedule.class);
     when(reducedSchedule.getNonTripIntervals()).thenReturn(ImmutableSet.of());
+    when(reducedSchedule.getYearMonth()).thenReturn(new YearMonth(2019, 11));
     when(reducedSchedule.getRetainedTrips()).thenReturn(ImmutableSet.of(retainedTrip));
 
     OverlapEvaluator evaluator = new OverlapEvaluator(
@@ -0,0 +1,151 @@
+/**
+ * Copyright 2020 Iron City Software LLC
+ *
+ * This file is part of CrewTools.
+ *
+ * CrewTools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CrewTools is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CrewTools.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package crewtools.flica.bid;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.joda.time.DateTime;
+import org.joda.time.LocalDate;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+
+import crewtools.flica.FlicaService;
+import crewtools.flica.Proto;
+import crewtools.flica.Proto.PairingList;
+import crewtools.rpc.Proto.BidConfig;
+import crewtools.test.TripBuilder;
+import crewtools.util.Period;
+
+public class ReplayHarnessTest {
+  private static final LocalDate TASK_DATE = LocalDate.parse("2019-10-20");
+
+  // Before and after the bid period opens at 17:00 Eastern on the 24th.
+  private static final DateTime SCHEDULE_TIME = DateTime.parse("2019-09-24T20:30:00Z");
+  private static final DateTime OPENTIME_TIME = DateTime.parse("2019-09-24T20:31:00Z");
+  private static final DateTime LATER_OPENTIME_TIME =
+      DateTime.parse("2019-09-24T21:05:00Z");
+  private static final DateTime REQUEST_STATUS_TIME =
+      DateTime.parse("2019-09-24T21:06:00Z");
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private static Proto.Trip buildTrip(String name, LocalDate date, int numDays,
+      String overnight) {
+    TripBuilder builder = new TripBuilder()
+        .withLocalDate(date)
+        .withName(name);
+    for (int i = 0; i < numDays; ++i) {
+      boolean isLastDay = i == numDays - 1;
+      builder.withLeg(i == 0 ? "DCA" : overnight, isLastDay ? "DCA" : overnight,
+          Period.hours(18));
+      if (!isLastDay) {
+        builder.withLayover(overnight, Period.hours(12));
+      }
+    }
+    return builder.buildProto();
+  }
+
+  // An opentime task as FLICA declares it.
+  private static String task(int index, String name, int numDays, String credit) {
+    return String.format("[%d]=new Task(true,\"%s\",\"20Oct\",\"20191020\",%d,"
+        + "\"05:00\",\"05:00\",\"23:00\",\"%s\",\"\",\"\",\"CA\",0,0,\"\",true,\"\","
+        + "0,\"%s\",false,\"\",0,\"\",false,false,\"20Oct\",false,\"1300\");\n",
+        index, name, numDays, credit, credit);
+  }
+
+  private void writePairings(Path pairingDir, String yearMonth, Proto.Trip... trips)
+      throws IOException {
+    PairingList.Builder pairings = PairingList.newBuilder();
+    for (Proto.Trip trip : trips) {
+      pairings.addTrip(trip);
+    }
+    Files.write(pairingDir.resolve(yearMonth), pairings.build().toByteArray());
+  }
+
+  private Path writeSession() throws IOException {
+    Path replayDir = folder.getRoot().toPath();
+    Path pairingDir = Files.createDirectories(replayDir.resolve("pairings"));
+    writePairings(pairingDir, "2019-09");
+    writePairings(pairingDir, "2019-10",
+        buildTrip("A1000", TASK_DATE, 1, null),
+        buildTrip("A1001", TASK_DATE, 2, "LGA"));
+    try (ReplayLogWriter writer = new ReplayLogWriter(replayDir.resolve("schedule"))) {
+      writer.append(SCHEDULE_TIME.getMillis(), "schedule");
+    }
+    try (ReplayLogWriter writer = new ReplayLogWriter(replayDir.resolve("opentime"))) {
+      writer.append(OPENTIME_TIME.getMillis(), task(0, "A1000", 1, "3000"));
+      writer.append(LATER_OPENTIME_TIME.getMillis(),
+          task(0, "A1000", 1, "3000") + task(1, "A1001", 2, "2000"));
+    }
+    try (ReplayLogWriter writer =
+        new ReplayLogWriter(replayDir.resolve("request-status"))) {
+      writer.append(REQUEST_STATUS_TIME.getMillis(), "");
+    }
+    return replayDir;
+  }
+
+  @Test
+  public void testReplay() throws Exception {
+    Path replayDir = writeSession();
+    // The schedule snapshot is parsed into 54 hours over three days, then 36
+    // hours over two days.
+    FlicaService service = mock(FlicaService.class);
+    when(service.parseSchedule("schedule")).thenReturn(Proto.Schedule.newBuilder()
+        .setYearMonth("2019-10")
+        .addTrip(buildTrip("L100", LocalDate.parse("2019-10-10"), 3, "HVN"))
+        .addTrip(buildTrip("L200", TASK_DATE, 2, "HVN"))
+        .build());
+    BidConfig bidConfig = BidConfig.newBuilder()
+        .setYearMonth("2019-10")
+        .setRound(FlicaService.BID_CA_SBB)
+        .setAwardDomicile("CLT")
+        .setRank("CAPTAIN")
+        .addFavoriteOvernight("LGA")
+        .build();
+
+    StringWriter transcript = new StringWriter();
+    try (ReplayHarness harness =
+        new ReplayHarness(bidConfig, replayDir.toString(), service)) {
+      assertEquals(3, harness.run(new PrintWriter(transcript)));
+    }
+    // Before the opening, the first opentime is worked on at once. After it,
+    // the later opentime waits for the request status.
+    String drop = " Drop [PairingKey{date=2019-10-20, name=L200}]; Add ";
+    assertEquals(ImmutableList.of(
+        "2019-09-24T20:31:00.000Z" + drop + "[PairingKey{date=2019-10-20, name=A1000}]",
+        "2019-09-24T21:06:00.000Z" + drop + "[PairingKey{date=2019-10-20, name=A1000}]",
+        "2019-09-24T21:06:00.000Z" + drop + "[PairingKey{date=2019-10-20, name=A1001}]"),
+        Splitter.on(System.lineSeparator()).omitEmptyStrings()
+            .splitToList(transcript.toString()));
+  }
+}
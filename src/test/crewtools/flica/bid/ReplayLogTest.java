@@ -0,0 +1,205 @@
+/**
+ * Copyright 2020 Iron City Software LLC
+ *
+ * This file is part of CrewTools.
+ *
+ * CrewTools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CrewTools is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CrewTools.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package crewtools.flica.bid;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ReplayLogTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private Path writeLog(int numRecords) throws IOException {
+    Path dir = folder.getRoot().toPath().resolve("log");
+    // Small segments and a dense index, to exercise both.
+    try (ReplayLogWriter writer = new ReplayLogWriter(dir, 200, 50)) {
+      for (int i = 0; i < numRecords; ++i) {
+        writer.append(1000 + i * 10, "snapshot " + i);
+      }
+    }
+    return dir;
+  }
+
+  @Test
+  public void testReadsInOrderAcrossSegments() throws IOException {
+    Path dir = writeLog(50);
+    assertTrue(ReplayLogReader.listSegments(dir).size() > 1);
+    ReplayLogReader reader = new ReplayLogReader(dir);
+    for (int i = 0; i < 50; ++i) {
+      assertEquals("snapshot " + i, reader.next());
+      assertEquals(1000 + i * 10, reader.getLastTimestamp());
+    }
+    assertNull(reader.next());
+  }
+
+  @Test
+  public void testSeek() throws IOException {
+    ReplayLogReader reader = new ReplayLogReader(writeLog(50));
+    reader.seek(1255);
+    assertEquals("snapshot 26", reader.next());
+    reader.seek(1250);
+    assertEquals("snapshot 25", reader.next());
+    reader.seek(0);
+    assertEquals("snapshot 0", reader.next());
+    reader.seek(5000);
+    assertNull(reader.next());
+  }
+
+  @Test
+  public void testPeekTimestamp() throws IOException {
+    ReplayLogReader reader = new ReplayLogReader(writeLog(2));
+    assertEquals(1000, reader.peekTimestamp());
+    assertEquals(1000, reader.peekTimestamp());
+    assertEquals("snapshot 0", reader.next());
+    assertEquals(1010, reader.peekTimestamp());
+    assertEquals("snapshot 1", reader.next());
+    assertEquals(-1, reader.peekTimestamp());
+  }
+
+  @Test
+  public void testTimestampsNeverGoBackwards() throws IOException {
+    Path dir = writeLog(3);
+    try (ReplayLogWriter writer = new ReplayLogWriter(dir)) {
+      writer.append(500, "late");
+    }
+    ReplayLogReader reader = new ReplayLogReader(dir);
+    assertEquals(1020, reader.readLastTimestamp());
+    reader.seek(1020);
+    assertEquals("snapshot 2", reader.next());
+    assertEquals("late", reader.next());
+    assertEquals(1020, reader.getLastTimestamp());
+  }
+
+  @Test
+  public void testIgnoresTornRecord() throws IOException {
+    Path dir = writeLog(1);
+    Path segment = dir.resolve(
+        ReplayLogReader.getSegmentName(1000) + ReplayLogReader.SEGMENT_SUFFIX);
+    try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+      channel.truncate(channel.size() - 1);
+    }
+    try (ReplayLogWriter writer = new ReplayLogWriter(dir)) {
+      writer.append(2000, "after");
+    }
+    ReplayLogReader reader = new ReplayLogReader(dir);
+    assertEquals("after", reader.next());
+    assertNull(reader.next());
+  }
+
+  private Path getFirstSegment(Path dir) {
+    return dir.resolve(
+        ReplayLogReader.getSegmentName(1000) + ReplayLogReader.SEGMENT_SUFFIX);
+  }
+
+  // Overwrites the segment at position with bytes.
+  private void overwrite(Path segment, long position, byte... bytes) throws IOException {
+    try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+      channel.write(ByteBuffer.wrap(bytes), position);
+    }
+  }
+
+  // The offset of the record after the first numRecords in segment.
+  private int getOffset(Path segment, int numRecords) throws IOException {
+    ByteBuffer records = ByteBuffer.wrap(Files.readAllBytes(segment));
+    int offset = 0;
+    for (int i = 0; i < numRecords; ++i) {
+      offset += ReplayLogReader.HEADER_BYTES + records.getInt(offset + 16);
+    }
+    return offset;
+  }
+
+  @Test
+  public void testIgnoresZeroedTail() throws IOException {
+    Path dir = writeLog(2);
+    Path segment = getFirstSegment(dir);
+    overwrite(segment, Files.size(segment), new byte[64]);
+    ReplayLogReader reader = new ReplayLogReader(dir);
+    assertEquals("snapshot 0", reader.next());
+    assertEquals("snapshot 1", reader.next());
+    assertNull(reader.next());
+    assertEquals(1010, reader.getLastTimestamp());
+    assertEquals(1010, new ReplayLogReader(dir).readLastTimestamp());
+  }
+
+  @Test
+  public void testIgnoresCorruptLastRecord() throws IOException {
+    Path dir = writeLog(2);
+    Path segment = getFirstSegment(dir);
+    overwrite(segment, Files.size(segment) - 1, (byte) 0xff);
+    ReplayLogReader reader = new ReplayLogReader(dir);
+    assertEquals("snapshot 0", reader.next());
+    assertNull(reader.next());
+    assertEquals(1000, new ReplayLogReader(dir).readLastTimestamp());
+  }
+
+  @Test(expected = IOException.class)
+  public void testCorruptRecordInMiddle() throws IOException {
+    Path dir = writeLog(3);
+    Path segment = getFirstSegment(dir);
+    // The last byte of the second record.
+    overwrite(segment, getOffset(segment, 2) - 1, (byte) 0xff);
+    ReplayLogReader reader = new ReplayLogReader(dir);
+    assertEquals("snapshot 0", reader.next());
+    reader.next();
+  }
+
+  @Test(expected = IOException.class)
+  public void testZeroedRecordInMiddle() throws IOException {
+    Path dir = writeLog(3);
+    Path segment = getFirstSegment(dir);
+    int start = getOffset(segment, 1);
+    overwrite(segment, start, new byte[getOffset(segment, 2) - start]);
+    ReplayLogReader reader = new ReplayLogReader(dir);
+    assertEquals("snapshot 0", reader.next());
+    reader.next();
+  }
+
+  @Test(expected = IOException.class)
+  public void testAppendAfterClose() throws IOException {
+    ReplayLogWriter writer = new ReplayLogWriter(writeLog(1));
+    writer.close();
+    writer.close();
+    writer.append(2000, "closed");
+  }
+
+  @Test
+  public void testReadAfterReopen() throws IOException {
+    Path dir = writeLog(2);
+    try (ReplayLogReader reader = new ReplayLogReader(dir)) {
+      assertEquals("snapshot 0", reader.next());
+    }
+    try (ReplayLogReader reader = new ReplayLogReader(dir)) {
+      reader.seek(1010);
+      assertEquals("snapshot 1", reader.next());
+    }
+  }
+}
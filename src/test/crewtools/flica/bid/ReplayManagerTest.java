@@ -0,0 +1,72 @@
+/**
+ * Copyright 2020 Iron City Software LLC
+ *
+ * This file is part of CrewTools.
+ *
+ * CrewTools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CrewTools is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CrewTools.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package crewtools.flica.bid;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ReplayManagerTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private void writeSnapshot(Path dir, long timestamp, String text) throws IOException {
+    Files.write(dir.resolve("" + timestamp), text.getBytes(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testImportsSnapshotFiles() throws IOException {
+    Path replayDir = folder.getRoot().toPath();
+    Path opentimeDir = Files.createDirectories(replayDir.resolve("opentime"));
+    writeSnapshot(opentimeDir, 1010, "second");
+    writeSnapshot(opentimeDir, 1000, "first");
+    // Left by an import that was interrupted.
+    try (ReplayLogWriter writer =
+        new ReplayLogWriter(opentimeDir.resolve("imported.tmp"))) {
+      writer.append(1000, "first");
+    }
+
+    try (ReplayManager replayManager = new ReplayManager(true, replayDir.toString())) {
+      assertEquals(1000, replayManager.getNextOpentimeTimestamp());
+      assertEquals("first", replayManager.getNextOpentime());
+      assertEquals("second", replayManager.getNextOpentime());
+      assertEquals(-1, replayManager.getNextOpentimeTimestamp());
+      assertEquals(-1, replayManager.getNextScheduleTimestamp());
+    }
+    assertTrue(Files.isDirectory(opentimeDir.resolve("imported")));
+    assertFalse(Files.exists(opentimeDir.resolve("imported.tmp")));
+
+    // Replays the imported log again rather than importing twice.
+    try (ReplayManager replayManager = new ReplayManager(true, replayDir.toString())) {
+      assertEquals("first", replayManager.getNextOpentime());
+      assertEquals("second", replayManager.getNextOpentime());
+      assertEquals(-1, replayManager.getNextOpentimeTimestamp());
+    }
+  }
+}
@@ -0,0 +1,107 @@
+/**
+ * Copyright 2020 Iron City Software LLC
+ *
+ * This file is part of CrewTools.
+ *
+ * CrewTools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CrewTools is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CrewTools.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package crewtools.flica.bid;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+public class SolutionCollectorTest {
+  private Solution solution(int workingDays, int score) {
+    ProposedSchedule schedule = mock(ProposedSchedule.class);
+    when(schedule.getNumWorkingDays()).thenReturn(workingDays);
+    Solution solution = mock(Solution.class);
+    when(solution.getProposedSchedule()).thenReturn(schedule);
+    when(solution.getScore()).thenReturn(score);
+    return solution;
+  }
+
+  @Test
+  public void testKeepsBestInComparatorOrder() {
+    Solution a = solution(10, 5);
+    Solution b = solution(9, 1);
+    Solution c = solution(10, 2);
+    Solution d = solution(11, 0);
+    SolutionCollector collector = new SolutionCollector(2);
+    collector.offer(a, 0);
+    collector.offer(b, 1);
+    assertFalse(collector.isTruncated());
+    collector.offer(c, 2);
+    collector.offer(d, 3);
+
+    assertTrue(collector.isTruncated());
+    assertEquals(ImmutableList.of(b, c), collector.getSolutions());
+  }
+
+  @Test
+  public void testTiesKeepSequenceOrder() {
+    Solution a = solution(10, 5);
+    Solution b = solution(10, 5);
+    Solution c = solution(10, 5);
+    SolutionCollector collector = new SolutionCollector(2);
+    collector.offer(c, 7);
+    collector.offer(b, 4);
+    collector.offer(a, 1);
+
+    assertEquals(ImmutableList.of(a, b), collector.getSolutions());
+  }
+
+  @Test
+  public void testIsCompetitive() {
+    SolutionCollector collector = new SolutionCollector(1);
+    assertTrue(collector.isCompetitive(10, 5, 0));
+    assertFalse(collector.isTruncated());
+    collector.offer(solution(10, 5), 1);
+
+    assertTrue(collector.isCompetitive(9, 100, 2));
+    assertTrue(collector.isCompetitive(10, 5, 0));
+    assertFalse(collector.isTruncated());
+    assertFalse(collector.isCompetitive(10, 5, 2));
+    assertTrue(collector.isTruncated());
+  }
+
+  @Test
+  public void testAddAllAndRemoveIf() {
+    Solution a = solution(8, 0);
+    Solution b = solution(9, 0);
+    Solution c = solution(10, 0);
+    SolutionCollector left = new SolutionCollector(2);
+    left.offer(c, 0);
+    SolutionCollector right = new SolutionCollector(2);
+    right.offer(a, 1);
+    right.offer(b, 2);
+    left.addAll(right);
+
+    assertTrue(left.isTruncated());
+    assertEquals(ImmutableList.of(a, b), left.getSolutions());
+    assertTrue(left.removeIf(solution -> solution == a));
+    assertFalse(left.removeIf(solution -> solution == c));
+    assertEquals(ImmutableList.of(b), left.getSolutions());
+    left.clear();
+    assertEquals(0, left.size());
+    assertFalse(left.isTruncated());
+  }
+}
@@ -20,20 +20,23 @@
 package crewtools.flica.bid;
 
 import static org.junit.Assert.assertEquals;
-import static org.junit.Assert.assertFalse;
-import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
+import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.joda.time.LocalDate;
 import org.joda.time.YearMonth;
 import org.junit.Test;
 
+import com.google.common.collect.ImmutableList;
+
+import crewtools.flica.parser.ParseException;
 import crewtools.flica.pojo.FlicaTask;
 import crewtools.flica.pojo.PairingKey;
 import crewtools.flica.pojo.Schedule;
@@ -45,63 +48,268 @@ import crewtools.test.TripBuilder;
 import crewtools.util.Period;
 
 public class SolverTest {
-  private final Solver solver;
+  private static final YearMonth YEAR_MONTH = YearMonth.parse("2019-10");
+  private static final LocalDate TASK_DATE = LocalDate.parse("2019-10-20");
+  private static final int NUM_TWO_DAY_TASKS = 40;
+
+  private final Schedule schedule;
+  private final TripDatabase tripDatabase;
   private final List<FlicaTaskWrapper> tasks;
   private final FakeClock fakeClock;
 
   public SolverTest() throws IOException {
-    Schedule schedule = new ScheduleBuilder()
-        .withVacation(1, 7)
+    // 54 hours over three days, then 36 hours over two days.
+    schedule = new ScheduleBuilder()
+        .withTrips(
+            buildTrip("L100", LocalDate.parse("2019-10-10"), 3, "HVN"),
+            buildTrip("L200", TASK_DATE, 2, "HVN"))
         .build();
 
-    TripDatabase tripDatabase = new TripDatabase(null) {
+    tripDatabase = new TripDatabase(null) {
       @Override
       public Trip getTrip(PairingKey key) {
-        // A1000 will score lowest
-        String overnight = "LGA";
+        // A1000 is a turn; the rest overnight at a favorite.
         if (key.getPairingName().equals("A1000")) {
-          overnight = "HVN";
+          return buildTrip(key.getPairingName(), key.getPairingDate(), 1, null);
         }
-        return new TripBuilder()
-            .withDayOfMonth(9)
-            .withLeg("DCA", overnight, Period.hours(12))
-            .withLayover(overnight, Period.hours(12))
-            .withLeg(overnight, "DCA", Period.hours(10))
-            .withName(key.getPairingName())
-            .build();
+        return buildTrip(key.getPairingName(), key.getPairingDate(), 2, "LGA");
       }
     };
 
     tasks = new ArrayList<>();
     fakeClock = new FakeClock(LocalDate.parse("2019-9-15"));
+  }
+
+  private static Trip buildTrip(String name, LocalDate date, int numDays,
+      String overnight) {
+    TripBuilder builder = new TripBuilder()
+        .withLocalDate(date)
+        .withName(name);
+    for (int i = 0; i < numDays; ++i) {
+      boolean isLastDay = i == numDays - 1;
+      builder.withLeg(i == 0 ? "DCA" : overnight, isLastDay ? "DCA" : overnight,
+          Period.hours(18));
+      if (!isLastDay) {
+        builder.withLayover(overnight, Period.hours(12));
+      }
+    }
+    return builder.build();
+  }
+
+  private Solver createSolver(BidConfig bidConfig) {
+    return new Solver(schedule, tasks, YEAR_MONTH, bidConfig, tripDatabase,
+        fakeClock);
+  }
+
+  private Solver createSolver(BidConfig bidConfig, int maxSolutions) {
+    return new Solver(schedule, tasks, YEAR_MONTH, bidConfig, tripDatabase,
+        fakeClock, maxSolutions);
+  }
+
+  private void addTask(String name, int numDays, Period credit) {
+    tasks.add(new FlicaTaskWrapper(
+        new FlicaTask(new PairingKey(TASK_DATE, name), credit, numDays)));
+  }
+
+  @Test
+  public void testSolveConsidersMoreThanThirtyCandidates() throws Exception {
+    // The lowest-scoring task is the only one which works less.
+    addTask("A1000", 1, Period.hours(30));
+    for (int i = 1; i <= NUM_TWO_DAY_TASKS; ++i) {
+      addTask("A1" + String.format("%03d", i), 2, Period.hours(20));
+    }
 
     BidConfig bidConfig = BidConfig.newBuilder()
         .addFavoriteOvernight("LGA")
+        .setEnableMultipleAdds(true)
+        .setMaximumNumberOfAddsPerSwap(2)
         .build();
+    List<Solution> solutions = createSolver(bidConfig).solve();
 
-    solver = new Solver(schedule, tasks, YearMonth.parse("2019-10"),
-        bidConfig, tripDatabase, fakeClock);
+    assertEquals(NUM_TWO_DAY_TASKS + 1, solutions.size());
+    boolean foundWorkLess = false;
+    for (Solution solution : solutions) {
+      Transition transition = solution.getProposedSchedule().getTransition();
+      assertEquals(ImmutableList.of(new PairingKey(TASK_DATE, "L200")),
+          transition.getDropKeys());
+      assertEquals(1, transition.getAddKeys().size());
+      if (transition.getAddKeys().get(0).getPairingName().equals("A1000")) {
+        foundWorkLess = true;
+      }
+    }
+    assertTrue("Missing work-less solution", foundWorkLess);
   }
 
   @Test
-  public void testSelectBestCandidates() throws Exception {
-    Set<FlicaTaskWrapper> candidates = new HashSet<>();
-    FlicaTaskWrapper lowest = null;
-    for (int i = 0; i < Solver.MAX_POWERSET_INPUT_SIZE + 1; ++i) {
-      PairingKey key = new PairingKey(LocalDate.parse("2019-10-15"),
-          "A1" + String.format("%03d", i));
-      FlicaTaskWrapper wrapper = new FlicaTaskWrapper(
-          new FlicaTask(key, Period.hours(1)));
-      candidates.add(wrapper);
-      if (i == 0) {
-        lowest = wrapper;
-      }
+  public void testSolveRequiresMinimumCredit() throws Exception {
+    // Dropping L200 for this leaves 64 hours.
+    addTask("A1000", 1, Period.hours(10));
+
+    BidConfig bidConfig = BidConfig.newBuilder().build();
+    assertTrue(createSolver(bidConfig).solve().isEmpty());
+  }
+
+  @Test
+  public void testParallelSolveMatchesSerial() throws Exception {
+    addTask("A1000", 1, Period.hours(30));
+    for (int i = 1; i <= NUM_TWO_DAY_TASKS; ++i) {
+      addTask("A1" + String.format("%03d", i), 2, Period.hours(20));
+    }
+
+    BidConfig bidConfig = BidConfig.newBuilder()
+        .addFavoriteOvernight("LGA")
+        .setEnableMultipleAdds(true)
+        .setMaximumNumberOfAddsPerSwap(2)
+        .build();
+    List<Solution> serial = createSolver(bidConfig).solve();
+    List<Solution> parallel = createSolver(
+        bidConfig.toBuilder().setEnableParallelSolver(true).build()).solve();
+
+    assertEquals(serial.size(), parallel.size());
+    for (int i = 0; i < serial.size(); ++i) {
+      assertEquals(serial.get(i).getProposedSchedule().getTransition(),
+          parallel.get(i).getProposedSchedule().getTransition());
+      assertEquals(serial.get(i).getScore(), parallel.get(i).getScore());
+    }
+  }
+
+  private Set<Transition> getTransitions(List<Solution> solutions) {
+    Set<Transition> transitions = new HashSet<>();
+    for (Solution solution : solutions) {
+      transitions.add(solution.getProposedSchedule().getTransition());
     }
-    assertNotNull(lowest);
-    assertEquals(31, candidates.size());
-    assertTrue(candidates.contains(lowest));
-    candidates = solver.selectBestCandidates(candidates);
-    assertEquals("Wrong size: " + candidates.size(), 30, candidates.size());
-    assertFalse("Contained lowest", candidates.contains(lowest));
+    return transitions;
+  }
+
+  @Test
+  public void testIncrementalSolveMatchesNewSolver() throws Exception {
+    addTask("A1000", 1, Period.hours(30));
+    for (int i = 1; i <= NUM_TWO_DAY_TASKS / 2; ++i) {
+      addTask("A1" + String.format("%03d", i), 2, Period.hours(20));
+    }
+    BidConfig bidConfig = BidConfig.newBuilder()
+        .addFavoriteOvernight("LGA")
+        .setEnableMultipleAdds(true)
+        .setMaximumNumberOfAddsPerSwap(2)
+        .build();
+    Solver solver = createSolver(bidConfig);
+    assertEquals(NUM_TWO_DAY_TASKS / 2 + 1, solver.solve().size());
+
+    // The turn and the first quarter leave opentime; the second half arrives.
+    tasks.clear();
+    for (int i = NUM_TWO_DAY_TASKS / 4 + 1; i <= NUM_TWO_DAY_TASKS; ++i) {
+      addTask("A1" + String.format("%03d", i), 2, Period.hours(20));
+    }
+    List<Solution> incremental = solver.solve(new ArrayList<>(tasks));
+    List<Solution> expected = createSolver(bidConfig).solve();
+
+    assertEquals(NUM_TWO_DAY_TASKS * 3 / 4, expected.size());
+    assertEquals(expected.size(), incremental.size());
+    assertEquals(getTransitions(expected), getTransitions(incremental));
+  }
+
+  private List<Transition> getTransitionList(List<Solution> solutions) {
+    List<Transition> transitions = new ArrayList<>();
+    for (Solution solution : solutions) {
+      transitions.add(solution.getProposedSchedule().getTransition());
+    }
+    return transitions;
+  }
+
+  @Test
+  public void testLimitedSolveKeepsBestSolutions() throws Exception {
+    addTask("A1000", 1, Period.hours(30));
+    for (int i = 1; i <= NUM_TWO_DAY_TASKS; ++i) {
+      addTask("A1" + String.format("%03d", i), 2, Period.hours(20));
+    }
+    BidConfig bidConfig = BidConfig.newBuilder()
+        .addFavoriteOvernight("LGA")
+        .setEnableMultipleAdds(true)
+        .setMaximumNumberOfAddsPerSwap(2)
+        .build();
+    List<Solution> all = createSolver(bidConfig).solve();
+    List<Solution> limited = createSolver(bidConfig, 5).solve();
+
+    assertEquals(getTransitionList(all.subList(0, 5)), getTransitionList(limited));
+    assertEquals(ImmutableList.of(new PairingKey(TASK_DATE, "A1000")),
+        limited.get(0).getProposedSchedule().getTransition().getAddKeys());
+  }
+
+  @Test
+  public void testLimitedIncrementalSolveRefillsAfterRemoval() throws Exception {
+    for (int i = 1; i <= NUM_TWO_DAY_TASKS / 2; ++i) {
+      addTask("A1" + String.format("%03d", i), 2, Period.hours(20));
+    }
+    BidConfig bidConfig = BidConfig.newBuilder()
+        .addFavoriteOvernight("LGA")
+        .setEnableMultipleAdds(true)
+        .setMaximumNumberOfAddsPerSwap(2)
+        .build();
+    Solver solver = createSolver(bidConfig, 3);
+    assertEquals(3, solver.solve().size());
+
+    // The solutions kept leave opentime, so the dropped ones must come back.
+    tasks.clear();
+    for (int i = NUM_TWO_DAY_TASKS / 4 + 1; i <= NUM_TWO_DAY_TASKS; ++i) {
+      addTask("A1" + String.format("%03d", i), 2, Period.hours(20));
+    }
+    List<Solution> incremental = solver.solve(new ArrayList<>(tasks));
+    List<Solution> expected = createSolver(bidConfig, 3).solve();
+
+    assertEquals(3, incremental.size());
+    assertEquals(getTransitionList(expected), getTransitionList(incremental));
+  }
+
+  @Test
+  public void testIncrementalSolveReevaluatesRedatedTask() throws Exception {
+    addTask("A1001", 2, Period.hours(20));
+    BidConfig bidConfig = BidConfig.newBuilder()
+        .addFavoriteOvernight("LGA")
+        .build();
+    Solver solver = createSolver(bidConfig);
+    assertEquals(1, solver.solve().size());
+
+    // Opentime keeps the name but moves the task two days later.
+    tasks.clear();
+    LocalDate newDate = TASK_DATE.plusDays(2);
+    tasks.add(new FlicaTaskWrapper(new FlicaTask(
+        new PairingKey(newDate, "A1001"), Period.hours(20), 2)));
+    List<Solution> incremental = solver.solve(new ArrayList<>(tasks));
+    List<Solution> expected = createSolver(bidConfig).solve();
+
+    assertEquals(getTransitions(expected), getTransitions(incremental));
+    for (Solution solution : incremental) {
+      assertEquals(ImmutableList.of(new PairingKey(newDate, "A1001")),
+          solution.getProposedSchedule().getTransition().getAddKeys());
+    }
+  }
+
+  @Test
+  public void testFailedScoreIsRetried() throws Exception {
+    addTask("A1001", 2, Period.hours(20));
+    AtomicInteger numRetrievals = new AtomicInteger();
+    TripDatabase failingOnce = new TripDatabase(null) {
+      @Override
+      public Trip getTrip(PairingKey key)
+          throws URISyntaxException, IOException, ParseException {
+        if (numRetrievals.incrementAndGet() == 1) {
+          throw new IOException("Unable to reach FLICA");
+        }
+        return tripDatabase.getTrip(key);
+      }
+    };
+    BidConfig bidConfig = BidConfig.newBuilder()
+        .addFavoriteOvernight("LGA")
+        .build();
+    Solver solver = new Solver(schedule, tasks, YEAR_MONTH, bidConfig, failingOnce,
+        fakeClock);
+    assertEquals(1, solver.solve().size());
+    int afterFailure = numRetrievals.get();
+
+    // Unchanged opentime searches nothing, but scores the task again.
+    solver.solve(new ArrayList<>(tasks));
+    assertEquals(afterFailure + 1, numRetrievals.get());
+    solver.solve(new ArrayList<>(tasks));
+    assertEquals(afterFailure + 1, numRetrievals.get());
   }
 }
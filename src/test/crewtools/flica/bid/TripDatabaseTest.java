@@ -0,0 +1,84 @@
+/**
+ * Copyright 2020 Iron City Software LLC
+ *
+ * This file is part of CrewTools.
+ *
+ * CrewTools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CrewTools is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CrewTools.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package crewtools.flica.bid;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.LocalDate;
+import org.junit.Test;
+
+import crewtools.flica.FlicaService;
+import crewtools.flica.pojo.PairingKey;
+import crewtools.flica.pojo.Trip;
+import crewtools.test.TripBuilder;
+import crewtools.util.Period;
+
+public class TripDatabaseTest {
+  private static final LocalDate DATE = LocalDate.parse("2019-10-10");
+
+  @Test
+  public void testConcurrentMissesRetrieveOnce() throws Exception {
+    Trip trip = new TripBuilder()
+        .withLocalDate(DATE)
+        .withName("L1000")
+        .withLeg("DCA", "LGA", Period.hours(1))
+        .build();
+    CountDownLatch retrieving = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    FlicaService service = mock(FlicaService.class);
+    when(service.getPairingDetail(anyString(), any(LocalDate.class)))
+        .thenAnswer(invocation -> {
+          retrieving.countDown();
+          release.await();
+          return "detail";
+        });
+    when(service.parsePairingDetail(any(PairingKey.class), anyString()))
+        .thenReturn(trip.proto);
+    TripDatabase tripDatabase = new TripDatabase(service);
+    PairingKey key = new PairingKey(DATE, "L1000");
+
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      Future<Trip> first = executor.submit(() -> tripDatabase.getTrip(key));
+      retrieving.await();
+      Future<Trip> second = executor.submit(() -> tripDatabase.getTrip(key));
+      // Gives the second lookup time to find the retrieval in progress.
+      Thread.sleep(100);
+      release.countDown();
+      assertEquals(key, first.get(10, TimeUnit.SECONDS).getPairingKey());
+      assertEquals(key, second.get(10, TimeUnit.SECONDS).getPairingKey());
+    } finally {
+      executor.shutdownNow();
+    }
+    verify(service, times(1)).getPairingDetail(anyString(), any(LocalDate.class));
+  }
+}
@@ -0,0 +1,94 @@
+/**
+ * Copyright 2020 Iron City Software LLC
+ *
+ * This file is part of CrewTools.
+ *
+ * CrewTools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CrewTools is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CrewTools.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package crewtools.flica.bid;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.joda.time.LocalDate;
+import org.junit.Test;
+
+import crewtools.flica.pojo.Trip;
+import crewtools.rpc.Proto.BidConfig;
+import crewtools.test.TripBuilder;
+import crewtools.util.Period;
+
+public class TripScoreCacheTest {
+
+  private Trip newTrip(String overnight) {
+    return new TripBuilder()
+        .withLocalDate(LocalDate.parse("2018-01-01"))
+        .withName("L1000")
+        .withLeg("DCA", overnight, Period.hours(1))
+        .withLayover(overnight, Period.hours(1))
+        .build();
+  }
+
+  @Test
+  public void testHit() {
+    TripScoreCache cache = new TripScoreCache();
+    Trip trip = newTrip("SFO");
+    BidConfig bidConfig = BidConfig.newBuilder().addFavoriteOvernight("SFO").build();
+    TripScore score = cache.getScore(trip, bidConfig);
+    assertEquals(new TripScore(trip, bidConfig).getPoints(), score.getPoints());
+    assertSame(score, cache.getScore(trip, bidConfig));
+    assertSame(score, cache.getScore(newTrip("SFO"), bidConfig));
+    assertEquals(2, cache.getHits());
+    assertEquals(1, cache.getMisses());
+  }
+
+  @Test
+  public void testUnrelatedBidConfigChange() {
+    TripScoreCache cache = new TripScoreCache();
+    Trip trip = newTrip("SFO");
+    TripScore score = cache.getScore(trip,
+        BidConfig.newBuilder().addFavoriteOvernight("SFO").build());
+    assertSame(score, cache.getScore(trip,
+        BidConfig.newBuilder().addFavoriteOvernight("SFO").setRound(2).build()));
+    assertEquals(1, cache.getHits());
+  }
+
+  @Test
+  public void testScoringBidConfigChange() {
+    TripScoreCache cache = new TripScoreCache();
+    Trip trip = newTrip("SFO");
+    TripScore favorite = cache.getScore(trip,
+        BidConfig.newBuilder().addFavoriteOvernight("SFO").build());
+    TripScore plain = cache.getScore(trip, BidConfig.getDefaultInstance());
+    assertNotSame(favorite, plain);
+    assertEquals(1, favorite.getNumFavoriteOvernights());
+    assertEquals(0, plain.getNumFavoriteOvernights());
+    assertEquals(0, cache.getHits());
+    assertEquals(2, cache.getMisses());
+  }
+
+  @Test
+  public void testModifiedTripWithSameKey() {
+    TripScoreCache cache = new TripScoreCache();
+    BidConfig bidConfig = BidConfig.newBuilder().addFavoriteOvernight("SFO").build();
+    Trip original = newTrip("SFO");
+    Trip modified = newTrip("BOS");
+    assertEquals(original.getPairingKey(), modified.getPairingKey());
+    assertEquals(1, cache.getScore(original, bidConfig).getNumFavoriteOvernights());
+    assertEquals(0, cache.getScore(modified, bidConfig).getNumFavoriteOvernights());
+    assertEquals(0, cache.getHits());
+  }
+}
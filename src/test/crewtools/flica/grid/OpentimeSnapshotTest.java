@@ -0,0 +1,111 @@
+/**
+ * Copyright 2020 Iron City Software LLC
+ *
+ * This file is part of CrewTools.
+ *
+ * CrewTools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CrewTools is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CrewTools.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package crewtools.flica.grid;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.joda.time.LocalDate;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import crewtools.flica.bid.TripDatabase;
+import crewtools.flica.parser.ParseException;
+import crewtools.flica.pojo.FlicaTask;
+import crewtools.flica.pojo.PairingKey;
+import crewtools.flica.pojo.Trip;
+import crewtools.test.TripBuilder;
+import crewtools.util.Period;
+
+public class OpentimeSnapshotTest {
+  private static final LocalDate FIRST = LocalDate.parse("2019-10-10");
+
+  private final TripDatabase tripDatabase;
+
+  public OpentimeSnapshotTest() throws IOException {
+    tripDatabase = new TripDatabase(null) {
+      @Override
+      public Trip getTrip(PairingKey key) throws ParseException {
+        if (key.getPairingName().equals("A9999")) {
+          throw new ParseException("No such trip");
+        }
+        // The last digit is the number of days, each with five hours.
+        int numDays = key.getPairingName().charAt(4) - '0';
+        TripBuilder builder = new TripBuilder()
+            .withLocalDate(key.getPairingDate())
+            .withName(key.getPairingName());
+        for (int i = 0; i < numDays; ++i) {
+          builder.withLeg("DCA", "DCA", Period.hours(5));
+          if (i < numDays - 1) {
+            builder.withLayover("DCA", Period.hours(12));
+          }
+        }
+        return builder.build();
+      }
+    };
+  }
+
+  private FlicaTask task(String name, LocalDate date) {
+    return new FlicaTask(new PairingKey(date, name), Period.ZERO, 1);
+  }
+
+  private List<String> getNames(List<Trip> trips) {
+    ImmutableList.Builder<String> names = ImmutableList.builder();
+    trips.forEach(trip -> names.add(trip.getPairingName()));
+    return names.build();
+  }
+
+  @Test
+  public void testSkipsTwoHundredsAndUnknownTrips() {
+    OpentimeSnapshot snapshot = new OpentimeSnapshot(ImmutableList.of(
+        task("A1001", FIRST),
+        task("A2001", FIRST),
+        task("A9999", FIRST),
+        task("A1002", FIRST)), tripDatabase);
+
+    assertEquals(ImmutableList.of("A1001", "A1002"), getNames(snapshot.getTrips()));
+  }
+
+  @Test
+  public void testGetTripsByDateAndCredit() {
+    OpentimeSnapshot snapshot = new OpentimeSnapshot(ImmutableList.of(
+        task("A1003", FIRST),
+        task("A1001", FIRST.plusDays(5)),
+        task("A1012", FIRST.plusDays(2)),
+        task("A1022", FIRST.plusDays(3))), tripDatabase);
+    List<Trip> trips = snapshot.getTrips();
+    Period oneDay = trips.get(1).getCredit();
+    Period twoDays = trips.get(2).getCredit();
+
+    assertEquals(ImmutableList.of("A1003", "A1001", "A1012", "A1022"),
+        getNames(snapshot.getTrips(ImmutableSet.of(), Period.ZERO)));
+    assertEquals(ImmutableList.of("A1003", "A1012", "A1022"),
+        getNames(snapshot.getTrips(ImmutableSet.of(), oneDay.plus(Period.minutes(1)))));
+    assertEquals(ImmutableList.of("A1003", "A1012", "A1022"),
+        getNames(snapshot.getTrips(ImmutableSet.of(), twoDays)));
+    // A1003 covers the 10th to the 12th, and A1012 the 12th and 13th.
+    assertEquals(ImmutableList.of("A1001", "A1022"),
+        getNames(snapshot.getTrips(ImmutableSet.of(FIRST.plusDays(2)), Period.ZERO)));
+  }
+}
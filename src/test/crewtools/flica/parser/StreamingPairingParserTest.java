@@ -0,0 +1,191 @@
+/**
+ * Copyright 2020 Iron City Software LLC
+ *
+ * This file is part of CrewTools.
+ *
+ * CrewTools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CrewTools is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CrewTools.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package crewtools.flica.parser;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.joda.time.YearMonth;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+import crewtools.flica.Proto.PairingList;
+import crewtools.flica.Proto.Trip;
+
+public class StreamingPairingParserTest {
+  private static final YearMonth YEAR_MONTH = YearMonth.parse("2017-09");
+
+  private static final String SECTION_HEADER = "<tr class=\"main\">"
+      + cells("DY", "DD", "DH", "C", "FLTNO", "DPS-ARS", "DEPL", "ARRL", "BLKT",
+          "GRNT", "OA", "", "TBLK", "TDHD", "TCRD", "TDUTY/FDP", "LAYOVER")
+      + "</tr>";
+
+  private static String cells(String... texts) {
+    StringBuilder result = new StringBuilder();
+    for (String text : texts) {
+      result.append("<td>").append(text).append("</td>");
+    }
+    return result.toString();
+  }
+
+  private static String row(String... texts) {
+    return "<tr>" + cells(texts) + "</tr>";
+  }
+
+  private String trip(String name, int flightNumber, boolean isCanceled) {
+    return "<table>"
+        + (isCanceled ? row("Pairing Canceled") : "")
+        + row(name + " : 5SEP", "EVERY DAY", "BSE REPT: 0600L")
+        + row("Base/Equip: CLT/CRJ", "CA01FO01")
+        + "<tr><td><table>" + SECTION_HEADER
+        + row("SU", "5", "", "", "" + flightNumber, "CLT-ATL", "0700", "0830",
+            "0130", "", "", "", "0130", "", "0500", "0600/0500", "")
+        + row("", "D-END: 0845L T.A.F.B.: 0245", "", "", "", "", "", "", "", "",
+            "", "", "", "", "", "", "")
+        + row("", "", "", "", "", "", "", "", "", "", "", "Total:", "0130", "0000",
+            "0500", "0600/0500", "")
+        + "</table></td></tr>"
+        + "</table>";
+  }
+
+  private String page(String... tables) {
+    StringBuilder page = new StringBuilder();
+    page.append("<html><head><title>Pairings</title>")
+        .append("<script>var s = '<table name=\"pagination\"></table>';</script>")
+        .append("</head><body>")
+        .append("<!-- <table name=\"pagination\"><tr><td><table> -->")
+        .append("<TABLE NAME=pagination>")
+        .append("<tr><td><table name=\"header\"><tr><td>&nbsp;</td></tr></table>");
+    for (String table : tables) {
+      page.append("<tr><td>").append(table).append("</td></tr>");
+    }
+    page.append("<tr><td><table><tr><td></td></tr></table></td></tr>")
+        .append("</TABLE></body></html>");
+    return page.toString();
+  }
+
+  @Test
+  public void testSameAsPairingParser() throws Exception {
+    String page = page(trip("L1001", 1001, false), trip("L1002", 1002, true),
+        trip("L1003", 1003, false));
+    assertEquals(ImmutableList.of(),
+        PairingParserComparison.compare(page, YEAR_MONTH, true));
+    assertEquals(ImmutableList.of(),
+        PairingParserComparison.compare(page, YEAR_MONTH, false));
+
+    PairingList pairings = new StreamingPairingParser(page, YEAR_MONTH, false).parse();
+    assertEquals(2, pairings.getTripCount());
+    assertEquals("L1001", pairings.getTrip(0).getPairingName());
+    assertEquals(1001, pairings.getTrip(0).getSection(0).getLeg(0).getFlightNumber());
+    assertEquals("L1003", pairings.getTrip(1).getPairingName());
+  }
+
+  @Test
+  public void testEmitsTripsInOrder() throws Exception {
+    String page = page(trip("L1001", 1001, false), trip("L1002", 1002, false));
+    List<String> names = new ArrayList<>();
+    new StreamingPairingParser(page, YEAR_MONTH, true)
+        .parse((Trip.Builder trip) -> names.add(trip.getPairingName()));
+    assertEquals(ImmutableList.of("L1001", "L1002"), names);
+  }
+
+  @Test
+  public void testSeveralTablesInOneCell() throws Exception {
+    String page = page(trip("L1001", 1001, false) + trip("L1002", 1002, false));
+    assertEquals(ImmutableList.of(),
+        PairingParserComparison.compare(page, YEAR_MONTH, true));
+    assertEquals(2,
+        new StreamingPairingParser(page, YEAR_MONTH, true).parse().getTripCount());
+  }
+
+  @Test
+  public void testOnlyTablesDirectlyInCells() throws Exception {
+    String page = page(trip("L1001", 1001, false),
+        "<div>" + trip("L1002", 1002, false) + "</div>",
+        "<br><p/>" + trip("L1003", 1003, false))
+        .replace("<TABLE NAME=pagination>", "<TABLE NAME=pagination><thead><tr><td>"
+            + trip("L1004", 1004, false) + "</td></tr></thead>");
+    assertEquals(ImmutableList.of(),
+        PairingParserComparison.compare(page, YEAR_MONTH, true));
+    PairingList pairings = new StreamingPairingParser(page, YEAR_MONTH, true).parse();
+    assertEquals(2, pairings.getTripCount());
+    assertEquals("L1001", pairings.getTrip(0).getPairingName());
+    assertEquals("L1003", pairings.getTrip(1).getPairingName());
+  }
+
+  @Test
+  public void testInputStream() throws Exception {
+    String page = page(trip("L1001", 1001, false), trip("L1002", 1002, true));
+    assertEquals(new StreamingPairingParser(page, YEAR_MONTH, true).parse(),
+        new StreamingPairingParser(
+            new ByteArrayInputStream(page.getBytes(StandardCharsets.UTF_8)),
+            YEAR_MONTH, true).parse());
+  }
+
+  @Test
+  public void testSameErrors() throws Exception {
+    String page = page(trip("L1001", 1001, false).replace("CLT/CRJ", "XXX/CRJ"));
+    assertEquals(ImmutableList.of(),
+        PairingParserComparison.compare(page, YEAR_MONTH, true));
+  }
+
+  @Test
+  public void testNoPairings() throws Exception {
+    String page = "<html><body>No pairings < none </body></html>";
+    assertEquals(ImmutableList.of(),
+        PairingParserComparison.compare(page, YEAR_MONTH, true));
+    assertEquals(0,
+        new StreamingPairingParser(page, YEAR_MONTH, true).parse().getTripCount());
+  }
+
+  @Test
+  public void testParallelKeepsPageOrder() throws Exception {
+    List<String> trips = new ArrayList<>();
+    for (int i = 0; i < 200; ++i) {
+      trips.add(trip("L" + (1000 + i), 1000 + i, i % 7 == 0));
+    }
+    String page = page(trips.toArray(new String[0]));
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      for (boolean parseCanceled : new boolean[] { true, false }) {
+        PairingList sequential =
+            new StreamingPairingParser(page, YEAR_MONTH, parseCanceled).parse();
+        PairingList parallel =
+            new StreamingPairingParser(page, YEAR_MONTH, parseCanceled).parse(pool);
+        assertEquals(sequential, parallel);
+      }
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test(expected = ParseException.class)
+  public void testParallelThrowsParseException() throws Exception {
+    String page = page(trip("L1001", 1001, false),
+        trip("L1002", 1002, false).replace("CLT/CRJ", "XXX/CRJ"));
+    new StreamingPairingParser(page, YEAR_MONTH, true).parse(ForkJoinPool.commonPool());
+  }
+}
@@ -0,0 +1,137 @@
+/**
+ * Copyright 2020 Iron City Software LLC
+ *
+ * This file is part of CrewTools.
+ *
+ * CrewTools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CrewTools is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CrewTools.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package crewtools.flica.retriever;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.joda.time.Duration;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+import crewtools.flica.parser.ParseException;
+
+public class ParallelRetrieverTest {
+  private static final double REQUESTS_PER_SECOND = 1000.0;
+  private static final Duration BACKOFF = Duration.millis(1);
+
+  @Test
+  public void testRetriesWithBackoff() throws Exception {
+    ParallelRetriever retriever = new ParallelRetriever(2, REQUESTS_PER_SECOND, 3,
+        BACKOFF);
+    AtomicInteger attempts = new AtomicInteger();
+    String result = retriever.fetch("flaky", () -> {
+      if (attempts.incrementAndGet() < 3) {
+        throw new IOException("timeout");
+      }
+      return "ok";
+    });
+    assertEquals("ok", result);
+    assertEquals(2, retriever.getNumRetries());
+  }
+
+  @Test
+  public void testGivesUp() throws Exception {
+    ParallelRetriever retriever = new ParallelRetriever(1, REQUESTS_PER_SECOND, 2,
+        BACKOFF);
+    AtomicInteger attempts = new AtomicInteger();
+    try {
+      retriever.fetch("down", () -> {
+        attempts.incrementAndGet();
+        throw new IOException("down");
+      });
+      fail();
+    } catch (IOException expected) {
+    }
+    assertEquals(2, attempts.get());
+  }
+
+  @Test
+  public void testDoesNotRetryParseException() throws Exception {
+    ParallelRetriever retriever = new ParallelRetriever(1, REQUESTS_PER_SECOND, 3,
+        BACKOFF);
+    AtomicInteger attempts = new AtomicInteger();
+    try {
+      retriever.fetch("garbage", () -> {
+        attempts.incrementAndGet();
+        throw new ParseException("garbage");
+      });
+      fail();
+    } catch (ParseException expected) {
+    }
+    assertEquals(1, attempts.get());
+  }
+
+  @Test
+  public void testRoundOneBeforeRoundTwo() throws Exception {
+    ParallelRetriever retriever = new ParallelRetriever(4, REQUESTS_PER_SECOND, 1,
+        BACKOFF);
+    List<String> order = new CopyOnWriteArrayList<>();
+    CountDownLatch release = new CountDownLatch(1);
+    CompletableFuture<Void> roundOne = retriever.submit("round 1", () -> {
+      release.await();
+      order.add("round 1");
+    });
+    retriever.submitAfter(roundOne, "round 2 CA", () -> order.add("round 2"));
+    retriever.submitAfter(roundOne, "round 2 FO", () -> order.add("round 2"));
+    // Independent retrievals don't wait.
+    CompletableFuture<Void> other = retriever.submit("pairings",
+        () -> order.add("pairings"));
+    other.get(10, TimeUnit.SECONDS);
+    assertEquals(ImmutableList.of("pairings"), order);
+    release.countDown();
+    retriever.awaitAll();
+    assertEquals(ImmutableList.of("pairings", "round 1", "round 2", "round 2"), order);
+    assertEquals(4, retriever.getNumCompleted());
+  }
+
+  @Test
+  public void testFailureSkipsDependents() throws Exception {
+    ParallelRetriever retriever = new ParallelRetriever(2, REQUESTS_PER_SECOND, 1,
+        BACKOFF);
+    AtomicInteger ran = new AtomicInteger();
+    CompletableFuture<Void> roundOne = retriever.submit("round 1", () -> {
+      throw new IOException("down");
+    });
+    retriever.submitAfter(roundOne, "round 2", () -> ran.incrementAndGet());
+    retriever.submit("pairings", () -> ran.incrementAndGet());
+    try {
+      retriever.awaitAll();
+      fail();
+    } catch (IOException expected) {
+      assertEquals("down", expected.getMessage());
+    }
+    assertEquals(1, ran.get());
+    assertEquals(1, retriever.getNumFailed());
+    assertFalse(roundOne.isCancelled());
+    assertTrue(roundOne.isCompletedExceptionally());
+  }
+}
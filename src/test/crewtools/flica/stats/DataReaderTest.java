@@ -0,0 +1,144 @@
+/**
+ * Copyright 2020 Iron City Software LLC
+ *
+ * This file is part of CrewTools.
+ *
+ * CrewTools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CrewTools is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CrewTools.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package crewtools.flica.stats;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Map;
+
+import org.joda.time.YearMonth;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.protobuf.Message;
+
+import crewtools.flica.AwardDomicile;
+import crewtools.flica.Proto.PairingList;
+import crewtools.flica.Proto.SeniorityList;
+import crewtools.flica.Proto.ThinLine;
+import crewtools.flica.Proto.ThinLineList;
+import crewtools.flica.Proto.Trip;
+
+public class DataReaderTest {
+  private static final YearMonth THIS_MONTH = YearMonth.now();
+  private static final YearMonth LAST_MONTH = THIS_MONTH.minusMonths(1);
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private DataReader dataReader;
+
+  @Before
+  public void setUp() {
+    dataReader = new DataReader(folder.getRoot().getPath() + "/");
+  }
+
+  private void write(Message message, String filename) throws IOException {
+    try (FileOutputStream output = new FileOutputStream(filename)) {
+      message.writeTo(output);
+    }
+  }
+
+  private PairingList pairings(String... names) {
+    PairingList.Builder pairingList = PairingList.newBuilder();
+    for (String name : names) {
+      pairingList.addTrip(Trip.newBuilder().setPairingName(name));
+    }
+    return pairingList.build();
+  }
+
+  @Test
+  public void testReadPairings() throws Exception {
+    write(pairings("L1001"),
+        dataReader.getPairingFilename(THIS_MONTH, AwardDomicile.CLT));
+    write(pairings("L2001"),
+        dataReader.getPairingFilename(THIS_MONTH, AwardDomicile.DCA));
+    write(pairings("L3001"),
+        dataReader.getPairingFilename(LAST_MONTH, AwardDomicile.CLT));
+
+    Map<YearMonth, Map<AwardDomicile, PairingList>> pairings =
+        dataReader.readPairings();
+    assertEquals(ImmutableList.of(LAST_MONTH, THIS_MONTH),
+        ImmutableList.copyOf(pairings.keySet()));
+    assertEquals(ImmutableSet.of(AwardDomicile.CLT, AwardDomicile.DCA),
+        pairings.get(THIS_MONTH).keySet());
+    assertEquals("L2001",
+        pairings.get(THIS_MONTH).get(AwardDomicile.DCA).getTrip(0).getPairingName());
+    assertFalse(pairings.containsKey(THIS_MONTH.plusMonths(1)));
+
+    int numTrips = 0;
+    for (Map<AwardDomicile, PairingList> pairingLists : pairings.values()) {
+      for (PairingList pairingList : pairingLists.values()) {
+        numTrips += pairingList.getTripCount();
+      }
+    }
+    assertEquals(3, numTrips);
+  }
+
+  @Test
+  public void testReadLines() throws Exception {
+    write(ThinLineList.newBuilder().addThinLine(ThinLine.newBuilder().setLineName("1"))
+        .build(),
+        dataReader.getLineFilename(THIS_MONTH, AwardDomicile.PHL,
+            DataReader.ROUND_ONE_RANK, 1));
+    Map<YearMonth, Map<AwardDomicile, ThinLineList>> lines = dataReader.readLines();
+    assertEquals(ImmutableSet.of(THIS_MONTH), lines.keySet());
+    assertEquals(1, lines.get(THIS_MONTH).get(AwardDomicile.PHL).getThinLineCount());
+  }
+
+  @Test
+  public void testCachesUntilModified() throws Exception {
+    String filename = dataReader.getPairingFilename(THIS_MONTH, AwardDomicile.CLT);
+    write(pairings("L1001"), filename);
+    PairingList first = dataReader.readPairings(THIS_MONTH, AwardDomicile.CLT);
+    assertSame(first, new DataReader(folder.getRoot().getPath() + "/")
+        .readPairings(THIS_MONTH, AwardDomicile.CLT));
+
+    write(pairings("L1001", "L1002"), filename);
+    new File(filename).setLastModified(new File(filename).lastModified() + 2000);
+    PairingList second = dataReader.readPairings(THIS_MONTH, AwardDomicile.CLT);
+    assertNotSame(first, second);
+    assertEquals(2, second.getTripCount());
+  }
+
+  @Test
+  public void testReadSeniorityLists() throws Exception {
+    YearMonth nextMonth = THIS_MONTH.plusMonths(1);
+    write(SeniorityList.getDefaultInstance(),
+        dataReader.getSeniorityFilename(YearMonth.parse("2017-03")));
+    write(SeniorityList.getDefaultInstance(), dataReader.getSeniorityFilename(nextMonth));
+    Map<YearMonth, SeniorityList> lists = dataReader.readSeniorityLists();
+    assertEquals(ImmutableList.of(YearMonth.parse("2017-03"), nextMonth),
+        ImmutableList.copyOf(lists.keySet()));
+    assertTrue(lists.containsKey(nextMonth));
+    assertEquals(2, lists.values().size());
+  }
+}
@@ -0,0 +1,125 @@
+/**
+ * Copyright 2020 Iron City Software LLC
+ *
+ * This file is part of CrewTools.
+ *
+ * CrewTools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CrewTools is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CrewTools.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package crewtools.flica.stats;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.joda.time.LocalDate;
+import org.joda.time.YearMonth;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+import crewtools.flica.Proto.LegIndex;
+import crewtools.flica.Proto.PairingList;
+import crewtools.test.TripBuilder;
+import crewtools.util.Period;
+
+public class LegSearchTest {
+  private static final YearMonth YEAR_MONTH = TripBuilder.DEFAULT_YEAR_MONTH;
+  private static final LocalDate THIRD = YEAR_MONTH.toLocalDate(3);
+  private static final LocalDate FOURTH = YEAR_MONTH.toLocalDate(4);
+
+  private PairingList pairingList;
+  private LegIndex index;
+  private LegSearch legSearch;
+
+  @Before
+  public void setUp() throws Exception {
+    pairingList = PairingList.newBuilder()
+        .addTrip(new TripBuilder()
+            .withDayOfMonth(3)
+            .withLeg("CLT", "SAV", Period.hours(2))
+            .withLayover("SAV", Period.hours(12))
+            .withLeg("SAV", "CLT", Period.hours(2))
+            .build().proto)
+        .addTrip(new TripBuilder()
+            .withDayOfMonth(4)
+            .withLeg("CLT", "SAV", Period.hours(2))
+            .withLeg("SAV", "DCA", Period.hours(2))
+            .build().proto)
+        .build();
+    index = LegIndex.parseFrom(
+        LegSearch.buildIndex(YEAR_MONTH, pairingList).toByteArray());
+    legSearch = new LegSearch(index);
+  }
+
+  private List<String> find(LocalDate date, String origin, String destination) {
+    List<String> result = new ArrayList<>();
+    for (long position : legSearch.find(date, origin, destination)) {
+      result.add(LegSearch.getDate(position).getDayOfMonth()
+          + ":" + LegSearch.getTripIndex(position)
+          + ":" + LegSearch.getInstanceIndex(position)
+          + ":" + LegSearch.getLegIndex(position));
+    }
+    return result;
+  }
+
+  @Test
+  public void testFullKey() {
+    assertEquals(ImmutableList.of("3:0:0:0"), find(THIRD, "CLT", "SAV"));
+    assertEquals(ImmutableList.of("4:1:0:0"), find(FOURTH, "CLT", "SAV"));
+    assertEquals(ImmutableList.of("4:0:0:1"), find(FOURTH, "SAV", "CLT"));
+    assertEquals(ImmutableList.of(), find(THIRD, "SAV", "CLT"));
+  }
+
+  @Test
+  public void testWithoutDate() {
+    assertEquals(ImmutableList.of("3:0:0:0", "4:1:0:0"), find(null, "CLT", "SAV"));
+    assertEquals(ImmutableList.of("4:0:0:1", "4:1:0:1"), find(null, "SAV", null));
+    assertEquals(ImmutableList.of("4:1:0:1"), find(null, null, "DCA"));
+    assertEquals(4, find(null, null, null).size());
+  }
+
+  @Test
+  public void testDateOnly() {
+    assertEquals(ImmutableList.of("4:0:0:1", "4:1:0:0", "4:1:0:1"),
+        find(FOURTH, null, null));
+    assertEquals(ImmutableList.of("4:0:0:1", "4:1:0:1"), find(FOURTH, "SAV", null));
+    assertEquals(ImmutableList.of(), find(YEAR_MONTH.toLocalDate(5), "CLT", null));
+  }
+
+  @Test
+  public void testUnknownAirport() {
+    assertEquals(ImmutableList.of(), find(null, "XXX", null));
+    assertEquals(ImmutableList.of(), find(THIRD, "XXX", "CLT"));
+  }
+
+  @Test
+  public void testIsIndexOf() throws Exception {
+    assertTrue(LegSearch.isIndexOf(index,
+        PairingList.parseFrom(pairingList.toByteArray())));
+    PairingList retrieved = pairingList.toBuilder()
+        .addTrip(new TripBuilder()
+            .withDayOfMonth(5)
+            .withLeg("CLT", "SAV", Period.hours(2))
+            .build().proto)
+        .build();
+    assertFalse(LegSearch.isIndexOf(index, retrieved));
+    assertFalse(LegSearch.isIndexOf(
+        index.toBuilder().clearSourceFingerprint().build(), pairingList));
+  }
+}
@@ -0,0 +1,208 @@
+/**
+ * Copyright 2020 Iron City Software LLC
+ *
+ * This file is part of CrewTools.
+ *
+ * CrewTools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CrewTools is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CrewTools.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package crewtools.flica.stats;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.joda.time.LocalDate;
+import org.joda.time.LocalTime;
+import org.joda.time.YearMonth;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import crewtools.flica.AwardDomicile;
+import crewtools.flica.Proto.Equipment;
+import crewtools.flica.Proto.PairingList;
+import crewtools.flica.Proto.ThinLine;
+import crewtools.flica.Proto.ThinLineList;
+import crewtools.flica.Proto.Trip;
+import crewtools.test.TripBuilder;
+import crewtools.util.Period;
+
+public class PairingStoreTest {
+  private static final YearMonth JANUARY = YearMonth.parse("2018-01");
+  private static final YearMonth FEBRUARY = YearMonth.parse("2018-02");
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private Trip trip(String name, int dayOfMonth) {
+    return new TripBuilder()
+        .withName(name)
+        .withDayOfMonth(dayOfMonth)
+        .withLeg("CLT", "SAV", Period.hours(2))
+        .withLayover("SAV", Period.hours(12))
+        .withLeg("SAV", "CLT", Period.hours(3))
+        .build().proto.toBuilder()
+        .setBlockDuration("0500")
+        .setCreditDuration("0615")
+        .build();
+  }
+
+  private ThinLineList lines(int numLines) {
+    ThinLineList.Builder lines = ThinLineList.newBuilder();
+    for (int i = 0; i < numLines; ++i) {
+      lines.addThinLine(ThinLine.newBuilder().setLineName("" + i));
+    }
+    return lines.build();
+  }
+
+  private PairingStore write(PairingStoreWriter writer) throws IOException {
+    File file = new File(folder.getRoot(), "pairings.store");
+    writer.write(file);
+    return PairingStore.open(file);
+  }
+
+  @Test
+  public void testRoundTrip() throws Exception {
+    PairingStoreWriter writer = new PairingStoreWriter();
+    writer.add(JANUARY, AwardDomicile.CLT, PairingList.newBuilder()
+        .addTrip(trip("L1001", 3))
+        .addTrip(trip("L1002", 4))
+        .build(), lines(3));
+    writer.add(FEBRUARY, AwardDomicile.DCA, null, lines(2));
+    writer.add(FEBRUARY, AwardDomicile.PHL, PairingList.newBuilder()
+        .addTrip(trip("L1001", 5))
+        .build(), null);
+    PairingStore store = write(writer);
+
+    assertEquals(3, store.getNumPartitions());
+    assertEquals(JANUARY, store.getYearMonth(0));
+    assertEquals(AwardDomicile.CLT, store.getAwardDomicile(0));
+    assertTrue(store.hasPairings(0));
+    assertTrue(store.hasLines(0));
+    assertEquals(3, store.getNumLines(0));
+    assertEquals(0, store.getFirstTrip(0));
+    assertEquals(2, store.getEndTrip(0));
+
+    assertEquals(FEBRUARY, store.getYearMonth(1));
+    assertFalse(store.hasPairings(1));
+    assertEquals(2, store.getNumLines(1));
+    assertEquals(store.getEndTrip(1), store.getFirstTrip(1));
+
+    assertTrue(store.hasPairings(2));
+    assertFalse(store.hasLines(2));
+    assertEquals(3, store.getNumTrips());
+
+    assertEquals(2, store.getPartition(FEBRUARY, AwardDomicile.PHL));
+    assertEquals(-1, store.getPartition(FEBRUARY, AwardDomicile.CLT));
+    assertEquals(ImmutableList.of(1, 2),
+        ImmutableList.copyOf(store.getPartitions(FEBRUARY)));
+    assertEquals(ImmutableSet.of(JANUARY, FEBRUARY), store.getYearMonths());
+
+    int trip = store.getFirstTrip(2);
+    assertEquals("L1001", store.getPairingName(trip));
+    assertEquals(new LocalDate(2018, 1, 5), store.getStartDate(trip));
+    assertEquals(300, store.getTripBlockMinutes(trip));
+    assertEquals(375, store.getTripCreditMinutes(trip));
+    assertNull(store.getTripEquipment(trip));
+    assertEquals(2, store.getEndSection(trip) - store.getFirstSection(trip));
+
+    int section = store.getFirstSection(trip);
+    assertEquals("SAV", store.getLayoverAirportCode(section));
+    assertEquals(720, store.getLayoverMinutes(section));
+    assertEquals(5 * 60, store.getDutyStartMinuteOfDay(section));
+    assertNull(store.getLayoverAirportCode(section + 1));
+    assertEquals(-1, store.getLayoverMinutes(section + 1));
+
+    int leg = store.getFirstLeg(section + 1);
+    assertEquals(store.getEndLeg(section + 1) - 1, leg);
+    assertEquals("SAV", store.getDepartureAirportCode(leg));
+    assertEquals(store.getStringId("CLT"), store.getArrivalAirportId(leg));
+    assertEquals(6, store.getDayOfMonth(leg));
+    assertEquals(new LocalTime(5, 0),
+        PairingStore.toLocalTime(store.getDepartureMinuteOfDay(leg)));
+    assertEquals(8 * 60, store.getArrivalMinuteOfDay(leg));
+    assertEquals(180, store.getLegBlockMinutes(leg));
+    assertEquals(Equipment.RJ9, store.getLegEquipment(leg));
+    assertFalse(store.isDeadhead(leg));
+    assertEquals(-1, store.getStringId("XXX"));
+  }
+
+  @Test
+  public void testEmpty() throws Exception {
+    PairingStore store = write(new PairingStoreWriter());
+    assertEquals(0, store.getNumPartitions());
+    assertEquals(0, store.getNumStrings());
+    assertTrue(store.getYearMonths().isEmpty());
+  }
+
+  @Test
+  public void testNoStartDate() throws Exception {
+    PairingStoreWriter writer = new PairingStoreWriter();
+    writer.add(JANUARY, AwardDomicile.CLT, PairingList.newBuilder()
+        .addTrip(trip("L1001", 3).toBuilder().clearStartDate())
+        .build(), null);
+    assertNull(write(writer).getStartDate(0));
+  }
+
+  @Test
+  public void testIsStale() throws Exception {
+    // Older than the months readPairings() looks for.
+    YearMonth month = YearMonth.now().minusYears(10);
+    DataReader dataReader = new DataReader(folder.getRoot().getPath() + "/");
+    File store = new File(dataReader.getPairingStoreFilename());
+    File pairings = new File(dataReader.getPairingFilename(month, AwardDomicile.CLT));
+    writePairings(pairings, trip("L1001", 3));
+    assertTrue(PairingStoreWriter.isStale(dataReader, store));
+    PairingStoreWriter.compact(dataReader, store);
+    assertFalse(PairingStoreWriter.isStale(dataReader, store));
+    assertEquals(0, PairingStore.open(store).getPartition(month, AwardDomicile.CLT));
+
+    // Replaced by a file that is no newer than the store.
+    long lastModified = pairings.lastModified();
+    writePairings(pairings, trip("L1001", 3), trip("L1002", 4));
+    pairings.setLastModified(lastModified);
+    assertTrue(PairingStoreWriter.isStale(dataReader, store));
+    PairingStoreWriter.compact(dataReader, store);
+    assertFalse(PairingStoreWriter.isStale(dataReader, store));
+
+    assertTrue(pairings.delete());
+    writePairings(new File(dataReader.getPairingFilename(month, AwardDomicile.DCA)),
+        trip("L1001", 3));
+    assertTrue(PairingStoreWriter.isStale(dataReader, store));
+  }
+
+  private void writePairings(File file, Trip... trips) throws IOException {
+    try (FileOutputStream output = new FileOutputStream(file)) {
+      PairingList.newBuilder().addAllTrip(Arrays.asList(trips)).build().writeTo(output);
+    }
+  }
+
+  @Test
+  public void testVersion() throws Exception {
+    File file = folder.newFile();
+    assertEquals(-1, PairingStore.readVersion(file));
+    new PairingStoreWriter().write(file);
+    assertEquals(PairingStore.VERSION, PairingStore.readVersion(file));
+  }
+}
@@ -0,0 +1,88 @@
+/**
+ * Copyright 2020 Iron City Software LLC
+ *
+ * This file is part of CrewTools.
+ *
+ * CrewTools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CrewTools is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CrewTools.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package crewtools.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.joda.time.LocalDate;
+import org.joda.time.YearMonth;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+public class DayMaskTest {
+  private static final YearMonth FEB = new YearMonth(2019, 2);
+
+  private final DayMask dayMask = new DayMask(FEB);
+
+  private long mask(int month, int... daysOfMonth) {
+    ImmutableList.Builder<LocalDate> dates = ImmutableList.builder();
+    for (int dayOfMonth : daysOfMonth) {
+      dates.add(new LocalDate(2019, month, dayOfMonth));
+    }
+    return dayMask.getMask(dates.build());
+  }
+
+  @Test
+  public void testForDate() {
+    assertEquals(FEB, DayMask.forDate(new LocalDate(2019, 1, 31)).getYearMonth());
+    assertEquals(FEB, DayMask.forDate(new LocalDate(2019, 3, 1)).getYearMonth());
+  }
+
+  @Test
+  public void testPeriodMask() {
+    assertEquals(30, DayMask.getNumDays(dayMask.getPeriodMask()));
+    assertTrue(DayMask.overlaps(mask(1, 31), dayMask.getPeriodMask()));
+    assertFalse(DayMask.overlaps(mask(1, 30), dayMask.getPeriodMask()));
+    assertFalse(DayMask.overlaps(mask(3, 2), dayMask.getPeriodMask()));
+  }
+
+  @Test
+  public void testOutOfRangeDatesIgnored() {
+    assertTrue(dayMask.contains(new LocalDate(2019, 1, 15)));
+    assertFalse(dayMask.contains(new LocalDate(2019, 1, 14)));
+    assertEquals(0, mask(1, 1));
+    assertEquals(mask(2, 10), dayMask.getMask(ImmutableList.of(
+        new LocalDate(2019, 2, 10), new LocalDate(2019, 6, 1))));
+  }
+
+  @Test
+  public void testExtend() {
+    assertEquals(mask(2, 8, 9, 10, 11, 13, 14, 15),
+        DayMask.extend(mask(2, 10, 11, 13), 2));
+    assertEquals(mask(2, 9, 10, 11, 12, 13, 14), DayMask.spread(mask(2, 10, 13), 1));
+    assertEquals(mask(2, 10, 11, 12, 13), DayMask.fill(mask(2, 10, 13)));
+  }
+
+  @Test
+  public void testAdjacentDays() {
+    assertEquals(mask(2, 9), DayMask.getDayBefore(mask(2, 10, 11)));
+    assertEquals(mask(2, 12), DayMask.getDayAfter(mask(2, 10, 11)));
+  }
+
+  @Test
+  public void testLongestRun() {
+    assertEquals(0, DayMask.getLongestRun(0));
+    assertEquals(3, DayMask.getLongestRun(mask(2, 1, 2, 3, 5, 6)));
+    assertEquals(6, DayMask.getLongestRun(mask(2, 1, 2, 10, 11, 12, 13, 14, 15)));
+  }
+}
@@ -0,0 +1,91 @@
+/**
+ * Copyright 2020 Iron City Software LLC
+ *
+ * This file is part of CrewTools.
+ *
+ * CrewTools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CrewTools is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CrewTools.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package crewtools.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.format.PeriodFormatter;
+import org.joda.time.format.PeriodFormatterBuilder;
+import org.junit.Test;
+
+public class PeriodTest {
+  // The formatter Period used for every length other than five.
+  private static final PeriodFormatter JODA_HHMM = new PeriodFormatterBuilder()
+      .maximumParsedDigits(2).appendHours().appendMinutes().toFormatter();
+
+  private int parseWithJoda(String text) {
+    org.joda.time.Period period = JODA_HHMM.parsePeriod(text);
+    return period.getHours() * 60 + period.getMinutes();
+  }
+
+  @Test
+  public void testParseMinutesMatchesFormatter() {
+    for (String text : new String[] {
+        "", "0", "00", "000", "0000", "0130", "1245", "130", "13", "1", "0075",
+        "9999", "-130", "01-3", "+130" }) {
+      assertEquals(text, parseWithJoda(text), Period.parseMinutes(text));
+    }
+  }
+
+  @Test
+  public void testParseMinutesFiveDigits() {
+    assertEquals(100 * 60 + 30, Period.parseMinutes("10030"));
+    // As Integer.parseInt parses each part.
+    assertEquals(-60 + 30, Period.parseMinutes("-0130"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testParseMinutesMalformed() {
+    Period.parseMinutes("12:30");
+  }
+
+  @Test
+  public void testSharedInstances() {
+    assertSame(Period.ZERO, Period.minutes(0));
+    assertSame(Period.hours(2), Period.minutes(90).plus(Period.minutes(30)));
+    assertEquals(Period.hours(100), Period.hours(99).plus(Period.hours(1)));
+    assertEquals(-30, Period.ZERO.minus(Period.minutes(30)).getTotalMinutes());
+  }
+
+  @Test
+  public void testMinutesBetween() {
+    DateTimeZone eastern = DateTimeZone.forID("America/New_York");
+    DateTimeZone central = DateTimeZone.forID("America/Chicago");
+    DateTime start = new DateTime(2018, 3, 10, 20, 0, eastern);
+    DateTime[] ends = {
+        start.plusMinutes(95),
+        start.plusMinutes(95).withZone(central),
+        // Spans the change to daylight time.
+        new DateTime(2018, 3, 11, 8, 0, eastern),
+        start.plusDays(3).plusMinutes(7),
+        start.minusMinutes(30),
+    };
+    for (DateTime end : ends) {
+      org.joda.time.Period period = new org.joda.time.Period(start, end);
+      int expected = period.getDays() * 24 * 60 + period.getHours() * 60
+          + period.getMinutes();
+      assertEquals(end.toString(), expected, Period.minutesBetween(start, end));
+      assertEquals(expected, new Period(start, end).getTotalMinutes());
+    }
+  }
+}